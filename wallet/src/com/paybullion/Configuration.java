@@ -17,8 +17,6 @@
 
 package com.paybullion;
 
-import java.math.BigInteger;
-
 import javax.annotation.Nonnull;
 
 import org.slf4j.Logger;
@@ -223,7 +221,7 @@ public class Configuration
 		if (prefs.contains(PREFS_KEY_CACHED_EXCHANGE_CURRENCY) && prefs.contains(PREFS_KEY_CACHED_EXCHANGE_RATE))
 		{
 			final String cachedExchangeCurrency = prefs.getString(PREFS_KEY_CACHED_EXCHANGE_CURRENCY, null);
-			final BigInteger cachedExchangeRate = BigInteger.valueOf(prefs.getLong(PREFS_KEY_CACHED_EXCHANGE_RATE, 0));
+			final long cachedExchangeRate = prefs.getLong(PREFS_KEY_CACHED_EXCHANGE_RATE, 0);
 			return new ExchangeRate(cachedExchangeCurrency, cachedExchangeRate, null);
 		}
 		else
@@ -236,7 +234,7 @@ public class Configuration
 	{
 		final Editor edit = prefs.edit();
 		edit.putString(PREFS_KEY_CACHED_EXCHANGE_CURRENCY, cachedExchangeRate.currencyCode);
-		edit.putLong(PREFS_KEY_CACHED_EXCHANGE_RATE, cachedExchangeRate.rate.longValue());
+		edit.putLong(PREFS_KEY_CACHED_EXCHANGE_RATE, cachedExchangeRate.rate);
 		edit.commit();
 	}
 
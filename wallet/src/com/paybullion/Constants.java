@@ -45,11 +45,18 @@ public class Constants
 
 	public static final File EXTERNAL_WALLET_BACKUP_DIR = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
 	public static final String EXTERNAL_WALLET_KEY_BACKUP = "paybullion-wallet-keys" + FILENAME_NETWORK_SUFFIX;
+	public static final String EXTERNAL_TRANSACTION_HISTORY = "paybullion-transactions" + FILENAME_NETWORK_SUFFIX;
 
 	public static final String BLOCKCHAIN_FILENAME = "blockchain" + FILENAME_NETWORK_SUFFIX;
 
 	public static final String CHECKPOINTS_FILENAME = "checkpoints" + FILENAME_NETWORK_SUFFIX;
 
+	public static final String EXCHANGE_RATES_FILENAME = "exchange-rates";
+
+	public static final String RATE_HISTORY_DIRNAME = "rate-history";
+
+	public static final String RATE_SOURCES_FILENAME = "rate-sources.properties";
+
     // PBC
 	private static final String EXPLORE_BASE_URL_PROD = "http://blockchain.paybullion.com/";
 	private static final String EXPLORE_BASE_URL_TEST = EXPLORE_BASE_URL_PROD;
@@ -112,6 +119,7 @@ public class Constants
 
 	public static final int SDK_JELLY_BEAN = 16;
 	public static final int SDK_JELLY_BEAN_MR2 = 18;
+	public static final int SDK_KITKAT = 19;
 
 	public static final int MEMORY_CLASS_LOWEND = 48;
 
@@ -19,6 +19,7 @@ package com.paybullion;
 
 import android.content.ContentProvider;
 import android.content.ContentValues;
+import android.database.AbstractCursor;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
@@ -27,36 +28,41 @@ import android.provider.BaseColumns;
 import android.text.format.DateUtils;
 
 import com.google.bitcoin.core.Utils;
+import com.paybullion.util.ConditionalGet;
+import com.paybullion.util.FixedPoint;
 import com.paybullion.util.GenericUtils;
-import com.paybullion.util.Io;
-
-import org.json.JSONObject;
-import org.ksoap2.SoapEnvelope;
-import org.ksoap2.serialization.SoapObject;
-import org.ksoap2.serialization.SoapPrimitive;
-import org.ksoap2.serialization.SoapSerializationEnvelope;
-import org.ksoap2.transport.HttpTransportSE;
+import com.paybullion.util.HedgedRequest;
+import com.paybullion.util.RateFetcher;
+import com.paybullion.util.RateHistory;
+import com.paybullion.util.RateSources;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.math.BigInteger;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.security.KeyStore;
 import java.security.cert.X509Certificate;
-import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Currency;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -71,73 +77,278 @@ import javax.net.ssl.X509TrustManager;
  */
 public class ExchangeRatesProvider extends ContentProvider {
     public static class ExchangeRate {
-        public ExchangeRate(@Nonnull final String currencyCode, @Nonnull final BigInteger rate, final String source) {
+        public ExchangeRate(@Nonnull final String currencyCode, final long rate, final String source) {
             this.currencyCode = currencyCode;
             this.rate = rate;
             this.source = source;
         }
 
         public final String currencyCode;
-        public BigInteger rate;
+        /** fixed point with 8 decimals, see {@link FixedPoint} */
+        public final long rate;
         public final String source;
 
         @Override
         public String toString() {
-            return getClass().getSimpleName() + '[' + currencyCode + ':' + GenericUtils.formatValue(rate, Constants.BTC_MAX_PRECISION, 0) + ']';
+            return getClass().getSimpleName() + '[' + currencyCode + ':' + GenericUtils.formatValue(BigInteger.valueOf(rate), Constants.BTC_MAX_PRECISION, 0) + ']';
+        }
+    }
+
+    private static final class Freshness {
+        public volatile long lastUpdated = 0;
+        public volatile long lastAttempt = 0;
+        public final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+        public boolean startRefresh(final long now, final long updateFreqMs) {
+            if (now - lastUpdated > updateFreqMs && now - lastAttempt > RETRY_FREQ_MS && refreshing.compareAndSet(false, true)) {
+                lastAttempt = now;
+                return true;
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * BTC rates as one ticker answered them.
+     */
+    private static final class BtcRates {
+        public final Map<String, Long> rates;
+        /** host of the ticker, or null if unknown */
+        @CheckForNull
+        public final String source;
+
+        public BtcRates(@Nonnull final Map<String, Long> rates, @CheckForNull final String source) {
+            this.rates = rates;
+            this.source = source;
+        }
+    }
+
+    /**
+     * Immutable state of the rates table, published once per refresh. Queries hand out views of it.
+     */
+    private static final class Snapshot {
+        public final Map<String, ExchangeRate> rates;
+        /** time the rates were fetched, or 0 if unknown */
+        public final long updated;
+
+        // one column per array, in the order of the rates map
+        private final long[] ids;
+        private final String[] currencyCodes;
+        private final long[] rateValues;
+        private final String[] sources;
+        private final Map<String, Integer> rows;
+
+        public Snapshot(@Nonnull final Map<String, ExchangeRate> rates, final long updated) {
+            this.rates = Collections.unmodifiableMap(new TreeMap<String, ExchangeRate>(rates));
+            this.updated = updated;
+
+            final int numRates = rates.size();
+            ids = new long[numRates];
+            currencyCodes = new String[numRates];
+            rateValues = new long[numRates];
+            sources = new String[numRates];
+            rows = new HashMap<String, Integer>(numRates * 2);
+
+            int row = 0;
+            for (final ExchangeRate rate : this.rates.values()) {
+                ids[row] = rate.currencyCode.hashCode();
+                currencyCodes[row] = rate.currencyCode;
+                rateValues[row] = rate.rate;
+                sources[row] = rate.source;
+                rows.put(rate.currencyCode, row);
+                row++;
+            }
+        }
+
+        /**
+         * @return row of the currency, or -1 if there is no rate for it
+         */
+        public int row(@CheckForNull final String currencyCode) {
+            final Integer row = currencyCode != null ? rows.get(currencyCode) : null;
+
+            return row != null ? row : -1;
+        }
+    }
+
+    /**
+     * Read-only view of a range of rows of a {@link Snapshot}.
+     */
+    private static final class SnapshotCursor extends AbstractCursor {
+        private final Snapshot snapshot;
+        private final int firstRow;
+        private final int count;
+        private final long age;
+
+        public SnapshotCursor(@Nonnull final Snapshot snapshot, final int firstRow, final int count, final long age) {
+            this.snapshot = snapshot;
+            this.firstRow = firstRow;
+            this.count = count;
+            this.age = age;
+        }
+
+        @Override
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return COLUMNS;
+        }
+
+        @Override
+        public String getString(final int column) {
+            final int row = firstRow + getPosition();
+
+            switch (column) {
+                case 0:
+                    return Long.toString(snapshot.ids[row]);
+                case 1:
+                    return snapshot.currencyCodes[row];
+                case 2:
+                    return Long.toString(snapshot.rateValues[row]);
+                case 3:
+                    return snapshot.sources[row];
+                case 4:
+                    return Long.toString(age);
+                default:
+                    throw new IllegalArgumentException("column: " + column);
+            }
+        }
+
+        @Override
+        public long getLong(final int column) {
+            final int row = firstRow + getPosition();
+
+            switch (column) {
+                case 0:
+                    return snapshot.ids[row];
+                case 2:
+                    return snapshot.rateValues[row];
+                case 4:
+                    return age;
+                default:
+                    throw new IllegalArgumentException("column: " + column);
+            }
+        }
+
+        @Override
+        public short getShort(final int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(final int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public float getFloat(final int column) {
+            return getLong(column);
+        }
+
+        @Override
+        public double getDouble(final int column) {
+            return getLong(column);
+        }
+
+        @Override
+        public boolean isNull(final int column) {
+            return column == 3 && snapshot.sources[firstRow + getPosition()] == null;
         }
     }
 
     public static final String KEY_CURRENCY_CODE = "currency_code";
     private static final String KEY_RATE = "rate";
     private static final String KEY_SOURCE = "source";
+    /** milliseconds since the rates were fetched, or -1 if unknown */
+    public static final String KEY_AGE = "age";
+    private static final String[] COLUMNS = new String[]{BaseColumns._ID, KEY_CURRENCY_CODE, KEY_RATE, KEY_SOURCE, KEY_AGE};
 
     private Configuration config;
+    private File ratesFile;
 
+    // rates as served, the BTC rates adjusted by the gold parity
     @CheckForNull
-    private Map<String, ExchangeRate> exchangeRates = null;
-    private long lastUpdated = 0;
-
-    private static final URL BITCOINAVERAGE_URL;
-    private static final String[] BITCOINAVERAGE_FIELDS = new String[]{"24h_avg", "last"};
-    private static final URL BITCOINCHARTS_URL;
-    private static final String[] BITCOINCHARTS_FIELDS = new String[]{"24h", "7d", "30d"};
-    private static final URL BLOCKCHAININFO_URL;
-    private static final String[] BLOCKCHAININFO_FIELDS = new String[]{"15m"};
+    private volatile Snapshot snapshot = null;
+
+    // the two sides are fetched and cached independently, and combined whenever either of them changes
+    @CheckForNull
+    private volatile BtcRates btcRates = null;
+    private final Freshness btcFreshness = new Freshness();
+    /** USD price of gold, fixed point with 8 decimals */
+    private volatile long goldRate = 0;
+    private final Freshness goldFreshness = new Freshness();
+
+    private RateSources sources;
+    private RateFetcher fetcher;
     // PBC
     private static final String PMC_CURRENCY = "PBC";
-    private static final String GOLD_USER = "paybullion@grr.la";
-    private static final String GOLD_PASSWORD = "f7yhdye8fijckl";
-
-    static {
-        try {
-            BITCOINAVERAGE_URL = new URL("https://api.bitcoinaverage.com/ticker/global/all");
-            BITCOINCHARTS_URL = new URL("http://api.bitcoincharts.com/v1/weighted_prices.json");
-            BLOCKCHAININFO_URL = new URL("https://blockchain.info/ticker");
-        } catch (final MalformedURLException x) {
-            throw new RuntimeException(x); // cannot happen
-        }
-    }
 
+    private static final long BTC_UPDATE_FREQ_MS = 15 * DateUtils.MINUTE_IN_MILLIS;
     // PBC
     // Gold doesn't change its price as often as BTC
     // Query every 6h instead
-    private static final long UPDATE_FREQ_MS = 6 * 60 * DateUtils.MINUTE_IN_MILLIS;
+    private static final long GOLD_UPDATE_FREQ_MS = 6 * 60 * DateUtils.MINUTE_IN_MILLIS;
+    private static final long RETRY_FREQ_MS = DateUtils.MINUTE_IN_MILLIS;
+
+    private static final int RATES_FILE_VERSION = 2;
+
+    // start the next BTC source if the previous one hasn't answered by then
+    private static final long HEDGE_DELAY_MS = 3 * DateUtils.SECOND_IN_MILLIS;
+    // upper bound for one refresh of either side, all sources together
+    private static final long FETCH_DEADLINE_MS = 20 * DateUtils.SECOND_IN_MILLIS;
+
+    private static final String USER_AGENT = "PayBullion Android Wallet";
+
+    private static final ExecutorService fetchExecutor = Executors.newCachedThreadPool();
 
     private static final Logger log = LoggerFactory.getLogger(ExchangeRatesProvider.class);
 
     @Override
     public boolean onCreate() {
         this.config = new Configuration(PreferenceManager.getDefaultSharedPreferences(getContext()));
+        this.ratesFile = new File(getContext().getFilesDir(), Constants.EXCHANGE_RATES_FILENAME);
+        this.sources = readSources(new File(getContext().getFilesDir(), Constants.RATE_SOURCES_FILENAME));
+        this.fetcher = new RateFetcher(new ConditionalGet(new File(getContext().getCacheDir(), Constants.EXCHANGE_RATES_FILENAME)), USER_AGENT,
+                Constants.HTTP_TIMEOUT_MS);
+
+        try {
+            if (ratesFile.exists())
+                readRates();
+        } catch (final IOException x) {
+            log.info("problem reading " + ratesFile, x);
+        }
 
-        final ExchangeRate cachedExchangeRate = config.getCachedExchangeRate();
-        if (cachedExchangeRate != null) {
-            exchangeRates = new TreeMap<String, ExchangeRate>();
-            exchangeRates.put(cachedExchangeRate.currencyCode, cachedExchangeRate);
+        if (snapshot == null) {
+            final ExchangeRate cachedExchangeRate = config.getCachedExchangeRate();
+            if (cachedExchangeRate != null)
+                snapshot = new Snapshot(Collections.singletonMap(cachedExchangeRate.currencyCode, cachedExchangeRate), 0);
         }
 
         return true;
     }
 
+    private static RateSources readSources(@Nonnull final File file) {
+        if (!file.exists())
+            return RateSources.DEFAULT;
+
+        try {
+            final InputStream is = new FileInputStream(file);
+            try {
+                final RateSources sources = RateSources.fromProperties(is);
+                log.info("using exchange rate sources from {}: {}, gold from {}", file, sources.tickers, sources.goldServices);
+                return sources;
+            } finally {
+                is.close();
+            }
+        } catch (final IOException x) {
+            log.warn("problem reading " + file + ", using default exchange rate sources", x);
+            return RateSources.DEFAULT;
+        }
+    }
+
     public static Uri contentUri(@Nonnull final String packageName) {
         return Uri.parse("content://" + packageName + '.' + "exchange_rates");
     }
@@ -146,82 +357,238 @@ public class ExchangeRatesProvider extends ContentProvider {
     public Cursor query(final Uri uri, final String[] projection, final String selection, final String[] selectionArgs, final String sortOrder) {
         final long now = System.currentTimeMillis();
 
-        if (lastUpdated == 0 || now - lastUpdated > UPDATE_FREQ_MS) {
-            try {
-                // PBC
-                // First, we need the USD<->PBC(gold) parity
-                double doubleGoldRate = getGoldRate();
+        // serve what we have right away, refresh in the background and notify observers when done
+        if (btcFreshness.startRefresh(now, BTC_UPDATE_FREQ_MS)) {
+            refreshInBackground(btcFreshness, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws InterruptedException {
+                    return refreshBtcRates();
+                }
+            });
+        }
+        if (goldFreshness.startRefresh(now, GOLD_UPDATE_FREQ_MS)) {
+            refreshInBackground(goldFreshness, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws InterruptedException {
+                    return refreshGoldRate();
+                }
+            });
+        }
+
+        final Snapshot snapshot = this.snapshot;
+        final Cursor cursor;
+
+        if (snapshot == null) {
+            cursor = new MatrixCursor(COLUMNS, 0);
+        } else {
+            final long age = snapshot.updated > 0 ? now - snapshot.updated : -1;
+
+            if (selection == null) {
+                cursor = new SnapshotCursor(snapshot, 0, snapshot.rates.size(), age);
+            } else if (selection.equals(KEY_CURRENCY_CODE)) {
+                final int row = bestRow(snapshot, selectionArgs[0]);
+                cursor = new SnapshotCursor(snapshot, Math.max(row, 0), row >= 0 ? 1 : 0, age);
+            } else {
+                cursor = new MatrixCursor(COLUMNS, 0);
+            }
+        }
+
+        cursor.setNotificationUri(getContext().getContentResolver(), uri);
 
-                log.info("Gold Rate: " + doubleGoldRate);
+        return cursor;
+    }
+
+    private void refreshInBackground(@Nonnull final Freshness freshness, @Nonnull final Callable<Boolean> refresh) {
+        fetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (refresh.call() && combineRates()) {
+                        try {
+                            writeRates();
+                        } catch (final IOException x) {
+                            log.info("problem writing " + ratesFile, x);
+                        }
+
+                        recordHistory();
 
-                if (0 == doubleGoldRate) {
-                    return null;
+                        getContext().getContentResolver().notifyChange(contentUri(getContext().getPackageName()), null);
+                    }
+                } catch (final Exception x) {
+                    log.warn("problem refreshing exchange rates", x);
+                } finally {
+                    freshness.refreshing.set(false);
                 }
+            }
+        });
+    }
 
-                BigInteger goldRate = GenericUtils.toNanoCoins(String.valueOf(doubleGoldRate), 0);
+    private boolean refreshBtcRates() throws InterruptedException {
+        final long now = System.currentTimeMillis();
 
-                Map<String, ExchangeRate> newExchangeRates = null;
+        final List<Callable<BtcRates>> requests = new ArrayList<Callable<BtcRates>>();
+        for (final RateSources.Ticker ticker : sources.tickers)
+            requests.add(exchangeRatesRequest(ticker));
 
-                final String userAgent = "PayBullion Android Wallet";
+        final BtcRates newBtcRates = HedgedRequest.first(fetchExecutor, requests, HEDGE_DELAY_MS, now + FETCH_DEADLINE_MS);
 
-                if (newExchangeRates == null)
-                    newExchangeRates = requestExchangeRates(BITCOINAVERAGE_URL, userAgent, "", BITCOINAVERAGE_FIELDS);
-                if (newExchangeRates == null)
-                    newExchangeRates = requestExchangeRates(BITCOINCHARTS_URL, userAgent, "", BITCOINCHARTS_FIELDS);
-                if (newExchangeRates == null)
-                    newExchangeRates = requestExchangeRates(BLOCKCHAININFO_URL, userAgent, "", BLOCKCHAININFO_FIELDS);
+        if (newBtcRates == null)
+            return false;
 
-                if (newExchangeRates != null) {
-                    // PBC
-                    // Get BTC<->USD value
-                    ExchangeRate usdRate = newExchangeRates.get("USD");
+        this.btcRates = newBtcRates;
+        btcFreshness.lastUpdated = now;
 
-                    final BigInteger nano = new BigInteger("1000000000");
+        return true;
+    }
 
-                    BigInteger adjustRate = nano.multiply(goldRate).divide(usdRate.rate);
+    // PBC
+    // We need the USD<->PBC(gold) parity. If all sources fail, the last good parity stays in use.
+    private boolean refreshGoldRate() throws InterruptedException {
+        final long now = System.currentTimeMillis();
 
-                    // Adjust all prices
-                    for (String key : newExchangeRates.keySet()) {
-                        ExchangeRate rate = newExchangeRates.get(key);
-                        rate.rate = rate.rate.multiply(adjustRate).divide(nano);
-                        newExchangeRates.put(key, rate);
-                    }
+        final Long newGoldRate = HedgedRequest.first(fetchExecutor, goldRateSources(), HEDGE_DELAY_MS, now + FETCH_DEADLINE_MS);
+
+        log.info("Gold Rate: " + newGoldRate);
 
-                    exchangeRates = newExchangeRates;
-                    lastUpdated = now;
+        if (newGoldRate == null)
+            return false;
 
-                    final ExchangeRate exchangeRateToCache = bestExchangeRate(config.getExchangeCurrencyCode());
-                    if (exchangeRateToCache != null)
-                        config.setCachedExchangeRate(exchangeRateToCache);
+        this.goldRate = newGoldRate;
+        goldFreshness.lastUpdated = now;
+
+        return true;
+    }
+
+    /**
+     * Gold parity sources in order of preference, later ones are only asked if earlier ones fail or are slow.
+     */
+    private List<Callable<Long>> goldRateSources() {
+        final List<Callable<Long>> requests = new ArrayList<Callable<Long>>();
+
+        for (final RateSources.GoldService service : sources.goldServices) {
+            requests.add(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return fetcher.fetchGoldRate(service);
                 }
-            } catch (Exception e) {
-                return null;
-            }
+            });
         }
 
-        if (exchangeRates == null)
-            return null;
+        return requests;
+    }
+
+    /**
+     * @return true if there are rates to serve
+     */
+    private synchronized boolean combineRates() {
+        final BtcRates btcRates = this.btcRates;
+        if (btcRates == null)
+            return false;
+
+        // PBC
+        // Adjust all prices by the BTC<->USD and USD<->gold parities
+        final Map<String, Long> adjustedRates = RateFetcher.adjustToGold(btcRates.rates, goldRate);
+        if (adjustedRates == null)
+            return false;
+
+        final Map<String, ExchangeRate> newExchangeRates = new TreeMap<String, ExchangeRate>();
+        for (final Map.Entry<String, Long> entry : adjustedRates.entrySet())
+            newExchangeRates.put(entry.getKey(), new ExchangeRate(entry.getKey(), entry.getValue(), btcRates.source));
+
+        // a combined rate is as old as its older part
+        this.snapshot = new Snapshot(newExchangeRates, Math.min(btcFreshness.lastUpdated, goldFreshness.lastUpdated));
 
-        final MatrixCursor cursor = new MatrixCursor(new String[]{BaseColumns._ID, KEY_CURRENCY_CODE, KEY_RATE, KEY_SOURCE});
+        final ExchangeRate exchangeRateToCache = bestExchangeRate(newExchangeRates, config.getExchangeCurrencyCode());
+        if (exchangeRateToCache != null)
+            config.setCachedExchangeRate(exchangeRateToCache);
+
+        return true;
+    }
+
+    private void recordHistory() {
+        final Map<String, ExchangeRate> exchangeRates = this.snapshot.rates;
+        final RateHistory history = ((WalletApplication) getContext().getApplicationContext()).getRateHistory();
+        final long now = System.currentTimeMillis();
 
-        if (selection == null) {
-            for (final Map.Entry<String, ExchangeRate> entry : exchangeRates.entrySet()) {
-                final ExchangeRate rate = entry.getValue();
-                cursor.newRow().add(rate.currencyCode.hashCode()).add(rate.currencyCode).add(rate.rate.longValue()).add(rate.source);
+        try {
+            int numRecorded = 0;
+            for (final ExchangeRate rate : exchangeRates.values())
+                if (history.append(rate.currencyCode, now, rate.rate))
+                    numRecorded++;
+
+            log.info("recorded {} exchange rates to history", numRecorded);
+        } catch (final IOException x) {
+            log.info("problem recording exchange rate history", x);
+        }
+    }
+
+    private void readRates() throws IOException {
+        final DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(ratesFile)));
+
+        try {
+            if (is.readInt() != RATES_FILE_VERSION)
+                return;
+
+            final long btcLastUpdated = is.readLong();
+            final int numRates = is.readInt();
+            final Map<String, Long> btcRates = new TreeMap<String, Long>();
+            String source = null;
+
+            for (int i = 0; i < numRates; i++) {
+                final String currencyCode = is.readUTF();
+                final long rate = is.readLong();
+                if (is.readBoolean())
+                    source = is.readUTF(); // the same for all rates, they come from one ticker
+                btcRates.put(currencyCode, rate);
             }
-        } else if (selection.equals(KEY_CURRENCY_CODE)) {
-            final ExchangeRate rate = bestExchangeRate(selectionArgs[0]);
 
-            try {
-                cursor.newRow().add(rate.currencyCode.hashCode()).add(rate.currencyCode).add(rate.rate.longValue()).add(rate.source);
-            } catch (Exception e) {
+            final long goldLastUpdated = is.readLong();
+            final long goldRate = is.readLong();
+
+            this.btcRates = new BtcRates(btcRates, source);
+            btcFreshness.lastUpdated = btcLastUpdated;
+            this.goldRate = goldRate;
+            goldFreshness.lastUpdated = goldLastUpdated;
+
+            log.info("read {} exchange rates, fetched at {}, gold parity fetched at {}", numRates, btcLastUpdated, goldLastUpdated);
+        } finally {
+            is.close();
+        }
+
+        combineRates();
+    }
+
+    private synchronized void writeRates() throws IOException {
+        final BtcRates btcRates = this.btcRates;
+        final File tmpFile = new File(ratesFile.getPath() + ".tmp");
+        final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+
+        try {
+            os.writeInt(RATES_FILE_VERSION);
+            os.writeLong(btcFreshness.lastUpdated);
+            os.writeInt(btcRates.rates.size());
+
+            for (final Map.Entry<String, Long> entry : btcRates.rates.entrySet()) {
+                os.writeUTF(entry.getKey());
+                os.writeLong(entry.getValue());
+                os.writeBoolean(btcRates.source != null);
+                if (btcRates.source != null)
+                    os.writeUTF(btcRates.source);
             }
+
+            os.writeLong(goldFreshness.lastUpdated);
+            os.writeLong(goldRate);
+        } finally {
+            os.close();
         }
 
-        return cursor;
+        // replace atomically, so a crash never leaves a half written table
+        if (!tmpFile.renameTo(ratesFile))
+            throw new IOException("cannot rename " + tmpFile + " to " + ratesFile);
     }
 
-    private ExchangeRate bestExchangeRate(final String currencyCode) {
+    @CheckForNull
+    private ExchangeRate bestExchangeRate(@Nonnull final Map<String, ExchangeRate> exchangeRates, final String currencyCode) {
         ExchangeRate rate = currencyCode != null ? exchangeRates.get(currencyCode) : null;
         if (rate != null)
             return rate;
@@ -235,6 +602,18 @@ public class ExchangeRatesProvider extends ContentProvider {
         return exchangeRates.get(Constants.DEFAULT_EXCHANGE_CURRENCY);
     }
 
+    private int bestRow(@Nonnull final Snapshot snapshot, final String currencyCode) {
+        int row = snapshot.row(currencyCode);
+        if (row >= 0)
+            return row;
+
+        row = snapshot.row(defaultCurrencyCode());
+        if (row >= 0)
+            return row;
+
+        return snapshot.row(Constants.DEFAULT_EXCHANGE_CURRENCY);
+    }
+
     private String defaultCurrencyCode() {
         try {
             return Currency.getInstance(Locale.getDefault()).getCurrencyCode();
@@ -243,9 +622,16 @@ public class ExchangeRatesProvider extends ContentProvider {
         }
     }
 
+    /**
+     * @return milliseconds since the rate under the cursor was fetched, or -1 if unknown
+     */
+    public static long getAge(@Nonnull final Cursor cursor) {
+        return cursor.getLong(cursor.getColumnIndexOrThrow(ExchangeRatesProvider.KEY_AGE));
+    }
+
     public static ExchangeRate getExchangeRate(@Nonnull final Cursor cursor) {
         final String currencyCode = cursor.getString(cursor.getColumnIndexOrThrow(ExchangeRatesProvider.KEY_CURRENCY_CODE));
-        final BigInteger rate = BigInteger.valueOf(cursor.getLong(cursor.getColumnIndexOrThrow(ExchangeRatesProvider.KEY_RATE)));
+        final long rate = cursor.getLong(cursor.getColumnIndexOrThrow(ExchangeRatesProvider.KEY_RATE));
         final String source = cursor.getString(cursor.getColumnIndexOrThrow(ExchangeRatesProvider.KEY_SOURCE));
 
         return new ExchangeRate(currencyCode, rate, source);
@@ -271,111 +657,15 @@ public class ExchangeRatesProvider extends ContentProvider {
         throw new UnsupportedOperationException();
     }
 
-    // PBC
-    private double getGoldRate() {
-        SoapObject request = new SoapObject("http://freewebservicesx.com/", "GetCurrentGoldPrice");
-
-        request.addProperty("UserName", GOLD_USER);
-        request.addProperty("Password", GOLD_PASSWORD);
-
-        SoapSerializationEnvelope envelope = new SoapSerializationEnvelope(SoapEnvelope.VER11);
-        envelope.dotNet = true;
-        envelope.setOutputSoapObject(request);
-        HttpTransportSE httpTransport = new HttpTransportSE("http://www.freewebservicesx.com/GetGoldPrice.asmx");
-
-        try {
-            httpTransport.call("http://freewebservicesx.com/GetCurrentGoldPrice", envelope);
-
-            SoapObject response = (SoapObject) envelope.getResponse();
-            String goldRateString = ((SoapPrimitive) response.getProperty(0)).getValue().toString();
-
-            NumberFormat format = NumberFormat.getInstance(Locale.US);
-            Number goldRate = format.parse(goldRateString);
-            return goldRate.doubleValue();
-        } catch (Exception exception) {
-            exception.printStackTrace();
-        }
-
-        return 0;
-    }
-
-    private static Map<String, ExchangeRate> requestExchangeRates(final URL url, final String userAgent, final String source, final String... fields) {
-        final long start = System.currentTimeMillis();
+    private Callable<BtcRates> exchangeRatesRequest(@Nonnull final RateSources.Ticker ticker) {
+        return new Callable<BtcRates>() {
+            @Override
+            public BtcRates call() {
+                final Map<String, Long> rates = fetcher.fetchTicker(ticker);
 
-        HttpURLConnection connection = null;
-        Reader reader = null;
-
-        try {
-            connection = (HttpURLConnection) url.openConnection();
-
-            connection.setInstanceFollowRedirects(false);
-            connection.setConnectTimeout(Constants.HTTP_TIMEOUT_MS);
-            connection.setReadTimeout(Constants.HTTP_TIMEOUT_MS);
-            connection.addRequestProperty("User-Agent", userAgent);
-            connection.addRequestProperty("Accept-Encoding", "gzip");
-            connection.connect();
-
-            final int responseCode = connection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                final String contentEncoding = connection.getContentEncoding();
-
-                InputStream is = new BufferedInputStream(connection.getInputStream(), 1024);
-                if ("gzip".equalsIgnoreCase(contentEncoding))
-                    is = new GZIPInputStream(is);
-
-                reader = new InputStreamReader(is, Constants.UTF_8);
-                final StringBuilder content = new StringBuilder();
-                final long length = Io.copy(reader, content);
-
-                final Map<String, ExchangeRate> rates = new TreeMap<String, ExchangeRate>();
-
-                final JSONObject head = new JSONObject(content.toString());
-                for (final Iterator<String> i = head.keys(); i.hasNext(); ) {
-                    final String currencyCode = i.next();
-                    if (!"timestamp".equals(currencyCode)) {
-                        final JSONObject o = head.getJSONObject(currencyCode);
-
-                        for (final String field : fields) {
-                            final String rateStr = o.optString(field, null);
-
-                            if (rateStr != null) {
-                                try {
-                                    final BigInteger rate = GenericUtils.toNanoCoins(rateStr, 0);
-
-                                    if (rate.signum() > 0) {
-                                        rates.put(currencyCode, new ExchangeRate(currencyCode, rate, source));
-                                        break;
-                                    }
-                                } catch (final ArithmeticException x) {
-                                    log.warn("problem fetching {} exchange rate from {} ({}): {}", currencyCode, url, contentEncoding, x.getMessage());
-                                }
-                            }
-                        }
-                    }
-                }
-
-                log.info("fetched exchange rates from {} ({}), {} chars, took {} ms", url, contentEncoding, length, System.currentTimeMillis()
-                        - start);
-
-                return rates;
-            } else {
-                log.warn("http status {} when fetching {}", responseCode, url);
-            }
-        } catch (final Exception x) {
-            log.warn("problem fetching exchange rates from " + url, x);
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException x) {
-                    // swallow
-                }
+                // the gold adjustment needs USD, an answer without it is no answer
+                return rates != null && rates.containsKey("USD") ? new BtcRates(rates, ticker.url.getHost()) : null;
             }
-
-            if (connection != null)
-                connection.disconnect();
-        }
-
-        return null;
+        };
     }
 }
@@ -27,9 +27,13 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
@@ -47,6 +51,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager.NameNotFoundException;
+import android.database.ContentObserver;
+import android.database.Cursor;
 import android.os.StrictMode;
 import android.preference.PreferenceManager;
 import android.text.format.DateUtils;
@@ -59,10 +65,13 @@ import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.rolling.RollingFileAppender;
 import ch.qos.logback.core.rolling.TimeBasedRollingPolicy;
 
+import com.google.bitcoin.core.AbstractWalletEventListener;
 import com.google.bitcoin.core.Address;
 import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.ScriptException;
 import com.google.bitcoin.core.Transaction;
 import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.core.WalletEventListener;
 import com.google.bitcoin.store.UnreadableWalletException;
 import com.google.bitcoin.store.WalletProtobufSerializer;
 import com.google.bitcoin.utils.Threading;
@@ -70,9 +79,12 @@ import com.google.bitcoin.wallet.WalletFiles;
 
 import com.paybullion.service.BlockchainService;
 import com.paybullion.service.BlockchainServiceImpl;
+import com.paybullion.util.BackupFiles;
 import com.paybullion.util.CrashReporter;
 import com.paybullion.util.Io;
 import com.paybullion.util.LinuxSecureRandom;
+import com.paybullion.util.RateHistory;
+import com.paybullion.util.TransactionSearchIndex;
 import com.paybullion.util.WalletUtils;
 
 /**
@@ -90,9 +102,15 @@ public class WalletApplication extends Application
 	private File walletFile;
 	private Wallet wallet;
 	private PackageInfo packageInfo;
+	private TransactionSearchIndex<Transaction> transactionSearchIndex;
+	private RateHistory rateHistory;
+	private BackupFiles backupFiles;
 
 	private static final int KEY_ROTATION_VERSION_CODE = 135;
 
+	// one sample per currency and hour is plenty for valuing past transactions
+	private static final long RATE_HISTORY_INTERVAL_MS = DateUtils.HOUR_IN_MILLIS;
+
 	private static final Logger log = LoggerFactory.getLogger(WalletApplication.class);
 
 	@Override
@@ -232,6 +250,125 @@ public class WalletApplication extends Application
 		return wallet;
 	}
 
+	public synchronized RateHistory getRateHistory()
+	{
+		if (rateHistory == null)
+			rateHistory = new RateHistory(new File(getFilesDir(), Constants.RATE_HISTORY_DIRNAME), RATE_HISTORY_INTERVAL_MS);
+
+		return rateHistory;
+	}
+
+	public synchronized BackupFiles getBackupFiles()
+	{
+		if (backupFiles == null)
+			backupFiles = new BackupFiles(Constants.NETWORK_PARAMETERS);
+
+		return backupFiles;
+	}
+
+	/**
+	 * Lazily builds the search index from the wallet. From then on it is kept up to date by wallet and address book events.
+	 */
+	public synchronized TransactionSearchIndex<Transaction> getTransactionSearchIndex()
+	{
+		if (transactionSearchIndex == null)
+		{
+			final long start = System.currentTimeMillis();
+
+			transactionSearchIndex = new TransactionSearchIndex<Transaction>();
+			indexAllTransactions();
+			indexLabels();
+
+			wallet.addEventListener(searchIndexWalletListener, Threading.SAME_THREAD);
+			getContentResolver().registerContentObserver(AddressBookProvider.contentUri(getPackageName()), true, searchIndexAddressBookObserver);
+
+			log.info("indexed {} transactions, took {} ms", transactionSearchIndex.size(), System.currentTimeMillis() - start);
+		}
+
+		return transactionSearchIndex;
+	}
+
+	private void indexAllTransactions()
+	{
+		// hold the index lock, so searches never see a half built index
+		synchronized (transactionSearchIndex)
+		{
+			transactionSearchIndex.clear();
+
+			for (final Transaction tx : wallet.getTransactions(true))
+				indexTransaction(tx);
+		}
+	}
+
+	private void indexTransaction(@Nonnull final Transaction tx)
+	{
+		try
+		{
+			final BigInteger value = tx.getValue(wallet);
+			final boolean sent = value.signum() < 0;
+			final Address address = sent ? WalletUtils.getFirstToAddress(tx) : WalletUtils.getFirstFromAddress(tx);
+			final Date time = tx.getUpdateTime();
+
+			// transactions don't carry a memo in this version of bitcoinj
+			transactionSearchIndex.put(tx, time != null ? time.getTime() : 0, value.longValue(), address != null ? address.toString() : null, null);
+		}
+		catch (final ScriptException x)
+		{
+			log.info("cannot index " + tx.getHashAsString(), x);
+		}
+	}
+
+	private void indexLabels()
+	{
+		final Map<String, String> labels = new HashMap<String, String>();
+
+		final Cursor cursor = getContentResolver().query(AddressBookProvider.contentUri(getPackageName()),
+				new String[] { AddressBookProvider.KEY_ADDRESS, AddressBookProvider.KEY_LABEL }, null, null, null);
+
+		if (cursor != null)
+		{
+			final int addressColumn = cursor.getColumnIndexOrThrow(AddressBookProvider.KEY_ADDRESS);
+			final int labelColumn = cursor.getColumnIndexOrThrow(AddressBookProvider.KEY_LABEL);
+
+			while (cursor.moveToNext())
+				labels.put(cursor.getString(addressColumn), cursor.getString(labelColumn));
+
+			cursor.close();
+		}
+
+		transactionSearchIndex.setLabels(labels);
+	}
+
+	private final WalletEventListener searchIndexWalletListener = new AbstractWalletEventListener()
+	{
+		@Override
+		public void onCoinsReceived(final Wallet wallet, final Transaction tx, final BigInteger prevBalance, final BigInteger newBalance)
+		{
+			indexTransaction(tx);
+		}
+
+		@Override
+		public void onCoinsSent(final Wallet wallet, final Transaction tx, final BigInteger prevBalance, final BigInteger newBalance)
+		{
+			indexTransaction(tx);
+		}
+
+		@Override
+		public void onReorganize(final Wallet wallet)
+		{
+			indexAllTransactions();
+		}
+	};
+
+	private final ContentObserver searchIndexAddressBookObserver = new ContentObserver(null)
+	{
+		@Override
+		public void onChange(final boolean selfChange)
+		{
+			indexLabels();
+		}
+	};
+
 	private void migrateWalletToProtobuf()
 	{
 		final File oldWalletFile = getFileStreamPath(Constants.WALLET_FILENAME);
@@ -359,8 +496,7 @@ public class WalletApplication extends Application
 		in.close();
 
 		final Wallet wallet = new Wallet(Constants.NETWORK_PARAMETERS);
-		for (final ECKey key : keys)
-			wallet.addKey(key);
+		wallet.addKeys(keys);
 
 		return wallet;
 	}
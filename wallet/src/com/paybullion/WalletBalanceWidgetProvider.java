@@ -60,7 +60,9 @@ public class WalletBalanceWidgetProvider extends AppWidgetProvider
 			@Nonnull final BigInteger balance)
 	{
 		final Configuration config = new Configuration(PreferenceManager.getDefaultSharedPreferences(context));
-		final Editable balanceStr = new SpannableStringBuilder(GenericUtils.formatValue(balance, config.getBtcPrecision(), config.getBtcShift()));
+		final StringBuilder balanceBuilder = new StringBuilder(GenericUtils.MAX_FORMATTED_LENGTH + 1);
+		GenericUtils.formatValue(balanceBuilder, balance.longValue(), "", "-", config.getBtcPrecision(), config.getBtcShift());
+		final Editable balanceStr = new SpannableStringBuilder(balanceBuilder);
 		WalletUtils.formatSignificant(balanceStr, WalletUtils.SMALLER_SPAN);
 
 		for (final int appWidgetId : appWidgetIds)
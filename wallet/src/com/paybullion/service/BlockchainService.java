@@ -52,4 +52,15 @@ public interface BlockchainService
 	List<Peer> getConnectedPeers();
 
 	List<StoredBlock> getRecentBlocks(int maxBlocks);
+
+	/**
+	 * Pages backward through the local block store.
+	 * 
+	 * @param fromHeight
+	 *            height of the first (newest) block to return, clamped to the chain head
+	 * @param maxBlocks
+	 *            maximum number of blocks to return
+	 * @return blocks in descending order of height, fewer than requested if the start of the store is reached
+	 */
+	List<StoredBlock> getBlocks(int fromHeight, int maxBlocks);
 }
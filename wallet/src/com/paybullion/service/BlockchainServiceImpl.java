@@ -110,6 +110,8 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 	private BlockChain blockChain;
 	@CheckForNull
 	private PeerGroup peerGroup;
+	@CheckForNull
+	private volatile BlockCursor blockCursor;
 
 	private final Handler handler = new Handler();
 	private final Handler delayHandler = new Handler();
@@ -136,6 +138,20 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 
 	private static final Logger log = LoggerFactory.getLogger(BlockchainServiceImpl.class);
 
+	private static final class BlockCursor
+	{
+		/** last block of the previous page */
+		public final StoredBlock block;
+		/** chain head the page was read from */
+		public final StoredBlock chainHead;
+
+		public BlockCursor(@Nonnull final StoredBlock block, @Nonnull final StoredBlock chainHead)
+		{
+			this.block = block;
+			this.chainHead = chainHead;
+		}
+	}
+
 	private final WalletEventListener walletEventListener = new ThrottlingWalletChangeListener(APPWIDGET_THROTTLE_MS)
 	{
 		@Override
@@ -790,12 +806,31 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 
 	@Override
 	public List<StoredBlock> getRecentBlocks(final int maxBlocks)
+	{
+		return getBlocks(Integer.MAX_VALUE, maxBlocks);
+	}
+
+	@Override
+	public List<StoredBlock> getBlocks(final int fromHeight, final int maxBlocks)
 	{
 		final List<StoredBlock> blocks = new ArrayList<StoredBlock>(maxBlocks);
 
+		if (maxBlocks <= 0)
+			return blocks;
+
 		try
 		{
-			StoredBlock block = blockChain.getChainHead();
+			final StoredBlock chainHead = blockChain.getChainHead();
+
+			// continue from where the last page ended rather than walking down from the chain head again, unless a
+			// reorganization has moved the cursor off the best chain since
+			final BlockCursor cursor = blockCursor;
+			StoredBlock block = chainHead;
+			if (cursor != null && cursor.block.getHeight() > fromHeight && isAncestor(cursor.chainHead, chainHead))
+				block = cursor.block;
+
+			while (block != null && block.getHeight() > fromHeight)
+				block = block.getPrev(blockStore);
 
 			while (block != null)
 			{
@@ -806,6 +841,10 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 
 				block = block.getPrev(blockStore);
 			}
+
+			// only pages below the tip are worth remembering, tip reads are cheap anyway
+			if (!blocks.isEmpty() && fromHeight < chainHead.getHeight())
+				blockCursor = new BlockCursor(blocks.get(blocks.size() - 1), chainHead);
 		}
 		catch (final BlockStoreException x)
 		{
@@ -815,6 +854,16 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		return blocks;
 	}
 
+	private boolean isAncestor(@Nonnull final StoredBlock ancestor, @Nonnull final StoredBlock descendant) throws BlockStoreException
+	{
+		// usually only a few blocks, the ones that arrived since the ancestor was the chain head
+		StoredBlock block = descendant;
+		while (block != null && block.getHeight() > ancestor.getHeight())
+			block = block.getPrev(blockStore);
+
+		return block != null && block.getHeader().getHash().equals(ancestor.getHeader().getHash());
+	}
+
 	private void sendBroadcastPeerState(final int numPeers)
 	{
 		final Intent broadcast = new Intent(ACTION_PEER_STATE);
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.ui;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import android.app.Dialog;
+import android.app.ProgressDialog;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.support.v4.app.DialogFragment;
+
+/**
+ * Runs a task on its own background thread while showing a progress dialog that can't be cancelled. The fragment is
+ * retained, so the task outlives configuration changes. Its result is delivered to whichever activity instance is
+ * resumed at the time, or held back until one is.
+ *
+ * @author Andreas Schildbach
+ */
+public abstract class AbstractTaskDialogFragment extends DialogFragment
+{
+	private static final String KEY_MESSAGE = "message";
+
+	private HandlerThread backgroundThread;
+	private boolean lost = false;
+	private int progress = 0;
+	private int max = 100;
+	@CheckForNull
+	private Runnable pendingResult = null;
+
+	protected static Bundle args(final int messageResId)
+	{
+		final Bundle args = new Bundle();
+		args.putInt(KEY_MESSAGE, messageResId);
+		return args;
+	}
+
+	@Override
+	public void onCreate(final Bundle savedInstanceState)
+	{
+		super.onCreate(savedInstanceState);
+
+		setRetainInstance(true);
+		setCancelable(false);
+
+		if (savedInstanceState == null)
+		{
+			backgroundThread = new HandlerThread("backgroundThread", Process.THREAD_PRIORITY_BACKGROUND);
+			backgroundThread.start();
+
+			startTask(new Handler(backgroundThread.getLooper()));
+		}
+		else
+		{
+			// recreated after the process was killed, the task is gone
+			lost = true;
+		}
+	}
+
+	@Override
+	public Dialog onCreateDialog(final Bundle savedInstanceState)
+	{
+		final ProgressDialog dialog = new ProgressDialog(getActivity());
+		dialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+		dialog.setMessage(getString(getArguments().getInt(KEY_MESSAGE)));
+		dialog.setMax(max);
+		dialog.setProgress(progress);
+		return dialog;
+	}
+
+	@Override
+	public void onResume()
+	{
+		super.onResume();
+
+		if (lost)
+		{
+			dismiss();
+		}
+		else if (pendingResult != null)
+		{
+			final Runnable result = pendingResult;
+			pendingResult = null;
+			deliverResult(result);
+		}
+	}
+
+	@Override
+	public void onDestroyView()
+	{
+		// otherwise the retained dialog is dismissed on configuration changes
+		if (getDialog() != null && getRetainInstance())
+			getDialog().setDismissMessage(null);
+
+		super.onDestroyView();
+	}
+
+	@Override
+	public void onDestroy()
+	{
+		if (backgroundThread != null)
+			backgroundThread.getLooper().quit();
+
+		super.onDestroy();
+	}
+
+	/**
+	 * Called once from {@link #onCreate(Bundle)}, with a handler on a thread that belongs to this fragment.
+	 */
+	protected abstract void startTask(@Nonnull Handler backgroundHandler);
+
+	protected final void setProgress(final int progress, final int max)
+	{
+		this.progress = progress;
+		this.max = max;
+
+		final ProgressDialog dialog = (ProgressDialog) getDialog();
+		if (dialog != null)
+		{
+			dialog.setMax(max);
+			dialog.setProgress(progress);
+		}
+	}
+
+	/**
+	 * Dismisses the progress dialog and runs the result on the main thread, as soon as an activity is resumed.
+	 */
+	protected final void setResult(@Nonnull final Runnable result)
+	{
+		if (isResumed())
+			deliverResult(result);
+		else
+			pendingResult = result;
+	}
+
+	private void deliverResult(@Nonnull final Runnable result)
+	{
+		dismiss();
+		result.run();
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.ui;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import android.content.Context;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.paybullion.Constants;
+import com.paybullion.util.BackupFiles;
+
+/**
+ * Lists the key backups in external storage and app-private storage, sorted by name, and lists them again whenever
+ * something changes in the external backup directory.
+ *
+ * @author Andreas Schildbach
+ */
+public final class BackupFilesLoader extends AsyncTaskLoader<List<File>>
+{
+	private final BackupFiles backupFiles;
+	private final Handler handler = new Handler();
+	private FileObserver fileObserver = null;
+
+	private static final int FILE_OBSERVER_EVENTS = FileObserver.CLOSE_WRITE | FileObserver.CREATE | FileObserver.DELETE
+			| FileObserver.MOVED_FROM | FileObserver.MOVED_TO;
+
+	public BackupFilesLoader(final Context context, @Nonnull final BackupFiles backupFiles)
+	{
+		super(context);
+
+		this.backupFiles = backupFiles;
+	}
+
+	@Override
+	protected void onStartLoading()
+	{
+		super.onStartLoading();
+
+		if (fileObserver == null)
+		{
+			fileObserver = new FileObserver(Constants.EXTERNAL_WALLET_BACKUP_DIR.getPath(), FILE_OBSERVER_EVENTS)
+			{
+				@Override
+				public void onEvent(final int event, final String path)
+				{
+					// called on the observer thread, often several times in a row
+					handler.removeCallbacks(contentChangedRunnable);
+					handler.post(contentChangedRunnable);
+				}
+			};
+			fileObserver.startWatching();
+		}
+
+		forceLoad();
+	}
+
+	@Override
+	protected void onStopLoading()
+	{
+		if (fileObserver != null)
+		{
+			fileObserver.stopWatching();
+			fileObserver = null;
+		}
+		handler.removeCallbacks(contentChangedRunnable);
+
+		super.onStopLoading();
+	}
+
+	@Override
+	protected void onReset()
+	{
+		onStopLoading();
+
+		super.onReset();
+	}
+
+	@Override
+	public List<File> loadInBackground()
+	{
+		// external storage
+		final List<File> files = backupFiles.scan(Constants.EXTERNAL_WALLET_BACKUP_DIR);
+
+		// internal storage
+		final Context context = getContext();
+		for (final String filename : context.fileList())
+		{
+			if (filename.startsWith(Constants.WALLET_KEY_BACKUP_BASE58 + '.'))
+			{
+				final File file = new File(context.getFilesDir(), filename);
+				backupFiles.classify(file); // for the row to show
+				files.add(file);
+			}
+		}
+
+		// sort
+		Collections.sort(files, new Comparator<File>()
+		{
+			@Override
+			public int compare(final File lhs, final File rhs)
+			{
+				return lhs.getName().compareToIgnoreCase(rhs.getName());
+			}
+		});
+
+		return files;
+	}
+
+	private final Runnable contentChangedRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			onContentChanged();
+		}
+	};
+}
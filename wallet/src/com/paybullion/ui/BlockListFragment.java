@@ -23,6 +23,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Nonnull;
 
@@ -43,6 +44,8 @@ import android.support.v4.content.Loader;
 import android.text.format.DateUtils;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.BaseAdapter;
 import android.widget.ListView;
 import android.widget.TextView;
@@ -63,6 +66,7 @@ import com.paybullion.Constants;
 import com.paybullion.WalletApplication;
 import com.paybullion.service.BlockchainService;
 import com.paybullion.service.BlockchainServiceImpl;
+import com.paybullion.util.RelativeTimeFormatter;
 import com.paybullion.util.WalletUtils;
 import com.paybullion.R;
 
@@ -80,12 +84,14 @@ public final class BlockListFragment extends SherlockListFragment
 	private BlockchainService service;
 
 	private BlockListAdapter adapter;
+	private RelativeTimeFormatter timeFormatter;
 	private Set<Transaction> transactions;
 
 	private static final int ID_BLOCK_LOADER = 0;
 	private static final int ID_TRANSACTION_LOADER = 1;
 
-	private static final int MAX_BLOCKS = 32;
+	private static final int PAGE_SIZE = 32;
+	private static final int PAGE_PRELOAD_ROWS = 8;
 
 	@Override
 	public void onAttach(final Activity activity)
@@ -112,10 +118,20 @@ public final class BlockListFragment extends SherlockListFragment
 	{
 		super.onCreate(savedInstanceState);
 
+		timeFormatter = new RelativeTimeFormatter(activity, RelativeTimeFormatter.Style.DATE_TIME);
+
 		adapter = new BlockListAdapter();
 		setListAdapter(adapter);
 	}
 
+	@Override
+	public void onViewCreated(final View view, final Bundle savedInstanceState)
+	{
+		super.onViewCreated(view, savedInstanceState);
+
+		getListView().setOnScrollListener(scrollListener);
+	}
+
 	@Override
 	public void onResume()
 	{
@@ -213,12 +229,47 @@ public final class BlockListFragment extends SherlockListFragment
 		}
 	};
 
+	private final OnScrollListener scrollListener = new OnScrollListener()
+	{
+		@Override
+		public void onScrollStateChanged(final AbsListView view, final int scrollState)
+		{
+		}
+
+		@Override
+		public void onScroll(final AbsListView view, final int firstVisibleItem, final int visibleItemCount, final int totalItemCount)
+		{
+			if (totalItemCount > 0 && firstVisibleItem + visibleItemCount >= totalItemCount - PAGE_PRELOAD_ROWS)
+			{
+				final Loader<List<StoredBlock>> blockLoader = loaderManager.getLoader(ID_BLOCK_LOADER);
+				if (blockLoader != null && blockLoader.isStarted())
+					((BlockLoader) blockLoader).loadNextPage(totalItemCount);
+			}
+		}
+	};
+
 	private final BroadcastReceiver tickReceiver = new BroadcastReceiver()
 	{
 		@Override
 		public void onReceive(final Context context, final Intent intent)
 		{
-			adapter.notifyDataSetChanged();
+			// only rebind times that actually changed, rather than the whole list
+			final ListView listView = getListView();
+			final int firstPosition = listView.getFirstVisiblePosition();
+
+			for (int i = 0; i < listView.getChildCount(); i++)
+			{
+				final int position = firstPosition + i;
+				if (position >= adapter.getCount())
+					break;
+
+				final long timeMs = adapter.getItem(position).getHeader().getTimeSeconds() * DateUtils.SECOND_IN_MILLIS;
+				if (timeFormatter.isStale(timeMs))
+				{
+					final TextView rowTime = (TextView) listView.getChildAt(i).findViewById(R.id.block_list_row_time);
+					rowTime.setText(timeFormatter.format(timeMs));
+				}
+			}
 		}
 	};
 
@@ -229,7 +280,7 @@ public final class BlockListFragment extends SherlockListFragment
 		private final TransactionsListAdapter transactionsAdapter = new TransactionsListAdapter(activity, wallet, application.maxConnectedPeers(),
 				false);
 
-		private final List<StoredBlock> blocks = new ArrayList<StoredBlock>(MAX_BLOCKS);
+		private final List<StoredBlock> blocks = new ArrayList<StoredBlock>(PAGE_SIZE);
 
 		public void clear()
 		{
@@ -246,6 +297,15 @@ public final class BlockListFragment extends SherlockListFragment
 			notifyDataSetChanged();
 		}
 
+		public int positionOf(final long id)
+		{
+			for (int i = 0; i < blocks.size(); i++)
+				if (getItemId(i) == id)
+					return i;
+
+			return -1;
+		}
+
 		@Override
 		public int getCount()
 		{
@@ -288,7 +348,7 @@ public final class BlockListFragment extends SherlockListFragment
 
 			final TextView rowTime = (TextView) row.findViewById(R.id.block_list_row_time);
 			final long timeMs = header.getTimeSeconds() * DateUtils.SECOND_IN_MILLIS;
-			rowTime.setText(DateUtils.getRelativeDateTimeString(activity, timeMs, DateUtils.MINUTE_IN_MILLIS, DateUtils.WEEK_IN_MILLIS, 0));
+			rowTime.setText(timeFormatter.format(timeMs));
 
 			final TextView rowHash = (TextView) row.findViewById(R.id.block_list_row_hash);
 			rowHash.setText(WalletUtils.formatHash(null, header.getHashAsString(), 8, 0, ' '));
@@ -338,6 +398,16 @@ public final class BlockListFragment extends SherlockListFragment
 		private Context context;
 		private BlockchainService service;
 
+		// descending by height, only touched from loadInBackground()
+		private final List<StoredBlock> blocks = new ArrayList<StoredBlock>(PAGE_SIZE);
+		private volatile boolean exhausted = false;
+
+		// only touched from the UI thread
+		private int numBlocksAtPageRequest = -1;
+
+		private volatile int bestChainHeight = -1;
+		private final AtomicBoolean nextPageRequested = new AtomicBoolean(false);
+
 		private BlockLoader(final Context context, final BlockchainService service)
 		{
 			super(context);
@@ -362,10 +432,73 @@ public final class BlockListFragment extends SherlockListFragment
 			super.onStopLoading();
 		}
 
+		/**
+		 * @param numBlocks
+		 *            number of blocks currently shown; a page is only requested once per list size, because delivering
+		 *            a page relayouts the list, which scrolls, which would ask for the next page again
+		 */
+		public void loadNextPage(final int numBlocks)
+		{
+			if (exhausted || numBlocks == numBlocksAtPageRequest)
+				return;
+
+			numBlocksAtPageRequest = numBlocks;
+			if (nextPageRequested.compareAndSet(false, true))
+				forceLoad();
+		}
+
 		@Override
 		public List<StoredBlock> loadInBackground()
 		{
-			return service.getRecentBlocks(MAX_BLOCKS);
+			synchronized (blocks)
+			{
+				if (blocks.isEmpty())
+					loadTip(service.getRecentBlocks(PAGE_SIZE));
+				else
+					prependNewBlocks(bestChainHeight);
+
+				if (nextPageRequested.get() && !exhausted)
+				{
+					final StoredBlock oldest = blocks.get(blocks.size() - 1);
+					final List<StoredBlock> page = service.getBlocks(oldest.getHeight() - 1, PAGE_SIZE);
+
+					blocks.addAll(page);
+					exhausted = page.size() < PAGE_SIZE;
+				}
+				nextPageRequested.set(false);
+
+				return new ArrayList<StoredBlock>(blocks);
+			}
+		}
+
+		private void prependNewBlocks(final int chainHeight)
+		{
+			final StoredBlock newest = blocks.get(0);
+			final int gap = chainHeight - newest.getHeight();
+
+			if (chainHeight < 0 || gap == 0)
+				return;
+
+			if (gap > 0 && gap < PAGE_SIZE)
+			{
+				// fetch one extra block so we can tell whether the new blocks connect to what we have
+				final List<StoredBlock> tip = service.getBlocks(chainHeight, gap + 1);
+				if (tip.size() == gap + 1 && tip.get(gap).getHeader().getHash().equals(newest.getHeader().getHash()))
+				{
+					blocks.addAll(0, tip.subList(0, gap));
+					return;
+				}
+			}
+
+			// too far behind or reorganized, start over from the tip
+			loadTip(service.getBlocks(chainHeight, PAGE_SIZE));
+		}
+
+		private void loadTip(final List<StoredBlock> tip)
+		{
+			blocks.clear();
+			blocks.addAll(tip);
+			exhausted = tip.size() < PAGE_SIZE;
 		}
 
 		private final BroadcastReceiver broadcastReceiver = new BroadcastReceiver()
@@ -373,7 +506,12 @@ public final class BlockListFragment extends SherlockListFragment
 			@Override
 			public void onReceive(final Context context, final Intent intent)
 			{
-				forceLoad();
+				final int chainHeight = intent.getIntExtra(BlockchainService.ACTION_BLOCKCHAIN_STATE_BEST_CHAIN_HEIGHT, -1);
+				if (chainHeight != bestChainHeight)
+				{
+					bestChainHeight = chainHeight;
+					forceLoad();
+				}
 			}
 		};
 	}
@@ -389,8 +527,21 @@ public final class BlockListFragment extends SherlockListFragment
 		@Override
 		public void onLoadFinished(final Loader<List<StoredBlock>> loader, final List<StoredBlock> blocks)
 		{
+			// keep the rows the user is looking at in place when new blocks arrive at the top
+			final ListView listView = getListView();
+			final int firstPosition = listView.getFirstVisiblePosition();
+			final View firstView = listView.getChildAt(0);
+			final long firstId = firstPosition > 0 && firstPosition < adapter.getCount() ? adapter.getItemId(firstPosition) : 0;
+
 			adapter.replace(blocks);
 
+			if (firstId != 0 && firstView != null)
+			{
+				final int newPosition = adapter.positionOf(firstId);
+				if (newPosition > firstPosition)
+					listView.setSelectionFromTop(newPosition, firstView.getTop());
+			}
+
 			final Loader<Set<Transaction>> transactionLoader = loaderManager.getLoader(ID_TRANSACTION_LOADER);
 			if (transactionLoader != null && transactionLoader.isStarted())
 				transactionLoader.forceLoad();
@@ -33,6 +33,7 @@ import android.os.Parcelable;
 import android.text.Editable;
 import android.text.InputType;
 import android.text.SpannableStringBuilder;
+import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
 import android.view.Gravity;
@@ -202,7 +203,7 @@ public final class CurrencyAmountView extends FrameLayout
 	public BigInteger getAmount()
 	{
 		if (isValidAmount(false))
-			return GenericUtils.toNanoCoins(textView.getText().toString().trim(), shift);
+			return BigInteger.valueOf(GenericUtils.parseNanoCoins(textView.getText(), shift));
 		else
 			return null;
 	}
@@ -272,20 +273,20 @@ public final class CurrencyAmountView extends FrameLayout
 
 	private boolean isValidAmount(final boolean zeroIsValid)
 	{
-		final String amount = textView.getText().toString().trim();
+		final CharSequence amount = textView.getText();
 
 		try
 		{
-			if (!amount.isEmpty())
+			if (TextUtils.getTrimmedLength(amount) > 0)
 			{
-				final BigInteger nanoCoins = GenericUtils.toNanoCoins(amount, shift);
+				final long nanoCoins = GenericUtils.parseNanoCoins(amount, shift);
 
 				// exactly zero
-				if (zeroIsValid && nanoCoins.signum() == 0)
+				if (zeroIsValid && nanoCoins == 0)
 					return true;
 
 				// too small
-				if (nanoCoins.compareTo(Transaction.MIN_NONDUST_OUTPUT) < 0)
+				if (nanoCoins < Transaction.MIN_NONDUST_OUTPUT.longValue())
 					return false;
 
 				return true;
@@ -125,7 +125,7 @@ public final class CurrencyCalculatorLink
 		else if (exchangeRate != null)
 		{
 			final BigInteger localAmount = localAmountView.getAmount();
-			return localAmount != null ? WalletUtils.btcValue(localAmount, exchangeRate.rate) : null;
+			return localAmount != null ? btcValueOrNull(localAmount.longValue()) : null;
 		}
 		else
 		{
@@ -148,7 +148,7 @@ public final class CurrencyCalculatorLink
 				if (btcAmount != null)
 				{
 					localAmountView.setAmount(null, false);
-					localAmountView.setHint(WalletUtils.localValue(btcAmount, exchangeRate.rate));
+					localAmountView.setHint(localValueOrNull(btcAmount.longValue()));
 					btcAmountView.setHint(null);
 				}
 			}
@@ -158,7 +158,7 @@ public final class CurrencyCalculatorLink
 				if (localAmount != null)
 				{
 					btcAmountView.setAmount(null, false);
-					btcAmountView.setHint(WalletUtils.btcValue(localAmount, exchangeRate.rate));
+					btcAmountView.setHint(btcValueOrNull(localAmount.longValue()));
 					localAmountView.setHint(null);
 				}
 			}
@@ -169,6 +169,35 @@ public final class CurrencyCalculatorLink
 		}
 	}
 
+	// amounts from CurrencyAmountView always fit into a long, only the results are wrapped for the view again
+	@CheckForNull
+	private BigInteger localValueOrNull(final long btcAmount)
+	{
+		try
+		{
+			return BigInteger.valueOf(WalletUtils.localValue(btcAmount, exchangeRate.rate));
+		}
+		catch (final ArithmeticException x)
+		{
+			// amount too large to convert
+			return null;
+		}
+	}
+
+	@CheckForNull
+	private BigInteger btcValueOrNull(final long localAmount)
+	{
+		try
+		{
+			return BigInteger.valueOf(WalletUtils.btcValue(localAmount, exchangeRate.rate));
+		}
+		catch (final ArithmeticException x)
+		{
+			// amount too large to convert
+			return null;
+		}
+	}
+
 	public void setExchangeDirection(final boolean exchangeDirection)
 	{
 		this.exchangeDirection = exchangeDirection;
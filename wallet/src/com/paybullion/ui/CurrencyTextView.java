@@ -42,12 +42,14 @@ public final class CurrencyTextView extends TextView
 {
 	private String prefix = null;
 	private ForegroundColorSpan prefixColorSpan = null;
-	private BigInteger amount = null;
+	private boolean hasAmount = false;
+	private long amount = 0;
 	private int precision = 0;
 	private int shift = 0;
 	private boolean alwaysSigned = false;
 	private RelativeSizeSpan prefixRelativeSizeSpan = null;
 	private RelativeSizeSpan insignificantRelativeSizeSpan = null;
+	private final StringBuilder formatBuilder = new StringBuilder(Constants.CURRENCY_MINUS_SIGN.length() + GenericUtils.MAX_FORMATTED_LENGTH);
 
 	public CurrencyTextView(final Context context)
 	{
@@ -73,6 +75,12 @@ public final class CurrencyTextView extends TextView
 
 	public void setAmount(@Nonnull final BigInteger amount)
 	{
+		setAmount(amount.longValue());
+	}
+
+	public void setAmount(final long amount)
+	{
+		this.hasAmount = true;
 		this.amount = amount;
 		updateView();
 	}
@@ -126,19 +134,19 @@ public final class CurrencyTextView extends TextView
 	{
 		final Editable text;
 
-		if (amount != null)
+		if (hasAmount)
 		{
-			final String s;
-            if(amount.doubleValue() == -1)
-            {
-                s = "";
-            }
-			else if (alwaysSigned)
-				s = GenericUtils.formatValue(amount, Constants.CURRENCY_PLUS_SIGN, Constants.CURRENCY_MINUS_SIGN, precision, shift);
-			else
-				s = GenericUtils.formatValue(amount, precision, shift);
-
-			text = new SpannableStringBuilder(s);
+			formatBuilder.setLength(0);
+			// -1 stands for an unknown amount
+			if (amount != -1)
+			{
+				if (alwaysSigned)
+					GenericUtils.formatValue(formatBuilder, amount, Constants.CURRENCY_PLUS_SIGN, Constants.CURRENCY_MINUS_SIGN, precision, shift);
+				else
+					GenericUtils.formatValue(formatBuilder, amount, "", "-", precision, shift);
+			}
+
+			text = new SpannableStringBuilder(formatBuilder);
 			WalletUtils.formatSignificant(text, insignificantRelativeSizeSpan);
 
 			if (prefix != null)
@@ -17,7 +17,7 @@
 
 package com.paybullion.ui;
 
-import java.math.BigInteger;
+import javax.annotation.Nonnull;
 
 import android.app.Activity;
 import android.content.BroadcastReceiver;
@@ -26,14 +26,18 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
-import android.database.Cursor;
 import android.os.Bundle;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
-import android.support.v4.widget.ResourceCursorAdapter;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.EditText;
 import android.widget.ListView;
 import android.widget.TextView;
 
@@ -43,11 +47,9 @@ import com.actionbarsherlock.view.Menu;
 import com.actionbarsherlock.view.MenuInflater;
 import com.actionbarsherlock.view.MenuItem;
 import com.google.bitcoin.core.Wallet;
-import com.google.bitcoin.core.Wallet.BalanceType;
 
 import com.paybullion.Configuration;
 import com.paybullion.Constants;
-import com.paybullion.ExchangeRatesProvider;
 import com.paybullion.ExchangeRatesProvider.ExchangeRate;
 import com.paybullion.WalletApplication;
 import com.paybullion.service.BlockchainService;
@@ -68,11 +70,9 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 
 	private ExchangeRatesAdapter adapter;
 
-	private BigInteger balance = null;
 	private boolean replaying = false;
 	private String defaultCurrency = null;
 
-	private static final int ID_BALANCE_LOADER = 0;
 	private static final int ID_RATE_LOADER = 1;
 
 	@Override
@@ -87,15 +87,53 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 		this.loaderManager = getLoaderManager();
 	}
 
+	@Override
+	public void onCreate(final Bundle savedInstanceState)
+	{
+		super.onCreate(savedInstanceState);
+
+		adapter = new ExchangeRatesAdapter(activity);
+	}
+
+	@Override
+	public View onCreateView(final LayoutInflater inflater, final ViewGroup container, final Bundle savedInstanceState)
+	{
+		// wrap the standard list layout, so empty text and progress keep working
+		final View listView = super.onCreateView(inflater, container, savedInstanceState);
+		final View view = inflater.inflate(R.layout.exchange_rates_fragment, container, false);
+		((ViewGroup) view.findViewById(R.id.exchange_rates_fragment_list)).addView(listView);
+
+		final EditText filterView = (EditText) view.findViewById(R.id.exchange_rates_fragment_filter);
+		filterView.addTextChangedListener(new TextWatcher()
+		{
+			@Override
+			public void afterTextChanged(final Editable s)
+			{
+				adapter.setFilter(s.toString());
+				updateEmptyText();
+			}
+
+			@Override
+			public void beforeTextChanged(final CharSequence s, final int start, final int count, final int after)
+			{
+			}
+
+			@Override
+			public void onTextChanged(final CharSequence s, final int start, final int before, final int count)
+			{
+			}
+		});
+
+		return view;
+	}
+
 	@Override
 	public void onActivityCreated(final Bundle savedInstanceState)
 	{
 		super.onActivityCreated(savedInstanceState);
 
-		setEmptyText(getString(R.string.exchange_rates_fragment_empty_text));
-
-		adapter = new ExchangeRatesAdapter(activity);
 		setListAdapter(adapter);
+		updateEmptyText();
 	}
 
 	@Override
@@ -105,7 +143,6 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 
 		activity.registerReceiver(broadcastReceiver, new IntentFilter(BlockchainService.ACTION_BLOCKCHAIN_STATE));
 
-		loaderManager.initLoader(ID_BALANCE_LOADER, null, balanceLoaderCallbacks);
 		loaderManager.initLoader(ID_RATE_LOADER, null, rateLoaderCallbacks);
 
 		defaultCurrency = config.getExchangeCurrencyCode();
@@ -120,7 +157,6 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 		config.unregisterOnSharedPreferenceChangeListener(this);
 
 		loaderManager.destroyLoader(ID_RATE_LOADER);
-		loaderManager.destroyLoader(ID_BALANCE_LOADER);
 
 		activity.unregisterReceiver(broadcastReceiver);
 
@@ -130,8 +166,8 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 	@Override
 	public void onListItemClick(final ListView l, final View v, final int position, final long id)
 	{
-		final Cursor cursor = (Cursor) adapter.getItem(position);
-		final ExchangeRate exchangeRate = ExchangeRatesProvider.getExchangeRate(cursor);
+		final ExchangeRate exchangeRate = adapter.getItem(position);
+		final long age = adapter.getAge();
 
 		activity.startActionMode(new ActionMode.Callback()
 		{
@@ -150,7 +186,13 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 				mode.setTitle(exchangeRate.currencyCode);
                 // PBC
 				//mode.setSubtitle(getString(R.string.exchange_rates_fragment_source, exchangeRate.source));
-                mode.setSubtitle("BTC".equals(exchangeRate.currencyCode) ? "Bitcoin" : "");
+                if ("BTC".equals(exchangeRate.currencyCode))
+                    mode.setSubtitle("Bitcoin");
+                else if (age >= 0)
+                    mode.setSubtitle(getString(R.string.exchange_rates_fragment_age,
+                            DateUtils.getRelativeTimeSpanString(System.currentTimeMillis() - age)));
+                else
+                    mode.setSubtitle(null);
 
 				return true;
 			}
@@ -195,16 +237,17 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 
 	private void updateView()
 	{
-		balance = application.getWallet().getBalance(BalanceType.ESTIMATED);
+		final int btcShift = config.getBtcShift();
 
-		if (adapter != null)
-		{
-			final int btcShift = config.getBtcShift();
+		final long base = (btcShift == 0 ? GenericUtils.ONE_BTC : GenericUtils.ONE_MBTC).longValue();
 
-			final BigInteger base = btcShift == 0 ? GenericUtils.ONE_BTC : GenericUtils.ONE_MBTC;
+		adapter.setRateBase(base);
+	}
 
-			adapter.setRateBase(base);
-		}
+	private void updateEmptyText()
+	{
+		setEmptyText(getString(adapter.isFiltered() ? R.string.exchange_rates_fragment_empty_text_filter
+				: R.string.exchange_rates_fragment_empty_text));
 	}
 
 	private final BlockchainBroadcastReceiver broadcastReceiver = new BlockchainBroadcastReceiver();
@@ -216,73 +259,122 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 		{
 			replaying = intent.getBooleanExtra(BlockchainService.ACTION_BLOCKCHAIN_STATE_REPLAYING, false);
 
-			updateView();
+			adapter.notifyDataSetChanged();
 		}
 	}
 
-	private final LoaderCallbacks<Cursor> rateLoaderCallbacks = new LoaderManager.LoaderCallbacks<Cursor>()
+	private final LoaderCallbacks<ExchangeRatesTableLoader.Table> rateLoaderCallbacks = new LoaderManager.LoaderCallbacks<ExchangeRatesTableLoader.Table>()
 	{
 		@Override
-		public Loader<Cursor> onCreateLoader(final int id, final Bundle args)
+		public Loader<ExchangeRatesTableLoader.Table> onCreateLoader(final int id, final Bundle args)
 		{
-			return new CursorLoader(activity, ExchangeRatesProvider.contentUri(activity.getPackageName()), null, null, null, null);
+			return new ExchangeRatesTableLoader(activity, wallet);
 		}
 
 		@Override
-		public void onLoadFinished(final Loader<Cursor> loader, final Cursor data)
+		public void onLoadFinished(final Loader<ExchangeRatesTableLoader.Table> loader, final ExchangeRatesTableLoader.Table table)
 		{
-			adapter.swapCursor(data);
+			adapter.setTable(table);
+			updateEmptyText();
 		}
 
 		@Override
-		public void onLoaderReset(final Loader<Cursor> loader)
+		public void onLoaderReset(final Loader<ExchangeRatesTableLoader.Table> loader)
 		{
-			adapter.swapCursor(null);
+			adapter.setTable(null);
 		}
 	};
 
-	private final LoaderCallbacks<BigInteger> balanceLoaderCallbacks = new LoaderManager.LoaderCallbacks<BigInteger>()
+	private final class ExchangeRatesAdapter extends BaseAdapter
 	{
-		@Override
-		public Loader<BigInteger> onCreateLoader(final int id, final Bundle args)
+		private final LayoutInflater inflater;
+
+		private ExchangeRatesTableLoader.Table table = null;
+		private String filter = null;
+		private int[] rows = new int[0];
+		private long rateBase = GenericUtils.ONE_BTC.longValue();
+
+		private ExchangeRatesAdapter(final Context context)
 		{
-			return new WalletBalanceLoader(activity, wallet);
+			inflater = LayoutInflater.from(context);
 		}
 
-		@Override
-		public void onLoadFinished(final Loader<BigInteger> loader, final BigInteger balance)
+		public void setTable(final ExchangeRatesTableLoader.Table table)
 		{
-			ExchangeRatesFragment.this.balance = balance;
+			this.table = table;
 
-			updateView();
+			updateRows();
 		}
 
-		@Override
-		public void onLoaderReset(final Loader<BigInteger> loader)
+		public void setFilter(final String filter)
 		{
-		}
-	};
+			this.filter = filter;
 
-	private final class ExchangeRatesAdapter extends ResourceCursorAdapter
-	{
-		private BigInteger rateBase = GenericUtils.ONE_BTC;
+			updateRows();
+		}
 
-		private ExchangeRatesAdapter(final Context context)
+		public boolean isFiltered()
 		{
-			super(context, R.layout.exchange_rate_row, null, true);
+			return table != null && table.size() > 0 && rows.length < table.size();
 		}
 
-		public void setRateBase(final BigInteger rateBase)
+		public void setRateBase(final long rateBase)
 		{
 			this.rateBase = rateBase;
 
 			notifyDataSetChanged();
 		}
 
+		public long getAge()
+		{
+			return table != null ? table.age : -1;
+		}
+
+		private void updateRows()
+		{
+			rows = table != null ? table.index.search(filter) : new int[0];
+
+			notifyDataSetChanged();
+		}
+
+		@Override
+		public int getCount()
+		{
+			return rows.length;
+		}
+
+		@Override
+		public ExchangeRate getItem(final int position)
+		{
+			return table.exchangeRates[rows[position]];
+		}
+
+		@Override
+		public long getItemId(final int position)
+		{
+			return getItem(position).currencyCode.hashCode();
+		}
+
 		@Override
-		public void bindView(final View view, final Context context, final Cursor cursor)
+		public boolean hasStableIds()
+		{
+			return true;
+		}
+
+		@Override
+		public View getView(final int position, View view, final ViewGroup parent)
+		{
+			if (view == null)
+				view = inflater.inflate(R.layout.exchange_rate_row, parent, false);
+
+			bindView(view, rows[position]);
+
+			return view;
+		}
+
+		private void bindView(@Nonnull final View view, final int row)
 		{
-			final ExchangeRate exchangeRate = ExchangeRatesProvider.getExchangeRate(cursor);
+			final ExchangeRate exchangeRate = table.exchangeRates[row];
 			final boolean isDefaultCurrency = exchangeRate.currencyCode.equals(defaultCurrency);
 
 			view.setBackgroundResource(isDefaultCurrency ? R.color.bg_list_selected : R.color.bg_list);
@@ -299,9 +391,10 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 
 			final CurrencyTextView walletView = (CurrencyTextView) view.findViewById(R.id.exchange_rate_row_balance);
 			walletView.setPrecision(Constants.LOCAL_PRECISION, 0);
-			if (!replaying)
+			final long balance = table.balances[row];
+			if (!replaying && balance >= 0)
 			{
-				walletView.setAmount(WalletUtils.localValue(balance, exchangeRate.rate));
+				walletView.setAmount(balance);
 				walletView.setStrikeThru(Constants.TEST);
 			}
 			else
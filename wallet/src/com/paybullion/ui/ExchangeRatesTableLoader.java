@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.ui;
+
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.core.Wallet.BalanceType;
+import com.google.bitcoin.utils.Threading;
+
+import com.paybullion.Constants;
+import com.paybullion.ExchangeRatesProvider;
+import com.paybullion.ExchangeRatesProvider.ExchangeRate;
+import com.paybullion.util.PrefixIndex;
+import com.paybullion.util.ThrottlingWalletChangeListener;
+import com.paybullion.util.WalletUtils;
+
+/**
+ * Loads the whole exchange rates table along with everything needed to show and filter it: the local value of the
+ * wallet balance per rate and a prefix index over currency codes and names. The index is only rebuilt if the set of
+ * currencies changes.
+ *
+ * @author Andreas Schildbach
+ */
+public final class ExchangeRatesTableLoader extends AsyncTaskLoader<ExchangeRatesTableLoader.Table>
+{
+	public static final class Table
+	{
+		public final ExchangeRate[] exchangeRates;
+		/** milliseconds since the rates were fetched, or -1 if unknown */
+		public final long age;
+		/** local value of the wallet balance per rate, or -1 if out of range */
+		public final long[] balances;
+		/** over currency code and localized name */
+		public final PrefixIndex index;
+
+		private Table(@Nonnull final ExchangeRate[] exchangeRates, final long age, @Nonnull final long[] balances, @Nonnull final PrefixIndex index)
+		{
+			this.exchangeRates = exchangeRates;
+			this.age = age;
+			this.balances = balances;
+			this.index = index;
+		}
+
+		public int size()
+		{
+			return exchangeRates.length;
+		}
+	}
+
+	private final Wallet wallet;
+	private final ForceLoadContentObserver contentObserver = new ForceLoadContentObserver();
+
+	@CheckForNull
+	private volatile Table lastTable = null;
+
+	public ExchangeRatesTableLoader(final Context context, @Nonnull final Wallet wallet)
+	{
+		super(context);
+
+		this.wallet = wallet;
+	}
+
+	@Override
+	protected void onStartLoading()
+	{
+		super.onStartLoading();
+
+		getContext().getContentResolver().registerContentObserver(ExchangeRatesProvider.contentUri(getContext().getPackageName()), true,
+				contentObserver);
+		wallet.addEventListener(walletChangeListener, Threading.SAME_THREAD);
+
+		forceLoad();
+	}
+
+	@Override
+	protected void onStopLoading()
+	{
+		wallet.removeEventListener(walletChangeListener);
+		walletChangeListener.removeCallbacks();
+		getContext().getContentResolver().unregisterContentObserver(contentObserver);
+
+		super.onStopLoading();
+	}
+
+	@Override
+	public Table loadInBackground()
+	{
+		final long balance = wallet.getBalance(BalanceType.ESTIMATED).longValue();
+
+		final List<ExchangeRate> exchangeRates = new ArrayList<ExchangeRate>();
+		long age = -1;
+
+		final Cursor cursor = getContext().getContentResolver().query(ExchangeRatesProvider.contentUri(getContext().getPackageName()), null, null,
+				null, null);
+		if (cursor != null)
+		{
+			try
+			{
+				while (cursor.moveToNext())
+				{
+					exchangeRates.add(ExchangeRatesProvider.getExchangeRate(cursor));
+					age = ExchangeRatesProvider.getAge(cursor);
+				}
+			}
+			finally
+			{
+				cursor.close();
+			}
+		}
+
+		final int numRates = exchangeRates.size();
+		final ExchangeRate[] rates = exchangeRates.toArray(new ExchangeRate[numRates]);
+
+		final long[] balances = new long[numRates];
+		for (int i = 0; i < numRates; i++)
+		{
+			try
+			{
+				balances[i] = WalletUtils.localValue(balance, rates[i].rate);
+			}
+			catch (final ArithmeticException x)
+			{
+				balances[i] = -1;
+			}
+		}
+
+		final Table lastTable = this.lastTable;
+		final PrefixIndex index = lastTable != null && sameCurrencies(lastTable.exchangeRates, rates) ? lastTable.index : buildIndex(rates);
+
+		final Table table = new Table(rates, age, balances, index);
+		this.lastTable = table;
+
+		return table;
+	}
+
+	private static boolean sameCurrencies(@Nonnull final ExchangeRate[] rates1, @Nonnull final ExchangeRate[] rates2)
+	{
+		if (rates1.length != rates2.length)
+			return false;
+
+		for (int i = 0; i < rates1.length; i++)
+			if (!rates1[i].currencyCode.equals(rates2[i].currencyCode))
+				return false;
+
+		return true;
+	}
+
+	private static PrefixIndex buildIndex(@Nonnull final ExchangeRate[] rates)
+	{
+		final String[][] texts = new String[rates.length][];
+		for (int i = 0; i < rates.length; i++)
+			texts[i] = new String[] { rates[i].currencyCode, displayName(rates[i].currencyCode) };
+
+		return new PrefixIndex(texts);
+	}
+
+	@CheckForNull
+	private static String displayName(@Nonnull final String currencyCode)
+	{
+		// localized currency names are only available from KitKat on
+		if (Build.VERSION.SDK_INT < Constants.SDK_KITKAT)
+			return null;
+
+		try
+		{
+			return Currency.getInstance(currencyCode).getDisplayName();
+		}
+		catch (final IllegalArgumentException x)
+		{
+			return null; // not an ISO 4217 currency, like BTC
+		}
+	}
+
+	private final ThrottlingWalletChangeListener walletChangeListener = new ThrottlingWalletChangeListener()
+	{
+		@Override
+		public void onThrottledWalletChanged()
+		{
+			forceLoad();
+		}
+	};
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.ui;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import android.os.Handler;
+import android.support.v4.app.FragmentManager;
+
+import com.paybullion.ExchangeRatesProvider.ExchangeRate;
+import com.paybullion.WalletApplication;
+import com.paybullion.util.RateHistory;
+import com.paybullion.util.TransactionHistoryWriter;
+import com.paybullion.R;
+
+/**
+ * Exports the transaction history with {@link ExportTransactionsTask} and reports the result to its activity, which
+ * must implement {@link Listener}.
+ *
+ * @author Andreas Schildbach
+ */
+public final class ExportTransactionsFragment extends AbstractTaskDialogFragment
+{
+	private static final String FRAGMENT_TAG = ExportTransactionsFragment.class.getName();
+
+	public interface Listener
+	{
+		void onTransactionsExported(@Nonnull File file, @Nonnull TransactionHistoryWriter.Format format, int numExported);
+
+		void onExportTransactionsFailed(@Nonnull IOException x);
+	}
+
+	/**
+	 * @see ExportTransactionsTask#exportTransactions(File, TransactionHistoryWriter.Format, ExchangeRate, RateHistory)
+	 */
+	public static void exportTransactions(@Nonnull final FragmentManager fm, @Nonnull final File file,
+			@Nonnull final TransactionHistoryWriter.Format format, @Nullable final ExchangeRate exchangeRate, @Nullable final RateHistory rateHistory)
+	{
+		final ExportTransactionsFragment fragment = new ExportTransactionsFragment();
+		fragment.setArguments(args(R.string.export_transactions_dialog_progress));
+		fragment.file = file;
+		fragment.format = format;
+		fragment.exchangeRate = exchangeRate;
+		fragment.rateHistory = rateHistory;
+		fragment.show(fm, FRAGMENT_TAG);
+	}
+
+	private File file;
+	private TransactionHistoryWriter.Format format;
+	private ExchangeRate exchangeRate;
+	private RateHistory rateHistory;
+
+	@Override
+	protected void startTask(final Handler backgroundHandler)
+	{
+		final WalletApplication application = (WalletApplication) getActivity().getApplication();
+
+		new ExportTransactionsTask(application, application.getWallet(), backgroundHandler)
+		{
+			@Override
+			protected void onProgress(final int numExported, final int numTotal)
+			{
+				setProgress(numExported, numTotal);
+			}
+
+			@Override
+			protected void onSuccess(final File file, final int numExported)
+			{
+				setResult(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						((Listener) getActivity()).onTransactionsExported(file, format, numExported);
+					}
+				});
+			}
+
+			@Override
+			protected void onFailure(final IOException x)
+			{
+				setResult(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						((Listener) getActivity()).onExportTransactionsFailed(x);
+					}
+				});
+			}
+		}.exportTransactions(file, format, exchangeRate, rateHistory);
+	}
+}
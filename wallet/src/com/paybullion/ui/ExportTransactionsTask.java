@@ -0,0 +1,248 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.ui;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.format.DateUtils;
+
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.ScriptException;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.TransactionConfidence;
+import com.google.bitcoin.core.TransactionConfidence.ConfidenceType;
+import com.google.bitcoin.core.Wallet;
+
+import com.paybullion.AddressBookProvider;
+import com.paybullion.Constants;
+import com.paybullion.ExchangeRatesProvider.ExchangeRate;
+import com.paybullion.util.GenericUtils;
+import com.paybullion.util.Iso8601Format;
+import com.paybullion.util.RateHistory;
+import com.paybullion.util.TransactionHistoryWriter;
+import com.paybullion.util.WalletUtils;
+
+/**
+ * @author Andreas Schildbach
+ */
+public abstract class ExportTransactionsTask
+{
+	private final Context context;
+	private final Wallet wallet;
+	private final Handler backgroundHandler;
+	private final Handler callbackHandler;
+
+	private static final int PROGRESS_INTERVAL = 500;
+	private static final long RATE_MAX_DISTANCE_MS = DateUtils.DAY_IN_MILLIS;
+
+	public ExportTransactionsTask(@Nonnull final Context context, @Nonnull final Wallet wallet, @Nonnull final Handler backgroundHandler)
+	{
+		this.context = context.getApplicationContext();
+		this.wallet = wallet;
+		this.backgroundHandler = backgroundHandler;
+		this.callbackHandler = new Handler(Looper.myLooper());
+	}
+
+	/**
+	 * @param exchangeRate
+	 *            currency and fallback rate for the local values, or null for no local values
+	 * @param rateHistory
+	 *            if given, transactions are valued at the rate of their time where one was sampled
+	 */
+	public final void exportTransactions(@Nonnull final File file, @Nonnull final TransactionHistoryWriter.Format format,
+			@Nullable final ExchangeRate exchangeRate, @Nullable final RateHistory rateHistory)
+	{
+		backgroundHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				Writer out = null;
+
+				try
+				{
+					out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Constants.UTF_8));
+					final int numExported = write(format.newWriter(out), exchangeRate, rateHistory);
+					out.close();
+					out = null;
+
+					callbackHandler.post(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							onSuccess(file, numExported);
+						}
+					});
+				}
+				catch (final IOException x)
+				{
+					failure(x);
+				}
+				catch (final RuntimeException x)
+				{
+					// otherwise the thread dies and nobody hears of it
+					failure(new IOException(x.toString(), x));
+				}
+				finally
+				{
+					if (out != null)
+					{
+						try
+						{
+							out.close();
+						}
+						catch (final IOException x)
+						{
+							// swallow
+						}
+					}
+				}
+			}
+		});
+	}
+
+	private int write(@Nonnull final TransactionHistoryWriter writer, @Nullable final ExchangeRate exchangeRate,
+			@Nullable final RateHistory rateHistory) throws IOException
+	{
+		final Map<String, String> labels = loadLabels();
+
+		// only references are held here, the wallet keeps the transactions in memory anyway
+		final List<Transaction> transactions = wallet.getTransactionsByTime();
+		final int numTransactions = transactions.size();
+
+		if (exchangeRate != null && rateHistory != null)
+			rateHistory.open(exchangeRate.currencyCode);
+
+		writer.writeHeader();
+
+		// oldest first, which is what books usually look like
+		for (final ListIterator<Transaction> i = transactions.listIterator(numTransactions); i.hasPrevious();)
+		{
+			final Transaction tx = i.previous();
+
+			try
+			{
+				final BigInteger value = tx.getValue(wallet);
+				final boolean sent = value.signum() < 0;
+				final Address address = sent ? WalletUtils.getFirstToAddress(tx) : WalletUtils.getFirstFromAddress(tx);
+				final String addressStr = address != null ? address.toString() : null;
+
+				final TransactionConfidence confidence = tx.getConfidence();
+				final int confirmations = confidence.getConfidenceType() == ConfidenceType.BUILDING ? confidence.getDepthInBlocks() : 0;
+
+				final Date time = tx.getUpdateTime();
+				final String timeStr = time != null ? Iso8601Format.formatDateTimeT(time) : "";
+				final String valueStr = GenericUtils.formatValue(value, Constants.BTC_MAX_PRECISION, 0);
+				final String label = addressStr != null ? labels.get(addressStr) : null;
+
+				if (exchangeRate != null)
+				{
+					final long historicRate = rateHistory != null && time != null ? rateHistory.rateAt(exchangeRate.currencyCode, time.getTime(),
+							RATE_MAX_DISTANCE_MS) : 0;
+					final long rate = historicRate > 0 ? historicRate : exchangeRate.rate;
+					final String fiatValueStr = GenericUtils.formatValue(WalletUtils.localValue(value, rate), Constants.LOCAL_PRECISION, 0);
+					writer.writeRow(timeStr, tx.getHashAsString(), valueStr, addressStr, label, confirmations, exchangeRate.currencyCode, fiatValueStr);
+				}
+				else
+				{
+					writer.writeRow(timeStr, tx.getHashAsString(), valueStr, addressStr, label, confirmations, null, null);
+				}
+			}
+			catch (final ScriptException x)
+			{
+				throw new IOException("cannot export " + tx.getHashAsString(), x);
+			}
+
+			final int numExported = writer.getNumRows();
+			if (numExported % PROGRESS_INTERVAL == 0)
+			{
+				callbackHandler.post(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						onProgress(numExported, numTransactions);
+					}
+				});
+			}
+		}
+
+		writer.writeFooter();
+
+		return writer.getNumRows();
+	}
+
+	private void failure(@Nonnull final IOException x)
+	{
+		callbackHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				onFailure(x);
+			}
+		});
+	}
+
+	private Map<String, String> loadLabels()
+	{
+		// one query for the whole address book rather than one per transaction
+		final Map<String, String> labels = new HashMap<String, String>();
+
+		final Cursor cursor = context.getContentResolver().query(AddressBookProvider.contentUri(context.getPackageName()),
+				new String[] { AddressBookProvider.KEY_ADDRESS, AddressBookProvider.KEY_LABEL }, null, null, null);
+
+		if (cursor != null)
+		{
+			final int addressColumn = cursor.getColumnIndexOrThrow(AddressBookProvider.KEY_ADDRESS);
+			final int labelColumn = cursor.getColumnIndexOrThrow(AddressBookProvider.KEY_LABEL);
+
+			while (cursor.moveToNext())
+				labels.put(cursor.getString(addressColumn), cursor.getString(labelColumn));
+
+			cursor.close();
+		}
+
+		return labels;
+	}
+
+	protected abstract void onProgress(int numExported, int numTotal);
+
+	protected abstract void onSuccess(@Nonnull File file, int numExported);
+
+	protected abstract void onFailure(@Nonnull IOException x);
+}
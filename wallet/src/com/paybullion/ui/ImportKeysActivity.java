@@ -17,14 +17,9 @@
 
 package com.paybullion.ui;
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.io.StringReader;
-import java.util.List;
 
 import android.app.AlertDialog;
 import android.app.Dialog;
@@ -38,22 +33,16 @@ import android.view.View;
 import android.widget.CheckBox;
 import android.widget.EditText;
 
-import com.google.bitcoin.core.ECKey;
-import com.google.bitcoin.core.Wallet;
-
-import com.paybullion.Constants;
 import com.paybullion.util.Crypto;
-import com.paybullion.util.WalletUtils;
 import com.paybullion.R;
 
 /**
  * @author Andreas Schildbach
  */
-public final class ImportKeysActivity extends AbstractWalletActivity
+public final class ImportKeysActivity extends AbstractWalletActivity implements ImportKeysFragment.Listener
 {
 	private static final int DIALOG_IMPORT_KEYS = 0;
 
-	private Wallet wallet;
 	private ContentResolver contentResolver;
 
 	private Uri backupFileUri;
@@ -63,7 +52,6 @@ public final class ImportKeysActivity extends AbstractWalletActivity
 	{
 		super.onCreate(savedInstanceState);
 
-		wallet = getWalletApplication().getWallet();
 		contentResolver = getContentResolver();
 
 		backupFileUri = getIntent().getData();
@@ -160,86 +148,72 @@ public final class ImportKeysActivity extends AbstractWalletActivity
 
 	private void importPrivateKeys(final InputStream is, final String password)
 	{
-		try
-		{
-			final BufferedReader cipherIn = new BufferedReader(new InputStreamReader(is, Constants.UTF_8));
-			final StringBuilder cipherText = new StringBuilder();
-			while (true)
-			{
-				final String line = cipherIn.readLine();
-				if (line == null)
-					break;
-
-				cipherText.append(line);
-			}
-			cipherIn.close();
-
-			final String plainText = Crypto.decrypt(cipherText.toString(), password.toCharArray());
-			final Reader plainReader = new StringReader(plainText);
-
-			final BufferedReader keyReader = new BufferedReader(plainReader);
-			final List<ECKey> importedKeys = WalletUtils.readKeys(keyReader);
-			keyReader.close();
-
-			final int numKeysToImport = importedKeys.size();
-			final int numKeysImported = wallet.addKeys(importedKeys);
-
-			final DialogBuilder dialog = new DialogBuilder(this);
-			final StringBuilder message = new StringBuilder();
-			if (numKeysImported > 0)
-				message.append(getString(R.string.import_keys_dialog_success_imported, numKeysImported));
-			if (numKeysImported < numKeysToImport)
-			{
-				if (message.length() > 0)
-					message.append('\n');
-				message.append(getString(R.string.import_keys_dialog_success_existing, numKeysToImport - numKeysImported));
-			}
-			if (numKeysImported > 0)
-			{
-				if (message.length() > 0)
-					message.append("\n\n");
-				message.append(getString(R.string.import_keys_dialog_success_reset));
-			}
-			dialog.setMessage(message);
-			if (numKeysImported > 0)
-			{
-				dialog.setPositiveButton(R.string.import_keys_dialog_button_reset_blockchain, new DialogInterface.OnClickListener()
-				{
-					@Override
-					public void onClick(final DialogInterface dialog, final int id)
-					{
-						getWalletApplication().resetBlockchain();
-						finish();
-					}
-				});
-				dialog.setNegativeButton(R.string.button_dismiss, finishListener);
-			}
-			else
-			{
-				dialog.singleDismissButton(finishListener);
-			}
-			dialog.setOnCancelListener(finishListener);
-			dialog.show();
+		ImportKeysFragment.importKeys(getSupportFragmentManager(), is, password.toCharArray());
+	}
 
-			log.info("imported " + numKeysImported + " of " + numKeysToImport + " private keys");
+	@Override
+	public void onKeysImported(final int numKeysToImport, final int numKeysImported)
+	{
+		final DialogBuilder dialog = new DialogBuilder(this);
+		final StringBuilder message = new StringBuilder();
+		if (numKeysImported > 0)
+			message.append(getString(R.string.import_keys_dialog_success_imported, numKeysImported));
+		if (numKeysImported < numKeysToImport)
+		{
+			if (message.length() > 0)
+				message.append('\n');
+			message.append(getString(R.string.import_keys_dialog_success_existing, numKeysToImport - numKeysImported));
 		}
-		catch (final IOException x)
+		if (numKeysImported > 0)
 		{
-			final DialogBuilder dialog = DialogBuilder.warn(this, R.string.import_export_keys_dialog_failure_title);
-			dialog.setMessage(getString(R.string.import_keys_dialog_failure, x.getMessage()));
-			dialog.setPositiveButton(R.string.button_dismiss, finishListener).setOnCancelListener(finishListener);
-			dialog.setNegativeButton(R.string.button_retry, new DialogInterface.OnClickListener()
+			if (message.length() > 0)
+				message.append("\n\n");
+			message.append(getString(R.string.import_keys_dialog_success_reset));
+		}
+		dialog.setMessage(message);
+		if (numKeysImported > 0)
+		{
+			dialog.setPositiveButton(R.string.import_keys_dialog_button_reset_blockchain, new DialogInterface.OnClickListener()
 			{
 				@Override
 				public void onClick(final DialogInterface dialog, final int id)
 				{
-					showDialog(DIALOG_IMPORT_KEYS);
+					getWalletApplication().resetBlockchain();
+					finish();
 				}
 			});
-			dialog.show();
-
-			log.info("problem reading private keys", x);
+			dialog.setNegativeButton(R.string.button_dismiss, finishListener);
 		}
+		else
+		{
+			dialog.singleDismissButton(finishListener);
+		}
+		dialog.setOnCancelListener(finishListener);
+		dialog.show();
+
+		log.info("imported " + numKeysImported + " of " + numKeysToImport + " private keys");
+	}
+
+	@Override
+	public void onImportKeysFailed(final IOException x)
+	{
+		final DialogBuilder dialog = DialogBuilder.warn(this, R.string.import_export_keys_dialog_failure_title);
+		if (x instanceof Crypto.BadPasswordException)
+			dialog.setMessage(getString(R.string.import_keys_dialog_failure_bad_password));
+		else
+			dialog.setMessage(getString(R.string.import_keys_dialog_failure, x.getMessage()));
+		dialog.setPositiveButton(R.string.button_dismiss, finishListener).setOnCancelListener(finishListener);
+		dialog.setNegativeButton(R.string.button_retry, new DialogInterface.OnClickListener()
+		{
+			@Override
+			public void onClick(final DialogInterface dialog, final int id)
+			{
+				showDialog(DIALOG_IMPORT_KEYS);
+			}
+		});
+		dialog.show();
+
+		log.info("problem reading private keys", x);
 	}
 
 	private class FinishListener implements DialogInterface.OnClickListener, DialogInterface.OnCancelListener
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.ui;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import android.os.Handler;
+import android.support.v4.app.FragmentManager;
+
+import com.paybullion.WalletApplication;
+import com.paybullion.R;
+
+/**
+ * Imports a key backup with {@link ImportKeysTask} and reports the result to its activity, which must implement
+ * {@link Listener}.
+ *
+ * @author Andreas Schildbach
+ */
+public final class ImportKeysFragment extends AbstractTaskDialogFragment
+{
+	private static final String FRAGMENT_TAG = ImportKeysFragment.class.getName();
+
+	public interface Listener
+	{
+		void onKeysImported(int numKeysToImport, int numKeysImported);
+
+		void onImportKeysFailed(@Nonnull IOException x);
+	}
+
+	/**
+	 * @param is
+	 *            backup to read, will be closed
+	 * @param password
+	 *            for an OpenSSL encrypted backup, or null for plain text; will be cleared
+	 */
+	public static void importKeys(@Nonnull final FragmentManager fm, @Nonnull final InputStream is, @Nullable final char[] password)
+	{
+		final ImportKeysFragment fragment = new ImportKeysFragment();
+		fragment.setArguments(args(R.string.import_keys_dialog_progress));
+		fragment.is = is;
+		fragment.password = password;
+		fragment.show(fm, FRAGMENT_TAG);
+	}
+
+	private InputStream is;
+	private char[] password;
+
+	@Override
+	protected void startTask(final Handler backgroundHandler)
+	{
+		final WalletApplication application = (WalletApplication) getActivity().getApplication();
+
+		new ImportKeysTask(application.getWallet(), backgroundHandler)
+		{
+			@Override
+			protected void onProgress(final int percent)
+			{
+				setProgress(percent, 100);
+			}
+
+			@Override
+			protected void onSuccess(final int numKeysToImport, final int numKeysImported)
+			{
+				setResult(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						((Listener) getActivity()).onKeysImported(numKeysToImport, numKeysImported);
+					}
+				});
+			}
+
+			@Override
+			protected void onFailure(final IOException x)
+			{
+				setResult(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						((Listener) getActivity()).onImportKeysFailed(x);
+					}
+				});
+			}
+		}.importKeys(is, password);
+
+		// the task owns them now
+		is = null;
+		password = null;
+	}
+}
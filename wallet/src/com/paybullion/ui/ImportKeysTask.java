@@ -0,0 +1,198 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.ui;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.Wallet;
+
+import com.paybullion.Constants;
+import com.paybullion.util.Crypto;
+import com.paybullion.util.KeyFileReader;
+
+/**
+ * Reads a key backup on a background thread, decodes the keys on all cores and adds them to the wallet in one go.
+ *
+ * @author Andreas Schildbach
+ */
+public abstract class ImportKeysTask
+{
+	private final Wallet wallet;
+	private final Handler backgroundHandler;
+	private final Handler callbackHandler;
+
+	public ImportKeysTask(@Nonnull final Wallet wallet, @Nonnull final Handler backgroundHandler)
+	{
+		this.wallet = wallet;
+		this.backgroundHandler = backgroundHandler;
+		this.callbackHandler = new Handler(Looper.myLooper());
+	}
+
+	/**
+	 * @param is
+	 *            backup to read, will be closed
+	 * @param password
+	 *            for an OpenSSL encrypted backup, or null for plain text; will be cleared
+	 */
+	public final void importKeys(@Nonnull final InputStream is, @Nullable final char[] password)
+	{
+		backgroundHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+				BufferedReader in = null;
+
+				try
+				{
+					// good enough an estimate for local files; base64 takes four chars for three bytes
+					final int available = is.available();
+					final long numCharsTotal = password != null ? available / 4 * 3 : available;
+
+					final InputStream plainIn = password != null ? Crypto.decrypt(is, password) : is;
+					in = new BufferedReader(new InputStreamReader(plainIn, Constants.UTF_8));
+
+					final List<ECKey> keys;
+					try
+					{
+						keys = KeyFileReader.readKeys(in, Constants.NETWORK_PARAMETERS, executor, new KeyFileReader.Listener()
+						{
+							@Override
+							public void onProgress(final int numKeys, final long numChars)
+							{
+								if (numCharsTotal <= 0)
+									return;
+
+								final int percent = (int) Math.min(numChars * 100 / numCharsTotal, 100);
+								callbackHandler.post(new Runnable()
+								{
+									@Override
+									public void run()
+									{
+										ImportKeysTask.this.onProgress(percent);
+									}
+								});
+							}
+						});
+					}
+					catch (final IOException x)
+					{
+						if (password != null)
+							checkPassword(plainIn);
+						throw x;
+					}
+
+					final int numKeysToImport = keys.size();
+					final int numKeysImported = wallet.addKeys(keys);
+
+					callbackHandler.post(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							onSuccess(numKeysToImport, numKeysImported);
+						}
+					});
+				}
+				catch (final IOException x)
+				{
+					failure(x);
+				}
+				catch (final RuntimeException x)
+				{
+					// otherwise the thread dies and nobody hears of it
+					failure(new IOException(x.toString(), x));
+				}
+				finally
+				{
+					executor.shutdownNow();
+
+					if (password != null)
+						Arrays.fill(password, '\0');
+
+					try
+					{
+						if (in != null)
+							in.close();
+						else
+							is.close();
+					}
+					catch (final IOException x)
+					{
+						// swallow
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Decrypted bytes are handed out before the padding is checked, so with a wrong password the keys are unreadable
+	 * long before the cipher can tell. Reads on to the end to let it tell.
+	 */
+	private static void checkPassword(@Nonnull final InputStream plainIn) throws Crypto.BadPasswordException
+	{
+		try
+		{
+			final byte[] buf = new byte[4096];
+			while (plainIn.read(buf) != -1)
+				;
+		}
+		catch (final Crypto.BadPasswordException x)
+		{
+			throw x;
+		}
+		catch (final IOException x)
+		{
+			// the original problem is more telling
+		}
+	}
+
+	private void failure(@Nonnull final IOException x)
+	{
+		callbackHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				onFailure(x);
+			}
+		});
+	}
+
+	protected abstract void onProgress(int percent);
+
+	protected abstract void onSuccess(int numKeysToImport, int numKeysImported);
+
+	protected abstract void onFailure(@Nonnull IOException x);
+}
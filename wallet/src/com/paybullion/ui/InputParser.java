@@ -21,6 +21,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.cert.TrustAnchor;
 import java.util.ArrayList;
 import java.util.regex.Pattern;
@@ -145,7 +146,9 @@ public abstract class InputParser
 			{
 				try
 				{
-					final Transaction tx = new Transaction(Constants.NETWORK_PARAMETERS, Qr.decodeDecompressBinary(input));
+					final ByteBuffer serializedTx = Qr.decodeDecompressBinary(input, Qr.MAX_DECOMPRESSED_LENGTH);
+					final Transaction tx = new Transaction(Constants.NETWORK_PARAMETERS, serializedTx.array(), serializedTx.arrayOffset()
+							+ serializedTx.position(), null, false, false, serializedTx.remaining());
 
 					handleDirectTransaction(tx);
 				}
@@ -126,7 +126,7 @@ public final class RequestCoinsFragment extends SherlockFragment
 		@Override
 		public void onLoadFinished(final Loader<Cursor> loader, final Cursor data)
 		{
-			if (data != null)
+			if (data != null && data.getCount() > 0)
 			{
 				data.moveToFirst();
 				final ExchangeRate exchangeRate = ExchangeRatesProvider.getExchangeRate(data);
@@ -386,14 +386,13 @@ public final class RequestCoinsFragment extends SherlockFragment
 		final byte[] paymentRequest = determinePaymentRequest(true);
 
 		// update qr-code
-		final int size = (int) (256 * getResources().getDisplayMetrics().density);
 		final String qrContent;
 		if (config.getQrPaymentRequestEnabled())
 			qrContent = "PAYBULLION:-" + Qr.encodeBinary(paymentRequest);
 		else
 			qrContent = bitcoinRequest;
-		qrCodeBitmap = Qr.bitmap(qrContent, size);
-		qrView.setImageBitmap(qrCodeBitmap);
+		qrCodeBitmap = Qr.bitmap(qrContent);
+		qrView.setImageDrawable(Qr.bitmapDrawable(getResources(), qrCodeBitmap));
 
 		// update nfc ndef message
 		final boolean nfcSuccess;
@@ -58,6 +58,7 @@ import com.google.zxing.common.HybridBinarizer;
 import com.google.zxing.qrcode.QRCodeReader;
 
 import com.paybullion.camera.CameraManager;
+import com.paybullion.util.QrFrames;
 import com.paybullion.R;
 
 /**
@@ -173,7 +174,7 @@ public final class ScanActivity extends Activity implements SurfaceHolder.Callba
 		return super.onKeyDown(keyCode, event);
 	}
 
-	public void handleResult(final Result scanResult, final Bitmap thumbnailImage, final float thumbnailScaleFactor)
+	public void handleResult(final Result scanResult, final String text, final Bitmap thumbnailImage, final float thumbnailScaleFactor)
 	{
 		vibrator.vibrate(VIBRATE_DURATION);
 
@@ -194,7 +195,7 @@ public final class ScanActivity extends Activity implements SurfaceHolder.Callba
 		scannerView.drawResultBitmap(thumbnailImage);
 
 		final Intent result = new Intent();
-		result.putExtra(INTENT_EXTRA_RESULT, scanResult.getText());
+		result.putExtra(INTENT_EXTRA_RESULT, text);
 		setResult(RESULT_OK, result);
 
 		// delayed finish
@@ -292,6 +293,7 @@ public final class ScanActivity extends Activity implements SurfaceHolder.Callba
 	{
 		private final QRCodeReader reader = new QRCodeReader();
 		private final Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+		private final QrFrames.Assembler frameAssembler = new QrFrames.Assembler();
 
 		@Override
 		public void run()
@@ -330,6 +332,35 @@ public final class ScanActivity extends Activity implements SurfaceHolder.Callba
 				});
 				final Result scanResult = reader.decode(bitmap, hints);
 
+				final String text;
+				if (QrFrames.isFrame(scanResult.getText()))
+				{
+					// one frame of an animated code, keep scanning until all content is there
+					frameAssembler.add(scanResult.getText());
+					text = frameAssembler.result();
+
+					if (text == null)
+					{
+						final int numRecovered = frameAssembler.numRecovered();
+						final int numBlocks = frameAssembler.numBlocks();
+						runOnUiThread(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								scannerView.setProgress(numRecovered, numBlocks);
+							}
+						});
+
+						cameraHandler.post(fetchAndDecodeRunnable);
+						return;
+					}
+				}
+				else
+				{
+					text = scanResult.getText();
+				}
+
 				final int thumbnailWidth = source.getThumbnailWidth();
 				final int thumbnailHeight = source.getThumbnailHeight();
 				final float thumbnailScaleFactor = (float) thumbnailWidth / source.getWidth();
@@ -342,7 +373,7 @@ public final class ScanActivity extends Activity implements SurfaceHolder.Callba
 					@Override
 					public void run()
 					{
-						handleResult(scanResult, thumbnailImage, thumbnailScaleFactor);
+						handleResult(scanResult, text, thumbnailImage, thumbnailScaleFactor);
 					}
 				});
 			}
@@ -50,11 +50,13 @@ public class ScannerView extends View
 	private final Paint maskPaint;
 	private final Paint laserPaint;
 	private final Paint dotPaint;
+	private final Paint progressPaint;
 	private Bitmap resultBitmap;
 	private final int maskColor;
 	private final int resultColor;
 	private final Map<ResultPoint, Long> dots = new HashMap<ResultPoint, Long>(16);
 	private Rect frame, framePreview;
+	private int progress = 0, maxProgress = 0;
 
 	public ScannerView(final Context context, final AttributeSet attrs)
 	{
@@ -80,6 +82,10 @@ public class ScannerView extends View
 		dotPaint.setStyle(Style.STROKE);
 		dotPaint.setStrokeWidth(DOT_SIZE);
 		dotPaint.setAntiAlias(true);
+
+		progressPaint = new Paint();
+		progressPaint.setColor(dotColor);
+		progressPaint.setStyle(Style.FILL);
 	}
 
 	public void setFraming(@Nonnull final Rect frame, @Nonnull final Rect framePreview)
@@ -97,6 +103,17 @@ public class ScannerView extends View
 		invalidate();
 	}
 
+	/**
+	 * Shows how far an animated code has been scanned.
+	 */
+	public void setProgress(final int progress, final int maxProgress)
+	{
+		this.progress = progress;
+		this.maxProgress = maxProgress;
+
+		invalidate();
+	}
+
 	public void addDot(@Nonnull final ResultPoint dot)
 	{
 		dots.put(dot, System.currentTimeMillis());
@@ -156,6 +173,11 @@ public class ScannerView extends View
 				}
 			}
 
+			// draw progress bar below the frame
+			if (maxProgress > 0)
+				canvas.drawRect(frame.left, frame.bottom + DOT_SIZE * 2, frame.left + frame.width() * progress / maxProgress, frame.bottom
+						+ DOT_SIZE * 3, progressPaint);
+
 			// schedule redraw
 			postInvalidateDelayed(LASER_ANIMATION_DELAY_MS);
 		}
@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import android.content.Context;
 import android.content.res.Resources;
@@ -36,6 +37,7 @@ import android.text.format.DateUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.BaseAdapter;
 import android.widget.TextView;
 
@@ -51,6 +53,8 @@ import com.google.bitcoin.wallet.DefaultCoinSelector;
 import com.paybullion.AddressBookProvider;
 import com.paybullion.Constants;
 import com.paybullion.util.CircularProgressView;
+import com.paybullion.util.RateHistory;
+import com.paybullion.util.RelativeTimeFormatter;
 import com.paybullion.util.WalletUtils;
 import com.paybullion.R;
 
@@ -69,6 +73,10 @@ public class TransactionsListAdapter extends BaseAdapter
 	private int shift = 0;
 	private boolean showEmptyText = false;
 	private boolean showBackupWarning = false;
+	@Nullable
+	private RateHistory rateHistory = null;
+	@Nullable
+	private String rateCurrencyCode = null;
 
 	private final int colorSignificant;
 	private final int colorInsignificant;
@@ -77,12 +85,16 @@ public class TransactionsListAdapter extends BaseAdapter
 	private final String textCoinBase;
 	private final String textInternal;
 
+	private final RelativeTimeFormatter timeFormatter;
 	private final Map<String, String> labelCache = new HashMap<String, String>();
 	private final static String CACHE_NULL_MARKER = "";
 
 	private static final String CONFIDENCE_SYMBOL_DEAD = "\u271D"; // latin cross
 	private static final String CONFIDENCE_SYMBOL_UNKNOWN = "?";
 
+	// rates are only sampled while the app is used, so allow for gaps
+	private static final long RATE_MAX_DISTANCE_MS = DateUtils.DAY_IN_MILLIS;
+
 	private static final int VIEW_TYPE_TRANSACTION = 0;
 	private static final int VIEW_TYPE_WARNING = 1;
 
@@ -101,6 +113,8 @@ public class TransactionsListAdapter extends BaseAdapter
 		colorError = resources.getColor(R.color.fg_error);
 		textCoinBase = context.getString(R.string.wallet_transactions_fragment_coinbase);
 		textInternal = context.getString(R.string.wallet_transactions_fragment_internal);
+
+		timeFormatter = new RelativeTimeFormatter(context, RelativeTimeFormatter.Style.TIME_SPAN);
 	}
 
 	public void setPrecision(final int precision, final int shift)
@@ -111,6 +125,18 @@ public class TransactionsListAdapter extends BaseAdapter
 		notifyDataSetChanged();
 	}
 
+	/**
+	 * Shows the local value of each transaction at the time it happened, as far as rates were sampled back then. Only
+	 * finds rates once the history of the currency has been {@link RateHistory#open(String) opened}.
+	 */
+	public void setRateHistory(@Nullable final RateHistory rateHistory, @Nullable final String currencyCode)
+	{
+		this.rateHistory = rateHistory;
+		this.rateCurrencyCode = currencyCode;
+
+		notifyDataSetChanged();
+	}
+
 	public void clear()
 	{
 		transactions.clear();
@@ -290,7 +316,7 @@ public class TransactionsListAdapter extends BaseAdapter
 			if (rowTime != null)
 			{
 				final Date time = tx.getUpdateTime();
-				rowTime.setText(time != null ? (DateUtils.getRelativeTimeSpanString(context, time.getTime())) : null);
+				rowTime.setText(time != null ? timeFormatter.format(time.getTime()) : null);
 				rowTime.setTextColor(textColor);
 			}
 
@@ -331,6 +357,43 @@ public class TransactionsListAdapter extends BaseAdapter
 			rowValue.setPrecision(precision, shift);
 			rowValue.setAmount(value);
 
+			// local value back then
+			final CurrencyTextView rowFiatValue = (CurrencyTextView) row.findViewById(R.id.transaction_row_fiat_value);
+			if (rowFiatValue != null)
+			{
+				final Date time = tx.getUpdateTime();
+				final long rate = rateHistory != null && rateCurrencyCode != null && time != null ? rateHistory.rateAt(rateCurrencyCode,
+						time.getTime(), RATE_MAX_DISTANCE_MS) : 0;
+
+				long localValue = 0;
+				boolean hasLocalValue = false;
+				if (rate > 0 && !isInternal)
+				{
+					try
+					{
+						localValue = WalletUtils.localValue(value.longValue(), rate);
+						hasLocalValue = true;
+					}
+					catch (final ArithmeticException x)
+					{
+						// a rate sample out of any sensible range, treat like a missing one
+					}
+				}
+
+				if (hasLocalValue)
+				{
+					rowFiatValue.setVisibility(View.VISIBLE);
+					rowFiatValue.setAlwaysSigned(true);
+					rowFiatValue.setPrecision(Constants.LOCAL_PRECISION, 0);
+					rowFiatValue.setPrefix(Constants.PREFIX_ALMOST_EQUAL_TO + rateCurrencyCode);
+					rowFiatValue.setAmount(localValue);
+				}
+				else
+				{
+					rowFiatValue.setVisibility(View.GONE);
+				}
+			}
+
 			// extended message
 			final View rowExtend = row.findViewById(R.id.transaction_row_extend);
 			if (rowExtend != null)
@@ -389,6 +452,29 @@ public class TransactionsListAdapter extends BaseAdapter
 		}
 	}
 
+	/**
+	 * Rebinds the time of those visible rows whose relative time text has changed, e.g. on a clock tick.
+	 */
+	public void updateTimes(@Nonnull final AbsListView listView)
+	{
+		final int firstPosition = listView.getFirstVisiblePosition();
+
+		for (int i = 0; i < listView.getChildCount(); i++)
+		{
+			final int position = firstPosition + i;
+			if (position >= getCount() || getItemViewType(position) != VIEW_TYPE_TRANSACTION)
+				continue;
+
+			final Date time = getItem(position).getUpdateTime();
+			if (time == null || !timeFormatter.isStale(time.getTime()))
+				continue;
+
+			final TextView rowTime = (TextView) listView.getChildAt(i).findViewById(R.id.transaction_row_time);
+			if (rowTime != null)
+				rowTime.setText(timeFormatter.format(time.getTime()));
+		}
+	}
+
 	private String resolveLabel(@Nonnull final String address)
 	{
 		final String cachedLabel = labelCache.get(address);
@@ -19,21 +19,26 @@ package com.paybullion.ui;
 
 import java.math.BigInteger;
 import java.text.DateFormat;
+import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
-import java.util.Set;
+import java.util.TimeZone;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import android.app.Activity;
+import android.content.BroadcastReceiver;
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.database.ContentObserver;
@@ -50,7 +55,9 @@ import android.support.v4.content.Loader;
 import android.text.SpannableStringBuilder;
 import android.text.format.DateUtils;
 import android.text.style.StyleSpan;
+import android.view.LayoutInflater;
 import android.view.View;
+import android.widget.EditText;
 import android.widget.ListView;
 
 import com.actionbarsherlock.app.SherlockListFragment;
@@ -69,11 +76,16 @@ import com.google.bitcoin.utils.Threading;
 import com.paybullion.AddressBookProvider;
 import com.paybullion.Configuration;
 import com.paybullion.Constants;
+import com.paybullion.ExchangeRatesProvider.ExchangeRate;
 import com.paybullion.WalletApplication;
 import com.paybullion.util.BitmapFragment;
+import com.paybullion.util.GenericUtils;
+import com.paybullion.util.Iso8601Format;
 import com.paybullion.util.Nfc;
 import com.paybullion.util.Qr;
+import com.paybullion.util.QrFramesFragment;
 import com.paybullion.util.ThrottlingWalletChangeListener;
+import com.paybullion.util.TransactionSearchIndex;
 import com.paybullion.util.WalletUtils;
 import com.paybullion.R;
 
@@ -100,6 +112,10 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 	@CheckForNull
 	private Direction direction;
 
+	@CheckForNull
+	private TransactionSearchIndex.Query searchQuery;
+	private final Bundle searchInput = new Bundle();
+
 	private final Handler handler = new Handler();
 
 	private static final String KEY_DIRECTION = "direction";
@@ -126,6 +142,15 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 		}
 	};
 
+	private final BroadcastReceiver tickReceiver = new BroadcastReceiver()
+	{
+		@Override
+		public void onReceive(final Context context, final Intent intent)
+		{
+			adapter.updateTimes(getListView());
+		}
+	};
+
 	@Override
 	public void onAttach(final Activity activity)
 	{
@@ -146,6 +171,7 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 		super.onCreate(savedInstanceState);
 
 		setRetainInstance(true);
+		setHasOptionsMenu(true);
 
 		this.direction = (Direction) getArguments().getSerializable(KEY_DIRECTION);
 
@@ -164,6 +190,8 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 
 		config.registerOnSharedPreferenceChangeListener(this);
 
+		activity.registerReceiver(tickReceiver, new IntentFilter(Intent.ACTION_TIME_TICK));
+
 		loaderManager.initLoader(0, null, this);
 
 		wallet.addEventListener(transactionChangeListener, Threading.SAME_THREAD);
@@ -176,6 +204,17 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 	{
 		super.onViewCreated(view, savedInstanceState);
 
+		updateEmptyText();
+	}
+
+	private void updateEmptyText()
+	{
+		if (searchQuery != null)
+		{
+			setEmptyText(getString(R.string.wallet_transactions_fragment_empty_text_search));
+			return;
+		}
+
 		final SpannableStringBuilder emptyText = new SpannableStringBuilder(
 				getString(direction == Direction.SENT ? R.string.wallet_transactions_fragment_empty_text_sent
 						: R.string.wallet_transactions_fragment_empty_text_received));
@@ -194,6 +233,8 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 
 		loaderManager.destroyLoader(0);
 
+		activity.unregisterReceiver(tickReceiver);
+
 		config.unregisterOnSharedPreferenceChangeListener(this);
 
 		resolver.unregisterContentObserver(addressBookObserver);
@@ -201,6 +242,122 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 		super.onPause();
 	}
 
+	@Override
+	public void onCreateOptionsMenu(final Menu menu, final MenuInflater inflater)
+	{
+		inflater.inflate(R.menu.wallet_transactions_fragment_options, menu);
+
+		super.onCreateOptionsMenu(menu, inflater);
+	}
+
+	@Override
+	public void onPrepareOptionsMenu(final Menu menu)
+	{
+		menu.findItem(R.id.wallet_transactions_options_clear_search).setVisible(searchQuery != null);
+
+		super.onPrepareOptionsMenu(menu);
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(final MenuItem item)
+	{
+		switch (item.getItemId())
+		{
+			case R.id.wallet_transactions_options_search:
+				handleSearch();
+				return true;
+
+			case R.id.wallet_transactions_options_clear_search:
+				searchInput.clear();
+				setSearchQuery(null);
+				return true;
+		}
+
+		return super.onOptionsItemSelected(item);
+	}
+
+	private void handleSearch()
+	{
+		final LayoutInflater inflater = LayoutInflater.from(activity);
+		final View view = inflater.inflate(R.layout.wallet_transactions_search_dialog, null);
+		final int[] fieldIds = { R.id.wallet_transactions_search_text, R.id.wallet_transactions_search_min_amount,
+				R.id.wallet_transactions_search_max_amount, R.id.wallet_transactions_search_from_date, R.id.wallet_transactions_search_to_date };
+
+		for (final int fieldId : fieldIds)
+			((EditText) view.findViewById(fieldId)).setText(searchInput.getString(Integer.toString(fieldId)));
+
+		final DialogBuilder dialog = new DialogBuilder(activity);
+		dialog.setTitle(R.string.wallet_transactions_search_dialog_title);
+		dialog.setView(view);
+		dialog.setPositiveButton(R.string.wallet_transactions_options_search_title, new DialogInterface.OnClickListener()
+		{
+			@Override
+			public void onClick(final DialogInterface dialog, final int which)
+			{
+				for (final int fieldId : fieldIds)
+					searchInput.putString(Integer.toString(fieldId), ((EditText) view.findViewById(fieldId)).getText().toString().trim());
+
+				// keep the current search rather than running one without the range that didn't parse
+				try
+				{
+					setSearchQuery(parseSearchQuery(view));
+				}
+				catch (final NumberFormatException x)
+				{
+					activity.toast(getString(R.string.wallet_transactions_search_dialog_invalid));
+				}
+				catch (final ArithmeticException x)
+				{
+					activity.toast(getString(R.string.wallet_transactions_search_dialog_invalid));
+				}
+				catch (final ParseException x)
+				{
+					activity.toast(getString(R.string.wallet_transactions_search_dialog_invalid));
+				}
+			}
+		});
+		dialog.setNegativeButton(R.string.button_cancel, null);
+		dialog.show();
+	}
+
+	@CheckForNull
+	private TransactionSearchIndex.Query parseSearchQuery(@Nonnull final View view) throws ParseException
+	{
+		final String text = ((EditText) view.findViewById(R.id.wallet_transactions_search_text)).getText().toString();
+		final String minAmount = ((EditText) view.findViewById(R.id.wallet_transactions_search_min_amount)).getText().toString().trim();
+		final String maxAmount = ((EditText) view.findViewById(R.id.wallet_transactions_search_max_amount)).getText().toString().trim();
+		final String fromDate = ((EditText) view.findViewById(R.id.wallet_transactions_search_from_date)).getText().toString().trim();
+		final String toDate = ((EditText) view.findViewById(R.id.wallet_transactions_search_to_date)).getText().toString().trim();
+
+		final int btcShift = config.getBtcShift();
+		final DateFormat dateFormat = Iso8601Format.newDateFormat();
+		dateFormat.setTimeZone(TimeZone.getDefault());
+
+		long minValue = Long.MIN_VALUE, maxValue = Long.MAX_VALUE, minTime = Long.MIN_VALUE, maxTime = Long.MAX_VALUE;
+
+		if (minAmount.length() > 0)
+			minValue = GenericUtils.parseNanoCoins(minAmount, btcShift);
+		if (maxAmount.length() > 0)
+			maxValue = GenericUtils.parseNanoCoins(maxAmount, btcShift);
+		if (fromDate.length() > 0)
+			minTime = dateFormat.parse(fromDate).getTime();
+		if (toDate.length() > 0)
+			maxTime = dateFormat.parse(toDate).getTime() + DateUtils.DAY_IN_MILLIS - 1;
+
+		final TransactionSearchIndex.Query query = new TransactionSearchIndex.Query(text, minValue, maxValue, minTime, maxTime);
+
+		return query.terms.length > 0 || query.hasValueRange() || query.hasTimeRange() ? query : null;
+	}
+
+	private void setSearchQuery(@Nullable final TransactionSearchIndex.Query searchQuery)
+	{
+		this.searchQuery = searchQuery;
+
+		updateEmptyText();
+		activity.supportInvalidateOptionsMenu();
+		loaderManager.restartLoader(0, null, this);
+	}
+
 	@Override
 	public void onListItemClick(final ListView l, final View v, final int position, final long id)
 	{
@@ -269,8 +426,6 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 
 					serializedTx = tx.unsafeBitcoinSerialize();
 
-					menu.findItem(R.id.wallet_transactions_context_show_qr).setVisible(serializedTx.length < SHOW_QR_THRESHOLD_BYTES);
-
 					Nfc.publishMimeObject(nfcManager, activity, Constants.MIMETYPE_TRANSACTION, serializedTx, false);
 
 					return true;
@@ -320,9 +475,16 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 
 			private void handleShowQr()
 			{
-				final int size = (int) (384 * getResources().getDisplayMetrics().density);
-				final Bitmap qrCodeBitmap = Qr.bitmap(Qr.encodeCompressBinary(serializedTx), size);
-				BitmapFragment.show(getFragmentManager(), qrCodeBitmap);
+				if (serializedTx.length < SHOW_QR_THRESHOLD_BYTES)
+				{
+					final Bitmap qrCodeBitmap = Qr.bitmap(Qr.encodeCompressBinary(serializedTx));
+					BitmapFragment.show(getFragmentManager(), qrCodeBitmap);
+				}
+				else
+				{
+					// too large for one code, animate instead
+					QrFramesFragment.show(getFragmentManager(), serializedTx);
+				}
 			}
 		});
 	}
@@ -340,7 +502,7 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 	@Override
 	public Loader<List<Transaction>> onCreateLoader(final int id, final Bundle args)
 	{
-		return new TransactionsLoader(activity, wallet, direction);
+		return new TransactionsLoader(activity, application, direction, searchQuery);
 	}
 
 	@Override
@@ -366,16 +528,22 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 
 	private static class TransactionsLoader extends AsyncTaskLoader<List<Transaction>>
 	{
+		private final WalletApplication application;
 		private final Wallet wallet;
 		@CheckForNull
 		private final Direction direction;
+		@CheckForNull
+		private final TransactionSearchIndex.Query searchQuery;
 
-		private TransactionsLoader(final Context context, @Nonnull final Wallet wallet, @Nullable final Direction direction)
+		private TransactionsLoader(final Context context, @Nonnull final WalletApplication application, @Nullable final Direction direction,
+				@Nullable final TransactionSearchIndex.Query searchQuery)
 		{
 			super(context);
 
-			this.wallet = wallet;
+			this.application = application;
+			this.wallet = application.getWallet();
 			this.direction = direction;
+			this.searchQuery = searchQuery;
 		}
 
 		@Override
@@ -401,7 +569,13 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 		@Override
 		public List<Transaction> loadInBackground()
 		{
-			final Set<Transaction> transactions = wallet.getTransactions(true);
+			// so that binding rows finds the historic rates without touching the file system
+			final ExchangeRate exchangeRate = application.getConfiguration().getCachedExchangeRate();
+			if (exchangeRate != null)
+				application.getRateHistory().open(exchangeRate.currencyCode);
+
+			final Collection<Transaction> transactions = searchQuery != null ? application.getTransactionSearchIndex().search(searchQuery)
+					: wallet.getTransactions(true);
 			final List<Transaction> filteredTransactions = new ArrayList<Transaction>(transactions.size());
 
 			try
@@ -462,7 +636,14 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 	public void onSharedPreferenceChanged(final SharedPreferences sharedPreferences, final String key)
 	{
 		if (Configuration.PREFS_KEY_BTC_PRECISION.equals(key))
+		{
 			updateView();
+		}
+		else if (Configuration.PREFS_KEY_EXCHANGE_CURRENCY.equals(key))
+		{
+			updateView();
+			loaderManager.restartLoader(0, null, this);
+		}
 	}
 
 	private void updateView()
@@ -472,5 +653,8 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 
 		adapter.setPrecision(btcPrecision, btcShift);
 		adapter.clearLabelCache();
+
+		final ExchangeRate exchangeRate = config.getCachedExchangeRate();
+		adapter.setRateHistory(application.getRateHistory(), exchangeRate != null ? exchangeRate.currencyCode : null);
 	}
 }
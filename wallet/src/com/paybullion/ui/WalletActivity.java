@@ -17,20 +17,15 @@
 
 package com.paybullion.ui;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.Reader;
-import java.io.StringReader;
-import java.io.StringWriter;
 import java.io.Writer;
 import java.text.DateFormat;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -44,6 +39,7 @@ import android.app.Dialog;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnCancelListener;
 import android.content.DialogInterface.OnClickListener;
+import android.content.DialogInterface.OnDismissListener;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageInfo;
@@ -54,6 +50,8 @@ import android.nfc.NdefMessage;
 import android.nfc.NfcAdapter;
 import android.os.Bundle;
 import android.os.Environment;
+import android.support.v4.app.LoaderManager.LoaderCallbacks;
+import android.support.v4.content.Loader;
 import android.text.format.DateUtils;
 import android.view.View;
 import android.view.ViewGroup;
@@ -71,21 +69,24 @@ import com.google.bitcoin.core.Wallet;
 
 import com.paybullion.Configuration;
 import com.paybullion.Constants;
+import com.paybullion.ExchangeRatesProvider.ExchangeRate;
 import com.paybullion.PaymentIntent;
 import com.paybullion.WalletApplication;
 import com.paybullion.ui.InputParser.BinaryInputParser;
 import com.paybullion.ui.InputParser.StringInputParser;
+import com.paybullion.util.BackupFiles;
 import com.paybullion.util.CrashReporter;
 import com.paybullion.util.Crypto;
 import com.paybullion.util.Iso8601Format;
 import com.paybullion.util.Nfc;
+import com.paybullion.util.TransactionHistoryWriter;
 import com.paybullion.util.WalletUtils;
 import com.paybullion.R;
 
 /**
  * @author Andreas Schildbach
  */
-public final class WalletActivity extends AbstractOnDemandServiceActivity
+public final class WalletActivity extends AbstractOnDemandServiceActivity implements ImportKeysFragment.Listener, ExportTransactionsFragment.Listener
 {
 	private static final int DIALOG_IMPORT_KEYS = 0;
 	private static final int DIALOG_EXPORT_KEYS = 1;
@@ -97,6 +98,8 @@ public final class WalletActivity extends AbstractOnDemandServiceActivity
 
 	private static final int REQUEST_CODE_SCAN = 0;
 
+	private static final int ID_BACKUP_FILES_LOADER = 0;
+
 	private static final int DEFAULT_PRECISION_CHANGE_VERSION_CODE = 152;
 
 	@Override
@@ -252,6 +255,10 @@ public final class WalletActivity extends AbstractOnDemandServiceActivity
 				startActivity(new Intent(this, NetworkMonitorActivity.class));
 				return true;
 
+			case R.id.wallet_options_export_transactions:
+				handleExportTransactions();
+				return true;
+
 			case R.id.wallet_options_import_keys:
 				showDialog(DIALOG_IMPORT_KEYS);
 				return true;
@@ -302,6 +309,27 @@ public final class WalletActivity extends AbstractOnDemandServiceActivity
 		config.disarmBackupReminder();
 	}
 
+	public void handleExportTransactions()
+	{
+		final TransactionHistoryWriter.Format[] formats = TransactionHistoryWriter.Format.values();
+		final String[] items = new String[formats.length];
+		for (int i = 0; i < formats.length; i++)
+			items[i] = formats[i].name();
+
+		final DialogBuilder dialog = new DialogBuilder(this);
+		dialog.setTitle(R.string.export_transactions_dialog_title);
+		dialog.setItems(items, new OnClickListener()
+		{
+			@Override
+			public void onClick(final DialogInterface dialog, final int which)
+			{
+				exportTransactions(formats[which]);
+			}
+		});
+		dialog.setNegativeButton(R.string.button_cancel, null);
+		dialog.show();
+	}
+
 	@Override
 	protected Dialog onCreateDialog(final int id)
 	{
@@ -369,7 +397,7 @@ public final class WalletActivity extends AbstractOnDemandServiceActivity
 			{
 				final File file = getItem(position);
 				final boolean isExternal = Constants.EXTERNAL_WALLET_BACKUP_DIR.equals(file.getParentFile());
-				final boolean isEncrypted = Crypto.OPENSSL_FILE_FILTER.accept(file);
+				final boolean isEncrypted = application.getBackupFiles().knownType(file) == BackupFiles.Type.ENCRYPTED;
 
 				if (row == null)
 					row = inflater.inflate(R.layout.wallet_import_keys_file_row, null);
@@ -403,32 +431,8 @@ public final class WalletActivity extends AbstractOnDemandServiceActivity
 	{
 		final AlertDialog alertDialog = (AlertDialog) dialog;
 
-		final List<File> files = new LinkedList<File>();
-
-		// external storage
-		if (Constants.EXTERNAL_WALLET_BACKUP_DIR.exists() && Constants.EXTERNAL_WALLET_BACKUP_DIR.isDirectory())
-			for (final File file : Constants.EXTERNAL_WALLET_BACKUP_DIR.listFiles())
-				if (WalletUtils.KEYS_FILE_FILTER.accept(file) || Crypto.OPENSSL_FILE_FILTER.accept(file))
-					files.add(file);
-
-		// internal storage
-		for (final String filename : fileList())
-			if (filename.startsWith(Constants.WALLET_KEY_BACKUP_BASE58 + '.'))
-				files.add(new File(getFilesDir(), filename));
-
-		// sort
-		Collections.sort(files, new Comparator<File>()
-		{
-			@Override
-			public int compare(final File lhs, final File rhs)
-			{
-				return lhs.getName().compareToIgnoreCase(rhs.getName());
-			}
-		});
-
 		final Spinner fileView = (Spinner) alertDialog.findViewById(R.id.import_keys_from_storage_file);
 		final FileAdapter adapter = (FileAdapter) fileView.getAdapter();
-		adapter.setFiles(files);
 		fileView.setEnabled(!adapter.isEmpty());
 
 		final EditText passwordView = (EditText) alertDialog.findViewById(R.id.import_keys_from_storage_password);
@@ -446,7 +450,7 @@ public final class WalletActivity extends AbstractOnDemandServiceActivity
 			protected boolean needsPassword()
 			{
 				final File selectedFile = (File) fileView.getSelectedItem();
-				return selectedFile != null ? Crypto.OPENSSL_FILE_FILTER.accept(selectedFile) : false;
+				return selectedFile != null ? application.getBackupFiles().knownType(selectedFile) == BackupFiles.Type.ENCRYPTED : false;
 			}
 		};
 		passwordView.addTextChangedListener(dialogButtonEnabler);
@@ -454,6 +458,44 @@ public final class WalletActivity extends AbstractOnDemandServiceActivity
 
 		final CheckBox showView = (CheckBox) alertDialog.findViewById(R.id.import_keys_from_storage_show);
 		showView.setOnCheckedChangeListener(new ShowPasswordCheckListener(passwordView));
+
+		// the dialog shows right away, backups are listed as they are found
+		getSupportLoaderManager().initLoader(ID_BACKUP_FILES_LOADER, null, new LoaderCallbacks<List<File>>()
+		{
+			@Override
+			public Loader<List<File>> onCreateLoader(final int id, final Bundle args)
+			{
+				return new BackupFilesLoader(WalletActivity.this, application.getBackupFiles());
+			}
+
+			@Override
+			public void onLoadFinished(final Loader<List<File>> loader, final List<File> files)
+			{
+				final File selectedFile = (File) fileView.getSelectedItem();
+
+				adapter.setFiles(files);
+				fileView.setEnabled(!adapter.isEmpty());
+
+				final int position = selectedFile != null ? adapter.getPosition(selectedFile) : -1;
+				if (position != -1)
+					fileView.setSelection(position);
+
+				dialogButtonEnabler.handle();
+			}
+
+			@Override
+			public void onLoaderReset(final Loader<List<File>> loader)
+			{
+			}
+		});
+		alertDialog.setOnDismissListener(new OnDismissListener()
+		{
+			@Override
+			public void onDismiss(final DialogInterface dialog)
+			{
+				getSupportLoaderManager().destroyLoader(ID_BACKUP_FILES_LOADER);
+			}
+		});
 	}
 
 	private Dialog createExportKeysDialog()
@@ -669,97 +711,83 @@ public final class WalletActivity extends AbstractOnDemandServiceActivity
 
 	private void importPrivateKeys(@Nonnull final File file, @Nonnull final String password)
 	{
+		final InputStream is;
 		try
 		{
-			final Reader plainReader;
-			if (Crypto.OPENSSL_FILE_FILTER.accept(file))
-			{
-				final BufferedReader cipherIn = new BufferedReader(new InputStreamReader(new FileInputStream(file), Constants.UTF_8));
-				final StringBuilder cipherText = new StringBuilder();
-				while (true)
-				{
-					final String line = cipherIn.readLine();
-					if (line == null)
-						break;
-
-					cipherText.append(line);
-				}
-				cipherIn.close();
-
-				final String plainText = Crypto.decrypt(cipherText.toString(), password.toCharArray());
-				plainReader = new StringReader(plainText);
-			}
-			else if (WalletUtils.KEYS_FILE_FILTER.accept(file))
-			{
-				plainReader = new InputStreamReader(new FileInputStream(file), Constants.UTF_8);
-			}
-			else
-			{
-				throw new IllegalStateException(file.getAbsolutePath());
-			}
-
-			final BufferedReader keyReader = new BufferedReader(plainReader);
-			final List<ECKey> importedKeys = WalletUtils.readKeys(keyReader);
-			keyReader.close();
-
-			final int numKeysToImport = importedKeys.size();
-			final int numKeysImported = wallet.addKeys(importedKeys);
+			is = new FileInputStream(file);
+		}
+		catch (final IOException x)
+		{
+			onImportKeysFailed(x);
+			return;
+		}
 
-			final DialogBuilder dialog = new DialogBuilder(this);
-			final StringBuilder message = new StringBuilder();
-			if (numKeysImported > 0)
-				message.append(getString(R.string.import_keys_dialog_success_imported, numKeysImported));
-			if (numKeysImported < numKeysToImport)
-			{
-				if (message.length() > 0)
-					message.append('\n');
-				message.append(getString(R.string.import_keys_dialog_success_existing, numKeysToImport - numKeysImported));
-			}
-			if (numKeysImported > 0)
-			{
-				if (message.length() > 0)
-					message.append("\n\n");
-				message.append(getString(R.string.import_keys_dialog_success_reset));
-			}
-			dialog.setMessage(message);
-			if (numKeysImported > 0)
-			{
-				dialog.setPositiveButton(R.string.import_keys_dialog_button_reset_blockchain, new DialogInterface.OnClickListener()
-				{
-					@Override
-					public void onClick(final DialogInterface dialog, final int id)
-					{
-						getWalletApplication().resetBlockchain();
-						finish();
-					}
-				});
-				dialog.setNegativeButton(R.string.button_dismiss, null);
-			}
-			else
-			{
-				dialog.singleDismissButton(null);
-			}
-			dialog.show();
+		ImportKeysFragment.importKeys(getSupportFragmentManager(), is,
+				application.getBackupFiles().classify(file) == BackupFiles.Type.ENCRYPTED ? password.toCharArray() : null);
+	}
 
-			log.info("imported " + numKeysImported + " of " + numKeysToImport + " private keys");
+	@Override
+	public void onKeysImported(final int numKeysToImport, final int numKeysImported)
+	{
+		final DialogBuilder dialog = new DialogBuilder(this);
+		final StringBuilder message = new StringBuilder();
+		if (numKeysImported > 0)
+			message.append(getString(R.string.import_keys_dialog_success_imported, numKeysImported));
+		if (numKeysImported < numKeysToImport)
+		{
+			if (message.length() > 0)
+				message.append('\n');
+			message.append(getString(R.string.import_keys_dialog_success_existing, numKeysToImport - numKeysImported));
 		}
-		catch (final IOException x)
+		if (numKeysImported > 0)
 		{
-			final DialogBuilder dialog = DialogBuilder.warn(this, R.string.import_export_keys_dialog_failure_title);
-			dialog.setMessage(getString(R.string.import_keys_dialog_failure, x.getMessage()));
-			dialog.setPositiveButton(R.string.button_dismiss, null);
-			dialog.setNegativeButton(R.string.button_retry, new DialogInterface.OnClickListener()
+			if (message.length() > 0)
+				message.append("\n\n");
+			message.append(getString(R.string.import_keys_dialog_success_reset));
+		}
+		dialog.setMessage(message);
+		if (numKeysImported > 0)
+		{
+			dialog.setPositiveButton(R.string.import_keys_dialog_button_reset_blockchain, new DialogInterface.OnClickListener()
 			{
 				@Override
 				public void onClick(final DialogInterface dialog, final int id)
 				{
-					showDialog(DIALOG_IMPORT_KEYS);
+					getWalletApplication().resetBlockchain();
+					finish();
 				}
 			});
-			dialog.show();
-
-			log.info("problem reading private keys", x);
+			dialog.setNegativeButton(R.string.button_dismiss, null);
 		}
+		else
+		{
+			dialog.singleDismissButton(null);
+		}
+		dialog.show();
+
+		log.info("imported " + numKeysImported + " of " + numKeysToImport + " private keys");
+	}
+
+	@Override
+	public void onImportKeysFailed(final IOException x)
+	{
+		final DialogBuilder dialog = DialogBuilder.warn(this, R.string.import_export_keys_dialog_failure_title);
+		if (x instanceof Crypto.BadPasswordException)
+			dialog.setMessage(getString(R.string.import_keys_dialog_failure_bad_password));
+		else
+			dialog.setMessage(getString(R.string.import_keys_dialog_failure, x.getMessage()));
+		dialog.setPositiveButton(R.string.button_dismiss, null);
+		dialog.setNegativeButton(R.string.button_retry, new DialogInterface.OnClickListener()
+		{
+			@Override
+			public void onClick(final DialogInterface dialog, final int id)
+			{
+				showDialog(DIALOG_IMPORT_KEYS);
+			}
+		});
+		dialog.show();
+
+		log.info("problem reading private keys", x);
 	}
 
 	private void exportPrivateKeys(@Nonnull final String password)
@@ -777,16 +805,31 @@ public final class WalletActivity extends AbstractOnDemandServiceActivity
 				if (!wallet.isKeyRotating(key))
 					keys.add(key);
 
-			final StringWriter plainOut = new StringWriter();
-			WalletUtils.writeKeys(plainOut, keys);
-			plainOut.close();
-			final String plainText = plainOut.toString();
-
-			final String cipherText = Crypto.encrypt(plainText, password.toCharArray());
-
-			final Writer cipherOut = new OutputStreamWriter(new FileOutputStream(file), Constants.UTF_8);
-			cipherOut.write(cipherText);
-			cipherOut.close();
+			final OutputStream fileOut = new FileOutputStream(file);
+			boolean written = false;
+			try
+			{
+				final Writer plainOut = new OutputStreamWriter(Crypto.encrypt(fileOut, password.toCharArray()), Constants.UTF_8);
+				WalletUtils.writeKeys(plainOut, keys);
+				plainOut.close();
+				written = true;
+			}
+			finally
+			{
+				if (!written)
+				{
+					// a truncated backup would still look like a good one
+					try
+					{
+						fileOut.close();
+					}
+					catch (final IOException x)
+					{
+						// swallow
+					}
+					file.delete();
+				}
+			}
 
 			final DialogBuilder dialog = new DialogBuilder(this);
 			dialog.setMessage(getString(R.string.export_keys_dialog_success, file));
@@ -814,6 +857,66 @@ public final class WalletActivity extends AbstractOnDemandServiceActivity
 		}
 	}
 
+	private void exportTransactions(@Nonnull final TransactionHistoryWriter.Format format)
+	{
+		Constants.EXTERNAL_WALLET_BACKUP_DIR.mkdirs();
+		final DateFormat dateFormat = Iso8601Format.newDateFormat();
+		dateFormat.setTimeZone(TimeZone.getDefault());
+		final File file = new File(Constants.EXTERNAL_WALLET_BACKUP_DIR, Constants.EXTERNAL_TRANSACTION_HISTORY + "-" + dateFormat.format(new Date())
+				+ "." + format.fileExtension);
+
+		final ExchangeRate exchangeRate = config.getCachedExchangeRate();
+
+		ExportTransactionsFragment.exportTransactions(getSupportFragmentManager(), file, format, exchangeRate, application.getRateHistory());
+	}
+
+	@Override
+	public void onTransactionsExported(final File file, final TransactionHistoryWriter.Format format, final int numExported)
+	{
+		final DialogBuilder dialog = new DialogBuilder(this);
+		dialog.setMessage(getString(R.string.export_transactions_dialog_success, numExported, file));
+		dialog.setPositiveButton(R.string.button_share, new OnClickListener()
+		{
+			@Override
+			public void onClick(final DialogInterface dialog, final int which)
+			{
+				shareTransactions(file, format);
+			}
+		});
+		dialog.setNegativeButton(R.string.button_dismiss, null);
+		dialog.show();
+
+		log.info("exported " + numExported + " transactions to " + file);
+	}
+
+	@Override
+	public void onExportTransactionsFailed(final IOException x)
+	{
+		final DialogBuilder dialog = DialogBuilder.warn(this, R.string.import_export_keys_dialog_failure_title);
+		dialog.setMessage(getString(R.string.export_transactions_dialog_failure, x.getMessage()));
+		dialog.singleDismissButton(null);
+		dialog.show();
+
+		log.error("problem exporting transactions", x);
+	}
+
+	private void shareTransactions(@Nonnull final File file, @Nonnull final TransactionHistoryWriter.Format format)
+	{
+		final Intent intent = new Intent(Intent.ACTION_SEND);
+		intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.export_transactions_dialog_title));
+		intent.setType(format.mimeType);
+		intent.putExtra(Intent.EXTRA_STREAM, Uri.fromFile(file));
+
+		try
+		{
+			startActivity(Intent.createChooser(intent, getString(R.string.export_transactions_dialog_intent_chooser)));
+		}
+		catch (final Exception x)
+		{
+			log.error("sharing transactions failed", x);
+		}
+	}
+
 	private void mailPrivateKeys(@Nonnull final File file)
 	{
 		final Intent intent = new Intent(Intent.ACTION_SEND);
@@ -148,9 +148,8 @@ public final class WalletAddressFragment extends Fragment
 
 			final String addressStr = BitcoinURI.convertToBitcoinURI(selectedAddress, null, null, null);
 
-			final int size = (int) (256 * getResources().getDisplayMetrics().density);
-			qrCodeBitmap = Qr.bitmap(addressStr, size);
-			bitcoinAddressQrView.setImageBitmap(qrCodeBitmap);
+			qrCodeBitmap = Qr.bitmap(addressStr);
+			bitcoinAddressQrView.setImageDrawable(Qr.bitmapDrawable(getResources(), qrCodeBitmap));
 
 			Nfc.publishUri(nfcManager, getActivity(), addressStr);
 		}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.google.bitcoin.core.AddressFormatException;
+import com.google.bitcoin.core.DumpedPrivateKey;
+import com.google.bitcoin.core.NetworkParameters;
+
+/**
+ * Tells key backups from other files by looking at the first bytes only: OpenSSL encrypted files by their magic text,
+ * plain key files by their first key, whose checksum is verified but whose public key is not derived. Verdicts are
+ * remembered for as long as a file keeps its path, size and modification time.
+ *
+ * Thread safe.
+ *
+ * @author Andreas Schildbach
+ */
+public final class BackupFiles
+{
+	public enum Type
+	{
+		ENCRYPTED, KEYS, OTHER
+	}
+
+	public static final int HEADER_SIZE = 1024;
+
+	private static final int MAX_KEY_LENGTH = 64; // wallet import format is about 52 chars
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private final NetworkParameters params;
+	private final Map<String, Entry> cache = new HashMap<String, Entry>(); // guarded by this
+
+	private static final class Entry
+	{
+		public final long length;
+		public final long lastModified;
+		public final Type type;
+
+		public Entry(final long length, final long lastModified, @Nonnull final Type type)
+		{
+			this.length = length;
+			this.lastModified = lastModified;
+			this.type = type;
+		}
+	}
+
+	public BackupFiles(@Nonnull final NetworkParameters params)
+	{
+		this.params = params;
+	}
+
+	/**
+	 * Reads the file header, unless the file is unchanged since the last time.
+	 */
+	public Type classify(@Nonnull final File file)
+	{
+		final String path = file.getAbsolutePath();
+		final long length = file.length();
+		final long lastModified = file.lastModified();
+
+		synchronized (this)
+		{
+			final Entry entry = cache.get(path);
+			if (entry != null && entry.length == length && entry.lastModified == lastModified)
+				return entry.type;
+		}
+
+		final Type type = file.isFile() ? classify(readHeader(file), params) : Type.OTHER;
+
+		synchronized (this)
+		{
+			cache.put(path, new Entry(length, lastModified, type));
+		}
+
+		return type;
+	}
+
+	/**
+	 * Doesn't touch the file system, so it can be asked from the UI thread.
+	 *
+	 * @return type of the file as of its last classification, or null if it hasn't been classified yet
+	 */
+	@CheckForNull
+	public synchronized Type knownType(@Nonnull final File file)
+	{
+		final Entry entry = cache.get(file.getAbsolutePath());
+		return entry != null ? entry.type : null;
+	}
+
+	/**
+	 * @return backups in the given directory, in no particular order
+	 */
+	public List<File> scan(@Nonnull final File dir)
+	{
+		final File[] files = dir.listFiles();
+		if (files == null)
+			return new ArrayList<File>(0);
+
+		final List<File> backups = new ArrayList<File>();
+		final Set<String> paths = new HashSet<String>(files.length);
+
+		for (final File file : files)
+		{
+			paths.add(file.getAbsolutePath());
+			if (classify(file) != Type.OTHER)
+				backups.add(file);
+		}
+
+		// forget files that have gone from the directory
+		final String dirPath = dir.getAbsolutePath() + File.separatorChar;
+		synchronized (this)
+		{
+			for (final Iterator<String> i = cache.keySet().iterator(); i.hasNext();)
+			{
+				final String path = i.next();
+				if (path.startsWith(dirPath) && path.indexOf(File.separatorChar, dirPath.length()) == -1 && !paths.contains(path))
+					i.remove();
+			}
+		}
+
+		return backups;
+	}
+
+	/**
+	 * @param header
+	 *            the first {@link #HEADER_SIZE} bytes of a file, or less if the file is shorter
+	 */
+	public static Type classify(@Nonnull final byte[] header, @Nonnull final NetworkParameters params)
+	{
+		if (Crypto.isEncrypted(header, header.length))
+			return Type.ENCRYPTED;
+
+		// the first line that is neither empty nor a comment decides
+		int pos = 0;
+		while (pos < header.length)
+		{
+			int end = pos;
+			while (end < header.length && header[end] != '\n')
+				end++;
+			if (end == header.length && header.length == HEADER_SIZE)
+				return Type.OTHER; // line goes on beyond the header
+
+			final String line = new String(header, pos, end - pos, ISO_8859_1).trim();
+			if (!line.isEmpty() && line.charAt(0) != '#')
+				return isKey(line, params) ? Type.KEYS : Type.OTHER;
+
+			pos = end + 1;
+		}
+
+		return Type.OTHER;
+	}
+
+	private static boolean isKey(@Nonnull final String line, @Nonnull final NetworkParameters params)
+	{
+		final int separator = line.indexOf(' ');
+		final String keyStr = separator != -1 ? line.substring(0, separator) : line;
+		if (keyStr.length() > MAX_KEY_LENGTH)
+			return false;
+
+		try
+		{
+			new DumpedPrivateKey(params, keyStr);
+			return true;
+		}
+		catch (final AddressFormatException x)
+		{
+			return false;
+		}
+	}
+
+	private static byte[] readHeader(@Nonnull final File file)
+	{
+		InputStream in = null;
+
+		try
+		{
+			in = new FileInputStream(file);
+
+			final byte[] buf = new byte[HEADER_SIZE];
+			int length = 0;
+			for (int read; length < buf.length && (read = in.read(buf, length, buf.length - length)) != -1;)
+				length += read;
+
+			if (length == buf.length)
+				return buf;
+
+			final byte[] header = new byte[length];
+			System.arraycopy(buf, 0, header, 0, length);
+			return header;
+		}
+		catch (final IOException x)
+		{
+			return new byte[0];
+		}
+		finally
+		{
+			if (in != null)
+			{
+				try
+				{
+					in.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
+				}
+			}
+		}
+	}
+}
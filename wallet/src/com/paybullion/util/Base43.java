@@ -16,8 +16,6 @@
 
 package com.paybullion.util;
 
-import java.nio.charset.Charset;
-
 import javax.annotation.Nonnull;
 
 /**
@@ -39,42 +37,58 @@ public class Base43
 			INDEXES[ALPHABET[i]] = i;
 	}
 
-	public static String encode(@Nonnull byte[] input)
+	// the largest power of 43 that, times 2^32, still fits into a long
+	private static final int LIMB_DIGITS = 5;
+	private static final long LIMB_BASE = 43l * 43 * 43 * 43 * 43;
+
+	public static String encode(@Nonnull final byte[] input)
 	{
 		if (input.length == 0)
 			return "";
 
-		input = copyOfRange(input, 0, input.length);
-
 		// Count leading zeroes.
 		int zeroCount = 0;
 		while (zeroCount < input.length && input[zeroCount] == 0)
 			++zeroCount;
 
-		// The actual encoding.
-		final byte[] temp = new byte[input.length * 2];
+		// The rest is one big-endian number, packed into 32 bit limbs.
+		final int numBytes = input.length - zeroCount;
+		final int[] limbs = new int[(numBytes + 3) / 4];
+		for (int i = 0, b = zeroCount; i < limbs.length; i++)
+		{
+			int limb = 0;
+			for (int n = i == 0 ? numBytes - (limbs.length - 1) * 4 : 4; n > 0; n--)
+				limb = limb << 8 | input[b++] & 0xff;
+			limbs[i] = limb;
+		}
+
+		// The actual encoding, LIMB_DIGITS digits per division.
+		final char[] temp = new char[zeroCount + (numBytes * 3 / 2 / LIMB_DIGITS + 1) * LIMB_DIGITS];
 		int j = temp.length;
 
-		int startAt = zeroCount;
-		while (startAt < input.length)
+		int startAt = 0;
+		while (startAt < limbs.length)
 		{
-			byte mod = divmod43(input, startAt);
-			if (input[startAt] == 0)
+			long mod = divmod(limbs, startAt);
+			while (startAt < limbs.length && limbs[startAt] == 0)
 				++startAt;
-			temp[--j] = (byte) ALPHABET[mod];
+
+			for (int n = 0; n < LIMB_DIGITS; n++)
+			{
+				temp[--j] = ALPHABET[(int) (mod % 43)];
+				mod /= 43;
+			}
 		}
 
-		// Strip extra '1' if there are some after decoding.
+		// Strip extra '0' if there are some after encoding.
 		while (j < temp.length && temp[j] == ALPHABET[0])
 			++j;
 
-		// Add as many leading '1' as there were leading zeros.
+		// Add as many leading '0' as there were leading zeros.
 		while (--zeroCount >= 0)
-			temp[--j] = (byte) ALPHABET[0];
-
-		final byte[] output = copyOfRange(temp, j, temp.length);
+			temp[--j] = ALPHABET[0];
 
-		return new String(output, Charset.forName("US-ASCII"));
+		return new String(temp, j, temp.length - j);
 	}
 
 	public static byte[] decode(@Nonnull final String input) throws IllegalArgumentException
@@ -104,70 +118,76 @@ public class Base43
 		while (zeroCount < input43.length && input43[zeroCount] == 0)
 			++zeroCount;
 
-		// The encoding
-		final byte[] temp = new byte[input.length()];
-		int j = temp.length;
+		// The decoding, LIMB_DIGITS digits per multiplication into little-endian 32 bit limbs.
+		final int numDigits = input43.length - zeroCount;
+		final int[] limbs = new int[numDigits / LIMB_DIGITS + 2];
+		int numLimbs = 0;
 
-		int startAt = zeroCount;
-		while (startAt < input43.length)
+		for (int i = zeroCount; i < input43.length;)
 		{
-			byte mod = divmod256(input43, startAt);
-			if (input43[startAt] == 0)
-				++startAt;
-
-			temp[--j] = mod;
+			final int end = i + (i == zeroCount && numDigits % LIMB_DIGITS != 0 ? numDigits % LIMB_DIGITS : LIMB_DIGITS);
+			long group = 0;
+			long multiplier = 1;
+			for (; i < end; i++)
+			{
+				group = group * 43 + input43[i];
+				multiplier *= 43;
+			}
+
+			numLimbs = mulAdd(limbs, numLimbs, multiplier, group);
 		}
 
-		// Do no add extra leading zeroes, move j to first non null byte.
-		while (j < temp.length && temp[j] == 0)
-			++j;
+		// Do no add extra leading zeroes, only count the significant bytes of the top limb.
+		int topBytes = 0;
+		if (numLimbs > 0)
+			for (int top = limbs[numLimbs - 1]; top != 0; top >>>= 8)
+				++topBytes;
 
-		return copyOfRange(temp, j - zeroCount, temp.length);
+		final byte[] output = new byte[zeroCount + (numLimbs > 0 ? (numLimbs - 1) * 4 + topBytes : 0)];
+		for (int i = 0, b = output.length - 1; b >= zeroCount; i++)
+			for (int n = 0, limb = limbs[i]; n < 4 && b >= zeroCount; n++, limb >>>= 8)
+				output[b--] = (byte) limb;
+
+		return output;
 	}
 
 	//
-	// number -> number / 43, returns number % 43
+	// number -> number / LIMB_BASE, returns number % LIMB_BASE
 	//
-	private static byte divmod43(final byte[] number, final int startAt)
+	private static long divmod(final int[] limbs, final int startAt)
 	{
-		int remainder = 0;
-		for (int i = startAt; i < number.length; i++)
+		long remainder = 0;
+		for (int i = startAt; i < limbs.length; i++)
 		{
-			final int digit256 = (int) number[i] & 0xFF;
-			final int temp = remainder * 256 + digit256;
+			final long temp = remainder << 32 | limbs[i] & 0xffffffffl;
 
-			number[i] = (byte) (temp / 43);
+			limbs[i] = (int) (temp / LIMB_BASE);
 
-			remainder = temp % 43;
+			remainder = temp % LIMB_BASE;
 		}
 
-		return (byte) remainder;
+		return remainder;
 	}
 
 	//
-	// number -> number / 256, returns number % 256
+	// number -> number * multiplier + addend, returns new number of limbs
 	//
-	private static byte divmod256(final byte[] number43, final int startAt)
+	private static int mulAdd(final int[] limbs, final int numLimbs, final long multiplier, final long addend)
 	{
-		int remainder = 0;
-		for (int i = startAt; i < number43.length; i++)
+		long carry = addend;
+		for (int i = 0; i < numLimbs; i++)
 		{
-			final int digit58 = (int) number43[i] & 0xFF;
-			final int temp = remainder * 43 + digit58;
+			final long temp = (limbs[i] & 0xffffffffl) * multiplier + carry;
 
-			number43[i] = (byte) (temp / 256);
+			limbs[i] = (int) temp;
 
-			remainder = temp % 256;
+			carry = temp >>> 32;
 		}
 
-		return (byte) remainder;
-	}
-
-	private static byte[] copyOfRange(final byte[] source, final int from, final int to)
-	{
-		final byte[] range = new byte[to - from];
-		System.arraycopy(source, from, range, 0, range.length);
+		if (carry == 0)
+			return numLimbs;
 
-		return range;
+		limbs[numLimbs] = (int) carry;
+		return numLimbs + 1;
 	}
 }
@@ -77,7 +77,7 @@ public class BitmapFragment extends DialogFragment
 		dialog.setCanceledOnTouchOutside(true);
 
 		final ImageView imageView = (ImageView) dialog.findViewById(R.id.bitmap_dialog_image);
-		imageView.setImageBitmap(bitmap);
+		imageView.setImageDrawable(Qr.bitmapDrawable(getResources(), bitmap));
 		imageView.setOnClickListener(new View.OnClickListener()
 		{
 			@Override
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP GET that remembers the ETag and Last-Modified validators of each URL along with the raw response body. Repeated
+ * requests are conditional, and a 304 Not Modified answer is served from the stored body.
+ *
+ * @author Andreas Schildbach
+ */
+public final class ConditionalGet
+{
+	public static final class Result
+	{
+		/** decompressed response body, stored in the cache directory */
+		public final File body;
+		/** true if the server answered 304 and the body is the stored one */
+		public final boolean notModified;
+		/** bytes transferred for the body, before decompression */
+		public final long bytesTransferred;
+		/** on a 304, bytes the stored body took to transfer when it was fetched */
+		public final long bytesSaved;
+
+		private Result(@Nonnull final File body, final boolean notModified, final long bytesTransferred, final long bytesSaved)
+		{
+			this.body = body;
+			this.notModified = notModified;
+			this.bytesTransferred = bytesTransferred;
+			this.bytesSaved = bytesSaved;
+		}
+	}
+
+	private final File cacheDir;
+
+	private static final int META_VERSION = 2;
+
+	private static final Logger log = LoggerFactory.getLogger(ConditionalGet.class);
+
+	public ConditionalGet(@Nonnull final File cacheDir)
+	{
+		this.cacheDir = cacheDir;
+	}
+
+	/**
+	 * @return response, or null if the server answered with anything but 200 or 304
+	 */
+	@CheckForNull
+	public Result get(@Nonnull final URL url, @Nonnull final String userAgent, final int timeoutMs) throws IOException
+	{
+		final long start = System.currentTimeMillis();
+
+		final String key = url.toString().replaceAll("[^A-Za-z0-9]", "_");
+		final File bodyFile = new File(cacheDir, key);
+		final File metaFile = new File(cacheDir, key + ".meta");
+
+		String eTag = null;
+		String lastModified = null;
+		long storedBytesTransferred = 0;
+		if (bodyFile.exists() && metaFile.exists())
+		{
+			try
+			{
+				final DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(metaFile)));
+				try
+				{
+					if (is.readInt() == META_VERSION)
+					{
+						eTag = is.readBoolean() ? is.readUTF() : null;
+						lastModified = is.readBoolean() ? is.readUTF() : null;
+						storedBytesTransferred = is.readLong();
+					}
+				}
+				finally
+				{
+					is.close();
+				}
+			}
+			catch (final IOException x)
+			{
+				log.info("problem reading " + metaFile, x);
+			}
+		}
+
+		final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+		try
+		{
+			connection.setInstanceFollowRedirects(false);
+			connection.setConnectTimeout(timeoutMs);
+			connection.setReadTimeout(timeoutMs);
+			connection.addRequestProperty("User-Agent", userAgent);
+			connection.addRequestProperty("Accept-Encoding", "gzip");
+			if (eTag != null)
+				connection.addRequestProperty("If-None-Match", eTag);
+			if (lastModified != null)
+				connection.addRequestProperty("If-Modified-Since", lastModified);
+			connection.connect();
+
+			final int responseCode = connection.getResponseCode();
+
+			if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && (eTag != null || lastModified != null))
+			{
+				log.info("{} not modified, {} bytes saved, took {} ms", url, storedBytesTransferred, System.currentTimeMillis() - start);
+
+				return new Result(bodyFile, true, 0, storedBytesTransferred);
+			}
+			else if (responseCode == HttpURLConnection.HTTP_OK)
+			{
+				final String contentEncoding = connection.getContentEncoding();
+				final CountingInputStream countingIs = new CountingInputStream(new BufferedInputStream(connection.getInputStream(), 1024));
+				final InputStream is = "gzip".equalsIgnoreCase(contentEncoding) ? new GZIPInputStream(countingIs) : countingIs;
+
+				cacheDir.mkdirs();
+				final File tmpFile = new File(cacheDir, key + ".tmp");
+				final OutputStream os = new FileOutputStream(tmpFile);
+				final long length;
+				try
+				{
+					length = Io.copy(is, os);
+				}
+				finally
+				{
+					os.close();
+					is.close();
+				}
+
+				// the body goes first, so stale validators are never paired with a new body
+				metaFile.delete();
+				if (!tmpFile.renameTo(bodyFile))
+					throw new IOException("cannot rename " + tmpFile + " to " + bodyFile);
+				writeMeta(metaFile, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"), countingIs.count);
+
+				log.info("fetched {} ({}), {} bytes transferred, {} bytes body, took {} ms", url, contentEncoding, countingIs.count, length,
+						System.currentTimeMillis() - start);
+
+				return new Result(bodyFile, false, countingIs.count, 0);
+			}
+			else
+			{
+				log.warn("http status {} when fetching {}", responseCode, url);
+
+				return null;
+			}
+		}
+		finally
+		{
+			connection.disconnect();
+		}
+	}
+
+	private static void writeMeta(@Nonnull final File metaFile, @CheckForNull final String eTag, @CheckForNull final String lastModified,
+			final long bytesTransferred) throws IOException
+	{
+		if (eTag == null && lastModified == null)
+			return;
+
+		final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(metaFile)));
+		try
+		{
+			os.writeInt(META_VERSION);
+			os.writeBoolean(eTag != null);
+			if (eTag != null)
+				os.writeUTF(eTag);
+			os.writeBoolean(lastModified != null);
+			if (lastModified != null)
+				os.writeUTF(lastModified);
+			os.writeLong(bytesTransferred);
+		}
+		finally
+		{
+			os.close();
+		}
+	}
+
+	private static final class CountingInputStream extends FilterInputStream
+	{
+		public long count = 0;
+
+		public CountingInputStream(@Nonnull final InputStream in)
+		{
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			final int b = super.read();
+			if (b >= 0)
+				count++;
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] buffer, final int offset, final int length) throws IOException
+		{
+			final int n = super.read(buffer, offset, length);
+			if (n > 0)
+				count += n;
+			return n;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException
+		{
+			final long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+}
@@ -19,10 +19,14 @@ package com.paybullion.util;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
 import java.security.SecureRandom;
+import java.util.Arrays;
 
 import javax.annotation.Nonnull;
 
@@ -37,11 +41,8 @@ import org.spongycastle.crypto.modes.CBCBlockCipher;
 import org.spongycastle.crypto.paddings.PaddedBufferedBlockCipher;
 import org.spongycastle.crypto.params.ParametersWithIV;
 
-import android.util.Base64;
-import com.paybullion.Constants;
-
 /**
- * This class encrypts and decrypts a string in a manner that is compatible with OpenSSL.
+ * This class encrypts and decrypts streams in a manner that is compatible with OpenSSL.
  * 
  * If you encrypt a string with this class you can decrypt it with the OpenSSL command: openssl enc -d -aes-256-cbc -a
  * -in cipher.txt -out plain.txt -pass pass:aTestPassword
@@ -55,6 +56,18 @@ import com.paybullion.Constants;
  */
 public class Crypto
 {
+	/**
+	 * The padding of the last block didn't check out. This almost always means the password is wrong, but it is only
+	 * noticed at the end of the stream, after the bytes before have already been handed out.
+	 */
+	public static final class BadPasswordException extends IOException
+	{
+		public BadPasswordException(@Nonnull final Throwable cause)
+		{
+			super("bad password", cause);
+		}
+	}
+
 	/**
 	 * number of times the password & salt are hashed during key creation.
 	 */
@@ -75,6 +88,8 @@ public class Crypto
 	 */
 	private static final int SALT_LENGTH = 8;
 
+	private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
 	/**
 	 * OpenSSL salted prefix text.
 	 */
@@ -83,16 +98,23 @@ public class Crypto
 	/**
 	 * OpenSSL salted prefix bytes - also used as magic number for encrypted key file.
 	 */
-	private static final byte[] OPENSSL_SALTED_BYTES = OPENSSL_SALTED_TEXT.getBytes(Constants.UTF_8);
+	private static final byte[] OPENSSL_SALTED_BYTES = OPENSSL_SALTED_TEXT.getBytes(US_ASCII);
 
 	/**
-	 * Magic text that appears at the beginning of every OpenSSL encrypted file. Used in identifying encrypted key
-	 * files.
+	 * Magic text that appears at the beginning of every OpenSSL encrypted file: the base64 encoding of the salted prefix,
+	 * as far as it does not depend on the salt. Used in identifying encrypted key files.
 	 */
-	private static final String OPENSSL_MAGIC_TEXT = new String(encodeBase64(Crypto.OPENSSL_SALTED_BYTES), Constants.UTF_8).substring(0,
-			Crypto.NUMBER_OF_CHARACTERS_TO_MATCH_IN_OPENSSL_MAGIC_TEXT);
+	private static final String OPENSSL_MAGIC_TEXT = "U2FsdGVkX1";
 
-	private static final int NUMBER_OF_CHARACTERS_TO_MATCH_IN_OPENSSL_MAGIC_TEXT = 10;
+	/**
+	 * Size of the buffers used for streaming.
+	 */
+	private static final int BUFFER_SIZE = 4096;
+
+	/**
+	 * Base64 line length, same as android.util.Base64.DEFAULT.
+	 */
+	private static final int BASE64_LINE_LENGTH = 76;
 
 	private static final SecureRandom secureRandom = new SecureRandom();
 
@@ -116,184 +138,468 @@ public class Crypto
 	}
 
 	/**
-	 * Password based encryption using AES - CBC 256 bits.
+	 * Password based encryption using AES - CBC 256 bits. Bytes written to the returned stream are encrypted and base64
+	 * encoded on the fly, using fixed size buffers. Closing the stream writes the final block and closes the underlying
+	 * stream.
 	 * 
-	 * @param plainText
-	 *            The text to encrypt
+	 * @param cipherOut
+	 *            The stream to write the cipher text to
 	 * @param password
 	 *            The password to use for encryption
-	 * @return The encrypted string
+	 * @return The stream to write the plain bytes to
 	 * @throws IOException
 	 */
-	public static String encrypt(@Nonnull final String plainText, @Nonnull final char[] password) throws IOException
+	public static OutputStream encrypt(@Nonnull final OutputStream cipherOut, @Nonnull final char[] password) throws IOException
 	{
-		final byte[] plainTextAsBytes = plainText.getBytes(Constants.UTF_8);
-
-		final byte[] encryptedBytes = encrypt(plainTextAsBytes, password);
+		// Generate salt - each encryption call has a different salt.
+		final byte[] salt = new byte[SALT_LENGTH];
+		secureRandom.nextBytes(salt);
 
-		// OpenSSL prefixes the salt bytes + encryptedBytes with Salted___ and then base64 encodes it
-		final byte[] encryptedBytesPlusSaltedText = concat(OPENSSL_SALTED_BYTES, encryptedBytes);
+		// OpenSSL prefixes the encrypted bytes with Salted__ and the salt, and then base64 encodes it all
+		final OutputStream base64Out = new Base64OutputStream(cipherOut);
+		base64Out.write(OPENSSL_SALTED_BYTES);
+		base64Out.write(salt);
 
-		return new String(encodeBase64(encryptedBytesPlusSaltedText), Constants.UTF_8);
+		return new CipherOutputStream(base64Out, cipher(true, password, salt));
 	}
 
 	/**
-	 * Password based encryption using AES - CBC 256 bits.
+	 * Decrypt a stream previously encrypted with this class, or by OpenSSL. The salt is read right away; everything else
+	 * is decoded and decrypted as it is read, using fixed size buffers. A wrong password is only detected when reaching
+	 * the end of the stream, by a {@link BadPasswordException}.
 	 * 
-	 * @param plainBytes
-	 *            The bytes to encrypt
+	 * @param cipherIn
+	 *            The stream to read the cipher text from
 	 * @param password
-	 *            The password to use for encryption
-	 * @return SALT_LENGTH bytes of salt followed by the encrypted bytes.
+	 *            password to use for decryption
+	 * @return The stream to read the decrypted bytes from
 	 * @throws IOException
 	 */
-	private static byte[] encrypt(final byte[] plainTextAsBytes, final char[] password) throws IOException
+	public static InputStream decrypt(@Nonnull final InputStream cipherIn, @Nonnull final char[] password) throws IOException
 	{
-		try
+		final InputStream base64In = new Base64InputStream(cipherIn);
+
+		final byte[] header = new byte[OPENSSL_SALTED_BYTES.length + SALT_LENGTH];
+		for (int offset = 0; offset < header.length;)
 		{
-			// Generate salt - each encryption call has a different salt.
-			final byte[] salt = new byte[SALT_LENGTH];
-			secureRandom.nextBytes(salt);
+			final int read = base64In.read(header, offset, header.length - offset);
+			if (read == -1)
+				throw new IOException("out of salt");
+			offset += read;
+		}
+
+		final byte[] salt = new byte[SALT_LENGTH];
+		System.arraycopy(header, OPENSSL_SALTED_BYTES.length, salt, 0, SALT_LENGTH);
+
+		return new CipherInputStream(base64In, cipher(false, password, salt));
+	}
+
+	private static BufferedBlockCipher cipher(final boolean forEncryption, final char[] password, final byte[] salt)
+	{
+		final BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESFastEngine()));
+		cipher.init(forEncryption, getAESPasswordKey(password, salt));
 
-			final ParametersWithIV key = (ParametersWithIV) getAESPasswordKey(password, salt);
+		return cipher;
+	}
 
-			// The following code uses an AES cipher to encrypt the message.
-			final BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESFastEngine()));
-			cipher.init(true, key);
-			final byte[] encryptedBytes = new byte[cipher.getOutputSize(plainTextAsBytes.length)];
-			final int length = cipher.processBytes(plainTextAsBytes, 0, plainTextAsBytes.length, encryptedBytes, 0);
+	private static final class CipherOutputStream extends FilterOutputStream
+	{
+		private final BufferedBlockCipher cipher;
+		private final byte[] buf = new byte[BUFFER_SIZE];
+		private final byte[] singleByte = new byte[1];
 
-			cipher.doFinal(encryptedBytes, length);
+		public CipherOutputStream(final OutputStream out, final BufferedBlockCipher cipher)
+		{
+			super(out);
 
-			// The result bytes are the SALT_LENGTH bytes followed by the encrypted bytes.
-			return concat(salt, encryptedBytes);
+			this.cipher = cipher;
 		}
-		catch (final InvalidCipherTextException x)
+
+		@Override
+		public void write(final int b) throws IOException
 		{
-			throw new IOException("Could not encrypt bytes", x);
+			singleByte[0] = (byte) b;
+			write(singleByte, 0, 1);
 		}
-		catch (final DataLengthException x)
+
+		@Override
+		public void write(final byte[] b, int off, int len) throws IOException
 		{
-			throw new IOException("Could not encrypt bytes", x);
+			try
+			{
+				while (len > 0)
+				{
+					// leaves room for the block the cipher may be holding back
+					final int chunk = Math.min(len, BUFFER_SIZE - cipher.getBlockSize());
+					out.write(buf, 0, cipher.processBytes(b, off, chunk, buf, 0));
+					off += chunk;
+					len -= chunk;
+				}
+			}
+			catch (final DataLengthException x)
+			{
+				throw new IOException("Could not encrypt bytes", x);
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			try
+			{
+				out.write(buf, 0, cipher.doFinal(buf, 0));
+			}
+			catch (final InvalidCipherTextException x)
+			{
+				throw new IOException("Could not encrypt bytes", x);
+			}
+			catch (final DataLengthException x)
+			{
+				throw new IOException("Could not encrypt bytes", x);
+			}
+			finally
+			{
+				out.close();
+			}
 		}
 	}
 
-	/**
-	 * Decrypt text previously encrypted with this class.
-	 * 
-	 * @param textToDecode
-	 *            The code to decrypt
-	 * @param password
-	 *            password to use for decryption
-	 * @return The decrypted text
-	 * @throws IOException
-	 */
-	public static String decrypt(@Nonnull final String textToDecode, @Nonnull final char[] password) throws IOException
+	private static final class CipherInputStream extends FilterInputStream
 	{
-		final byte[] decodeTextAsBytes = decodeBase64(textToDecode.getBytes(Constants.UTF_8));
+		private final BufferedBlockCipher cipher;
+		private final byte[] inBuf = new byte[BUFFER_SIZE];
+		private final byte[] buf;
+		private int bufPos = 0;
+		private int bufEnd = 0;
+		private boolean eof = false;
+
+		public CipherInputStream(final InputStream in, final BufferedBlockCipher cipher)
+		{
+			super(in);
+
+			this.cipher = cipher;
+			this.buf = new byte[BUFFER_SIZE + 2 * cipher.getBlockSize()]; // plus what the cipher may be holding back
+		}
 
-		if (decodeTextAsBytes.length < OPENSSL_SALTED_BYTES.length)
-			throw new IOException("out of salt");
+		@Override
+		public int read() throws IOException
+		{
+			if (!fill())
+				return -1;
 
-		final byte[] cipherBytes = new byte[decodeTextAsBytes.length - OPENSSL_SALTED_BYTES.length];
-		System.arraycopy(decodeTextAsBytes, OPENSSL_SALTED_BYTES.length, cipherBytes, 0, decodeTextAsBytes.length - OPENSSL_SALTED_BYTES.length);
+			return buf[bufPos++] & 0xff;
+		}
 
-		final byte[] decryptedBytes = decrypt(cipherBytes, password);
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException
+		{
+			if (len == 0)
+				return 0;
+			if (!fill())
+				return -1;
+
+			final int n = Math.min(len, bufEnd - bufPos);
+			System.arraycopy(buf, bufPos, b, off, n);
+			bufPos += n;
+
+			return n;
+		}
 
-		return new String(decryptedBytes, Constants.UTF_8).trim();
+		@Override
+		public long skip(final long n) throws IOException
+		{
+			long skipped = 0;
+			while (skipped < n && fill())
+			{
+				final int chunk = (int) Math.min(n - skipped, bufEnd - bufPos);
+				bufPos += chunk;
+				skipped += chunk;
+			}
+
+			return skipped;
+		}
+
+		@Override
+		public int available()
+		{
+			return bufEnd - bufPos;
+		}
+
+		@Override
+		public boolean markSupported()
+		{
+			return false;
+		}
+
+		/**
+		 * @return true if there are bytes to read, false if at the end
+		 */
+		private boolean fill() throws IOException
+		{
+			try
+			{
+				while (bufPos == bufEnd && !eof)
+				{
+					bufPos = 0;
+
+					final int read = in.read(inBuf, 0, inBuf.length);
+					if (read == -1)
+					{
+						eof = true;
+						bufEnd = cipher.doFinal(buf, 0);
+					}
+					else
+					{
+						bufEnd = cipher.processBytes(inBuf, 0, read, buf, 0);
+					}
+				}
+
+				return bufPos < bufEnd;
+			}
+			catch (final InvalidCipherTextException x)
+			{
+				throw new BadPasswordException(x);
+			}
+			catch (final DataLengthException x)
+			{
+				throw new IOException("Could not decrypt input string", x);
+			}
+		}
+	}
+
+	private static final char[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+	private static final byte[] BASE64_VALUES = new byte[128];
+
+	static
+	{
+		Arrays.fill(BASE64_VALUES, (byte) -1);
+		for (int i = 0; i < BASE64_ALPHABET.length; i++)
+			BASE64_VALUES[BASE64_ALPHABET[i]] = (byte) i;
 	}
 
 	/**
-	 * Decrypt bytes previously encrypted with this class.
-	 * 
-	 * @param bytesToDecode
-	 *            The bytes to decrypt
-	 * @param passwordbThe
-	 *            password to use for decryption
-	 * @return The decrypted bytes
-	 * @throws IOException
+	 * Base64 in lines of 76 characters, each terminated by a newline, like android.util.Base64.DEFAULT.
 	 */
-	private static byte[] decrypt(final byte[] bytesToDecode, final char[] password) throws IOException
+	private static final class Base64OutputStream extends FilterOutputStream
 	{
-		try
+		private final byte[] lineBuf = new byte[BASE64_LINE_LENGTH + 1];
+		private int linePos = 0;
+		private int group = 0;
+		private int groupSize = 0;
+
+		public Base64OutputStream(final OutputStream out)
 		{
-			// separate the salt and bytes to decrypt
-			final byte[] salt = new byte[SALT_LENGTH];
+			super(out);
+		}
 
-			System.arraycopy(bytesToDecode, 0, salt, 0, SALT_LENGTH);
+		@Override
+		public void write(final int b) throws IOException
+		{
+			group = (group << 8) | (b & 0xff);
+			if (++groupSize == 3)
+			{
+				lineBuf[linePos++] = (byte) BASE64_ALPHABET[(group >> 18) & 0x3f];
+				lineBuf[linePos++] = (byte) BASE64_ALPHABET[(group >> 12) & 0x3f];
+				lineBuf[linePos++] = (byte) BASE64_ALPHABET[(group >> 6) & 0x3f];
+				lineBuf[linePos++] = (byte) BASE64_ALPHABET[group & 0x3f];
+				group = 0;
+				groupSize = 0;
+
+				if (linePos == BASE64_LINE_LENGTH)
+					writeLine();
+			}
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException
+		{
+			for (int i = off; i < off + len; i++)
+				write(b[i]);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			try
+			{
+				if (groupSize > 0)
+				{
+					final int padded = group << (8 * (3 - groupSize));
+					lineBuf[linePos++] = (byte) BASE64_ALPHABET[(padded >> 18) & 0x3f];
+					lineBuf[linePos++] = (byte) BASE64_ALPHABET[(padded >> 12) & 0x3f];
+					lineBuf[linePos++] = (byte) (groupSize == 2 ? BASE64_ALPHABET[(padded >> 6) & 0x3f] : '=');
+					lineBuf[linePos++] = '=';
+				}
+
+				if (linePos > 0)
+					writeLine();
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+
+		private void writeLine() throws IOException
+		{
+			lineBuf[linePos++] = '\n';
+			out.write(lineBuf, 0, linePos);
+			linePos = 0;
+		}
+	}
 
-			final byte[] cipherBytes = new byte[bytesToDecode.length - SALT_LENGTH];
-			System.arraycopy(bytesToDecode, SALT_LENGTH, cipherBytes, 0, bytesToDecode.length - SALT_LENGTH);
+	/**
+	 * Decodes base64, skipping whitespace. Like android.util.Base64, the final padding may be missing.
+	 */
+	private static final class Base64InputStream extends FilterInputStream
+	{
+		private final byte[] inBuf = new byte[BUFFER_SIZE];
+		private final byte[] buf = new byte[BUFFER_SIZE / 4 * 3 + 2];
+		private int bufPos = 0;
+		private int bufEnd = 0;
+		private boolean eof = false;
+		private int group = 0;
+		private int groupSize = 0;
+		private boolean padded = false;
+
+		public Base64InputStream(final InputStream in)
+		{
+			super(in);
+		}
 
-			final ParametersWithIV key = (ParametersWithIV) getAESPasswordKey(password, salt);
+		@Override
+		public int read() throws IOException
+		{
+			if (!fill())
+				return -1;
 
-			// decrypt the message
-			final BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESFastEngine()));
-			cipher.init(false, key);
+			return buf[bufPos++] & 0xff;
+		}
 
-			final byte[] decryptedBytes = new byte[cipher.getOutputSize(cipherBytes.length)];
-			final int length = cipher.processBytes(cipherBytes, 0, cipherBytes.length, decryptedBytes, 0);
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException
+		{
+			if (len == 0)
+				return 0;
+			if (!fill())
+				return -1;
 
-			cipher.doFinal(decryptedBytes, length);
+			final int n = Math.min(len, bufEnd - bufPos);
+			System.arraycopy(buf, bufPos, b, off, n);
+			bufPos += n;
 
-			return decryptedBytes;
+			return n;
 		}
-		catch (final InvalidCipherTextException x)
+
+		@Override
+		public int available()
 		{
-			throw new IOException("Could not decrypt input string", x);
+			return bufEnd - bufPos;
 		}
-		catch (final DataLengthException x)
+
+		@Override
+		public boolean markSupported()
 		{
-			throw new IOException("Could not decrypt input string", x);
+			return false;
 		}
-	}
 
-	private static byte[] encodeBase64(byte[] decoded)
-	{
-		return Base64.encode(decoded, Base64.DEFAULT);
-	}
+		private boolean fill() throws IOException
+		{
+			while (bufPos == bufEnd && !eof)
+			{
+				bufPos = 0;
+				bufEnd = 0;
 
-	private static byte[] decodeBase64(byte[] encoded) throws IOException
-	{
-		try
+				final int read = in.read(inBuf, 0, inBuf.length);
+				if (read == -1)
+				{
+					eof = true;
+					finish();
+				}
+				else
+				{
+					decode(read);
+				}
+			}
+
+			return bufPos < bufEnd;
+		}
+
+		private void decode(final int numChars) throws IOException
 		{
-			return Base64.decode(encoded, Base64.DEFAULT);
+			for (int i = 0; i < numChars; i++)
+			{
+				final int c = inBuf[i] & 0xff;
+				if (c == ' ' || c == '\n' || c == '\r' || c == '\t')
+					continue;
+
+				if (c == '=')
+				{
+					padded = true;
+					continue;
+				}
+
+				final int value = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+				if (value == -1 || padded)
+					throw new IOException("illegal base64 character: " + (char) c);
+
+				group = (group << 6) | value;
+				if (++groupSize == 4)
+				{
+					buf[bufEnd++] = (byte) (group >> 16);
+					buf[bufEnd++] = (byte) (group >> 8);
+					buf[bufEnd++] = (byte) group;
+					group = 0;
+					groupSize = 0;
+				}
+			}
 		}
-		catch (final IllegalArgumentException x)
+
+		private void finish() throws IOException
 		{
-			throw new IOException("illegal base64 padding", x);
+			if (groupSize == 1)
+				throw new IOException("illegal base64 padding");
+
+			if (groupSize > 1)
+			{
+				final int bits = group << (6 * (4 - groupSize));
+				buf[bufEnd++] = (byte) (bits >> 16);
+				if (groupSize == 3)
+					buf[bufEnd++] = (byte) (bits >> 8);
+			}
 		}
 	}
 
 	/**
-	 * Concatenate two byte arrays.
+	 * @return true if the given start of a file is the start of an OpenSSL encrypted file
 	 */
-	private static byte[] concat(final byte[] arrayA, final byte[] arrayB)
+	public static boolean isEncrypted(@Nonnull final byte[] header, final int length)
 	{
-		final byte[] result = new byte[arrayA.length + arrayB.length];
-		System.arraycopy(arrayA, 0, result, 0, arrayA.length);
-		System.arraycopy(arrayB, 0, result, arrayA.length, arrayB.length);
+		if (length < OPENSSL_MAGIC_TEXT.length())
+			return false;
+
+		for (int i = 0; i < OPENSSL_MAGIC_TEXT.length(); i++)
+			if (header[i] != OPENSSL_MAGIC_TEXT.charAt(i))
+				return false;
 
-		return result;
+		return true;
 	}
 
 	public final static FileFilter OPENSSL_FILE_FILTER = new FileFilter()
 	{
-		private final char[] buf = new char[OPENSSL_MAGIC_TEXT.length()];
-
 		@Override
 		public boolean accept(final File file)
 		{
-			Reader in = null;
+			InputStream in = null;
 			try
 			{
-				in = new InputStreamReader(new FileInputStream(file), Constants.UTF_8);
-				if (in.read(buf) == -1)
-					return false;
-				final String str = new String(buf);
-				if (!str.toString().equals(OPENSSL_MAGIC_TEXT))
-					return false;
-				return true;
+				in = new FileInputStream(file);
+				final byte[] header = new byte[OPENSSL_MAGIC_TEXT.length()];
+				int length = 0;
+				for (int read; length < header.length && (read = in.read(header, length, header.length - length)) != -1;)
+					length += read;
+
+				return isEncrypted(header, length);
 			}
 			catch (final IOException x)
 			{
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.util;
+
+import java.math.RoundingMode;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Checked arithmetic on fixed point amounts held in primitive longs, such as nanocoins or exchange rates with 8 decimals.
+ * Intermediate products are kept in 128 bits, so a * b / c is exact as long as the result fits into a long. Any overflow
+ * throws an {@link ArithmeticException} rather than wrapping around.
+ *
+ * @author Andreas Schildbach
+ */
+public final class FixedPoint
+{
+	private FixedPoint()
+	{
+	}
+
+	public static long add(final long a, final long b)
+	{
+		final long result = a + b;
+
+		// overflow if both operands have the same sign and the result has the other
+		if (((a ^ result) & (b ^ result)) < 0)
+			throw new ArithmeticException("overflow: " + a + " + " + b);
+
+		return result;
+	}
+
+	public static long multiply(final long a, final long b)
+	{
+		return mulDiv(a, b, 1, RoundingMode.UNNECESSARY);
+	}
+
+	/**
+	 * @return a * b / divisor, rounded as requested
+	 * @throws ArithmeticException
+	 *             if the divisor is zero, the result doesn't fit into a long, or rounding is
+	 *             {@link RoundingMode#UNNECESSARY} and the result is not exact
+	 */
+	public static long mulDiv(final long a, final long b, final long divisor, @Nonnull final RoundingMode roundingMode)
+	{
+		if (divisor == 0)
+			throw new ArithmeticException("division by zero");
+		if (a == Long.MIN_VALUE || b == Long.MIN_VALUE || divisor == Long.MIN_VALUE)
+			throw new ArithmeticException("overflow: " + a + " * " + b + " / " + divisor);
+
+		final boolean negative = (a < 0) ^ (b < 0) ^ (divisor < 0);
+		final long x = Math.abs(a);
+		final long y = Math.abs(b);
+		final long d = Math.abs(divisor);
+
+		// 128 bit product of two 63 bit magnitudes, from 32 bit halves
+		final long x0 = x & 0xffffffffL, x1 = x >>> 32;
+		final long y0 = y & 0xffffffffL, y1 = y >>> 32;
+		final long p00 = x0 * y0;
+		final long p01 = x0 * y1;
+		final long p10 = x1 * y0;
+		final long p11 = x1 * y1;
+		final long middle = (p00 >>> 32) + (p01 & 0xffffffffL) + (p10 & 0xffffffffL);
+		final long lo = (middle << 32) | (p00 & 0xffffffffL);
+		final long hi = p11 + (p01 >>> 32) + (p10 >>> 32) + (middle >>> 32);
+
+		long quotient;
+		long remainder;
+
+		if (hi == 0 && lo >= 0)
+		{
+			quotient = lo / d;
+			remainder = lo % d;
+		}
+		else
+		{
+			// the quotient has to fit into 64 bits, which means hi < d
+			if (hi >= d)
+				throw new ArithmeticException("overflow: " + a + " * " + b + " / " + divisor);
+
+			quotient = divide128(hi, lo, d);
+			remainder = lo - quotient * d; // exact remainder, since it's smaller than d
+
+			if (quotient < 0)
+				throw new ArithmeticException("overflow: " + a + " * " + b + " / " + divisor);
+		}
+
+		if (remainder != 0 && roundAwayFromZero(quotient, remainder, d, negative, roundingMode))
+		{
+			if (quotient == Long.MAX_VALUE)
+				throw new ArithmeticException("overflow: " + a + " * " + b + " / " + divisor);
+			quotient++;
+		}
+
+		return negative ? -quotient : quotient;
+	}
+
+	private static final long B = 1l << 32;
+	private static final long MASK = B - 1;
+
+	/**
+	 * Unsigned division of the 128 bit number hi:lo by d, using two 64 by 32 bit steps on the normalized divisor. See
+	 * divlu in Hacker's Delight, 9-4. Requires hi &lt; d.
+	 */
+	private static long divide128(final long hi, final long lo, long d)
+	{
+		final int shift = Long.numberOfLeadingZeros(d);
+		d <<= shift;
+		final long dHi = d >>> 32;
+		final long dLo = d & MASK;
+
+		final long n32 = (hi << shift) | (shift == 0 ? 0 : lo >>> (64 - shift));
+		final long n10 = lo << shift;
+		final long n1 = n10 >>> 32;
+		final long n0 = n10 & MASK;
+
+		long q1 = divideUnsigned(n32, dHi);
+		long rHat = n32 - q1 * dHi;
+		while (q1 >= B || greaterUnsigned(q1 * dLo, (rHat << 32) | n1))
+		{
+			q1--;
+			rHat += dHi;
+			if (rHat >= B)
+				break;
+		}
+
+		final long n21 = (n32 << 32) + n1 - q1 * d;
+
+		long q0 = divideUnsigned(n21, dHi);
+		rHat = n21 - q0 * dHi;
+		while (q0 >= B || greaterUnsigned(q0 * dLo, (rHat << 32) | n0))
+		{
+			q0--;
+			rHat += dHi;
+			if (rHat >= B)
+				break;
+		}
+
+		return (q1 << 32) + q0;
+	}
+
+	private static long divideUnsigned(final long dividend, final long divisor)
+	{
+		if (dividend >= 0)
+			return dividend / divisor;
+
+		// divisor is positive here
+		long quotient = ((dividend >>> 1) / divisor) << 1;
+		if (!greaterUnsigned(divisor, dividend - quotient * divisor))
+			quotient++;
+		return quotient;
+	}
+
+	private static boolean greaterUnsigned(final long a, final long b)
+	{
+		return (a ^ Long.MIN_VALUE) > (b ^ Long.MIN_VALUE);
+	}
+
+	private static boolean roundAwayFromZero(final long quotient, final long remainder, final long divisor, final boolean negative,
+			@Nonnull final RoundingMode roundingMode)
+	{
+		// compare the remainder to half the divisor without overflowing
+		final long otherPart = divisor - remainder;
+
+		switch (roundingMode)
+		{
+			case DOWN:
+				return false;
+			case UP:
+				return true;
+			case FLOOR:
+				return negative;
+			case CEILING:
+				return !negative;
+			case HALF_DOWN:
+				return remainder > otherPart;
+			case HALF_UP:
+				return remainder >= otherPart;
+			case HALF_EVEN:
+				return remainder > otherPart || (remainder == otherPart && (quotient & 1) != 0);
+			case UNNECESSARY:
+			default:
+				throw new ArithmeticException("rounding necessary");
+		}
+	}
+}
@@ -20,7 +20,6 @@ package com.paybullion.util;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.Locale;
 
 import javax.annotation.Nonnull;
 
@@ -48,64 +47,161 @@ public class GenericUtils
 	public static String formatValue(@Nonnull final BigInteger value, @Nonnull final String plusSign, @Nonnull final String minusSign,
 			final int precision, final int shift)
 	{
-		long longValue = value.longValue();
+		return formatValue(new StringBuilder(MAX_FORMATTED_LENGTH), value.longValue(), plusSign, minusSign, precision, shift).toString();
+	}
+
+	/** digits of a long, a decimal point and up to 8 decimals, without the sign */
+	public static final int MAX_FORMATTED_LENGTH = 19 + 1 + 8;
+
+	/**
+	 * Appends the value, rounded half away from zero to the given precision. Trailing zeros are dropped in steps, so the
+	 * number of decimals is 2, 4, 6 or 8 for BTC and 2, 4 or 5 for mBTC. Doesn't allocate as long as the builder has room
+	 * for the sign and {@link #MAX_FORMATTED_LENGTH} more chars.
+	 *
+	 * @return the builder, for chaining
+	 */
+	public static StringBuilder formatValue(@Nonnull final StringBuilder builder, final long value, @Nonnull final String plusSign,
+			@Nonnull final String minusSign, final int precision, final int shift)
+	{
+		final long absValue = Math.abs(round(value, precision, shift));
+		final long unit = shift == 0 ? ONE_BTC_INT : ONE_MBTC_INT;
+		final long coins = absValue / unit;
+		final int satoshis = (int) (absValue % unit);
+		final int decimals = decimals(satoshis, shift);
+
+		builder.append(value < 0 ? minusSign : plusSign);
+
+		final int numCoinDigits = numDigits(coins);
+		final int start = builder.length();
+		builder.setLength(start + numCoinDigits + 1 + decimals);
+
+		long remaining = coins;
+		for (int i = start + numCoinDigits - 1; i >= start; i--)
+		{
+			builder.setCharAt(i, (char) ('0' + remaining % 10));
+			remaining /= 10;
+		}
+
+		builder.setCharAt(start + numCoinDigits, '.');
+
+		int fraction = satoshis / POWERS_OF_TEN[(shift == 0 ? 8 : 5) - decimals];
+		for (int i = start + numCoinDigits + decimals; i > start + numCoinDigits; i--)
+		{
+			builder.setCharAt(i, (char) ('0' + fraction % 10));
+			fraction /= 10;
+		}
+
+		return builder;
+	}
+
+	/**
+	 * Same as {@link #formatValue(StringBuilder, long, String, String, int, int)}, but writes into a char array.
+	 *
+	 * @return offset after the last char written
+	 */
+	public static int formatValue(@Nonnull final char[] buffer, final int offset, final long value, @Nonnull final String plusSign,
+			@Nonnull final String minusSign, final int precision, final int shift)
+	{
+		final long absValue = Math.abs(round(value, precision, shift));
+		final long unit = shift == 0 ? ONE_BTC_INT : ONE_MBTC_INT;
+		final long coins = absValue / unit;
+		final int satoshis = (int) (absValue % unit);
+		final int decimals = decimals(satoshis, shift);
+
+		final String sign = value < 0 ? minusSign : plusSign;
+		sign.getChars(0, sign.length(), buffer, offset);
+		final int start = offset + sign.length();
+
+		final int numCoinDigits = numDigits(coins);
+		long remaining = coins;
+		for (int i = start + numCoinDigits - 1; i >= start; i--)
+		{
+			buffer[i] = (char) ('0' + remaining % 10);
+			remaining /= 10;
+		}
 
-		final String sign = longValue < 0 ? minusSign : plusSign;
+		buffer[start + numCoinDigits] = '.';
+
+		int fraction = satoshis / POWERS_OF_TEN[(shift == 0 ? 8 : 5) - decimals];
+		for (int i = start + numCoinDigits + decimals; i > start + numCoinDigits; i--)
+		{
+			buffer[i] = (char) ('0' + fraction % 10);
+			fraction /= 10;
+		}
+
+		return start + numCoinDigits + 1 + decimals;
+	}
+
+	private static final int[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000 };
+
+	private static long round(final long value, final int precision, final int shift)
+	{
+		final int unit;
 
 		if (shift == 0)
 		{
 			if (precision == 2)
-				longValue = longValue - longValue % 1000000 + longValue % 1000000 / 500000 * 1000000;
+				unit = 1000000;
 			else if (precision == 4)
-				longValue = longValue - longValue % 10000 + longValue % 10000 / 5000 * 10000;
+				unit = 10000;
 			else if (precision == 6)
-				longValue = longValue - longValue % 100 + longValue % 100 / 50 * 100;
+				unit = 100;
 			else if (precision == 8)
-				;
+				return value;
 			else
 				throw new IllegalArgumentException("cannot handle precision/shift: " + precision + "/" + shift);
-
-			final long absValue = Math.abs(longValue);
-			final long coins = absValue / ONE_BTC_INT;
-			final int satoshis = (int) (absValue % ONE_BTC_INT);
-
-			if (satoshis % 1000000 == 0)
-				return String.format(Locale.US, "%s%d.%02d", sign, coins, satoshis / 1000000);
-			else if (satoshis % 10000 == 0)
-				return String.format(Locale.US, "%s%d.%04d", sign, coins, satoshis / 10000);
-			else if (satoshis % 100 == 0)
-				return String.format(Locale.US, "%s%d.%06d", sign, coins, satoshis / 100);
-			else
-				return String.format(Locale.US, "%s%d.%08d", sign, coins, satoshis);
 		}
 		else if (shift == 3)
 		{
 			if (precision == 2)
-				longValue = longValue - longValue % 1000 + longValue % 1000 / 500 * 1000;
+				unit = 1000;
 			else if (precision == 4)
-				longValue = longValue - longValue % 10 + longValue % 10 / 5 * 10;
+				unit = 10;
 			else if (precision == 5)
-				;
+				return value;
 			else
 				throw new IllegalArgumentException("cannot handle precision/shift: " + precision + "/" + shift);
+		}
+		else
+		{
+			throw new IllegalArgumentException("cannot handle shift: " + shift);
+		}
 
-			final long absValue = Math.abs(longValue);
-			final long coins = absValue / ONE_MBTC_INT;
-			final int satoshis = (int) (absValue % ONE_MBTC_INT);
+		return value - value % unit + value % unit / (unit / 2) * unit;
+	}
 
-			if (satoshis % 1000 == 0)
-				return String.format(Locale.US, "%s%d.%02d", sign, coins, satoshis / 1000);
-			else if (satoshis % 10 == 0)
-				return String.format(Locale.US, "%s%d.%04d", sign, coins, satoshis / 10);
+	private static int decimals(final int satoshis, final int shift)
+	{
+		if (shift == 0)
+		{
+			if (satoshis % 1000000 == 0)
+				return 2;
+			else if (satoshis % 10000 == 0)
+				return 4;
+			else if (satoshis % 100 == 0)
+				return 6;
 			else
-				return String.format(Locale.US, "%s%d.%05d", sign, coins, satoshis);
+				return 8;
 		}
 		else
 		{
-			throw new IllegalArgumentException("cannot handle shift: " + shift);
+			if (satoshis % 1000 == 0)
+				return 2;
+			else if (satoshis % 10 == 0)
+				return 4;
+			else
+				return 5;
 		}
 	}
 
+	private static int numDigits(final long value)
+	{
+		int numDigits = 1;
+		for (long limit = 10; numDigits < 19 && value >= limit; limit *= 10)
+			numDigits++;
+		return numDigits;
+	}
+
     public static BigInteger toNanoCoins(final String value, final int shift) throws ArithmeticException
     {
         return toNanoCoins(value, shift, true);
@@ -113,11 +209,136 @@ public class GenericUtils
 
 	public static BigInteger toNanoCoins(final String value, final int shift, boolean checkAmountTooLarge) throws ArithmeticException
 	{
-		final BigInteger nanoCoins = new BigDecimal(value).movePointRight(8 - shift).toBigIntegerExact();
+		return BigInteger.valueOf(parseNanoCoins(value, shift, checkAmountTooLarge));
+	}
+
+	public static long parseNanoCoins(@Nonnull final CharSequence value, final int shift) throws ArithmeticException
+	{
+		return parseNanoCoins(value, shift, true);
+	}
+
+	private static final long MAX_MONEY = NetworkParameters.MAX_MONEY.longValue();
+
+	/**
+	 * Parses a decimal amount in the syntax of {@link BigDecimal#BigDecimal(String)}, surrounded by optional whitespace, straight
+	 * from the chars.
+	 *
+	 * @return amount in nanocoins
+	 * @throws NumberFormatException
+	 *             if the syntax is invalid
+	 * @throws ArithmeticException
+	 *             if the amount has more decimals than a nanocoin, is negative, doesn't fit into a long or, if asked to check,
+	 *             exceeds {@link NetworkParameters#MAX_MONEY}
+	 */
+	public static long parseNanoCoins(@Nonnull final CharSequence value, final int shift, final boolean checkAmountTooLarge)
+			throws ArithmeticException
+	{
+		int start = 0;
+		int end = value.length();
+		while (start < end && value.charAt(start) <= ' ')
+			start++;
+		while (end > start && value.charAt(end - 1) <= ' ')
+			end--;
 
-		if (nanoCoins.signum() < 0)
+		int i = start;
+		boolean negative = false;
+		if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+'))
+			negative = value.charAt(i++) == '-';
+
+		// significant digits go into the mantissa, trailing zeros are only counted until a non-zero digit follows
+		long mantissa = 0;
+		int pendingZeros = 0;
+		boolean overflow = false;
+		int numDigits = 0;
+		int numDecimals = 0;
+		boolean point = false;
+
+		for (; i < end; i++)
+		{
+			final char c = value.charAt(i);
+
+			if (c == '.')
+			{
+				if (point)
+					throw new NumberFormatException("second decimal point: " + value);
+				point = true;
+				continue;
+			}
+
+			final int digit = c >= '0' && c <= '9' ? c - '0' : Character.digit(c, 10);
+			if (digit < 0)
+				break;
+
+			numDigits++;
+			if (point)
+				numDecimals++;
+
+			if (digit == 0)
+			{
+				pendingZeros++;
+			}
+			else
+			{
+				for (; pendingZeros > 0 && !overflow; pendingZeros--)
+				{
+					overflow = mantissa > Long.MAX_VALUE / 10;
+					mantissa *= 10;
+				}
+				overflow |= mantissa > (Long.MAX_VALUE - digit) / 10;
+				mantissa = mantissa * 10 + digit;
+				pendingZeros = 0;
+			}
+		}
+
+		if (numDigits == 0)
+			throw new NumberFormatException("no digits: " + value);
+
+		long exponent = 0;
+		if (i < end)
+		{
+			final char e = value.charAt(i++);
+			if (e != 'e' && e != 'E')
+				throw new NumberFormatException("unexpected char '" + e + "': " + value);
+
+			boolean negativeExponent = false;
+			if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+'))
+				negativeExponent = value.charAt(i++) == '-';
+			if (i == end)
+				throw new NumberFormatException("no exponent digits: " + value);
+
+			for (; i < end; i++)
+			{
+				final int digit = Character.digit(value.charAt(i), 10);
+				if (digit < 0)
+					throw new NumberFormatException("unexpected char '" + value.charAt(i) + "': " + value);
+				exponent = exponent * 10 + digit;
+				if (exponent > Integer.MAX_VALUE + 1l)
+					throw new NumberFormatException("exponent out of range: " + value);
+			}
+
+			if (negativeExponent)
+				exponent = -exponent;
+			else if (exponent > Integer.MAX_VALUE)
+				throw new NumberFormatException("exponent out of range: " + value);
+		}
+
+		if (mantissa == 0 && !overflow)
+			return 0;
+
+		// the mantissa never ends with a zero, so a negative power means decimals below a nanocoin
+		final long power = pendingZeros + exponent - numDecimals + 8 - shift;
+		if (power < 0)
+			throw new ArithmeticException("too many decimals: " + value);
+		if (negative)
 			throw new ArithmeticException("negative amount: " + value);
-		if (checkAmountTooLarge && nanoCoins.compareTo(NetworkParameters.MAX_MONEY) > 0)
+
+		long nanoCoins = mantissa;
+		for (long p = 0; p < power && !overflow; p++)
+		{
+			overflow = nanoCoins > Long.MAX_VALUE / 10;
+			nanoCoins *= 10;
+		}
+		if (overflow || (checkAmountTooLarge && nanoCoins > MAX_MONEY))
 			throw new ArithmeticException("amount too large: " + value);
 
 		return nanoCoins;
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asks a list of equivalent sources for the same answer. The first source is started right away. The next one is started
+ * as soon as a running source fails, or when no answer has arrived within the hedge delay. The first non-null answer wins
+ * and all sources still running are cancelled.
+ *
+ * @author Andreas Schildbach
+ */
+public final class HedgedRequest
+{
+	private static final Logger log = LoggerFactory.getLogger(HedgedRequest.class);
+
+	private HedgedRequest()
+	{
+	}
+
+	/**
+	 * @param deadline
+	 *            absolute time in milliseconds, as in {@link System#currentTimeMillis()}
+	 * @return first non-null answer, or null if all sources failed or the deadline passed
+	 */
+	@CheckForNull
+	public static <T> T first(@Nonnull final Executor executor, @Nonnull final List<? extends Callable<T>> sources, final long hedgeDelayMs,
+			final long deadline) throws InterruptedException
+	{
+		final CompletionService<T> completionService = new ExecutorCompletionService<T>(executor);
+		final List<Future<T>> futures = new ArrayList<Future<T>>(sources.size());
+		int numRunning = 0;
+
+		try
+		{
+			while (true)
+			{
+				if (numRunning == 0)
+				{
+					if (futures.size() == sources.size())
+						return null;
+
+					futures.add(completionService.submit(sources.get(futures.size())));
+					numRunning++;
+				}
+
+				final long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0)
+				{
+					log.info("deadline passed, {} of {} sources started", futures.size(), sources.size());
+					return null;
+				}
+
+				final boolean canHedge = futures.size() < sources.size();
+				final Future<T> done = completionService.poll(canHedge ? Math.min(hedgeDelayMs, remaining) : remaining, TimeUnit.MILLISECONDS);
+
+				if (done == null)
+				{
+					// slow answer, hedge with the next source
+					if (canHedge)
+					{
+						futures.add(completionService.submit(sources.get(futures.size())));
+						numRunning++;
+					}
+
+					continue;
+				}
+
+				numRunning--;
+
+				try
+				{
+					final T result = done.get();
+					if (result != null)
+						return result;
+				}
+				catch (final ExecutionException x)
+				{
+					log.info("source failed", x.getCause());
+				}
+
+				// failed answer, replace with the next source right away
+				if (futures.size() < sources.size())
+				{
+					futures.add(completionService.submit(sources.get(futures.size())));
+					numRunning++;
+				}
+			}
+		}
+		finally
+		{
+			for (final Future<T> future : futures)
+				future.cancel(true);
+		}
+	}
+}
@@ -26,8 +26,12 @@ import java.util.TimeZone;
 import javax.annotation.Nonnull;
 
 import android.annotation.SuppressLint;
+import android.text.format.DateUtils;
 
 /**
+ * Date formats in UTC. The formats themselves aren't thread safe, but the static methods for the date time format with
+ * 'T' are; they are used for key files.
+ *
  * @author Andreas Schildbach
  */
 @SuppressLint("SimpleDateFormat")
@@ -74,11 +78,129 @@ public class Iso8601Format extends SimpleDateFormat
 
 	public static String formatDateTimeT(@Nonnull final Date date)
 	{
-		return newDateTimeFormatT().format(date);
+		return formatDateTimeT(floorDiv(date.getTime(), DateUtils.SECOND_IN_MILLIS));
 	}
 
 	public static Date parseDateTimeT(@Nonnull final String source) throws ParseException
 	{
-		return newDateTimeFormatT().parse(source);
+		return new Date(parseDateTimeTSeconds(source) * DateUtils.SECOND_IN_MILLIS);
+	}
+
+	/**
+	 * Same output as {@link #newDateTimeFormatT()}, but thread safe and computed directly from the seconds.
+	 */
+	public static String formatDateTimeT(final long timeSeconds)
+	{
+		final long days = floorDiv(timeSeconds, SECONDS_PER_DAY);
+		int secondOfDay = (int) (timeSeconds - days * SECONDS_PER_DAY);
+
+		// civil date from days since epoch, see http://howardhinnant.github.io/date_algorithms.html
+		final long z = days + DAYS_0000_03_01_TO_EPOCH;
+		final long era = floorDiv(z, DAYS_PER_ERA);
+		final int dayOfEra = (int) (z - era * DAYS_PER_ERA);
+		final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		final int shiftedMonth = (5 * dayOfYear + 2) / 153; // starting with March
+		final int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+		final int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+		final long year = era * 400 + yearOfEra + (month <= 2 ? 1 : 0);
+
+		if (year < MIN_YEAR || year > MAX_YEAR)
+			return newDateTimeFormatT().format(new Date(timeSeconds * DateUtils.SECOND_IN_MILLIS));
+
+		final char[] chars = "0000-00-00T00:00:00Z".toCharArray();
+		digits(chars, 0, (int) year, 4);
+		digits(chars, 5, month, 2);
+		digits(chars, 8, day, 2);
+		digits(chars, 11, secondOfDay / 3600, 2);
+		secondOfDay %= 3600;
+		digits(chars, 14, secondOfDay / 60, 2);
+		digits(chars, 17, secondOfDay % 60, 2);
+
+		return new String(chars);
+	}
+
+	/**
+	 * Reads what {@link #formatDateTimeT(long)} writes, without going through {@link SimpleDateFormat}. Anything else that
+	 * {@link #newDateTimeFormatT()} accepts is handed to it.
+	 */
+	public static long parseDateTimeTSeconds(@Nonnull final CharSequence source) throws ParseException
+	{
+		if (source.length() == 20 && source.charAt(4) == '-' && source.charAt(7) == '-' && source.charAt(10) == 'T' && source.charAt(13) == ':'
+				&& source.charAt(16) == ':' && source.charAt(19) == 'Z')
+		{
+			final int year = digits(source, 0, 4);
+			final int month = digits(source, 5, 2);
+			final int day = digits(source, 8, 2);
+			final int hour = digits(source, 11, 2);
+			final int minute = digits(source, 14, 2);
+			final int second = digits(source, 17, 2);
+
+			if (year >= MIN_YEAR && month >= 1 && month <= 12 && day >= 1 && day <= daysInMonth(year, month) && hour >= 0 && hour < 24
+					&& minute >= 0 && minute < 60 && second >= 0 && second < 60)
+				return daysFromCivil(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+		}
+
+		// non-canonical, but possibly still accepted by the lenient SimpleDateFormat
+		return floorDiv(newDateTimeFormatT().parse(source.toString()).getTime(), DateUtils.SECOND_IN_MILLIS);
+	}
+
+	// GregorianCalendar switches from the Julian calendar in 1582, so only later dates are computed directly
+	private static final int MIN_YEAR = 1583;
+	private static final int MAX_YEAR = 9999;
+
+	private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+	private static final long DAYS_PER_ERA = 146097; // 400 years
+	private static final long DAYS_0000_03_01_TO_EPOCH = 719468;
+
+	private static long daysFromCivil(final int year, final int month, final int day)
+	{
+		final int y = month <= 2 ? year - 1 : year;
+		final int era = y / 400; // positive years only
+		final int yearOfEra = y - era * 400;
+		final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+		return era * DAYS_PER_ERA + dayOfEra - DAYS_0000_03_01_TO_EPOCH;
+	}
+
+	private static int daysInMonth(final int year, final int month)
+	{
+		if (month == 2)
+			return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+		else
+			return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+	}
+
+	private static void digits(final char[] chars, final int offset, int value, final int numDigits)
+	{
+		for (int i = offset + numDigits - 1; i >= offset; i--)
+		{
+			chars[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	/**
+	 * @return value of the given ASCII digits, or -1 if there is anything else
+	 */
+	private static int digits(final CharSequence source, final int offset, final int numDigits)
+	{
+		int value = 0;
+		for (int i = offset; i < offset + numDigits; i++)
+		{
+			final char c = source.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+			value = value * 10 + c - '0';
+		}
+
+		return value;
+	}
+
+	private static long floorDiv(final long x, final long y)
+	{
+		final long q = x / y;
+		return q * y > x ? q - 1 : q; // y is positive
 	}
 }
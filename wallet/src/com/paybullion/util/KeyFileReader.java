@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.bitcoin.core.AddressFormatException;
+import com.google.bitcoin.core.DumpedPrivateKey;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+
+/**
+ * Reads key files as written by {@link WalletUtils#writeKeys(java.io.Writer, List)}: one private key in wallet import
+ * format per line, optionally followed by its creation time. Decoding a key derives its public key, which is by far the
+ * most expensive part of reading.
+ *
+ * @author Andreas Schildbach
+ */
+public final class KeyFileReader
+{
+	private static final int KEYS_PER_CHUNK = 128;
+
+	public interface Listener
+	{
+		/**
+		 * Called on the reading thread, in file order.
+		 */
+		void onProgress(int numKeys, long numChars);
+	}
+
+	public static List<ECKey> readKeys(@Nonnull final BufferedReader in, @Nonnull final NetworkParameters params) throws IOException
+	{
+		final List<ECKey> keys = new ArrayList<ECKey>();
+
+		while (true)
+		{
+			final String line = in.readLine();
+			if (line == null)
+				break; // eof
+			if (isKeyLine(line))
+				keys.add(readKey(line, params));
+		}
+
+		return keys;
+	}
+
+	/**
+	 * Like {@link #readKeys(BufferedReader, NetworkParameters)}, but the keys are decoded in chunks on the given executor
+	 * while reading goes on. Keys are returned in file order.
+	 */
+	public static List<ECKey> readKeys(@Nonnull final BufferedReader in, @Nonnull final NetworkParameters params,
+			@Nonnull final ExecutorService executor, @Nullable final Listener listener) throws IOException
+	{
+		final List<Future<List<ECKey>>> chunks = new ArrayList<Future<List<ECKey>>>();
+		final List<Long> chunkEnds = new ArrayList<Long>();
+
+		try
+		{
+			List<String> lines = new ArrayList<String>(KEYS_PER_CHUNK);
+			long numChars = 0;
+
+			while (true)
+			{
+				final String line = in.readLine();
+				if (line != null)
+				{
+					numChars += line.length() + 1;
+					if (isKeyLine(line))
+						lines.add(line);
+				}
+
+				if (lines.size() == KEYS_PER_CHUNK || (line == null && !lines.isEmpty()))
+				{
+					final List<String> chunk = lines;
+					chunks.add(executor.submit(new Callable<List<ECKey>>()
+					{
+						@Override
+						public List<ECKey> call() throws IOException
+						{
+							final List<ECKey> keys = new ArrayList<ECKey>(chunk.size());
+							for (final String line : chunk)
+								keys.add(readKey(line, params));
+							return keys;
+						}
+					}));
+					chunkEnds.add(numChars);
+					lines = new ArrayList<String>(KEYS_PER_CHUNK);
+				}
+
+				if (line == null)
+					break; // eof
+			}
+
+			final List<ECKey> keys = new ArrayList<ECKey>(chunks.size() * KEYS_PER_CHUNK);
+			for (int i = 0; i < chunks.size(); i++)
+			{
+				keys.addAll(chunks.get(i).get());
+
+				if (listener != null)
+					listener.onProgress(keys.size(), chunkEnds.get(i));
+			}
+
+			return keys;
+		}
+		catch (final ExecutionException x)
+		{
+			final Throwable cause = x.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			else
+				throw new RuntimeException(cause);
+		}
+		catch (final InterruptedException x)
+		{
+			throw new InterruptedIOException();
+		}
+		finally
+		{
+			// in case of failure, don't bother with the rest
+			for (final Future<List<ECKey>> chunk : chunks)
+				chunk.cancel(false);
+		}
+	}
+
+	private static boolean isKeyLine(@Nonnull final String line)
+	{
+		return !line.trim().isEmpty() && line.charAt(0) != '#'; // skip empty lines and comments
+	}
+
+	private static ECKey readKey(@Nonnull final String line, @Nonnull final NetworkParameters params) throws IOException
+	{
+		try
+		{
+			final int separator = line.indexOf(' ');
+			final ECKey key = new DumpedPrivateKey(params, separator != -1 ? line.substring(0, separator) : line).getKey();
+
+			// trailing blanks don't count as a creation time
+			if (separator != -1 && !line.substring(separator).trim().isEmpty())
+			{
+				final int timeEnd = line.indexOf(' ', separator + 1);
+				key.setCreationTimeSeconds(Iso8601Format.parseDateTimeTSeconds(line.substring(separator + 1, timeEnd != -1 ? timeEnd
+						: line.length())));
+			}
+
+			return key;
+		}
+		catch (final AddressFormatException x)
+		{
+			throw new IOException("cannot read keys", x);
+		}
+		catch (final ParseException x)
+		{
+			throw new IOException("cannot read keys", x);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Immutable, case insensitive prefix index over a fixed number of rows. Each row has any number of texts, and a row
+ * matches if any of its texts or any word within them starts with the query. Built once, queried with a binary search
+ * over the sorted keys.
+ *
+ * @author Andreas Schildbach
+ */
+public final class PrefixIndex
+{
+	private final int numRows;
+	private final String[] keys;
+	private final int[] rows;
+
+	private static final Pattern P_WHITESPACE = Pattern.compile("\\s+");
+
+	/**
+	 * @param texts
+	 *            texts per row, null entries are skipped
+	 */
+	public PrefixIndex(@Nonnull final String[][] texts)
+	{
+		this.numRows = texts.length;
+
+		final List<String> keyList = new ArrayList<String>();
+		final List<Integer> rowList = new ArrayList<Integer>();
+
+		for (int row = 0; row < texts.length; row++)
+		{
+			for (final String text : texts[row])
+			{
+				if (text == null)
+					continue;
+
+				final String normalized = normalize(text);
+				if (normalized.length() == 0)
+					continue;
+
+				keyList.add(normalized);
+				rowList.add(row);
+
+				// also index each further word, so "dollar" finds "us dollar"
+				for (int i = normalized.indexOf(' '); i >= 0; i = normalized.indexOf(' ', i + 1))
+				{
+					if (i + 1 < normalized.length())
+					{
+						keyList.add(normalized.substring(i + 1));
+						rowList.add(row);
+					}
+				}
+			}
+		}
+
+		final Integer[] order = new Integer[keyList.size()];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(final Integer i1, final Integer i2)
+			{
+				return keyList.get(i1).compareTo(keyList.get(i2));
+			}
+		});
+
+		keys = new String[order.length];
+		rows = new int[order.length];
+		for (int i = 0; i < order.length; i++)
+		{
+			keys[i] = keyList.get(order[i]);
+			rows[i] = rowList.get(order[i]);
+		}
+	}
+
+	public int size()
+	{
+		return numRows;
+	}
+
+	/**
+	 * @return matching rows in ascending order, or all rows for an empty or null prefix
+	 */
+	@Nonnull
+	public int[] search(@CheckForNull final String prefix)
+	{
+		final String normalized = prefix != null ? normalize(prefix) : "";
+
+		if (normalized.length() == 0)
+		{
+			final int[] all = new int[numRows];
+			for (int i = 0; i < numRows; i++)
+				all[i] = i;
+			return all;
+		}
+
+		// first key not less than the prefix
+		int low = 0;
+		int high = keys.length;
+		while (low < high)
+		{
+			final int mid = (low + high) >>> 1;
+			if (keys[mid].compareTo(normalized) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		final boolean[] matches = new boolean[numRows];
+		int numMatches = 0;
+		for (int i = low; i < keys.length && keys[i].startsWith(normalized); i++)
+		{
+			if (!matches[rows[i]])
+			{
+				matches[rows[i]] = true;
+				numMatches++;
+			}
+		}
+
+		final int[] result = new int[numMatches];
+		for (int row = 0, i = 0; i < numMatches; row++)
+			if (matches[row])
+				result[i++] = row;
+
+		return result;
+	}
+
+	private static String normalize(@Nonnull final String text)
+	{
+		return P_WHITESPACE.matcher(text.trim()).replaceAll(" ").toLowerCase(Locale.US);
+	}
+}
@@ -21,58 +21,108 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Hashtable;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
 
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.support.v4.util.LruCache;
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.EncodeHintType;
 import com.google.zxing.WriterException;
-import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
 
 /**
+ * QR codes are rendered at module resolution, one pixel per module, and scaled up without filtering at draw time. Use
+ * {@link #bitmapDrawable(Resources, Bitmap)} or an equivalent unfiltered drawable to show them. Recently rendered codes
+ * are cached, so re-rendering unchanged content is free.
+ *
  * @author Andreas Schildbach
  */
 public class Qr
 {
-	private final static QRCodeWriter QR_CODE_WRITER = new QRCodeWriter();
+	private static final int CACHE_SIZE = 8;
+
+	// larger than any standard transaction
+	public static final int MAX_DECOMPRESSED_LENGTH = 100 * 1024;
+
+	static final char COMPRESSION_NONE = '-';
+	static final char COMPRESSION_GZIP = 'Z';
+	static final char COMPRESSION_DEFLATE = 'D';
+
+	/**
+	 * Byte sequences that recur in transactions, so that even the first occurrence in a small transaction can be coded as
+	 * a match. Deflate codes near distances shorter, so the most frequent ones are at the end.
+	 */
+	static final byte[] DEFLATE_DICTIONARY = Hex.decode("" //
+			+ "0100000002" // version, two inputs
+			+ "014104" // sighash all, push of uncompressed key
+			+ "17a914" + "87" // pay to script hash
+			+ "483045022100" // push of signature, DER sequence, r with sign padding
+			+ "0221000220" // s with and without sign padding
+			+ "4730440220" // push of signature, DER sequence, r
+			+ "012103" + "012102" // sighash all, push of compressed key
+			+ "ffffffff" // sequence
+			+ "00000000" // lock time, output index, high bytes of values
+			+ "1976a914" + "88ac" // pay to pubkey hash
+			+ "0100000001"); // version, one input
+
+	// created on first use, so the encoding methods can be used off-device
+	private static LruCache<String, Bitmap> cache = null;
+	private static int[] pixelBuffer = new int[0];
 
 	private static final Logger log = LoggerFactory.getLogger(Qr.class);
 
-	public static Bitmap bitmap(@Nonnull final String content, final int size)
+	/**
+	 * @return cached bitmap with one pixel per module, at error correction level H; must not be recycled
+	 */
+	public static Bitmap bitmap(@Nonnull final String content)
 	{
+		return bitmap(content, ErrorCorrectionLevel.H);
+	}
+
+	/**
+	 * @return cached bitmap with one pixel per module; must not be recycled
+	 */
+	public static synchronized Bitmap bitmap(@Nonnull final String content, @Nonnull final ErrorCorrectionLevel errorCorrectionLevel)
+	{
+		if (cache == null)
+			cache = new LruCache<String, Bitmap>(CACHE_SIZE);
+
+		final String key = errorCorrectionLevel.name() + ':' + content;
+		final Bitmap cachedBitmap = cache.get(key);
+		if (cachedBitmap != null)
+			return cachedBitmap;
+
 		try
 		{
-			final Hashtable<EncodeHintType, Object> hints = new Hashtable<EncodeHintType, Object>();
-			hints.put(EncodeHintType.MARGIN, 0);
-			hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
-			final BitMatrix result = QR_CODE_WRITER.encode(content, BarcodeFormat.QR_CODE, size, size, hints);
+			final ByteMatrix matrix = encode(content, errorCorrectionLevel);
+			final int width = matrix.getWidth();
+			final int height = matrix.getHeight();
 
-			final int width = result.getWidth();
-			final int height = result.getHeight();
-			final int[] pixels = new int[width * height];
-
-			for (int y = 0; y < height; y++)
-			{
-				final int offset = y * width;
-				for (int x = 0; x < width; x++)
-				{
-					pixels[offset + x] = result.get(x, y) ? Color.BLACK : Color.TRANSPARENT;
-				}
-			}
+			if (pixelBuffer.length < width * height)
+				pixelBuffer = new int[width * height];
+			render(matrix, pixelBuffer);
 
 			final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-			bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+			bitmap.setPixels(pixelBuffer, 0, width, 0, 0, width, height);
+
+			cache.put(key, bitmap);
 			return bitmap;
 		}
 		catch (final WriterException x)
@@ -82,7 +132,75 @@ public class Qr
 		}
 	}
 
+	/**
+	 * @return drawable that scales the bitmap with nearest neighbour filtering, so modules stay sharp
+	 */
+	@CheckForNull
+	public static BitmapDrawable bitmapDrawable(@Nonnull final Resources res, @Nullable final Bitmap bitmap)
+	{
+		if (bitmap == null)
+			return null;
+
+		final BitmapDrawable drawable = new BitmapDrawable(res, bitmap);
+		drawable.setFilterBitmap(false);
+		return drawable;
+	}
+
+	/**
+	 * @return module matrix without quiet zone
+	 */
+	public static ByteMatrix encode(@Nonnull final String content, @Nonnull final ErrorCorrectionLevel errorCorrectionLevel)
+			throws WriterException
+	{
+		return Encoder.encode(content, errorCorrectionLevel).getMatrix();
+	}
+
+	/**
+	 * Writes one ARGB pixel per module into the given buffer, row by row.
+	 */
+	public static void render(@Nonnull final ByteMatrix matrix, @Nonnull final int[] pixels)
+	{
+		final byte[][] modules = matrix.getArray();
+		final int width = matrix.getWidth();
+		final int height = matrix.getHeight();
+
+		for (int y = 0; y < height; y++)
+		{
+			final byte[] row = modules[y];
+			final int offset = y * width;
+			for (int x = 0; x < width; x++)
+				pixels[offset + x] = row[x] == 1 ? Color.BLACK : Color.TRANSPARENT;
+		}
+	}
+
+	/**
+	 * Encodes binary content, usually a transaction, for a QR code that all versions can read. The first character tells
+	 * how the rest is compressed: 'Z' for gzip, '-' for not at all.
+	 */
 	public static String encodeCompressBinary(@Nonnull final byte[] bytes)
+	{
+		return encodeCompressBinary(bytes, false);
+	}
+
+	/**
+	 * @param useDictionary
+	 *            compress with raw deflate against {@link #DEFLATE_DICTIONARY} instead of gzip, flagged 'D'; usually
+	 *            shorter, but only understood by {@link #decodeDecompressBinary(String)} of this version on, so don't
+	 *            show it to other wallets until their installed versions have caught up
+	 */
+	public static String encodeCompressBinary(@Nonnull final byte[] bytes, final boolean useDictionary)
+	{
+		final byte[] compressedBytes = useDictionary ? deflate(bytes) : gzip(bytes);
+		final boolean useCompression = compressedBytes.length < bytes.length;
+
+		final StringBuilder str = new StringBuilder();
+		str.append(useCompression ? (useDictionary ? COMPRESSION_DEFLATE : COMPRESSION_GZIP) : COMPRESSION_NONE);
+		str.append(Base43.encode(useCompression ? compressedBytes : bytes));
+
+		return str.toString();
+	}
+
+	static byte[] gzip(@Nonnull final byte[] bytes)
 	{
 		try
 		{
@@ -91,14 +209,7 @@ public class Qr
 			gos.write(bytes);
 			gos.close();
 
-			final byte[] gzippedBytes = bos.toByteArray();
-			final boolean useCompressioon = gzippedBytes.length < bytes.length;
-
-			final StringBuilder str = new StringBuilder();
-			str.append(useCompressioon ? 'Z' : '-');
-			str.append(Base43.encode(useCompressioon ? gzippedBytes : bytes));
-
-			return str.toString();
+			return bos.toByteArray();
 		}
 		catch (final IOException x)
 		{
@@ -113,22 +224,107 @@ public class Qr
 
 	public static byte[] decodeDecompressBinary(@Nonnull final String content) throws IOException
 	{
-		final boolean useCompression = content.charAt(0) == 'Z';
+		final ByteBuffer buf = decodeDecompressBinary(content, MAX_DECOMPRESSED_LENGTH);
+		if (buf.arrayOffset() == 0 && buf.remaining() == buf.array().length)
+			return buf.array();
+
+		final byte[] bytes = new byte[buf.remaining()];
+		buf.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Decompresses into a buffer that is never larger than needed or allowed, so that a hostile code cannot blow up the
+	 * heap.
+	 *
+	 * @return view of the content, backed by an array
+	 * @throws IOException
+	 *             if the content is malformed or decompresses to more than the given number of bytes
+	 */
+	public static ByteBuffer decodeDecompressBinary(@Nonnull final String content, final int maxLength) throws IOException
+	{
+		final char compression = content.charAt(0);
 		final byte[] bytes = Base43.decode(content.substring(1));
 
-		InputStream is = new ByteArrayInputStream(bytes);
-		if (useCompression)
-			is = new GZIPInputStream(is);
-		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		if (compression != COMPRESSION_GZIP && compression != COMPRESSION_DEFLATE)
+		{
+			if (bytes.length > maxLength)
+				throw new IOException("content exceeds " + maxLength + " bytes");
+
+			return ByteBuffer.wrap(bytes);
+		}
 
-		final byte[] buf = new byte[4096];
-		int read;
-		while (-1 != (read = is.read(buf)))
-			baos.write(buf, 0, read);
-		baos.close();
-		is.close();
+		final Inflater inflater = new Inflater(true);
+		try
+		{
+			final InputStream is;
+			if (compression == COMPRESSION_GZIP)
+			{
+				is = new GZIPInputStream(new ByteArrayInputStream(bytes));
+			}
+			else
+			{
+				inflater.setDictionary(DEFLATE_DICTIONARY);
+				is = new InflaterInputStream(new ByteArrayInputStream(bytes), inflater);
+			}
+
+			// transactions hardly ever compress to less than half, so this is usually the only allocation
+			byte[] buf = new byte[Math.min(bytes.length * 2 + 64, maxLength)];
+			int length = 0;
+			while (true)
+			{
+				if (length == buf.length)
+				{
+					if (length == maxLength)
+					{
+						if (is.read() != -1)
+							throw new IOException("content exceeds " + maxLength + " bytes");
+						break;
+					}
 
-		return baos.toByteArray();
+					final byte[] newBuf = new byte[(int) Math.min(buf.length * 2l, maxLength)];
+					System.arraycopy(buf, 0, newBuf, 0, length);
+					buf = newBuf;
+				}
+
+				final int read = is.read(buf, length, buf.length - length);
+				if (read == -1)
+					break;
+				length += read;
+			}
+			is.close();
+
+			return ByteBuffer.wrap(buf, 0, length);
+		}
+		finally
+		{
+			inflater.end();
+		}
+	}
+
+	/**
+	 * @return raw deflate stream, compressed against {@link #DEFLATE_DICTIONARY}
+	 */
+	static byte[] deflate(@Nonnull final byte[] bytes)
+	{
+		final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+		try
+		{
+			deflater.setDictionary(DEFLATE_DICTIONARY);
+			deflater.setInput(bytes);
+			deflater.finish();
+
+			final ByteArrayOutputStream bos = new ByteArrayOutputStream(bytes.length);
+			final byte[] buf = new byte[4096];
+			while (!deflater.finished())
+				bos.write(buf, 0, deflater.deflate(buf));
+
+			return bos.toByteArray();
+		}
+		finally
+		{
+			deflater.end();
+		}
 	}
 
 	public static byte[] decodeBinary(@Nonnull final String content) throws IOException
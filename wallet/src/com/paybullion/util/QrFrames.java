@@ -0,0 +1,434 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.util;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Splits binary content that is too large for one QR code into a stream of frames, to be cycled on screen. The content
+ * is compressed like {@link Qr#encodeCompressBinary(byte[], boolean)} with the dictionary, which is fine because only
+ * versions that know frames can read them anyway, and cut into fixed size blocks. Each block is shown once as is,
+ * followed by repair frames that are each the XOR of a pseudo random set of blocks (an LT fountain code). A scanner that
+ * misses some frames can fill the gaps from whatever repair frames it catches next, rather than waiting for the missed
+ * frames to come round again.
+ *
+ * A frame is {@link #PREFIX} followed by the Base43 encoding of: compression flag (1 byte), CRC32 of the compressed
+ * content (4), length of the compressed content (4), block size (2), sequence number (4), block. Sequence numbers below
+ * the number of blocks denote plain blocks, all others repair frames.
+ *
+ * @author Andreas Schildbach
+ */
+public final class QrFrames
+{
+	public static final String PREFIX = "PAYBULLION:*";
+
+	public static final int BLOCK_SIZE = 200;
+
+	private static final int HEADER_SIZE = 15;
+	private static final int MAX_LENGTH = 1024 * 1024;
+
+	// repair frames cost time in the number of blocks, so a hostile frame must not claim lots of tiny blocks
+	private static final int MAX_BLOCKS = 1024;
+
+	// parameters of the robust soliton distribution, tuned for a few dozen blocks
+	private static final double SOLITON_C = 0.1;
+	private static final double SOLITON_DELTA = 0.5;
+
+	private final char compressionFlag;
+	private final int crc;
+	private final int length;
+	private final byte[][] blocks;
+	private final RepairSelector repairSelector;
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the content is too large for a stream of frames, even compressed
+	 */
+	public QrFrames(@Nonnull final byte[] bytes)
+	{
+		final byte[] deflatedBytes = Qr.deflate(bytes);
+		final boolean useCompression = deflatedBytes.length < bytes.length;
+		final byte[] content = useCompression ? deflatedBytes : bytes;
+
+		this.compressionFlag = useCompression ? Qr.COMPRESSION_DEFLATE : Qr.COMPRESSION_NONE;
+		this.crc = crc(content, content.length);
+		this.length = content.length;
+		this.blocks = split(content, BLOCK_SIZE);
+		if (blocks.length > MAX_BLOCKS)
+			throw new IllegalArgumentException("content too large: " + content.length + " bytes");
+		this.repairSelector = new RepairSelector(blocks.length);
+	}
+
+	public int numBlocks()
+	{
+		return blocks.length;
+	}
+
+	/**
+	 * Frames are meant to be shown in order of their sequence numbers: each block once, then an endless run of repair
+	 * frames. Thus a scanner that starts late or misses frames is not stuck waiting for particular ones to come round.
+	 *
+	 * @return frame with the given sequence number
+	 */
+	public synchronized String frame(final int sequenceNumber)
+	{
+		final byte[] block = sequenceNumber < blocks.length ? blocks[sequenceNumber] : repairBlock(sequenceNumber);
+
+		final ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + BLOCK_SIZE);
+		buf.put((byte) compressionFlag).putInt(crc).putInt(length).putShort((short) BLOCK_SIZE).putInt(sequenceNumber).put(block);
+
+		return PREFIX + Base43.encode(buf.array());
+	}
+
+	public static boolean isFrame(@Nonnull final String content)
+	{
+		return content.startsWith(PREFIX);
+	}
+
+	private byte[] repairBlock(final int sequenceNumber)
+	{
+		final byte[] block = new byte[BLOCK_SIZE];
+		for (final int index : repairSelector.indexes(sequenceNumber))
+			xor(block, blocks[index]);
+
+		return block;
+	}
+
+	/**
+	 * Collects the frames of one stream, in any order, and puts the content back together as soon as enough frames have
+	 * been seen. Should a frame of a different stream come along, the collected frames are discarded and the new stream is
+	 * collected instead.
+	 *
+	 * Not thread safe.
+	 */
+	public static final class Assembler
+	{
+		private char compressionFlag;
+		private int crc;
+		private int length;
+		private int blockSize;
+
+		private byte[][] blocks = null;
+		private RepairSelector repairSelector = null;
+		private int numRecovered;
+		private final List<Repair> repairs = new LinkedList<Repair>();
+		private String result = null;
+
+		private static final Logger log = LoggerFactory.getLogger(Assembler.class);
+
+		private static final class Repair
+		{
+			public final List<Integer> missingIndexes;
+			public final byte[] block;
+
+			public Repair(@Nonnull final List<Integer> missingIndexes, @Nonnull final byte[] block)
+			{
+				this.missingIndexes = missingIndexes;
+				this.block = block;
+			}
+		}
+
+		/**
+		 * @return true if the frame was read, false if it is malformed
+		 */
+		public boolean add(@Nonnull final String frame)
+		{
+			if (!isFrame(frame))
+				return false;
+
+			final ByteBuffer buf;
+			try
+			{
+				buf = ByteBuffer.wrap(Base43.decode(frame.substring(PREFIX.length())));
+			}
+			catch (final IllegalArgumentException x)
+			{
+				return false;
+			}
+
+			if (buf.remaining() < HEADER_SIZE)
+				return false;
+
+			final char compressionFlag = (char) buf.get();
+			final int crc = buf.getInt();
+			final int length = buf.getInt();
+			final int blockSize = buf.getShort() & 0xffff;
+			final int sequenceNumber = buf.getInt();
+
+			if ((compressionFlag != Qr.COMPRESSION_DEFLATE && compressionFlag != Qr.COMPRESSION_NONE) || length <= 0 || length > MAX_LENGTH || blockSize == 0
+					|| (length + blockSize - 1) / blockSize > MAX_BLOCKS || sequenceNumber < 0 || buf.remaining() != blockSize)
+				return false;
+
+			if (blocks == null || crc != this.crc || length != this.length || blockSize != this.blockSize
+					|| compressionFlag != this.compressionFlag)
+			{
+				if (blocks != null)
+					log.info("switching to new frame stream, discarding {} of {} blocks", numRecovered, blocks.length);
+
+				this.compressionFlag = compressionFlag;
+				this.crc = crc;
+				this.length = length;
+				this.blockSize = blockSize;
+				this.blocks = new byte[(length + blockSize - 1) / blockSize][];
+				this.repairSelector = new RepairSelector(blocks.length);
+				this.numRecovered = 0;
+				this.repairs.clear();
+				this.result = null;
+			}
+
+			if (result != null)
+				return true;
+
+			final byte[] block = new byte[blockSize];
+			buf.get(block);
+
+			if (sequenceNumber < blocks.length)
+			{
+				if (blocks[sequenceNumber] == null)
+					recover(sequenceNumber, block);
+			}
+			else
+			{
+				final List<Integer> missingIndexes = new LinkedList<Integer>();
+				for (final int index : repairSelector.indexes(sequenceNumber))
+				{
+					if (blocks[index] != null)
+						xor(block, blocks[index]);
+					else
+						missingIndexes.add(index);
+				}
+
+				if (missingIndexes.size() == 1)
+					recover(missingIndexes.get(0), block);
+				else if (missingIndexes.size() > 1)
+					repairs.add(new Repair(missingIndexes, block));
+			}
+
+			if (numRecovered == blocks.length)
+				complete();
+
+			return true;
+		}
+
+		/**
+		 * @return number of blocks of the current stream, or 0 if no frame has been read yet
+		 */
+		public int numBlocks()
+		{
+			return blocks != null ? blocks.length : 0;
+		}
+
+		public int numRecovered()
+		{
+			return numRecovered;
+		}
+
+		/**
+		 * @return content as {@link Qr#encodeCompressBinary(byte[], boolean)} would have encoded it, or null if not complete yet
+		 */
+		@CheckForNull
+		public String result()
+		{
+			return result;
+		}
+
+		private void recover(final int index, final byte[] block)
+		{
+			blocks[index] = block;
+			numRecovered++;
+
+			// peel newly known blocks off the repair frames, which may in turn leave just one missing block
+			final LinkedList<Integer> recoveredIndexes = new LinkedList<Integer>();
+			recoveredIndexes.add(index);
+			while (!recoveredIndexes.isEmpty())
+			{
+				final int recoveredIndex = recoveredIndexes.removeFirst();
+
+				for (final Iterator<Repair> i = repairs.iterator(); i.hasNext();)
+				{
+					final Repair repair = i.next();
+					if (repair.missingIndexes.remove(Integer.valueOf(recoveredIndex)))
+					{
+						xor(repair.block, blocks[recoveredIndex]);
+
+						if (repair.missingIndexes.size() == 1)
+						{
+							i.remove();
+
+							final int missingIndex = repair.missingIndexes.get(0);
+							if (blocks[missingIndex] == null)
+							{
+								blocks[missingIndex] = repair.block;
+								numRecovered++;
+								recoveredIndexes.add(missingIndex);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		private void complete()
+		{
+			final byte[] content = new byte[length];
+			for (int i = 0; i < blocks.length; i++)
+				System.arraycopy(blocks[i], 0, content, i * blockSize, Math.min(blockSize, length - i * blockSize));
+
+			if (crc(content, length) == crc)
+			{
+				result = compressionFlag + Base43.encode(content);
+			}
+			else
+			{
+				log.info("checksum mismatch, starting over");
+				blocks = new byte[blocks.length][];
+				numRecovered = 0;
+				repairs.clear();
+			}
+		}
+	}
+
+	/**
+	 * Picks the blocks of the repair frames of one stream. The degree distribution is computed once per stream, and the
+	 * shuffle works on a permutation that is reset after each pick, so a frame costs time and memory in its degree rather
+	 * than in the number of blocks.
+	 *
+	 * Not thread safe.
+	 */
+	private static final class RepairSelector
+	{
+		private final int numBlocks;
+		private final double[] cdf;
+		private final int[] permutation;
+
+		public RepairSelector(final int numBlocks)
+		{
+			this.numBlocks = numBlocks;
+			this.cdf = robustSoliton(numBlocks);
+			this.permutation = new int[numBlocks];
+			for (int i = 0; i < numBlocks; i++)
+				permutation[i] = i;
+		}
+
+		/**
+		 * @return indexes of the blocks a repair frame is made of, with the number of blocks following the robust soliton
+		 *         distribution
+		 */
+		public int[] indexes(final int sequenceNumber)
+		{
+			// java.util.Random is fully specified, so both sides pick the same blocks; consecutive seeds would give
+			// correlated first values, hence the spreading
+			final Random random = new Random(sequenceNumber * 0x9e3779b97f4a7c15l);
+
+			final double u = random.nextDouble();
+			int degree = 1;
+			while (degree < numBlocks && cdf[degree] <= u)
+				degree++;
+
+			// partial Fisher-Yates shuffle
+			final int[] swaps = new int[degree];
+			for (int i = 0; i < degree; i++)
+			{
+				final int j = i + random.nextInt(numBlocks - i);
+				swaps[i] = j;
+				swap(permutation, i, j);
+			}
+
+			final int[] result = new int[degree];
+			System.arraycopy(permutation, 0, result, 0, degree);
+
+			// undo the swaps in reverse, back to the identity
+			for (int i = degree - 1; i >= 0; i--)
+				swap(permutation, i, swaps[i]);
+
+			return result;
+		}
+
+		private static void swap(final int[] array, final int i, final int j)
+		{
+			final int value = array[j];
+			array[j] = array[i];
+			array[i] = value;
+		}
+	}
+
+	/**
+	 * @return cumulative distribution, element d is the probability of a degree up to d
+	 */
+	private static double[] robustSoliton(final int numBlocks)
+	{
+		final double r = SOLITON_C * Math.log(numBlocks / SOLITON_DELTA) * Math.sqrt(numBlocks);
+		final int spike = Math.max(1, Math.min(numBlocks, (int) Math.round(numBlocks / r)));
+
+		final double[] cdf = new double[numBlocks + 1];
+		for (int d = 1; d <= numBlocks; d++)
+		{
+			// ideal soliton
+			double p = d == 1 ? 1.0 / numBlocks : 1.0 / (d * (d - 1.0));
+
+			// plus extra weight on low degrees and a spike, so that decoding rarely stalls
+			if (d < spike)
+				p += r / (d * (double) numBlocks);
+			else if (d == spike)
+				p += r * Math.log(r / SOLITON_DELTA) / numBlocks;
+
+			cdf[d] = cdf[d - 1] + p;
+		}
+
+		for (int d = 1; d <= numBlocks; d++)
+			cdf[d] /= cdf[numBlocks];
+
+		return cdf;
+	}
+
+	private static byte[][] split(final byte[] content, final int blockSize)
+	{
+		final byte[][] blocks = new byte[(content.length + blockSize - 1) / blockSize][];
+		for (int i = 0; i < blocks.length; i++)
+		{
+			blocks[i] = new byte[blockSize]; // last one padded with zeros
+			System.arraycopy(content, i * blockSize, blocks[i], 0, Math.min(blockSize, content.length - i * blockSize));
+		}
+
+		return blocks;
+	}
+
+	private static void xor(final byte[] target, final byte[] block)
+	{
+		for (int i = 0; i < target.length; i++)
+			target[i] ^= block[i];
+	}
+
+	private static int crc(final byte[] bytes, final int length)
+	{
+		final CRC32 crc = new CRC32();
+		crc.update(bytes, 0, length);
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.util;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.app.Activity;
+import android.app.Dialog;
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.v4.app.DialogFragment;
+import android.support.v4.app.FragmentManager;
+import android.view.View;
+import android.view.Window;
+import android.widget.ImageView;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+
+import com.paybullion.R;
+
+/**
+ * Shows content too large for one QR code as a cycle of {@link QrFrames}.
+ *
+ * @author Andreas Schildbach
+ */
+public class QrFramesFragment extends DialogFragment
+{
+	private static final String FRAGMENT_TAG = QrFramesFragment.class.getName();
+
+	private static final String KEY_BYTES = "bytes";
+
+	private static final long FRAME_INTERVAL_MS = 250;
+
+	public static void show(final FragmentManager fm, @Nonnull final byte[] bytes)
+	{
+		final DialogFragment newFragment = instance(bytes);
+		newFragment.show(fm, FRAGMENT_TAG);
+	}
+
+	private static QrFramesFragment instance(@Nonnull final byte[] bytes)
+	{
+		final QrFramesFragment fragment = new QrFramesFragment();
+
+		final Bundle args = new Bundle();
+		args.putByteArray(KEY_BYTES, bytes);
+		fragment.setArguments(args);
+
+		return fragment;
+	}
+
+	private Activity activity;
+	private ImageView imageView;
+	private QrFrames frames;
+	private int sequenceNumber = 0;
+	private Bitmap frameBitmap;
+	private int[] framePixels = new int[0];
+
+	private final Handler handler = new Handler();
+
+	private static final Logger log = LoggerFactory.getLogger(QrFramesFragment.class);
+
+	@Override
+	public void onAttach(final Activity activity)
+	{
+		super.onAttach(activity);
+
+		this.activity = activity;
+	}
+
+	@Override
+	public Dialog onCreateDialog(final Bundle savedInstanceState)
+	{
+		frames = new QrFrames(getArguments().getByteArray(KEY_BYTES));
+		frameBitmap = null;
+
+		final Dialog dialog = new Dialog(activity);
+		dialog.requestWindowFeature(Window.FEATURE_NO_TITLE);
+		dialog.setContentView(R.layout.bitmap_dialog);
+		dialog.setCanceledOnTouchOutside(true);
+
+		imageView = (ImageView) dialog.findViewById(R.id.bitmap_dialog_image);
+		imageView.setOnClickListener(new View.OnClickListener()
+		{
+			@Override
+			public void onClick(final View v)
+			{
+				dismiss();
+			}
+		});
+
+		return dialog;
+	}
+
+	@Override
+	public void onResume()
+	{
+		super.onResume();
+
+		handler.post(nextFrameRunnable);
+	}
+
+	@Override
+	public void onPause()
+	{
+		handler.removeCallbacks(nextFrameRunnable);
+
+		super.onPause();
+	}
+
+	private final Runnable nextFrameRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			try
+			{
+				// lower error correction than single codes, for fewer modules and thus faster scanning
+				final ByteMatrix matrix = Qr.encode(frames.frame(sequenceNumber++), ErrorCorrectionLevel.M);
+				final int width = matrix.getWidth();
+				final int height = matrix.getHeight();
+
+				if (framePixels.length < width * height)
+					framePixels = new int[width * height];
+				Qr.render(matrix, framePixels);
+
+				// all frames of a stream are the same size, so they are drawn into one bitmap rather than filling the
+				// cache of single codes, which would be flushed every few frames
+				if (frameBitmap == null || frameBitmap.getWidth() != width || frameBitmap.getHeight() != height)
+				{
+					frameBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+					imageView.setImageDrawable(Qr.bitmapDrawable(getResources(), frameBitmap));
+				}
+				frameBitmap.setPixels(framePixels, 0, width, 0, 0, width, height);
+				imageView.invalidate();
+			}
+			catch (final WriterException x)
+			{
+				log.info("problem creating qr code", x);
+			}
+
+			handler.postDelayed(this, FRAME_INTERVAL_MS);
+		}
+	};
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.util;
+
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.ParsePosition;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.ksoap2.SoapEnvelope;
+import org.ksoap2.serialization.SoapObject;
+import org.ksoap2.serialization.SoapPrimitive;
+import org.ksoap2.serialization.SoapSerializationEnvelope;
+import org.ksoap2.transport.HttpTransportSE;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches BTC rates from tickers and the gold parity from its SOAP service, and combines the two. All rates are fixed point
+ * longs with 8 decimals. Failures of any kind, including malformed answers, are logged and reported as null, so callers
+ * can move on to the next source.
+ *
+ * Thread safe.
+ *
+ * @author Andreas Schildbach
+ */
+public final class RateFetcher
+{
+	private static final String GOLD_NAMESPACE = "http://freewebservicesx.com/";
+	private static final String GOLD_METHOD = "GetCurrentGoldPrice";
+
+	private static final int SCALE = 8;
+
+	// like Constants.UTF_8, which can't be loaded off-device
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final ConditionalGet conditionalGet;
+	private final String userAgent;
+	private final int timeoutMs;
+	private final Map<String, Map<String, Long>> lastParsedRates = new ConcurrentHashMap<String, Map<String, Long>>();
+
+	private static final Logger log = LoggerFactory.getLogger(RateFetcher.class);
+
+	public RateFetcher(@Nonnull final ConditionalGet conditionalGet, @Nonnull final String userAgent, final int timeoutMs)
+	{
+		this.conditionalGet = conditionalGet;
+		this.userAgent = userAgent;
+		this.timeoutMs = timeoutMs;
+	}
+
+	/**
+	 * @return unmodifiable rates by currency code, or null if the ticker failed
+	 */
+	@CheckForNull
+	public Map<String, Long> fetchTicker(@Nonnull final RateSources.Ticker ticker)
+	{
+		final long start = System.currentTimeMillis();
+		final String key = ticker.url.toString();
+
+		try
+		{
+			final ConditionalGet.Result result = conditionalGet.get(ticker.url, userAgent, timeoutMs);
+			if (result == null)
+				return null;
+
+			// not modified, so the rates parsed last time are still good
+			if (result.notModified)
+			{
+				final Map<String, Long> parsedRates = lastParsedRates.get(key);
+				if (parsedRates != null)
+					return parsedRates;
+			}
+
+			final Map<String, Long> rates = new TreeMap<String, Long>();
+
+			final Reader reader = new InputStreamReader(new FileInputStream(result.body), UTF_8);
+			try
+			{
+				new TickerParser(ticker.fields, null).parse(reader, new TickerParser.Listener()
+				{
+					@Override
+					public void onRate(final String currencyCode, final long rate)
+					{
+						rates.put(currencyCode, rate);
+					}
+				});
+			}
+			finally
+			{
+				reader.close();
+			}
+
+			final Map<String, Long> parsedRates = Collections.unmodifiableMap(rates);
+			lastParsedRates.put(key, parsedRates);
+
+			log.info("parsed {} exchange rates from {}, took {} ms", rates.size(), ticker, System.currentTimeMillis() - start);
+
+			return parsedRates;
+		}
+		catch (final Exception x)
+		{
+			log.warn("problem fetching exchange rates from " + ticker, x);
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return price of one unit of gold in USD, or null if the service failed
+	 */
+	@CheckForNull
+	public Long fetchGoldRate(@Nonnull final RateSources.GoldService service)
+	{
+		final SoapObject request = new SoapObject(GOLD_NAMESPACE, GOLD_METHOD);
+		request.addProperty("UserName", service.user);
+		request.addProperty("Password", service.password);
+
+		final SoapSerializationEnvelope envelope = new SoapSerializationEnvelope(SoapEnvelope.VER11);
+		envelope.dotNet = true;
+		envelope.setOutputSoapObject(request);
+
+		try
+		{
+			new HttpTransportSE(service.url.toString(), timeoutMs).call(GOLD_NAMESPACE + GOLD_METHOD, envelope);
+
+			final SoapObject response = (SoapObject) envelope.getResponse();
+			final String goldRateString = ((SoapPrimitive) response.getProperty(0)).getValue().toString();
+
+			final long goldRate = parseGoldRate(goldRateString);
+			if (goldRate > 0)
+				return goldRate;
+
+			log.warn("unusable gold rate: {}", goldRateString);
+		}
+		catch (final Exception x)
+		{
+			log.warn("problem fetching gold rate from " + service, x);
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return rate with 8 decimals, or 0 if it cannot be parsed
+	 */
+	private static long parseGoldRate(@Nonnull final String goldRate)
+	{
+		// DecimalFormat isn't thread safe
+		final DecimalFormat format = new DecimalFormat("#,##0.#", DecimalFormatSymbols.getInstance(Locale.US));
+		format.setParseBigDecimal(true);
+
+		final String trimmed = goldRate.trim();
+		final ParsePosition position = new ParsePosition(0);
+		final BigDecimal value = (BigDecimal) format.parse(trimmed, position);
+		if (value == null || position.getIndex() != trimmed.length())
+			return 0;
+
+		try
+		{
+			return value.movePointRight(SCALE).setScale(0, RoundingMode.DOWN).longValueExact();
+		}
+		catch (final ArithmeticException x)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * Converts BTC rates into rates for the gold backed coin, via the USD price of both.
+	 *
+	 * @param goldRate
+	 *            price of one unit of gold in USD
+	 * @return adjusted rates by currency code, or null if there is no USD rate to adjust by
+	 * @throws ArithmeticException
+	 *             if an adjusted rate overflows
+	 */
+	@CheckForNull
+	public static Map<String, Long> adjustToGold(@Nonnull final Map<String, Long> btcRates, final long goldRate)
+	{
+		final Long usdRate = btcRates.get("USD");
+		if (usdRate == null || usdRate <= 0 || goldRate <= 0)
+			return null;
+
+		// rate * gold / USD in one step, the intermediate product is kept exact by FixedPoint
+		final Map<String, Long> adjustedRates = new TreeMap<String, Long>();
+		for (final Map.Entry<String, Long> entry : btcRates.entrySet())
+			adjustedRates.put(entry.getKey(), FixedPoint.mulDiv(entry.getValue(), goldRate, usdRate, RoundingMode.DOWN));
+
+		return adjustedRates;
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only history of exchange rates. Each currency has its own file of fixed size records, each a big endian
+ * timestamp in milliseconds followed by the rate. Records are in time order, so lookups are a binary search over the
+ * memory mapped file.
+ *
+ * Lookups neither lock nor touch the file system, so they can be done while binding list rows. They see the records of
+ * a currency once it has been {@link #open(String) opened} or appended to.
+ *
+ * Thread safe.
+ *
+ * @author Andreas Schildbach
+ */
+public final class RateHistory
+{
+	private static final int RECORD_SIZE = 16;
+
+	private final File dir;
+	private final long minIntervalMs;
+	private final ConcurrentMap<String, Series> series = new ConcurrentHashMap<String, Series>();
+
+	private static final Logger log = LoggerFactory.getLogger(RateHistory.class);
+
+	private static final class Series
+	{
+		public final File file;
+
+		// guarded by the history
+		public int numRecords;
+		public long lastTime;
+
+		// what lookups see, replaced after each append
+		public volatile Records records = Records.EMPTY;
+
+		public Series(@Nonnull final File file)
+		{
+			this.file = file;
+		}
+	}
+
+	private static final class Records
+	{
+		public static final Records EMPTY = new Records(0, LongBuffer.allocate(0));
+
+		public final int numRecords;
+		public final LongBuffer buffer;
+
+		public Records(final int numRecords, @Nonnull final LongBuffer buffer)
+		{
+			this.numRecords = numRecords;
+			this.buffer = buffer;
+		}
+	}
+
+	/**
+	 * @param minIntervalMs
+	 *            samples closer than this to the previous sample of the same currency are dropped
+	 */
+	public RateHistory(@Nonnull final File dir, final long minIntervalMs)
+	{
+		this.dir = dir;
+		this.minIntervalMs = minIntervalMs;
+	}
+
+	/**
+	 * Maps the history of a currency for lookups. Touches the file system, so don't call from the main thread.
+	 */
+	public synchronized void open(@Nonnull final String currencyCode)
+	{
+		series(currencyCode);
+	}
+
+	/**
+	 * @return true if the sample was stored
+	 */
+	public synchronized boolean append(@Nonnull final String currencyCode, final long timeMs, final long rate) throws IOException
+	{
+		final Series series = series(currencyCode);
+		if (series == null)
+			return false;
+
+		if (series.numRecords > 0 && timeMs < series.lastTime + minIntervalMs)
+			return false;
+
+		dir.mkdirs();
+		final RandomAccessFile raf = new RandomAccessFile(series.file, "rw");
+		try
+		{
+			// drop a partial record left over from a crash
+			final long length = (long) series.numRecords * RECORD_SIZE;
+			if (raf.length() != length)
+				raf.setLength(length);
+
+			raf.seek(length);
+			raf.writeLong(timeMs);
+			raf.writeLong(rate);
+		}
+		finally
+		{
+			raf.close();
+		}
+
+		series.numRecords++;
+		series.lastTime = timeMs;
+
+		// remap here rather than in lookups; the old mapping stays valid until then
+		final Records records = map(series);
+		if (records != null)
+			series.records = records;
+
+		return true;
+	}
+
+	/**
+	 * @return rate of the sample nearest to the given time, or 0 if there is none within maxDistanceMs
+	 */
+	public long rateAt(@Nonnull final String currencyCode, final long timeMs, final long maxDistanceMs)
+	{
+		final Series series = this.series.get(currencyCode);
+		if (series == null)
+			return 0;
+
+		final Records records = series.records;
+		final int numRecords = records.numRecords;
+		final LongBuffer buffer = records.buffer;
+		if (numRecords == 0)
+			return 0;
+
+		// first record at or after the time
+		int low = 0;
+		int high = numRecords;
+		while (low < high)
+		{
+			final int mid = (low + high) >>> 1;
+			if (buffer.get(mid * 2) < timeMs)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		int nearest = -1;
+		long distance = Long.MAX_VALUE;
+		if (low < numRecords)
+		{
+			nearest = low;
+			distance = buffer.get(low * 2) - timeMs;
+		}
+		if (low > 0 && timeMs - buffer.get((low - 1) * 2) < distance)
+		{
+			nearest = low - 1;
+			distance = timeMs - buffer.get(nearest * 2);
+		}
+
+		return distance <= maxDistanceMs ? buffer.get(nearest * 2 + 1) : 0;
+	}
+
+	public synchronized int size(@Nonnull final String currencyCode)
+	{
+		final Series series = series(currencyCode);
+
+		return series != null ? series.numRecords : 0;
+	}
+
+	@CheckForNull
+	private Series series(@Nonnull final String currencyCode)
+	{
+		Series series = this.series.get(currencyCode);
+
+		if (series == null)
+		{
+			// currency codes end up in file names
+			for (int i = 0; i < currencyCode.length(); i++)
+			{
+				final char c = currencyCode.charAt(i);
+				if (!((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')))
+					return null;
+			}
+			if (currencyCode.length() == 0)
+				return null;
+
+			series = new Series(new File(dir, currencyCode));
+			series.numRecords = (int) (series.file.length() / RECORD_SIZE);
+			if (series.numRecords > 0)
+			{
+				final Records records = map(series);
+				if (records != null)
+				{
+					series.records = records;
+					series.lastTime = records.buffer.get((records.numRecords - 1) * 2);
+				}
+			}
+
+			this.series.put(currencyCode, series);
+		}
+
+		return series;
+	}
+
+	@CheckForNull
+	private static Records map(@Nonnull final Series series)
+	{
+		try
+		{
+			final FileInputStream is = new FileInputStream(series.file);
+			try
+			{
+				// the mapping stays valid after the channel is closed
+				final LongBuffer buffer = is.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, (long) series.numRecords * RECORD_SIZE)
+						.asLongBuffer();
+				return new Records(series.numRecords, buffer);
+			}
+			finally
+			{
+				is.close();
+			}
+		}
+		catch (final IOException x)
+		{
+			log.info("problem mapping " + series.file, x);
+			return null;
+		}
+	}
+}
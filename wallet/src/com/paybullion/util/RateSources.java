@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Where exchange rates come from: BTC tickers and SOAP services for the gold parity, each in order of preference. The
+ * defaults are the public services. Everything can be overridden from a properties file, for example to point the wallet
+ * at a local stand-in server:
+ *
+ * <pre>
+ * ticker.1.url = http://10.0.2.2:8080/ticker
+ * ticker.1.fields = 24h_avg,last
+ * gold.1.url = http://10.0.2.2:8080/gold
+ * gold.2.url = http://10.0.2.2:8081/gold
+ * gold.2.user = user
+ * gold.2.password = password
+ * </pre>
+ *
+ * If any ticker is given, the given tickers replace all default ones, and likewise for gold services. A gold service
+ * without credentials uses the ones of the first default service.
+ *
+ * @author Andreas Schildbach
+ */
+public final class RateSources
+{
+	public static final class Ticker
+	{
+		public final URL url;
+		/** in order of preference, see {@link TickerParser} */
+		public final String[] fields;
+
+		public Ticker(@Nonnull final URL url, @Nonnull final String... fields)
+		{
+			this.url = url;
+			this.fields = fields;
+		}
+
+		@Override
+		public String toString()
+		{
+			return url.toString();
+		}
+	}
+
+	public static final class GoldService
+	{
+		public final URL url;
+		public final String user;
+		public final String password;
+
+		public GoldService(@Nonnull final URL url, @Nonnull final String user, @Nonnull final String password)
+		{
+			this.url = url;
+			this.user = user;
+			this.password = password;
+		}
+
+		@Override
+		public String toString()
+		{
+			return url.toString();
+		}
+	}
+
+	public final List<Ticker> tickers;
+	public final List<GoldService> goldServices;
+
+	public static final RateSources DEFAULT;
+
+	static
+	{
+		try
+		{
+			final List<Ticker> tickers = new ArrayList<Ticker>();
+			tickers.add(new Ticker(new URL("https://api.bitcoinaverage.com/ticker/global/all"), "24h_avg", "last"));
+			tickers.add(new Ticker(new URL("http://api.bitcoincharts.com/v1/weighted_prices.json"), "24h", "7d", "30d"));
+			tickers.add(new Ticker(new URL("https://blockchain.info/ticker"), "15m"));
+
+			final List<GoldService> goldServices = new ArrayList<GoldService>();
+			goldServices.add(new GoldService(new URL("http://www.freewebservicesx.com/GetGoldPrice.asmx"), "paybullion@grr.la", "f7yhdye8fijckl"));
+
+			DEFAULT = new RateSources(tickers, goldServices);
+		}
+		catch (final MalformedURLException x)
+		{
+			throw new RuntimeException(x); // cannot happen
+		}
+	}
+
+	public RateSources(@Nonnull final List<Ticker> tickers, @Nonnull final List<GoldService> goldServices)
+	{
+		this.tickers = Collections.unmodifiableList(new ArrayList<Ticker>(tickers));
+		this.goldServices = Collections.unmodifiableList(new ArrayList<GoldService>(goldServices));
+	}
+
+	public static RateSources fromProperties(@Nonnull final InputStream is) throws IOException
+	{
+		final Properties properties = new Properties();
+		properties.load(is);
+
+		return fromProperties(properties, DEFAULT);
+	}
+
+	public static RateSources fromProperties(@Nonnull final Properties properties, @Nonnull final RateSources defaults) throws MalformedURLException
+	{
+		final List<Ticker> tickers = new ArrayList<Ticker>();
+		for (int i = 1;; i++)
+		{
+			final String url = properties.getProperty("ticker." + i + ".url");
+			if (url == null)
+				break;
+
+			final String fields = properties.getProperty("ticker." + i + ".fields");
+			if (fields == null)
+				throw new MalformedURLException("ticker." + i + ".fields missing");
+
+			tickers.add(new Ticker(new URL(url.trim()), fields.trim().split("\\s*,\\s*")));
+		}
+
+		final GoldService defaultGoldService = defaults.goldServices.get(0);
+		final List<GoldService> goldServices = new ArrayList<GoldService>();
+		for (int i = 1;; i++)
+		{
+			final String url = properties.getProperty("gold." + i + ".url");
+			if (url == null)
+				break;
+
+			goldServices.add(new GoldService(new URL(url.trim()), properties.getProperty("gold." + i + ".user", defaultGoldService.user),
+					properties.getProperty("gold." + i + ".password", defaultGoldService.password)));
+		}
+
+		return new RateSources(tickers.isEmpty() ? defaults.tickers : tickers, goldServices.isEmpty() ? defaults.goldServices : goldServices);
+	}
+}
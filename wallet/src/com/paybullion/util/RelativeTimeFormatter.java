@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.util;
+
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.annotation.Nonnull;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+
+/**
+ * Caches relative time strings for list rows. A rendered string stays valid as long as its timestamp stays in the same
+ * bucket (for example "5 minutes ago" until it becomes "6 minutes ago"), so rows only need to be rebound on a clock tick if
+ * {@link #isStale(long)} says so.
+ *
+ * Not thread safe, meant to be used from the UI thread.
+ *
+ * @author Andreas Schildbach
+ */
+public final class RelativeTimeFormatter
+{
+	public enum Style
+	{
+		/** like {@link DateUtils#getRelativeTimeSpanString(Context, long)} */
+		TIME_SPAN,
+
+		/** like {@link DateUtils#getRelativeDateTimeString(Context, long, long, long, int)} with minute resolution and week transition */
+		DATE_TIME
+	}
+
+	private final Context context;
+	private final Style style;
+	private final Calendar calendar = Calendar.getInstance();
+
+	private final Map<Long, Entry> cache = new LinkedHashMap<Long, Entry>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Long, Entry> eldest)
+		{
+			return size() > MAX_CACHE_SIZE;
+		}
+	};
+
+	private static final int MAX_CACHE_SIZE = 256;
+	private static final long BUCKET_STABLE = Long.MAX_VALUE;
+
+	private static final class Entry
+	{
+		public final long bucket;
+		public final CharSequence text;
+
+		public Entry(final long bucket, final CharSequence text)
+		{
+			this.bucket = bucket;
+			this.text = text;
+		}
+	}
+
+	public RelativeTimeFormatter(@Nonnull final Context context, @Nonnull final Style style)
+	{
+		this.context = context;
+		this.style = style;
+	}
+
+	public CharSequence format(final long timeMs)
+	{
+		final long now = System.currentTimeMillis();
+		final long bucket = bucket(timeMs, now);
+
+		final Entry entry = cache.get(timeMs);
+		if (entry != null && entry.bucket == bucket)
+			return entry.text;
+
+		final CharSequence text = render(timeMs);
+		cache.put(timeMs, new Entry(bucket, text));
+
+		return text;
+	}
+
+	/**
+	 * @return true if the string last handed out for this timestamp is out of date, or was never handed out
+	 */
+	public boolean isStale(final long timeMs)
+	{
+		final Entry entry = cache.get(timeMs);
+
+		return entry == null || entry.bucket != bucket(timeMs, System.currentTimeMillis());
+	}
+
+	public void clear()
+	{
+		cache.clear();
+	}
+
+	private CharSequence render(final long timeMs)
+	{
+		if (style == Style.TIME_SPAN)
+			return DateUtils.getRelativeTimeSpanString(context, timeMs);
+		else
+			return DateUtils.getRelativeDateTimeString(context, timeMs, DateUtils.MINUTE_IN_MILLIS, DateUtils.WEEK_IN_MILLIS, 0);
+	}
+
+	/**
+	 * @return a value that changes whenever the string rendered for the timestamp at the given time would change
+	 */
+	public long bucket(final long timeMs, final long now)
+	{
+		final long span = Math.abs(now - timeMs);
+		final long direction = now >= timeMs ? 1 : -1;
+
+		if (style == Style.TIME_SPAN)
+		{
+			// time of day for the current local day, then a date which only changes its format at the turn of the year
+			if (localDay(timeMs) == localDay(now))
+				return direction;
+			else
+				return direction * (2 + year(now));
+		}
+		else
+		{
+			// "n minutes ago", "n hours ago", "n days ago", then an absolute date
+			if (span < DateUtils.HOUR_IN_MILLIS)
+				return direction * (1 + span / DateUtils.MINUTE_IN_MILLIS);
+			else if (span < DateUtils.DAY_IN_MILLIS)
+				return direction * (100 + span / DateUtils.HOUR_IN_MILLIS);
+			else if (span < DateUtils.WEEK_IN_MILLIS)
+				return direction * (200 + Math.abs(localDay(now) - localDay(timeMs)));
+			else
+				return BUCKET_STABLE;
+		}
+	}
+
+	private static long localDay(final long timeMs)
+	{
+		return (timeMs + TimeZone.getDefault().getOffset(timeMs)) / DateUtils.DAY_IN_MILLIS;
+	}
+
+	private long year(final long timeMs)
+	{
+		calendar.setTimeInMillis(timeMs);
+
+		return calendar.get(Calendar.YEAR);
+	}
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.util;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Streaming pull parser for exchange rate tickers of the form <code>{"USD":{"24h":"612.50", ...}, ...}</code>, as served by
+ * bitcoinaverage, bitcoincharts and blockchain.info. Only the requested fields are looked at, and rates are parsed straight
+ * into fixed point longs with 8 decimals. Apart from its buffers, the parser only allocates the currency code of each rate
+ * kept.
+ *
+ * Like {@link GenericUtils#toNanoCoins(String, int)}, a value with more than 8 significant decimals is not accepted. In that
+ * case the next field in order of preference is tried.
+ *
+ * Not thread safe, but can be reused.
+ *
+ * @author Andreas Schildbach
+ */
+public final class TickerParser
+{
+	public interface Listener
+	{
+		void onRate(@Nonnull String currencyCode, long rate);
+	}
+
+	private static final int SCALE = 8;
+	private static final long INVALID = -1;
+
+	private final String[] fields;
+	@Nullable
+	private final String[] currencyCodes;
+	private final long[] fieldValues;
+
+	private Reader reader;
+	private final char[] buffer = new char[1024];
+	private int position;
+	private int limit;
+
+	private char[] currencyKey = new char[8];
+	private int currencyKeyLength;
+	private char[] fieldKey = new char[16];
+	private int fieldKeyLength;
+
+	/**
+	 * @param fields
+	 *            field names in order of preference, the first one holding a positive rate is used
+	 * @param currencyCodes
+	 *            currencies to keep, or null for all
+	 */
+	public TickerParser(@Nonnull final String[] fields, @Nullable final String[] currencyCodes)
+	{
+		this.fields = fields;
+		this.currencyCodes = currencyCodes;
+		this.fieldValues = new long[fields.length];
+	}
+
+	/**
+	 * @return number of rates passed to the listener
+	 */
+	public int parse(@Nonnull final Reader reader, @Nonnull final Listener listener) throws IOException
+	{
+		this.reader = reader;
+		this.position = 0;
+		this.limit = 0;
+
+		int numRates = 0;
+
+		expect('{');
+		if (peekToken() == '}')
+		{
+			position++;
+			return 0;
+		}
+
+		do
+		{
+			currencyKeyLength = readKey(true);
+			expect(':');
+
+			if (peekToken() == '{' && isWantedCurrency())
+			{
+				final long rate = readRates();
+				if (rate > 0)
+				{
+					listener.onRate(new String(currencyKey, 0, currencyKeyLength), rate);
+					numRates++;
+				}
+			}
+			else
+			{
+				skipValue();
+			}
+		}
+		while (nextMember());
+
+		return numRates;
+	}
+
+	private boolean isWantedCurrency()
+	{
+		if (currencyCodes == null)
+			return true;
+
+		for (final String currencyCode : currencyCodes)
+			if (equals(currencyKey, currencyKeyLength, currencyCode))
+				return true;
+
+		return false;
+	}
+
+	private long readRates() throws IOException
+	{
+		for (int i = 0; i < fieldValues.length; i++)
+			fieldValues[i] = INVALID;
+
+		expect('{');
+		if (peekToken() == '}')
+		{
+			position++;
+			return INVALID;
+		}
+
+		do
+		{
+			fieldKeyLength = readKey(false);
+			expect(':');
+
+			int fieldIndex = -1;
+			for (int i = 0; i < fields.length; i++)
+				if (equals(fieldKey, fieldKeyLength, fields[i]))
+					fieldIndex = i;
+
+			if (fieldIndex >= 0)
+				fieldValues[fieldIndex] = readDecimal();
+			else
+				skipValue();
+		}
+		while (nextMember());
+
+		for (final long value : fieldValues)
+			if (value > 0)
+				return value;
+
+		return INVALID;
+	}
+
+	private boolean nextMember() throws IOException
+	{
+		final char c = nextToken();
+		if (c == ',')
+			return true;
+		else if (c == '}')
+			return false;
+		else
+			throw new IOException("expected ',' or '}', got '" + c + "'");
+	}
+
+	private int readKey(final boolean isCurrency) throws IOException
+	{
+		expect('"');
+
+		char[] key = isCurrency ? currencyKey : fieldKey;
+		int length = 0;
+
+		while (true)
+		{
+			char c = next();
+			if (c == '"')
+				break;
+			if (c == '\\')
+				c = readEscape();
+
+			if (length == key.length)
+			{
+				final char[] grown = new char[key.length * 2];
+				System.arraycopy(key, 0, grown, 0, length);
+				key = grown;
+				if (isCurrency)
+					currencyKey = grown;
+				else
+					fieldKey = grown;
+			}
+			key[length++] = c;
+		}
+
+		return length;
+	}
+
+	/**
+	 * Reads a number or a string holding a number.
+	 *
+	 * @return fixed point value with 8 decimals, or {@link #INVALID}
+	 */
+	private long readDecimal() throws IOException
+	{
+		final boolean quoted = peekToken() == '"';
+		if (quoted)
+			position++;
+
+		boolean negative = false;
+		boolean valid = true;
+		boolean anyDigits = false;
+		boolean inFraction = false;
+		long value = 0;
+		int scale = 0; // decimals consumed into value
+		int exponent = 0;
+
+		char c = peek();
+		if (c == '-' || c == '+')
+		{
+			negative = c == '-';
+			position++;
+		}
+
+		while (true)
+		{
+			c = peek();
+
+			if (c >= '0' && c <= '9')
+			{
+				position++;
+				anyDigits = true;
+				final int digit = c - '0';
+
+				if (inFraction)
+				{
+					if (scale < SCALE)
+					{
+						value = value * 10 + digit;
+						scale++;
+					}
+					else if (digit != 0)
+					{
+						valid = false; // more decimals than we can represent exactly
+					}
+				}
+				else
+				{
+					if (value > (Long.MAX_VALUE - digit) / 10)
+						valid = false;
+					else
+						value = value * 10 + digit;
+				}
+			}
+			else if (c == '.' && !inFraction)
+			{
+				position++;
+				inFraction = true;
+			}
+			else if (c == 'e' || c == 'E')
+			{
+				position++;
+				exponent = readExponent();
+				break;
+			}
+			else
+			{
+				break;
+			}
+		}
+
+		if (quoted)
+		{
+			if (next() != '"')
+			{
+				skipString();
+				return INVALID;
+			}
+		}
+		else if (!anyDigits)
+		{
+			// null, true, false or garbage
+			skipValue();
+			return INVALID;
+		}
+
+		if (!anyDigits || !valid)
+			return INVALID;
+
+		// shift to 8 decimals
+		int shift = SCALE - scale + exponent;
+		while (shift > 0)
+		{
+			if (value > Long.MAX_VALUE / 10)
+				return INVALID;
+			value *= 10;
+			shift--;
+		}
+		while (shift < 0)
+		{
+			if (value % 10 != 0)
+				return INVALID;
+			value /= 10;
+			shift++;
+		}
+
+		return negative ? -value : value;
+	}
+
+	private int readExponent() throws IOException
+	{
+		boolean negative = false;
+		char c = peek();
+		if (c == '-' || c == '+')
+		{
+			negative = c == '-';
+			position++;
+		}
+
+		int exponent = 0;
+		while ((c = peek()) >= '0' && c <= '9')
+		{
+			position++;
+			if (exponent < 1000)
+				exponent = exponent * 10 + (c - '0');
+		}
+
+		return negative ? -exponent : exponent;
+	}
+
+	private void skipValue() throws IOException
+	{
+		final char c = peekToken();
+
+		if (c == '"')
+		{
+			position++;
+			skipString();
+		}
+		else if (c == '{' || c == '[')
+		{
+			position++;
+			int depth = 1;
+			while (depth > 0)
+			{
+				final char d = next();
+				if (d == '"')
+					skipString();
+				else if (d == '{' || d == '[')
+					depth++;
+				else if (d == '}' || d == ']')
+					depth--;
+			}
+		}
+		else
+		{
+			// number, true, false or null
+			while (true)
+			{
+				final char d = peek();
+				if (d == ',' || d == '}' || d == ']' || isWhitespace(d))
+					break;
+				position++;
+			}
+		}
+	}
+
+	private void skipString() throws IOException
+	{
+		while (true)
+		{
+			final char c = next();
+			if (c == '"')
+				return;
+			if (c == '\\')
+				next();
+		}
+	}
+
+	private char readEscape() throws IOException
+	{
+		final char c = next();
+		switch (c)
+		{
+			case 'b':
+				return '\b';
+			case 'f':
+				return '\f';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 't':
+				return '\t';
+			case 'u':
+				int value = 0;
+				for (int i = 0; i < 4; i++)
+				{
+					final int digit = Character.digit(next(), 16);
+					if (digit < 0)
+						throw new IOException("bad unicode escape");
+					value = (value << 4) | digit;
+				}
+				return (char) value;
+			default:
+				return c;
+		}
+	}
+
+	private void expect(final char expected) throws IOException
+	{
+		final char c = nextToken();
+		if (c != expected)
+			throw new IOException("expected '" + expected + "', got '" + c + "'");
+	}
+
+	private char nextToken() throws IOException
+	{
+		final char c = peekToken();
+		position++;
+		return c;
+	}
+
+	private char peekToken() throws IOException
+	{
+		char c;
+		while (isWhitespace(c = peek()))
+			position++;
+		return c;
+	}
+
+	private char next() throws IOException
+	{
+		final char c = peek();
+		position++;
+		return c;
+	}
+
+	private char peek() throws IOException
+	{
+		if (position == limit)
+		{
+			limit = reader.read(buffer);
+			position = 0;
+			if (limit <= 0)
+			{
+				limit = 0;
+				throw new IOException("unexpected end of input");
+			}
+		}
+
+		return buffer[position];
+	}
+
+	private static boolean isWhitespace(final char c)
+	{
+		return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+	}
+
+	private static boolean equals(@Nonnull final char[] chars, final int length, @Nonnull final String s)
+	{
+		if (length != s.length())
+			return false;
+
+		for (int i = 0; i < length; i++)
+			if (chars[i] != s.charAt(i))
+				return false;
+
+		return true;
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Writes transaction history rows straight to a {@link Writer}, one row at a time, so memory use does not depend on the
+ * number of rows.
+ *
+ * @author Andreas Schildbach
+ */
+public abstract class TransactionHistoryWriter
+{
+	public enum Format
+	{
+		CSV("csv", "text/csv"), JSON("json", "application/json");
+
+		public final String fileExtension;
+		public final String mimeType;
+
+		private Format(final String fileExtension, final String mimeType)
+		{
+			this.fileExtension = fileExtension;
+			this.mimeType = mimeType;
+		}
+
+		public TransactionHistoryWriter newWriter(@Nonnull final Writer out)
+		{
+			if (this == CSV)
+				return new CsvWriter(out);
+			else
+				return new JsonWriter(out);
+		}
+	}
+
+	protected static final String[] COLUMNS = { "time", "hash", "value", "counterparty", "label", "confirmations", "fiat_currency",
+			"fiat_value" };
+
+	protected final Writer out;
+	protected int numRows = 0;
+
+	protected TransactionHistoryWriter(@Nonnull final Writer out)
+	{
+		this.out = out;
+	}
+
+	public abstract void writeHeader() throws IOException;
+
+	/**
+	 * @param value
+	 *            signed and formatted with a '.' as decimal separator
+	 * @param fiatValue
+	 *            signed and formatted with a '.' as decimal separator, or null if no exchange rate is known
+	 */
+	public abstract void writeRow(@Nonnull String time, @Nonnull String hash, @Nonnull String value, @Nullable String counterparty,
+			@Nullable String label, int confirmations, @Nullable String fiatCurrencyCode, @Nullable String fiatValue) throws IOException;
+
+	public abstract void writeFooter() throws IOException;
+
+	public int getNumRows()
+	{
+		return numRows;
+	}
+
+	private static final class CsvWriter extends TransactionHistoryWriter
+	{
+		private CsvWriter(@Nonnull final Writer out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void writeHeader() throws IOException
+		{
+			for (int i = 0; i < COLUMNS.length; i++)
+			{
+				if (i > 0)
+					out.write(',');
+				out.write(COLUMNS[i]);
+			}
+			out.write("\r\n");
+		}
+
+		@Override
+		public void writeRow(final String time, final String hash, final String value, final String counterparty, final String label,
+				final int confirmations, final String fiatCurrencyCode, final String fiatValue) throws IOException
+		{
+			out.write(time);
+			out.write(',');
+			out.write(hash);
+			out.write(',');
+			out.write(value);
+			out.write(',');
+			writeField(counterparty);
+			out.write(',');
+			writeField(label);
+			out.write(',');
+			out.write(Integer.toString(confirmations));
+			out.write(',');
+			writeField(fiatCurrencyCode);
+			out.write(',');
+			writeField(fiatValue);
+			out.write("\r\n");
+
+			numRows++;
+		}
+
+		@Override
+		public void writeFooter() throws IOException
+		{
+			out.flush();
+		}
+
+		private void writeField(@Nullable final String field) throws IOException
+		{
+			if (field == null)
+				return;
+
+			boolean needsQuotes = false;
+			for (int i = 0; i < field.length() && !needsQuotes; i++)
+			{
+				final char c = field.charAt(i);
+				needsQuotes = c == ',' || c == '"' || c == '\r' || c == '\n';
+			}
+
+			if (!needsQuotes)
+			{
+				out.write(field);
+				return;
+			}
+
+			out.write('"');
+			for (int i = 0; i < field.length(); i++)
+			{
+				final char c = field.charAt(i);
+				if (c == '"')
+					out.write('"');
+				out.write(c);
+			}
+			out.write('"');
+		}
+	}
+
+	private static final class JsonWriter extends TransactionHistoryWriter
+	{
+		private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+		private JsonWriter(@Nonnull final Writer out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void writeHeader() throws IOException
+		{
+			out.write('[');
+		}
+
+		@Override
+		public void writeRow(final String time, final String hash, final String value, final String counterparty, final String label,
+				final int confirmations, final String fiatCurrencyCode, final String fiatValue) throws IOException
+		{
+			out.write(numRows == 0 ? "\n{" : ",\n{");
+			writeName(0);
+			writeString(time);
+			writeName(1);
+			writeString(hash);
+			writeName(2);
+			out.write(value);
+			writeName(3);
+			writeString(counterparty);
+			writeName(4);
+			writeString(label);
+			writeName(5);
+			out.write(Integer.toString(confirmations));
+			writeName(6);
+			writeString(fiatCurrencyCode);
+			writeName(7);
+			out.write(fiatValue != null ? fiatValue : "null");
+			out.write('}');
+
+			numRows++;
+		}
+
+		@Override
+		public void writeFooter() throws IOException
+		{
+			out.write("\n]\n");
+			out.flush();
+		}
+
+		private void writeName(final int column) throws IOException
+		{
+			if (column > 0)
+				out.write(',');
+			out.write('"');
+			out.write(COLUMNS[column]);
+			out.write("\":");
+		}
+
+		private void writeString(@Nullable final String s) throws IOException
+		{
+			if (s == null)
+			{
+				out.write("null");
+				return;
+			}
+
+			out.write('"');
+			for (int i = 0; i < s.length(); i++)
+			{
+				final char c = s.charAt(i);
+				if (c == '"' || c == '\\')
+				{
+					out.write('\\');
+					out.write(c);
+				}
+				else if (c < 0x20 || c == 0x2028 || c == 0x2029)
+				{
+					out.write("\\u");
+					out.write(HEX[(c >> 12) & 0xf]);
+					out.write(HEX[(c >> 8) & 0xf]);
+					out.write(HEX[(c >> 4) & 0xf]);
+					out.write(HEX[c & 0xf]);
+				}
+				else
+				{
+					out.write(c);
+				}
+			}
+			out.write('"');
+		}
+	}
+}
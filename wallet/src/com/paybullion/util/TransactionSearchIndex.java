@@ -0,0 +1,507 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.paybullion.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * In-memory search index over transactions. Label and memo tokens as well as counterparty addresses are kept in sorted
+ * maps, so every query term is matched as a prefix. Amount and time are kept in primitive sorted arrays for range
+ * queries. Labels are indexed per address, so an address book change doesn't touch any transaction.
+ *
+ * Amount ranges match the absolute value, so they find both sent and received transactions.
+ *
+ * @author Andreas Schildbach
+ */
+public final class TransactionSearchIndex<T>
+{
+	public static final class Query
+	{
+		public final String[] terms;
+		public final long minValue;
+		public final long maxValue;
+		public final long minTime;
+		public final long maxTime;
+
+		public Query(@Nullable final String text, final long minValue, final long maxValue, final long minTime, final long maxTime)
+		{
+			this.terms = text != null && text.trim().length() > 0 ? text.trim().split("\\s+") : new String[0];
+			this.minValue = minValue;
+			this.maxValue = maxValue;
+			this.minTime = minTime;
+			this.maxTime = maxTime;
+		}
+
+		public Query(@Nullable final String text)
+		{
+			this(text, Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE);
+		}
+
+		public boolean hasValueRange()
+		{
+			return minValue != Long.MIN_VALUE || maxValue != Long.MAX_VALUE;
+		}
+
+		public boolean hasTimeRange()
+		{
+			return minTime != Long.MIN_VALUE || maxTime != Long.MAX_VALUE;
+		}
+	}
+
+	private final List<T> items = new ArrayList<T>();
+	private final Map<T, Integer> ids = new HashMap<T, Integer>();
+	private long[] times = new long[INITIAL_CAPACITY];
+	private long[] values = new long[INITIAL_CAPACITY];
+	private final List<String> addresses = new ArrayList<String>();
+	private final List<String[]> memoTokens = new ArrayList<String[]>();
+
+	private final SortedColumn timeColumn = new SortedColumn();
+	private final SortedColumn valueColumn = new SortedColumn();
+
+	private final TreeMap<String, IntList> addressIndex = new TreeMap<String, IntList>();
+	private final TreeMap<String, IntList> memoIndex = new TreeMap<String, IntList>();
+	private final TreeMap<String, Set<String>> labelIndex = new TreeMap<String, Set<String>>();
+
+	private static final int INITIAL_CAPACITY = 64;
+	private static final String[] NO_TOKENS = new String[0];
+
+	/**
+	 * Adds an item, or updates it if it is already indexed.
+	 */
+	public synchronized void put(@Nonnull final T item, final long timeMs, final long value, @Nullable final String address,
+			@Nullable final String memo)
+	{
+		final long absValue = Math.abs(value);
+		final String[] tokens = memo != null ? tokenize(memo) : NO_TOKENS;
+		final Integer existingId = ids.get(item);
+
+		final int id;
+		final boolean timeChanged, valueChanged;
+		if (existingId == null)
+		{
+			id = items.size();
+			items.add(item);
+			ids.put(item, id);
+			ensureCapacity(id + 1);
+			addresses.add(null);
+			memoTokens.add(NO_TOKENS);
+			timeChanged = true;
+			valueChanged = true;
+		}
+		else
+		{
+			id = existingId;
+			timeChanged = times[id] != timeMs;
+			valueChanged = values[id] != absValue;
+			if (!timeChanged && !valueChanged && equals(addresses.get(id), address) && Arrays.equals(memoTokens.get(id), tokens))
+				return;
+
+			remove(addressIndex, addresses.get(id), id);
+			for (final String token : memoTokens.get(id))
+				remove(memoIndex, token, id);
+		}
+
+		// an unchanged key must not be added again, as the old entry would not be recognized as stale
+		if (timeChanged)
+		{
+			times[id] = timeMs;
+			timeColumn.add(timeMs, id);
+		}
+		if (valueChanged)
+		{
+			values[id] = absValue;
+			valueColumn.add(absValue, id);
+		}
+
+		addresses.set(id, address);
+		if (address != null)
+			add(addressIndex, address, id);
+
+		memoTokens.set(id, tokens);
+		for (final String token : tokens)
+			add(memoIndex, token, id);
+	}
+
+	public synchronized boolean contains(@Nonnull final T item)
+	{
+		return ids.containsKey(item);
+	}
+
+	public synchronized int size()
+	{
+		return items.size();
+	}
+
+	/**
+	 * Replaces all labels, keyed by address.
+	 */
+	public synchronized void setLabels(@Nonnull final Map<String, String> labels)
+	{
+		labelIndex.clear();
+
+		for (final Map.Entry<String, String> entry : labels.entrySet())
+		{
+			if (entry.getValue() == null)
+				continue;
+
+			for (final String token : tokenize(entry.getValue()))
+			{
+				Set<String> labelAddresses = labelIndex.get(token);
+				if (labelAddresses == null)
+				{
+					labelAddresses = new HashSet<String>();
+					labelIndex.put(token, labelAddresses);
+				}
+				labelAddresses.add(entry.getKey());
+			}
+		}
+	}
+
+	public synchronized void clear()
+	{
+		items.clear();
+		ids.clear();
+		addresses.clear();
+		memoTokens.clear();
+		timeColumn.clear();
+		valueColumn.clear();
+		addressIndex.clear();
+		memoIndex.clear();
+	}
+
+	/**
+	 * @return matching items, newest first
+	 */
+	public synchronized List<T> search(@Nonnull final Query query)
+	{
+		BitSet matches = null;
+
+		if (query.hasValueRange())
+			matches = valueColumn.range(query.minValue, query.maxValue, values);
+
+		if (query.hasTimeRange())
+			matches = and(matches, timeColumn.range(query.minTime, query.maxTime, times));
+
+		for (final String term : query.terms)
+		{
+			if (matches != null && matches.isEmpty())
+				break;
+
+			matches = and(matches, matchTerm(term));
+		}
+
+		final List<T> result = new ArrayList<T>(matches != null ? matches.cardinality() : items.size());
+		timeColumn.collectDescending(matches, times, items, result);
+
+		return result;
+	}
+
+	private BitSet matchTerm(@Nonnull final String term)
+	{
+		final BitSet matches = new BitSet(items.size());
+
+		// addresses are case sensitive
+		for (final IntList list : prefixRange(addressIndex, term).values())
+			list.setAll(matches);
+
+		final String lowerTerm = term.toLowerCase(Locale.US);
+
+		for (final IntList list : prefixRange(memoIndex, lowerTerm).values())
+			list.setAll(matches);
+
+		for (final Set<String> labelAddresses : prefixRange(labelIndex, lowerTerm).values())
+		{
+			for (final String address : labelAddresses)
+			{
+				final IntList list = addressIndex.get(address);
+				if (list != null)
+					list.setAll(matches);
+			}
+		}
+
+		return matches;
+	}
+
+	private static <V> SortedMap<String, V> prefixRange(@Nonnull final TreeMap<String, V> map, @Nonnull final String prefix)
+	{
+		return map.subMap(prefix, prefix + Character.MAX_VALUE);
+	}
+
+	private static BitSet and(@CheckForNull final BitSet a, @Nonnull final BitSet b)
+	{
+		if (a == null)
+			return b;
+
+		a.and(b);
+		return a;
+	}
+
+	private static void add(@Nonnull final Map<String, IntList> index, @Nonnull final String key, final int id)
+	{
+		IntList list = index.get(key);
+		if (list == null)
+		{
+			list = new IntList();
+			index.put(key, list);
+		}
+		list.add(id);
+	}
+
+	private static void remove(@Nonnull final Map<String, IntList> index, @CheckForNull final String key, final int id)
+	{
+		if (key == null)
+			return;
+
+		final IntList list = index.get(key);
+		if (list != null)
+		{
+			list.remove(id);
+			if (list.size == 0)
+				index.remove(key);
+		}
+	}
+
+	private static boolean equals(@CheckForNull final String a, @CheckForNull final String b)
+	{
+		return a == null ? b == null : a.equals(b);
+	}
+
+	private void ensureCapacity(final int capacity)
+	{
+		if (capacity > times.length)
+		{
+			final int newCapacity = Math.max(capacity, times.length * 2);
+			times = copyOf(times, newCapacity);
+			values = copyOf(values, newCapacity);
+		}
+	}
+
+	static String[] tokenize(@Nonnull final String text)
+	{
+		final List<String> tokens = new ArrayList<String>();
+		final String lowerText = text.toLowerCase(Locale.US);
+
+		int start = -1;
+		for (int i = 0; i <= lowerText.length(); i++)
+		{
+			final boolean isTokenChar = i < lowerText.length() && Character.isLetterOrDigit(lowerText.charAt(i));
+			if (isTokenChar && start < 0)
+			{
+				start = i;
+			}
+			else if (!isTokenChar && start >= 0)
+			{
+				tokens.add(lowerText.substring(start, i));
+				start = -1;
+			}
+		}
+
+		return tokens.toArray(new String[tokens.size()]);
+	}
+
+	private static long[] copyOf(final long[] array, final int length)
+	{
+		final long[] copy = new long[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	private static int[] copyOf(final int[] array, final int length)
+	{
+		final int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	private static final class IntList
+	{
+		private int[] elements = new int[2];
+		private int size = 0;
+
+		public void add(final int element)
+		{
+			if (size == elements.length)
+				elements = copyOf(elements, size * 2);
+			elements[size++] = element;
+		}
+
+		public void remove(final int element)
+		{
+			for (int i = 0; i < size; i++)
+			{
+				if (elements[i] == element)
+				{
+					System.arraycopy(elements, i + 1, elements, i, size - i - 1);
+					size--;
+					return;
+				}
+			}
+		}
+
+		public void setAll(@Nonnull final BitSet bits)
+		{
+			for (int i = 0; i < size; i++)
+				bits.set(elements[i]);
+		}
+	}
+
+	/**
+	 * Parallel primitive arrays of (key, id), sorted by key. New entries are appended to an unsorted tail, which is sorted
+	 * and merged in on the next query. Entries whose key no longer matches the current key of their id are stale and get
+	 * dropped during the merge, as are repeated entries of an id whose key changed back and forth.
+	 */
+	private static final class SortedColumn
+	{
+		private long[] keys = new long[INITIAL_CAPACITY];
+		private int[] ids = new int[INITIAL_CAPACITY];
+		private int size = 0;
+		private int sortedSize = 0;
+
+		public void add(final long key, final int id)
+		{
+			if (size == keys.length)
+			{
+				keys = copyOf(keys, size * 2);
+				ids = copyOf(ids, size * 2);
+			}
+
+			keys[size] = key;
+			ids[size] = id;
+			size++;
+		}
+
+		public void clear()
+		{
+			size = 0;
+			sortedSize = 0;
+		}
+
+		public BitSet range(final long min, final long max, @Nonnull final long[] currentKeys)
+		{
+			sort(currentKeys);
+
+			final BitSet bits = new BitSet();
+			for (int i = lowerBound(min); i < size && keys[i] <= max; i++)
+				bits.set(ids[i]);
+
+			return bits;
+		}
+
+		public <T> void collectDescending(@CheckForNull final BitSet filter, @Nonnull final long[] currentKeys, @Nonnull final List<T> items,
+				@Nonnull final List<T> result)
+		{
+			sort(currentKeys);
+
+			for (int i = size - 1; i >= 0; i--)
+				if (filter == null || filter.get(ids[i]))
+					result.add(items.get(ids[i]));
+		}
+
+		private int lowerBound(final long key)
+		{
+			int low = 0;
+			int high = size;
+			while (low < high)
+			{
+				final int mid = (low + high) >>> 1;
+				if (keys[mid] < key)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+
+		private void sort(@Nonnull final long[] currentKeys)
+		{
+			if (sortedSize == size)
+				return;
+
+			mergeSort(keys, ids, sortedSize, size, new long[size], new int[size]);
+
+			// merge sorted prefix and sorted tail, dropping stale entries
+			final long[] mergedKeys = new long[keys.length];
+			final int[] mergedIds = new int[ids.length];
+			final BitSet mergedIdSet = new BitSet();
+			int a = 0, b = sortedSize, n = 0;
+			while (a < sortedSize || b < size)
+			{
+				final int i;
+				if (b >= size || (a < sortedSize && keys[a] <= keys[b]))
+					i = a++;
+				else
+					i = b++;
+
+				if (currentKeys[ids[i]] == keys[i] && !mergedIdSet.get(ids[i]))
+				{
+					mergedIdSet.set(ids[i]);
+					mergedKeys[n] = keys[i];
+					mergedIds[n] = ids[i];
+					n++;
+				}
+			}
+
+			keys = mergedKeys;
+			ids = mergedIds;
+			size = n;
+			sortedSize = n;
+		}
+
+		private static void mergeSort(final long[] keys, final int[] ids, final int from, final int to, final long[] tmpKeys, final int[] tmpIds)
+		{
+			if (to - from < 2)
+				return;
+
+			final int mid = (from + to) >>> 1;
+			mergeSort(keys, ids, from, mid, tmpKeys, tmpIds);
+			mergeSort(keys, ids, mid, to, tmpKeys, tmpIds);
+
+			int a = from, b = mid, n = from;
+			while (a < mid || b < to)
+			{
+				if (b >= to || (a < mid && keys[a] <= keys[b]))
+				{
+					tmpKeys[n] = keys[a];
+					tmpIds[n++] = ids[a++];
+				}
+				else
+				{
+					tmpKeys[n] = keys[b];
+					tmpIds[n++] = ids[b++];
+				}
+			}
+
+			System.arraycopy(tmpKeys, from, keys, from, to - from);
+			System.arraycopy(tmpIds, from, ids, from, to - from);
+		}
+	}
+}
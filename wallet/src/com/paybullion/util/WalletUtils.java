@@ -18,17 +18,10 @@
 package com.paybullion.util;
 
 import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileFilter;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.Writer;
 import java.math.BigInteger;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.util.Date;
-import java.util.LinkedList;
+import java.math.RoundingMode;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -41,14 +34,11 @@ import android.graphics.Typeface;
 import android.text.Editable;
 import android.text.Spannable;
 import android.text.SpannableStringBuilder;
-import android.text.format.DateUtils;
 import android.text.style.RelativeSizeSpan;
 import android.text.style.StyleSpan;
 import android.text.style.TypefaceSpan;
 
 import com.google.bitcoin.core.Address;
-import com.google.bitcoin.core.AddressFormatException;
-import com.google.bitcoin.core.DumpedPrivateKey;
 import com.google.bitcoin.core.ECKey;
 import com.google.bitcoin.core.ScriptException;
 import com.google.bitcoin.core.Sha256Hash;
@@ -131,14 +121,40 @@ public class WalletUtils
 		}
 	}
 
-	public static BigInteger localValue(@Nonnull final BigInteger btcValue, @Nonnull final BigInteger rate)
+	private static final long ONE_BTC_LONG = GenericUtils.ONE_BTC.longValue();
+
+	public static BigInteger localValue(@Nonnull final BigInteger btcValue, final long rate)
+	{
+		return BigInteger.valueOf(localValue(longValueExact(btcValue), rate));
+	}
+
+	/**
+	 * @return btcValue * rate, truncated towards zero
+	 */
+	public static long localValue(final long btcValue, final long rate)
+	{
+		return FixedPoint.mulDiv(btcValue, rate, ONE_BTC_LONG, RoundingMode.DOWN);
+	}
+
+	public static BigInteger btcValue(@Nonnull final BigInteger localValue, final long rate)
+	{
+		return BigInteger.valueOf(btcValue(longValueExact(localValue), rate));
+	}
+
+	/**
+	 * @return localValue / rate, truncated towards zero
+	 */
+	public static long btcValue(final long localValue, final long rate)
 	{
-		return btcValue.multiply(rate).divide(GenericUtils.ONE_BTC);
+		return FixedPoint.mulDiv(localValue, ONE_BTC_LONG, rate, RoundingMode.DOWN);
 	}
 
-	public static BigInteger btcValue(@Nonnull final BigInteger localValue, @Nonnull final BigInteger rate)
+	private static long longValueExact(@Nonnull final BigInteger value)
 	{
-		return localValue.multiply(GenericUtils.ONE_BTC).divide(rate);
+		if (value.bitLength() > 63)
+			throw new ArithmeticException("out of range: " + value);
+
+		return value.longValue();
 	}
 
 	@CheckForNull
@@ -207,8 +223,6 @@ public class WalletUtils
 
 	public static void writeKeys(@Nonnull final Writer out, @Nonnull final List<ECKey> keys) throws IOException
 	{
-		final DateFormat format = Iso8601Format.newDateTimeFormatT();
-
 		out.write("# KEEP YOUR PRIVATE KEYS SAFE! Anyone who can read this can spend your Bitcoins.\n");
 
 		for (final ECKey key : keys)
@@ -217,7 +231,7 @@ public class WalletUtils
 			if (key.getCreationTimeSeconds() != 0)
 			{
 				out.write(' ');
-				out.write(format.format(new Date(key.getCreationTimeSeconds() * DateUtils.SECOND_IN_MILLIS)));
+				out.write(Iso8601Format.formatDateTimeT(key.getCreationTimeSeconds()));
 			}
 			out.write('\n');
 		}
@@ -225,75 +239,9 @@ public class WalletUtils
 
 	public static List<ECKey> readKeys(@Nonnull final BufferedReader in) throws IOException
 	{
-		try
-		{
-			final DateFormat format = Iso8601Format.newDateTimeFormatT();
-
-			final List<ECKey> keys = new LinkedList<ECKey>();
-
-			while (true)
-			{
-				final String line = in.readLine();
-				if (line == null)
-					break; // eof
-				if (line.trim().isEmpty() || line.charAt(0) == '#')
-					continue; // skip comment
-
-				final String[] parts = line.split(" ");
-
-				final ECKey key = new DumpedPrivateKey(Constants.NETWORK_PARAMETERS, parts[0]).getKey();
-				key.setCreationTimeSeconds(parts.length >= 2 ? format.parse(parts[1]).getTime() / DateUtils.SECOND_IN_MILLIS : 0);
-
-				keys.add(key);
-			}
-
-			return keys;
-		}
-		catch (final AddressFormatException x)
-		{
-			throw new IOException("cannot read keys", x);
-		}
-		catch (final ParseException x)
-		{
-			throw new IOException("cannot read keys", x);
-		}
+		return KeyFileReader.readKeys(in, Constants.NETWORK_PARAMETERS);
 	}
 
-	public static final FileFilter KEYS_FILE_FILTER = new FileFilter()
-	{
-		@Override
-		public boolean accept(final File file)
-		{
-			BufferedReader reader = null;
-
-			try
-			{
-				reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), Constants.UTF_8));
-				WalletUtils.readKeys(reader);
-
-				return true;
-			}
-			catch (final IOException x)
-			{
-				return false;
-			}
-			finally
-			{
-				if (reader != null)
-				{
-					try
-					{
-						reader.close();
-					}
-					catch (final IOException x)
-					{
-						// swallow
-					}
-				}
-			}
-		}
-	};
-
 	@CheckForNull
 	public static ECKey pickOldestKey(@Nonnull final Wallet wallet)
 	{
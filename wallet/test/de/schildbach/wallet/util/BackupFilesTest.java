@@ -0,0 +1,199 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.params.MainNetParams;
+
+import com.paybullion.util.BackupFiles;
+import com.paybullion.util.Crypto;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class BackupFilesTest
+{
+	private static final NetworkParameters PARAMS = MainNetParams.get();
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		dir = File.createTempFile("backups", "");
+		dir.delete();
+		dir.mkdir();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		for (final File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void classifyHeader() throws Exception
+	{
+		final String keyStr = new ECKey().getPrivateKeyEncoded(PARAMS).toString();
+
+		assertEquals(BackupFiles.Type.ENCRYPTED, classify("U2FsdGVkX1+Dpm64PRroXWP833Zg0OtRAwadvKy8VfG1lgkeGtZ++m7/27eT3TVZ\n"));
+		assertEquals(BackupFiles.Type.KEYS, classify("# comment\n" + keyStr + " 2009-01-03T18:15:05Z\n"));
+		assertEquals(BackupFiles.Type.KEYS, classify("\r\n  \n" + keyStr));
+		assertEquals(BackupFiles.Type.KEYS, classify(keyStr + "\n" + garbage(HEADER_LINE)));
+
+		assertEquals(BackupFiles.Type.OTHER, classify(""));
+		assertEquals(BackupFiles.Type.OTHER, classify("# comment only\n\n"));
+		assertEquals(BackupFiles.Type.OTHER, classify("some notes\n" + keyStr + "\n"));
+		assertEquals(BackupFiles.Type.OTHER, classify("5Kb8kLf9zgWQnogidDA76MzPL6TsZZY36hWXMssSzNydYXYB9KF\n"));
+		assertEquals(BackupFiles.Type.OTHER, classify(garbage(HEADER_LINE)));
+
+		// a comment that runs beyond the header
+		final char[] longComment = new char[BackupFiles.HEADER_SIZE];
+		Arrays.fill(longComment, '#');
+		assertEquals(BackupFiles.Type.OTHER, classify(new String(longComment) + "\n" + keyStr + "\n"));
+	}
+
+	@Test
+	public void cache() throws Exception
+	{
+		final BackupFiles backupFiles = new BackupFiles(PARAMS);
+		final String keyStr = new ECKey().getPrivateKeyEncoded(PARAMS).toString();
+
+		final File keys = write("keys", keyStr + "\n");
+		final File encrypted = new File(dir, "encrypted");
+		final OutputStream encryptedOut = Crypto.encrypt(new FileOutputStream(encrypted), "password".toCharArray());
+		encryptedOut.write((keyStr + "\n").getBytes(UTF_8));
+		encryptedOut.close();
+		final File other = write("other", "some notes\n");
+		new File(dir, "subdir").mkdir();
+
+		assertNull(backupFiles.knownType(keys));
+		assertEquals(2, backupFiles.scan(dir).size());
+		assertEquals(BackupFiles.Type.KEYS, backupFiles.knownType(keys));
+		assertEquals(BackupFiles.Type.ENCRYPTED, backupFiles.knownType(encrypted));
+		assertEquals(BackupFiles.Type.OTHER, backupFiles.knownType(other));
+
+		// same size and modification time, so the verdict stands
+		final long lastModified = other.lastModified();
+		write("other", keyStr.substring(0, 10) + "\n");
+		other.setLastModified(lastModified);
+		assertEquals(BackupFiles.Type.OTHER, backupFiles.classify(other));
+
+		// changed file is read again
+		write("other", keyStr + "\n");
+		other.setLastModified(lastModified + 2000);
+		assertEquals(BackupFiles.Type.KEYS, backupFiles.classify(other));
+		assertEquals(3, backupFiles.scan(dir).size());
+
+		// deleted file is forgotten
+		keys.delete();
+		assertEquals(2, backupFiles.scan(dir).size());
+		assertNull(backupFiles.knownType(keys));
+	}
+
+	@Test
+	public void scanReadsOnlyChangedFiles() throws Exception
+	{
+		// a download directory with some backups and other stuff
+		final Random random = new Random(50);
+		final File[] backups = new File[20];
+		for (int i = 0; i < backups.length; i++)
+		{
+			final StringBuilder text = new StringBuilder("# KEEP YOUR PRIVATE KEYS SAFE!\n");
+			for (int k = 0; k < 50; k++)
+				text.append(new ECKey().getPrivateKeyEncoded(PARAMS).toString()).append(" 2014-01-15T10:13:04Z\n");
+			backups[i] = write("bitcoin-wallet-keys-" + i, text.toString());
+		}
+		for (int i = 0; i < 50; i++)
+		{
+			final byte[] data = new byte[random.nextInt(10000)];
+			random.nextBytes(data);
+			final OutputStream out = new FileOutputStream(new File(dir, "download-" + i));
+			out.write(data);
+			out.close();
+		}
+
+		final BackupFiles backupFiles = new BackupFiles(PARAMS);
+		assertEquals(20, backupFiles.scan(dir).size());
+
+		// garble the backups behind the cache's back; had their headers been read again, none would be found
+		for (final File backup : backups)
+		{
+			final long lastModified = backup.lastModified();
+			final byte[] data = new byte[(int) backup.length()];
+			random.nextBytes(data);
+			final OutputStream out = new FileOutputStream(backup);
+			out.write(data);
+			out.close();
+			backup.setLastModified(lastModified);
+		}
+		assertEquals(20, backupFiles.scan(dir).size());
+
+		// only the one that visibly changed is read again
+		backups[0].setLastModified(backups[0].lastModified() + 2000);
+		assertEquals(19, backupFiles.scan(dir).size());
+		assertEquals(BackupFiles.Type.OTHER, backupFiles.knownType(backups[0]));
+	}
+
+	private static final int HEADER_LINE = 2000;
+
+	private static String garbage(final int length)
+	{
+		final Random random = new Random(length);
+		final char[] chars = new char[length];
+		for (int i = 0; i < length; i++)
+			chars[i] = (char) (' ' + random.nextInt(95));
+
+		return new String(chars);
+	}
+
+	private static BackupFiles.Type classify(final String text)
+	{
+		final byte[] bytes = text.getBytes(UTF_8);
+		return BackupFiles.classify(bytes.length > BackupFiles.HEADER_SIZE ? Arrays.copyOf(bytes, BackupFiles.HEADER_SIZE) : bytes, PARAMS);
+	}
+
+	private File write(final String name, final String text) throws IOException
+	{
+		final File file = new File(dir, name);
+		final OutputStream out = new FileOutputStream(file);
+		out.write(text.getBytes(UTF_8));
+		out.close();
+
+		return file;
+	}
+}
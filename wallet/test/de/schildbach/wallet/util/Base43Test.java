@@ -20,6 +20,8 @@ package de.schildbach.wallet.util;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.util.Random;
+
 import org.junit.Test;
 import com.paybullion.util.Base43;
 
@@ -51,4 +53,122 @@ public class Base43Test
 
 		assertArrayEquals("Hello World".getBytes(), Base43.decode("RNO2-MYFN0D35RHM"));
 	}
+
+	@Test
+	public void matchesByteWiseImplementation() throws Exception
+	{
+		final Random random = new Random(7);
+
+		for (int i = 0; i < 20000; i++)
+		{
+			final byte[] bytes = new byte[random.nextInt(i < 10000 ? 40 : 1200)];
+			random.nextBytes(bytes);
+
+			// leading zeros and runs of 0xff are where the edge cases are
+			final int numZeros = random.nextInt(4);
+			for (int j = 0; j < numZeros && j < bytes.length; j++)
+				bytes[j] = 0;
+			if (bytes.length > numZeros && random.nextBoolean())
+				bytes[numZeros] = (byte) 0xff;
+
+			final String encoded = Base43.encode(bytes);
+			assertEquals(encodeByteWise(bytes), encoded);
+			assertArrayEquals(bytes, Base43.decode(encoded));
+		}
+	}
+
+	@Test
+	public void decodeMatchesByteWiseImplementation() throws Exception
+	{
+		final Random random = new Random(8);
+		final char[] alphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ$*+-./:".toCharArray();
+
+		// not every string is the encoding of some bytes, but every string decodes
+		for (int i = 0; i < 20000; i++)
+		{
+			final char[] chars = new char[random.nextInt(60)];
+			for (int j = 0; j < chars.length; j++)
+				chars[j] = alphabet[random.nextInt(j < 3 && random.nextBoolean() ? 1 : alphabet.length)];
+			final String string = new String(chars);
+
+			assertArrayEquals(decodeByteWise(string), Base43.decode(string));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void decodeIllegalCharacter() throws Exception
+	{
+		Base43.decode("RNO2-MYFN0D35RHm");
+	}
+
+	// the original implementation, one byte or digit per division
+
+	private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ$*+-./:";
+
+	private static String encodeByteWise(final byte[] bytes)
+	{
+		final byte[] input = bytes.clone();
+		int zeroCount = 0;
+		while (zeroCount < input.length && input[zeroCount] == 0)
+			++zeroCount;
+
+		final char[] temp = new char[input.length * 2];
+		int j = temp.length;
+		int startAt = zeroCount;
+		while (startAt < input.length)
+		{
+			int remainder = 0;
+			for (int i = startAt; i < input.length; i++)
+			{
+				final int t = remainder * 256 + (input[i] & 0xff);
+				input[i] = (byte) (t / 43);
+				remainder = t % 43;
+			}
+			if (input[startAt] == 0)
+				++startAt;
+			temp[--j] = ALPHABET.charAt(remainder);
+		}
+
+		while (j < temp.length && temp[j] == '0')
+			++j;
+		while (--zeroCount >= 0)
+			temp[--j] = '0';
+
+		return new String(temp, j, temp.length - j);
+	}
+
+	private static byte[] decodeByteWise(final String string)
+	{
+		final byte[] input43 = new byte[string.length()];
+		for (int i = 0; i < input43.length; i++)
+			input43[i] = (byte) ALPHABET.indexOf(string.charAt(i));
+
+		int zeroCount = 0;
+		while (zeroCount < input43.length && input43[zeroCount] == 0)
+			++zeroCount;
+
+		final byte[] temp = new byte[input43.length];
+		int j = temp.length;
+		int startAt = zeroCount;
+		while (startAt < input43.length)
+		{
+			int remainder = 0;
+			for (int i = startAt; i < input43.length; i++)
+			{
+				final int t = remainder * 43 + input43[i];
+				input43[i] = (byte) (t / 256);
+				remainder = t % 256;
+			}
+			if (input43[startAt] == 0)
+				++startAt;
+			temp[--j] = (byte) remainder;
+		}
+
+		while (j < temp.length && temp[j] == 0)
+			++j;
+
+		final byte[] output = new byte[temp.length - j + zeroCount];
+		System.arraycopy(temp, j, output, zeroCount, temp.length - j);
+		return output;
+	}
 }
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import com.paybullion.util.ConditionalGet;
+import com.paybullion.util.ConditionalGet.Result;
+import com.paybullion.util.Io;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs against a local stand-in HTTP server.
+ *
+ * @author Andreas Schildbach
+ */
+public class ConditionalGetTest
+{
+	private static final String BODY = "{\"USD\":{\"24h\":\"612.50\"}}";
+
+	@Test
+	public void eTag() throws Exception
+	{
+		final StandInHandler handler = new StandInHandler("\"v1\"", null, false);
+		final HttpServer server = server(handler);
+		final File cacheDir = tempDir();
+
+		try
+		{
+			final ConditionalGet get = new ConditionalGet(cacheDir);
+			final URL url = url(server);
+
+			final Result first = get.get(url, "test", 5000);
+			assertFalse(first.notModified);
+			assertEquals(BODY, read(first.body));
+			assertNull(handler.lastIfNoneMatch);
+
+			final Result second = get.get(url, "test", 5000);
+			assertTrue(second.notModified);
+			assertEquals(0, second.bytesTransferred);
+			assertEquals(first.bytesTransferred, second.bytesSaved);
+			assertEquals(BODY, read(second.body));
+			assertEquals("\"v1\"", handler.lastIfNoneMatch);
+			assertEquals(1, handler.numNotModified);
+
+			// validators survive a new instance, they are persisted with the body
+			final Result third = new ConditionalGet(cacheDir).get(url, "test", 5000);
+			assertTrue(third.notModified);
+			assertEquals(first.bytesTransferred, third.bytesSaved);
+		}
+		finally
+		{
+			server.stop(0);
+			delete(cacheDir);
+		}
+	}
+
+	@Test
+	public void lastModifiedAndGzip() throws Exception
+	{
+		final StandInHandler handler = new StandInHandler(null, "Wed, 15 Jan 2014 10:00:00 GMT", true);
+		final HttpServer server = server(handler);
+		final File cacheDir = tempDir();
+
+		try
+		{
+			final ConditionalGet get = new ConditionalGet(cacheDir);
+			final URL url = url(server);
+
+			final Result first = get.get(url, "test", 5000);
+			assertFalse(first.notModified);
+			assertEquals(BODY, read(first.body));
+			assertTrue(first.bytesTransferred > 0);
+			assertEquals(0, first.bytesSaved);
+
+			final Result second = get.get(url, "test", 5000);
+			assertTrue(second.notModified);
+			assertEquals("Wed, 15 Jan 2014 10:00:00 GMT", handler.lastIfModifiedSince);
+			// the compressed size is what a 304 saves, not the size of the stored body
+			assertEquals(first.bytesTransferred, second.bytesSaved);
+			assertTrue(second.bytesSaved != read(second.body).length());
+		}
+		finally
+		{
+			server.stop(0);
+			delete(cacheDir);
+		}
+	}
+
+	@Test
+	public void noValidators() throws Exception
+	{
+		final StandInHandler handler = new StandInHandler(null, null, false);
+		final HttpServer server = server(handler);
+		final File cacheDir = tempDir();
+
+		try
+		{
+			final ConditionalGet get = new ConditionalGet(cacheDir);
+			final URL url = url(server);
+
+			assertFalse(get.get(url, "test", 5000).notModified);
+			assertFalse(get.get(url, "test", 5000).notModified);
+			assertEquals(0, handler.numNotModified);
+		}
+		finally
+		{
+			server.stop(0);
+			delete(cacheDir);
+		}
+	}
+
+	private static final class StandInHandler implements HttpHandler
+	{
+		private final String eTag;
+		private final String lastModified;
+		private final boolean gzip;
+
+		public volatile String lastIfNoneMatch;
+		public volatile String lastIfModifiedSince;
+		public volatile int numNotModified = 0;
+
+		public StandInHandler(final String eTag, final String lastModified, final boolean gzip)
+		{
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.gzip = gzip;
+		}
+
+		@Override
+		public void handle(final HttpExchange exchange) throws IOException
+		{
+			lastIfNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+			lastIfModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+
+			if ((eTag != null && eTag.equals(lastIfNoneMatch)) || (lastModified != null && lastModified.equals(lastIfModifiedSince)))
+			{
+				numNotModified++;
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+
+			byte[] bytes = BODY.getBytes("UTF-8");
+			if (gzip)
+			{
+				final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+				final GZIPOutputStream gos = new GZIPOutputStream(bos);
+				gos.write(bytes);
+				gos.close();
+				bytes = bos.toByteArray();
+				exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			}
+			if (eTag != null)
+				exchange.getResponseHeaders().set("ETag", eTag);
+			if (lastModified != null)
+				exchange.getResponseHeaders().set("Last-Modified", lastModified);
+
+			exchange.sendResponseHeaders(200, bytes.length);
+			final OutputStream os = exchange.getResponseBody();
+			os.write(bytes);
+			os.close();
+		}
+	}
+
+	private static HttpServer server(final HttpHandler handler) throws IOException
+	{
+		final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", handler);
+		server.start();
+
+		return server;
+	}
+
+	private static URL url(final HttpServer server) throws IOException
+	{
+		return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/ticker");
+	}
+
+	private static File tempDir() throws IOException
+	{
+		final File dir = File.createTempFile("conditional-get", "");
+		dir.delete();
+		dir.mkdir();
+
+		return dir;
+	}
+
+	private static void delete(final File dir)
+	{
+		for (final File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+	}
+
+	private static String read(final File file) throws IOException
+	{
+		final FileInputStream is = new FileInputStream(file);
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		Io.copy(is, os);
+		is.close();
+
+		return new String(os.toByteArray(), "UTF-8");
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.paybullion.util.Crypto;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class CryptoTest
+{
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final char[] PASSWORD = "aTestPassword".toCharArray();
+
+	// openssl enc -aes-256-cbc -a -md md5 -pass pass:aTestPassword
+	private static final String OPENSSL_CIPHER_TEXT = "U2FsdGVkX1+Dpm64PRroXWP833Zg0OtRAwadvKy8VfG1lgkeGtZ++m7/27eT3TVZ\n"
+			+ "XbguPiZT1V6Ed2Ha9T5G0pF11Q8R7vxRFclte39rKCv9oBTF9G8PaizNSuKgYj05\n" + "coIezPPzmFnfpD3mYMbGUNeG4Mok3QNkkIHdSSm+SF8=\n";
+	private static final String OPENSSL_PLAIN_TEXT = "# KEEP YOUR PRIVATE KEYS SAFE!\n"
+			+ "5HueCGU8rMjxEXxiPuD5BDku4MkFqeZyd4dZ1jvhTVqvbTLvyTJ 2009-01-03T18:15:05Z\n";
+
+	@Test
+	public void decryptOpenSsl() throws Exception
+	{
+		final byte[] plain = readFully(Crypto.decrypt(new ByteArrayInputStream(OPENSSL_CIPHER_TEXT.getBytes(UTF_8)), PASSWORD), 7);
+		assertEquals(OPENSSL_PLAIN_TEXT, new String(plain, UTF_8));
+
+		// final padding is optional
+		final String unpadded = OPENSSL_CIPHER_TEXT.replace("=", "");
+		assertArrayEquals(plain, readFully(Crypto.decrypt(new ByteArrayInputStream(unpadded.getBytes(UTF_8)), PASSWORD), 4096));
+	}
+
+	@Test
+	public void roundTrip() throws Exception
+	{
+		final Random random = new Random(49);
+
+		for (final int length : new int[] { 0, 1, 2, 3, 15, 16, 17, 56, 57, 58, 4079, 4080, 4096, 4097, 100000 })
+		{
+			final byte[] plain = new byte[length];
+			random.nextBytes(plain);
+
+			final String cipherText = encrypt(plain, random);
+
+			assertTrue(cipherText.startsWith("U2FsdGVkX1"));
+			for (final String line : cipherText.split("\n"))
+				assertTrue(line.length() <= 76);
+			assertTrue(cipherText.endsWith("\n"));
+
+			for (final int readSize : new int[] { 1, 3, 4096 })
+				assertArrayEquals(plain, readFully(Crypto.decrypt(new ByteArrayInputStream(cipherText.getBytes(UTF_8)), PASSWORD), readSize));
+		}
+	}
+
+	@Test
+	public void wrongPassword() throws Exception
+	{
+		try
+		{
+			readFully(Crypto.decrypt(new ByteArrayInputStream(OPENSSL_CIPHER_TEXT.getBytes(UTF_8)), "wrong".toCharArray()), 4096);
+			fail();
+		}
+		catch (final Crypto.BadPasswordException x)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void malformed() throws Exception
+	{
+		final String lastLineMissing = OPENSSL_CIPHER_TEXT.substring(0, OPENSSL_CIPHER_TEXT.lastIndexOf('\n', OPENSSL_CIPHER_TEXT.length() - 2) + 1);
+
+		for (final String cipherText : new String[] { "", "U2FsdGVkX1", "U2FsdGVkX1+Dpm64PRroXWP8", lastLineMissing,
+				OPENSSL_CIPHER_TEXT.replace('+', '-'), OPENSSL_CIPHER_TEXT + "A" })
+		{
+			try
+			{
+				readFully(Crypto.decrypt(new ByteArrayInputStream(cipherText.getBytes(UTF_8)), PASSWORD), 4096);
+				fail(cipherText);
+			}
+			catch (final IOException x)
+			{
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void fileFilter() throws Exception
+	{
+		final File encrypted = File.createTempFile("crypto", ".txt");
+		final File plain = File.createTempFile("crypto", ".txt");
+
+		try
+		{
+			final OutputStream encryptedOut = Crypto.encrypt(new FileOutputStream(encrypted), PASSWORD);
+			encryptedOut.write(OPENSSL_PLAIN_TEXT.getBytes(UTF_8));
+			encryptedOut.close();
+
+			final OutputStream plainOut = new FileOutputStream(plain);
+			plainOut.write(OPENSSL_PLAIN_TEXT.getBytes(UTF_8));
+			plainOut.close();
+
+			assertTrue(Crypto.OPENSSL_FILE_FILTER.accept(encrypted));
+			assertFalse(Crypto.OPENSSL_FILE_FILTER.accept(plain));
+		}
+		finally
+		{
+			encrypted.delete();
+			plain.delete();
+		}
+	}
+
+	private static String encrypt(final byte[] plain, final Random random) throws IOException
+	{
+		final ByteArrayOutputStream cipherOut = new ByteArrayOutputStream();
+		final OutputStream out = Crypto.encrypt(cipherOut, PASSWORD);
+
+		// writes of all sizes
+		for (int off = 0; off < plain.length;)
+		{
+			final int len = Math.min(random.nextInt(10000), plain.length - off);
+			if (len == 1)
+				out.write(plain[off]);
+			else
+				out.write(plain, off, len);
+			off += len;
+		}
+		out.close();
+
+		return new String(cipherOut.toByteArray(), UTF_8);
+	}
+
+	private static byte[] readFully(final InputStream in, final int readSize) throws IOException
+	{
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buf = new byte[readSize];
+		while (true)
+		{
+			if (readSize == 1)
+			{
+				final int b = in.read();
+				if (b == -1)
+					break;
+				out.write(b);
+			}
+			else
+			{
+				final int read = in.read(buf);
+				if (read == -1)
+					break;
+				out.write(buf, 0, read);
+			}
+		}
+		in.close();
+
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.paybullion.util.FixedPoint;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class FixedPointTest
+{
+	private static final long ONE_BTC = 100000000l;
+	private static final long MAX_MONEY = 21000000l * ONE_BTC;
+	private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+	private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+	@Test
+	public void rounding() throws Exception
+	{
+		assertEquals(2, FixedPoint.mulDiv(5, 1, 2, RoundingMode.DOWN));
+		assertEquals(3, FixedPoint.mulDiv(5, 1, 2, RoundingMode.UP));
+		assertEquals(3, FixedPoint.mulDiv(5, 1, 2, RoundingMode.HALF_UP));
+		assertEquals(2, FixedPoint.mulDiv(5, 1, 2, RoundingMode.HALF_DOWN));
+		assertEquals(2, FixedPoint.mulDiv(5, 1, 2, RoundingMode.HALF_EVEN));
+		assertEquals(4, FixedPoint.mulDiv(7, 1, 2, RoundingMode.HALF_EVEN));
+		assertEquals(-3, FixedPoint.mulDiv(-5, 1, 2, RoundingMode.FLOOR));
+		assertEquals(-2, FixedPoint.mulDiv(-5, 1, 2, RoundingMode.CEILING));
+		assertEquals(-2, FixedPoint.mulDiv(5, -1, 2, RoundingMode.DOWN));
+		assertEquals(3, FixedPoint.mulDiv(6, 1, 2, RoundingMode.UNNECESSARY));
+	}
+
+	@Test
+	public void overflow() throws Exception
+	{
+		assertOverflow(Long.MAX_VALUE, 2, 1);
+		assertOverflow(Long.MIN_VALUE, 1, 1);
+		assertOverflow(1, 1, 0);
+		assertOverflow(MAX_MONEY, Long.MAX_VALUE / 1000, ONE_BTC);
+
+		try
+		{
+			FixedPoint.mulDiv(5, 1, 2, RoundingMode.UNNECESSARY);
+			fail();
+		}
+		catch (final ArithmeticException x)
+		{
+			// expected
+		}
+
+		try
+		{
+			FixedPoint.add(Long.MAX_VALUE, 1);
+			fail();
+		}
+		catch (final ArithmeticException x)
+		{
+			// expected
+		}
+
+		assertEquals(Long.MAX_VALUE, FixedPoint.mulDiv(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, RoundingMode.UNNECESSARY));
+		assertEquals(-Long.MAX_VALUE, FixedPoint.add(-Long.MAX_VALUE + 1, -1));
+	}
+
+	@Test
+	public void matchesBigDecimal() throws Exception
+	{
+		final Random random = new Random(0);
+		final RoundingMode[] modes = RoundingMode.values();
+
+		for (int i = 0; i < 200000; i++)
+		{
+			final long a = randomLong(random);
+			final long b = randomLong(random);
+			long d = randomLong(random);
+			if (d == 0 || d == Long.MIN_VALUE)
+				d = 1;
+			if (a == Long.MIN_VALUE || b == Long.MIN_VALUE)
+				continue;
+			final RoundingMode mode = modes[random.nextInt(modes.length)];
+
+			BigInteger expected;
+			try
+			{
+				expected = new BigDecimal(BigInteger.valueOf(a).multiply(BigInteger.valueOf(b))).divide(BigDecimal.valueOf(d), 0, mode)
+						.toBigIntegerExact();
+			}
+			catch (final ArithmeticException x)
+			{
+				expected = null; // rounding necessary
+			}
+			final boolean inRange = expected != null && expected.compareTo(LONG_MIN) > 0 && expected.compareTo(LONG_MAX) <= 0;
+
+			try
+			{
+				final long actual = FixedPoint.mulDiv(a, b, d, mode);
+				assertTrue(a + " * " + b + " / " + d + " " + mode, inRange);
+				assertEquals(a + " * " + b + " / " + d + " " + mode, expected.longValue(), actual);
+			}
+			catch (final ArithmeticException x)
+			{
+				assertTrue(a + " * " + b + " / " + d + " " + mode + ": " + x.getMessage(), !inRange);
+			}
+		}
+	}
+
+	@Test
+	public void matchesBigIntegerConversions() throws Exception
+	{
+		final Random random = new Random(1);
+		final BigInteger oneBtc = BigInteger.valueOf(ONE_BTC);
+		final BigInteger nano = BigInteger.valueOf(1000000000l);
+
+		for (int i = 0; i < 200000; i++)
+		{
+			// whole money range against rates from 0.00000001 to 10^7 per bitcoin
+			final long btcValue = (long) (random.nextDouble() * MAX_MONEY) * (random.nextBoolean() ? 1 : -1);
+			final long rate = 1 + (long) (Math.pow(10, random.nextDouble() * 15));
+			final long localValue = (long) (random.nextDouble() * 1000000000l * ONE_BTC);
+
+			final BigInteger expectedLocalValue = BigInteger.valueOf(btcValue).multiply(BigInteger.valueOf(rate)).divide(oneBtc);
+			if (expectedLocalValue.bitLength() < 64)
+				assertEquals(expectedLocalValue.longValue(), FixedPoint.mulDiv(btcValue, rate, ONE_BTC, RoundingMode.DOWN));
+			final BigInteger expectedBtcValue = BigInteger.valueOf(localValue).multiply(oneBtc).divide(BigInteger.valueOf(rate));
+			if (expectedBtcValue.bitLength() < 64)
+				assertEquals(expectedBtcValue.longValue(), FixedPoint.mulDiv(localValue, ONE_BTC, rate, RoundingMode.DOWN));
+
+			// gold adjustment
+			final long goldRate = 1 + (long) (random.nextDouble() * 10000 * 1000000000l);
+			final BigInteger expectedAdjustRate = nano.multiply(BigInteger.valueOf(goldRate)).divide(BigInteger.valueOf(rate));
+			if (expectedAdjustRate.bitLength() >= 64)
+				continue;
+			final long adjustRate = expectedAdjustRate.longValue();
+			assertEquals(adjustRate, FixedPoint.mulDiv(1000000000l, goldRate, rate, RoundingMode.DOWN));
+			assertEquals(BigInteger.valueOf(rate).multiply(BigInteger.valueOf(adjustRate)).divide(nano).longValue(),
+					FixedPoint.mulDiv(rate, adjustRate, 1000000000l, RoundingMode.DOWN));
+		}
+	}
+
+	private static long randomLong(final Random random)
+	{
+		// mix of small, money sized and full range values
+		switch (random.nextInt(4))
+		{
+			case 0:
+				return random.nextInt(2001) - 1000;
+			case 1:
+				return (long) (random.nextDouble() * MAX_MONEY) * (random.nextBoolean() ? 1 : -1);
+			case 2:
+				return random.nextInt() * (long) random.nextInt(1 << 20);
+			default:
+				return random.nextLong();
+		}
+	}
+
+	private static void assertOverflow(final long a, final long b, final long d)
+	{
+		try
+		{
+			FixedPoint.mulDiv(a, b, d, RoundingMode.DOWN);
+			fail(a + " * " + b + " / " + d);
+		}
+		catch (final ArithmeticException x)
+		{
+			// expected
+		}
+	}
+}
@@ -19,7 +19,10 @@ package de.schildbach.wallet.util;
 
 import static org.junit.Assert.assertEquals;
 
+import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.Locale;
+import java.util.Random;
 
 import org.junit.Test;
 import com.paybullion.util.GenericUtils;
@@ -78,4 +81,221 @@ public class GenericUtilsTest
 
 		assertEquals("21000000000.00", GenericUtils.formatValue(NetworkParameters.MAX_MONEY, 5, 3));
 	}
+
+	private static final int[][] PRECISIONS_AND_SHIFTS = { { 2, 0 }, { 4, 0 }, { 6, 0 }, { 8, 0 }, { 2, 3 }, { 4, 3 }, { 5, 3 } };
+
+	@Test
+	public void formatValueMatchesStringFormat() throws Exception
+	{
+		final long maxMoney = NetworkParameters.MAX_MONEY.longValue();
+		final Random random = new Random(3);
+		final StringBuilder builder = new StringBuilder();
+		final char[] buffer = new char[32];
+
+		for (int i = 0; i < 2000000; i++)
+		{
+			final long value;
+			switch (i % 4)
+			{
+				case 0: // every small value, all rounding boundaries of the lower digits
+					value = i / 4 - 250000;
+					break;
+				case 1: // money sized
+					value = (long) ((random.nextDouble() * 2 - 1) * maxMoney);
+					break;
+				case 2: // rounding boundaries of every precision
+					value = (random.nextInt(2000) - 1000) * 1000000l + (random.nextBoolean() ? 499999 : 500000) * (random.nextBoolean() ? 1 : -1);
+					break;
+				default: // full range, away from the edges where rounding wraps around
+					value = random.nextLong() / 2;
+					break;
+			}
+
+			for (final int[] precisionAndShift : PRECISIONS_AND_SHIFTS)
+			{
+				final int precision = precisionAndShift[0];
+				final int shift = precisionAndShift[1];
+				final String expected = formatValueWithStringFormat(value, "+", "-", precision, shift);
+
+				builder.setLength(0);
+				assertEquals(expected, GenericUtils.formatValue(builder, value, "+", "-", precision, shift).toString());
+
+				final int end = GenericUtils.formatValue(buffer, 1, value, "+", "-", precision, shift);
+				assertEquals(expected, new String(buffer, 1, end - 1));
+			}
+		}
+	}
+
+	@Test
+	public void formatValueAppends() throws Exception
+	{
+		final StringBuilder builder = new StringBuilder("BTC ");
+		GenericUtils.formatValue(builder, -150000000, "", "\u2212", 4, 0);
+		assertEquals("BTC \u22121.50", builder.toString());
+	}
+
+	@Test
+	public void parseNanoCoins() throws Exception
+	{
+		assertEquals(100000000l, GenericUtils.parseNanoCoins("1", 0));
+		assertEquals(150000000l, GenericUtils.parseNanoCoins(" 1.5\t", 0));
+		assertEquals(150000l, GenericUtils.parseNanoCoins("1.5", 3));
+		assertEquals(50000000l, GenericUtils.parseNanoCoins(".5", 0));
+		assertEquals(100000000l, GenericUtils.parseNanoCoins("1.", 0));
+		assertEquals(1l, GenericUtils.parseNanoCoins("0.00000001", 0));
+		assertEquals(1l, GenericUtils.parseNanoCoins("1e-8", 0));
+		assertEquals(0l, GenericUtils.parseNanoCoins("-0.000000000000", 0));
+		assertEquals(NetworkParameters.MAX_MONEY.longValue(), GenericUtils.parseNanoCoins("21000000", 0));
+		assertEquals(Long.MAX_VALUE, GenericUtils.parseNanoCoins("9223372036854775807", 8, false));
+		assertEquals(100000000l, GenericUtils.parseNanoCoins(new StringBuilder("1.00000000000000000000000000"), 0));
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void parseNanoCoinsTooManyDecimals() throws Exception
+	{
+		GenericUtils.parseNanoCoins("0.000000001", 0);
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void parseNanoCoinsNegative() throws Exception
+	{
+		GenericUtils.parseNanoCoins("-1", 0);
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void parseNanoCoinsTooLarge() throws Exception
+	{
+		GenericUtils.parseNanoCoins("21000000.00000001", 0);
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void parseNanoCoinsLongOverflow() throws Exception
+	{
+		GenericUtils.parseNanoCoins("9223372036854775808", 8, false);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void parseNanoCoinsInvalid() throws Exception
+	{
+		GenericUtils.parseNanoCoins("1.2.3", 0);
+	}
+
+	private static final String FUZZ_CHARS = "0000111223456789..--+eE x";
+
+	@Test
+	public void parseNanoCoinsMatchesBigDecimal() throws Exception
+	{
+		final Random random = new Random(5);
+		final StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; i < 2000000; i++)
+		{
+			builder.setLength(0);
+			final int length = 1 + random.nextInt(i % 2 == 0 ? 8 : 24);
+			for (int j = 0; j < length; j++)
+				builder.append(FUZZ_CHARS.charAt(random.nextInt(FUZZ_CHARS.length())));
+			final String value = builder.toString().trim();
+			final int shift = random.nextBoolean() ? 0 : 3;
+			final boolean checkAmountTooLarge = random.nextBoolean();
+
+			final Object expected = toNanoCoinsWithBigDecimal(value, shift, checkAmountTooLarge);
+			Object actual;
+			try
+			{
+				actual = GenericUtils.parseNanoCoins(builder, shift, checkAmountTooLarge);
+			}
+			catch (final RuntimeException x)
+			{
+				actual = x.getClass();
+			}
+
+			assertEquals("'" + value + "' shift " + shift, expected, actual);
+		}
+	}
+
+	/**
+	 * The implementation parseNanoCoins replaced, as a reference.
+	 *
+	 * @return nanocoins as a Long, or the class of the exception thrown
+	 */
+	private static Object toNanoCoinsWithBigDecimal(final String value, final int shift, final boolean checkAmountTooLarge)
+	{
+		try
+		{
+			final BigDecimal decimal = new BigDecimal(value);
+
+			// shortcuts for huge exponents, which would take BigInteger ages
+			if (decimal.signum() == 0)
+				return 0l;
+			if (decimal.precision() - decimal.scale() > 30)
+				throw new ArithmeticException("amount too large: " + value);
+			if (decimal.stripTrailingZeros().scale() > 30)
+				throw new ArithmeticException("too many decimals: " + value);
+
+			final BigInteger nanoCoins = decimal.movePointRight(8 - shift).toBigIntegerExact();
+
+			if (nanoCoins.signum() < 0)
+				throw new ArithmeticException("negative amount: " + value);
+			if (checkAmountTooLarge && nanoCoins.compareTo(NetworkParameters.MAX_MONEY) > 0)
+				throw new ArithmeticException("amount too large: " + value);
+			if (nanoCoins.bitLength() > 63)
+				throw new ArithmeticException("amount too large: " + value);
+
+			return nanoCoins.longValue();
+		}
+		catch (final RuntimeException x)
+		{
+			return x.getClass();
+		}
+	}
+
+	/**
+	 * The implementation formatValue replaced, as a reference.
+	 */
+	private static String formatValueWithStringFormat(long longValue, final String plusSign, final String minusSign, final int precision,
+			final int shift)
+	{
+		final String sign = longValue < 0 ? minusSign : plusSign;
+
+		if (shift == 0)
+		{
+			if (precision == 2)
+				longValue = longValue - longValue % 1000000 + longValue % 1000000 / 500000 * 1000000;
+			else if (precision == 4)
+				longValue = longValue - longValue % 10000 + longValue % 10000 / 5000 * 10000;
+			else if (precision == 6)
+				longValue = longValue - longValue % 100 + longValue % 100 / 50 * 100;
+
+			final long absValue = Math.abs(longValue);
+			final long coins = absValue / 100000000;
+			final int satoshis = (int) (absValue % 100000000);
+
+			if (satoshis % 1000000 == 0)
+				return String.format(Locale.US, "%s%d.%02d", sign, coins, satoshis / 1000000);
+			else if (satoshis % 10000 == 0)
+				return String.format(Locale.US, "%s%d.%04d", sign, coins, satoshis / 10000);
+			else if (satoshis % 100 == 0)
+				return String.format(Locale.US, "%s%d.%06d", sign, coins, satoshis / 100);
+			else
+				return String.format(Locale.US, "%s%d.%08d", sign, coins, satoshis);
+		}
+		else
+		{
+			if (precision == 2)
+				longValue = longValue - longValue % 1000 + longValue % 1000 / 500 * 1000;
+			else if (precision == 4)
+				longValue = longValue - longValue % 10 + longValue % 10 / 5 * 10;
+
+			final long absValue = Math.abs(longValue);
+			final long coins = absValue / 100000;
+			final int satoshis = (int) (absValue % 100000);
+
+			if (satoshis % 1000 == 0)
+				return String.format(Locale.US, "%s%d.%02d", sign, coins, satoshis / 1000);
+			else if (satoshis % 10 == 0)
+				return String.format(Locale.US, "%s%d.%04d", sign, coins, satoshis / 10);
+			else
+				return String.format(Locale.US, "%s%d.%05d", sign, coins, satoshis);
+		}
+	}
 }
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.paybullion.util.HedgedRequest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs against local stand-in HTTP servers. Slow servers don't answer before the test is over, so the tests only rely on
+ * the order of events, not on timing.
+ *
+ * @author Andreas Schildbach
+ */
+public class HedgedRequestTest
+{
+	private static final long HEDGE_DELAY_MS = 200;
+	private static final long FAR_DEADLINE_MS = 30000;
+
+	private final CountDownLatch endOfTest = new CountDownLatch(1);
+
+	@After
+	public void tearDown()
+	{
+		endOfTest.countDown();
+	}
+
+	@Test
+	public void fastFirstSource() throws Exception
+	{
+		final HttpServer fast = server(200, "fast");
+		final HttpServer other = server(200, "other");
+		final ExecutorService executor = Executors.newCachedThreadPool();
+
+		try
+		{
+			final String result = HedgedRequest.first(executor, Arrays.asList(get(fast), get(other)), HEDGE_DELAY_MS,
+					System.currentTimeMillis() + FAR_DEADLINE_MS);
+			assertEquals("fast", result);
+		}
+		finally
+		{
+			executor.shutdownNow();
+			fast.stop(0);
+			other.stop(0);
+		}
+	}
+
+	@Test
+	public void slowFirstSourceIsHedged() throws Exception
+	{
+		final HttpServer slow = slowServer();
+		final HttpServer fast = server(200, "fast");
+		final ExecutorService executor = Executors.newCachedThreadPool();
+
+		try
+		{
+			// the slow source never answers, so only the hedge can get an answer
+			final String result = HedgedRequest.first(executor, Arrays.asList(get(slow), get(fast)), HEDGE_DELAY_MS,
+					System.currentTimeMillis() + FAR_DEADLINE_MS);
+
+			assertEquals("fast", result);
+		}
+		finally
+		{
+			executor.shutdownNow();
+			slow.stop(0);
+			fast.stop(0);
+		}
+	}
+
+	@Test
+	public void failingSourceIsReplacedWithoutDelay() throws Exception
+	{
+		final HttpServer failing = server(500, "error");
+		final HttpServer good = server(200, "good");
+		final ExecutorService executor = Executors.newCachedThreadPool();
+
+		try
+		{
+			// the hedge delay is beyond the deadline, so only an immediate replacement can get an answer
+			final String result = HedgedRequest.first(executor, Arrays.asList(get(failing), get(good)), 2 * FAR_DEADLINE_MS,
+					System.currentTimeMillis() + FAR_DEADLINE_MS);
+
+			assertEquals("good", result);
+		}
+		finally
+		{
+			executor.shutdownNow();
+			failing.stop(0);
+			good.stop(0);
+		}
+	}
+
+	@Test
+	public void allSourcesFail() throws Exception
+	{
+		final HttpServer failing1 = server(500, "error");
+		final HttpServer failing2 = server(404, "error");
+		final ExecutorService executor = Executors.newCachedThreadPool();
+
+		try
+		{
+			assertNull(HedgedRequest.first(executor, Arrays.asList(get(failing1), get(failing2)), HEDGE_DELAY_MS,
+					System.currentTimeMillis() + FAR_DEADLINE_MS));
+		}
+		finally
+		{
+			executor.shutdownNow();
+			failing1.stop(0);
+			failing2.stop(0);
+		}
+	}
+
+	@Test
+	public void deadline() throws Exception
+	{
+		final HttpServer slow1 = slowServer();
+		final HttpServer slow2 = slowServer();
+		final ExecutorService executor = Executors.newCachedThreadPool();
+
+		try
+		{
+			// neither source ever answers, so returning at all means the deadline was honoured
+			assertNull(HedgedRequest.first(executor, Arrays.asList(get(slow1), get(slow2)), HEDGE_DELAY_MS, System.currentTimeMillis() + 1000));
+		}
+		finally
+		{
+			executor.shutdownNow();
+			slow1.stop(0);
+			slow2.stop(0);
+		}
+	}
+
+	private static HttpServer server(final int status, final String body) throws IOException
+	{
+		return server(null, status, body);
+	}
+
+	private HttpServer slowServer() throws IOException
+	{
+		return server(endOfTest, 200, "slow");
+	}
+
+	private static HttpServer server(@Nullable final CountDownLatch answerAfter, final int status, final String body) throws IOException
+	{
+		final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/", new HttpHandler()
+		{
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException
+			{
+				if (answerAfter != null)
+				{
+					try
+					{
+						answerAfter.await();
+					}
+					catch (final InterruptedException x)
+					{
+						// fall through
+					}
+				}
+
+				final byte[] bytes = body.getBytes("UTF-8");
+				exchange.sendResponseHeaders(status, bytes.length);
+				final OutputStream os = exchange.getResponseBody();
+				os.write(bytes);
+				os.close();
+			}
+		});
+		server.start();
+
+		return server;
+	}
+
+	private static Callable<String> get(final HttpServer server)
+	{
+		return new Callable<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				final URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+				final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+				try
+				{
+					if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+						return null;
+
+					final InputStream is = connection.getInputStream();
+					final StringBuilder content = new StringBuilder();
+					int b;
+					while ((b = is.read()) != -1)
+						content.append((char) b);
+					is.close();
+
+					return content.toString();
+				}
+				finally
+				{
+					connection.disconnect();
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.paybullion.util.Iso8601Format;
+
+/**
+ * Compares the direct date time format with 'T' against {@link java.text.SimpleDateFormat}, which it replaces for key
+ * files.
+ *
+ * @author Andreas Schildbach
+ */
+public class Iso8601FormatTest
+{
+	private static final long YEAR_1583 = -12219292800l;
+	private static final long YEAR_10000 = 253402300800l;
+
+	@Test
+	public void knownDates() throws Exception
+	{
+		assertEquals("1970-01-01T00:00:00Z", Iso8601Format.formatDateTimeT(0));
+		assertEquals("1969-12-31T23:59:59Z", Iso8601Format.formatDateTimeT(-1));
+		assertEquals("2009-01-03T18:15:05Z", Iso8601Format.formatDateTimeT(1231006505));
+		assertEquals("2000-02-29T12:00:00Z", Iso8601Format.formatDateTimeT(951825600));
+		assertEquals("2038-01-19T03:14:08Z", Iso8601Format.formatDateTimeT(1l << 31));
+
+		assertEquals(1231006505, Iso8601Format.parseDateTimeTSeconds("2009-01-03T18:15:05Z"));
+		assertEquals(951825600, Iso8601Format.parseDateTimeTSeconds("2000-02-29T12:00:00Z"));
+		assertEquals(-1, Iso8601Format.parseDateTimeTSeconds("1969-12-31T23:59:59Z"));
+	}
+
+	@Test
+	public void sameAsSimpleDateFormat() throws Exception
+	{
+		final DateFormat reference = Iso8601Format.newDateTimeFormatT();
+		final Random random = new Random(47);
+
+		for (int i = 0; i < 100000; i++)
+		{
+			final long timeSeconds;
+			if (i % 2 == 0)
+				timeSeconds = YEAR_1583 + (long) (random.nextDouble() * (YEAR_10000 - YEAR_1583)); // anywhere
+			else
+				timeSeconds = 1231006505 + random.nextInt(1 << 30); // where key creation times are
+
+			final String expected = reference.format(new Date(timeSeconds * 1000));
+			assertEquals(expected, Iso8601Format.formatDateTimeT(timeSeconds));
+			assertEquals(timeSeconds, Iso8601Format.parseDateTimeTSeconds(expected));
+		}
+	}
+
+	@Test
+	public void edgesOfDirectRange() throws Exception
+	{
+		final DateFormat reference = Iso8601Format.newDateTimeFormatT();
+
+		for (final long edge : new long[] { YEAR_1583, YEAR_10000 })
+		{
+			for (long timeSeconds = edge - 2; timeSeconds <= edge + 2; timeSeconds++)
+			{
+				final String expected = reference.format(new Date(timeSeconds * 1000));
+				assertEquals(expected, Iso8601Format.formatDateTimeT(timeSeconds));
+				assertEquals(reference.parse(expected).getTime() / 1000, Iso8601Format.parseDateTimeTSeconds(expected));
+			}
+		}
+
+		// Julian calendar
+		assertEquals(reference.format(new Date(-12220000000000l)), Iso8601Format.formatDateTimeT(-12220000000l));
+	}
+
+	@Test
+	public void lenientInputGoesToSimpleDateFormat() throws Exception
+	{
+		final DateFormat reference = Iso8601Format.newDateTimeFormatT();
+
+		for (final String source : new String[] { "2014-1-5T3:04:05Z", "2014-02-30T00:00:00Z", "2014-12-31T23:59:60Z",
+				"2014-01-01T00:00:00Zjunk", "12014-01-01T00:00:00Z" })
+			assertEquals(source, reference.parse(source).getTime() / 1000, Iso8601Format.parseDateTimeTSeconds(source));
+
+		for (final String source : new String[] { "", "2014-01-01", "2014-01-01 00:00:00", "abcd-ef-ghTij:kl:mnZ" })
+		{
+			try
+			{
+				Iso8601Format.parseDateTimeTSeconds(source);
+				fail(source);
+			}
+			catch (final ParseException x)
+			{
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void dateVariants() throws Exception
+	{
+		final Date date = new Date(1231006505999l);
+		assertEquals("2009-01-03T18:15:05Z", Iso8601Format.formatDateTimeT(date));
+		assertEquals(new Date(1231006505000l), Iso8601Format.parseDateTimeT("2009-01-03T18:15:05Z"));
+		assertEquals("1969-12-31T23:59:59Z", Iso8601Format.formatDateTimeT(new Date(-1)));
+	}
+
+	@Test
+	public void concurrentUse() throws Exception
+	{
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try
+		{
+			final List<Future<String>> futures = new ArrayList<Future<String>>();
+			for (int t = 0; t < 4; t++)
+			{
+				final int seed = t;
+				futures.add(executor.submit(new Callable<String>()
+				{
+					@Override
+					public String call() throws Exception
+					{
+						final Random random = new Random(seed);
+						for (int i = 0; i < 20000; i++)
+						{
+							final long timeSeconds = random.nextInt() & 0x7fffffff;
+							final String formatted = Iso8601Format.formatDateTimeT(timeSeconds);
+							if (Iso8601Format.parseDateTimeTSeconds(formatted) != timeSeconds)
+								return formatted;
+						}
+						return null;
+					}
+				}));
+			}
+
+			for (final Future<String> future : futures)
+				assertNull(future.get());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.params.MainNetParams;
+
+import com.paybullion.util.Iso8601Format;
+import com.paybullion.util.KeyFileReader;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class KeyFileReaderTest
+{
+	private static final NetworkParameters PARAMS = MainNetParams.get();
+
+	@Test
+	public void parallelSameAsSequential() throws Exception
+	{
+		final List<ECKey> keys = keys(1000);
+		final String text = keyFile(keys);
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try
+		{
+			assertKeys(keys, KeyFileReader.readKeys(reader(text), PARAMS));
+			assertKeys(keys, KeyFileReader.readKeys(reader(text), PARAMS, executor, null));
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void lineFormats() throws Exception
+	{
+		final ECKey key = keys(1).get(0);
+		final String keyStr = key.getPrivateKeyEncoded(PARAMS).toString();
+
+		assertEquals(0, read(keyStr).getCreationTimeSeconds());
+		assertEquals(0, read(keyStr + " ").getCreationTimeSeconds());
+		assertEquals(1231006505, read(keyStr + " 2009-01-03T18:15:05Z").getCreationTimeSeconds());
+		assertEquals(1231006505, read(keyStr + " 2009-01-03T18:15:05Z comment").getCreationTimeSeconds());
+
+		assertEquals(0, KeyFileReader.readKeys(reader("# comment\n\n   \n"), PARAMS).size());
+	}
+
+	@Test
+	public void malformedLines() throws Exception
+	{
+		final List<ECKey> keys = keys(300);
+		final String keyStr = keys.get(0).getPrivateKeyEncoded(PARAMS).toString();
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try
+		{
+			for (final String malformed : new String[] { "5Kb8kLf9zgWQnogidDA76MzPL6TsZZY36hWXMssSzNydYXYB9KF", keyStr + " yesterday",
+					keyStr + "  2009-01-03T18:15:05Z", " " + keyStr })
+			{
+				// somewhere in the middle, so that it is neither in the first nor the last chunk
+				final String text = keyFile(keys.subList(0, 200)) + malformed + '\n' + keyFile(keys.subList(200, 300));
+
+				try
+				{
+					KeyFileReader.readKeys(reader(text), PARAMS, executor, null);
+					fail(malformed);
+				}
+				catch (final IOException x)
+				{
+					// expected
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void progress() throws Exception
+	{
+		final List<ECKey> keys = keys(500);
+		final String text = keyFile(keys);
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		final Thread readingThread = Thread.currentThread();
+		final List<long[]> progress = new ArrayList<long[]>();
+
+		try
+		{
+			KeyFileReader.readKeys(reader(text), PARAMS, executor, new KeyFileReader.Listener()
+			{
+				@Override
+				public void onProgress(final int numKeys, final long numChars)
+				{
+					assertEquals(readingThread, Thread.currentThread());
+					progress.add(new long[] { numKeys, numChars });
+				}
+			});
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		assertTrue(progress.size() > 1);
+		for (int i = 1; i < progress.size(); i++)
+		{
+			assertTrue(progress.get(i)[0] > progress.get(i - 1)[0]);
+			assertTrue(progress.get(i)[1] > progress.get(i - 1)[1]);
+		}
+		assertEquals(keys.size(), progress.get(progress.size() - 1)[0]);
+		assertEquals(text.length(), progress.get(progress.size() - 1)[1]);
+	}
+
+	private static List<ECKey> keys(final int numKeys)
+	{
+		final List<ECKey> keys = new ArrayList<ECKey>(numKeys);
+		for (int i = 0; i < numKeys; i++)
+		{
+			final ECKey key = new ECKey();
+			if (i % 3 != 0)
+				key.setCreationTimeSeconds(1231006505 + i * 3600);
+			keys.add(key);
+		}
+
+		return keys;
+	}
+
+	private static String keyFile(final List<ECKey> keys)
+	{
+		// as WalletUtils.writeKeys() writes them
+		final StringBuilder text = new StringBuilder("# comment\n");
+		for (final ECKey key : keys)
+		{
+			text.append(key.getPrivateKeyEncoded(PARAMS).toString());
+			if (key.getCreationTimeSeconds() != 0)
+				text.append(' ').append(Iso8601Format.formatDateTimeT(key.getCreationTimeSeconds()));
+			text.append('\n');
+		}
+
+		return text.toString();
+	}
+
+	private static ECKey read(final String line) throws IOException
+	{
+		final List<ECKey> keys = KeyFileReader.readKeys(reader(line), PARAMS);
+		assertEquals(1, keys.size());
+
+		return keys.get(0);
+	}
+
+	private static BufferedReader reader(final String text)
+	{
+		return new BufferedReader(new StringReader(text));
+	}
+
+	private static void assertKeys(final List<ECKey> expected, final List<ECKey> actual)
+	{
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			assertArrayEquals(expected.get(i).getPrivKeyBytes(), actual.get(i).getPrivKeyBytes());
+			assertArrayEquals(expected.get(i).getPubKey(), actual.get(i).getPubKey());
+			assertEquals(expected.get(i).getCreationTimeSeconds(), actual.get(i).getCreationTimeSeconds());
+		}
+	}
+}
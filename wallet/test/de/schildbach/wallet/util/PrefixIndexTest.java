@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.paybullion.util.PrefixIndex;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class PrefixIndexTest
+{
+	private static final String[][] CURRENCIES = new String[][] { { "AUD", "Australian Dollar" }, { "CHF", "Swiss Franc" },
+			{ "EUR", "Euro" }, { "USD", "US Dollar" }, { "XAU", null } };
+
+	@Test
+	public void codesAndNames() throws Exception
+	{
+		final PrefixIndex index = new PrefixIndex(CURRENCIES);
+
+		assertEquals(5, index.size());
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 4 }, index.search(null));
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 4 }, index.search("  "));
+		assertArrayEquals(new int[] { 3 }, index.search("us"));
+		assertArrayEquals(new int[] { 3 }, index.search("US  D"));
+		assertArrayEquals(new int[] { 0, 3 }, index.search("dol"));
+		assertArrayEquals(new int[] { 2 }, index.search("eu"));
+		assertArrayEquals(new int[] { 1 }, index.search("franc"));
+		assertArrayEquals(new int[] { 0 }, index.search("a"));
+		assertArrayEquals(new int[] { 4 }, index.search("x"));
+		assertArrayEquals(new int[] {}, index.search("yen"));
+		assertArrayEquals(new int[] {}, index.search("zzz"));
+	}
+
+	@Test
+	public void manyRows() throws Exception
+	{
+		// about as many currencies as the tickers have, each with a name of several words
+		final String[][] texts = new String[200][];
+		for (int i = 0; i < texts.length; i++)
+			texts[i] = new String[] { String.format("%c%c%c", 'A' + i % 26, 'A' + (i / 26) % 26, 'A' + i % 7),
+					"Name " + i + " Dollar of " + (char) ('A' + i % 26) + "land" };
+
+		final PrefixIndex index = new PrefixIndex(texts);
+
+		assertEquals(200, index.search("").length);
+		assertEquals(200, index.search("dol").length);
+		assertEquals(111, index.search("name 1").length);
+		assertEquals(111, index.search("1").length);
+		assertEquals(0, index.search("zz").length);
+		assertArrayEquals(new int[] { 1, 27, 53, 79, 105, 131, 157, 183 }, index.search("bland"));
+	}
+}
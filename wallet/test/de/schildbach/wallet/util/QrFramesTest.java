@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.paybullion.util.Base43;
+import com.paybullion.util.Qr;
+import com.paybullion.util.QrFrames;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class QrFramesTest
+{
+	@Test
+	public void inOrder() throws Exception
+	{
+		final byte[] bytes = sweep(new Random(20), 60);
+		final QrFrames frames = new QrFrames(bytes);
+		final QrFrames.Assembler assembler = new QrFrames.Assembler();
+
+		for (int i = 0; i < frames.numBlocks(); i++)
+		{
+			assertNull(assembler.result());
+			assertTrue(assembler.add(frames.frame(i)));
+			assertEquals(i + 1, assembler.numRecovered());
+			assertEquals(frames.numBlocks(), assembler.numBlocks());
+		}
+
+		// same as a single code would carry, so it goes through the usual parsing
+		assertEquals(Qr.encodeCompressBinary(bytes, true), assembler.result());
+		assertArrayEquals(bytes, Qr.decodeDecompressBinary(assembler.result()));
+	}
+
+	@Test
+	public void anyOrder() throws Exception
+	{
+		final byte[] bytes = sweep(new Random(21), 60);
+		final QrFrames frames = new QrFrames(bytes);
+		final List<String> shuffled = new ArrayList<String>();
+		for (int i = 0; i < frames.numBlocks(); i++)
+			shuffled.add(frames.frame(i));
+		Collections.shuffle(shuffled, new Random(22));
+
+		final QrFrames.Assembler assembler = new QrFrames.Assembler();
+		for (final String frame : shuffled)
+			assembler.add(frame);
+
+		assertArrayEquals(bytes, Qr.decodeDecompressBinary(assembler.result()));
+	}
+
+	@Test
+	public void missedFramesFilledByRepairFrames() throws Exception
+	{
+		final Random random = new Random(23);
+
+		for (int run = 0; run < 50; run++)
+		{
+			final byte[] bytes = sweep(random, 20 + random.nextInt(80));
+			final QrFrames frames = new QrFrames(bytes);
+			final QrFrames.Assembler assembler = new QrFrames.Assembler();
+
+			// a camera that starts late and misses every third frame, give or take
+			final int start = random.nextInt(frames.numBlocks());
+			int position = start;
+			while (assembler.result() == null)
+			{
+				if (random.nextInt(3) != 0)
+					assembler.add(frames.frame(position));
+				position++;
+
+				assertTrue("never completes", position - start < frames.numBlocks() * 6);
+			}
+
+			assertArrayEquals(bytes, Qr.decodeDecompressBinary(assembler.result()));
+		}
+	}
+
+	@Test
+	public void switchesToNewStream() throws Exception
+	{
+		final Random random = new Random(24);
+		final QrFrames frames1 = new QrFrames(sweep(random, 30));
+		final byte[] bytes2 = sweep(random, 30);
+		final QrFrames frames2 = new QrFrames(bytes2);
+		final QrFrames.Assembler assembler = new QrFrames.Assembler();
+
+		assembler.add(frames1.frame(0));
+		assembler.add(frames1.frame(1));
+		assertEquals(2, assembler.numRecovered());
+
+		assembler.add(frames2.frame(0));
+		assertEquals(1, assembler.numRecovered());
+
+		for (int i = 1; i < frames2.numBlocks(); i++)
+			assembler.add(frames2.frame(i));
+		assertArrayEquals(bytes2, Qr.decodeDecompressBinary(assembler.result()));
+	}
+
+	@Test
+	public void malformedFrames() throws Exception
+	{
+		final QrFrames.Assembler assembler = new QrFrames.Assembler();
+
+		assertFalse(assembler.add("paybullion:1Bu11ion"));
+		assertFalse(assembler.add(QrFrames.PREFIX + "abc"));
+		assertFalse(assembler.add(QrFrames.PREFIX + "RNO2-MYFN0D35RHM"));
+
+		final String frame = new QrFrames(sweep(new Random(25), 30)).frame(0);
+		assertFalse(assembler.add(frame.substring(0, frame.length() - 10)));
+
+		// a megabyte in one byte blocks
+		final ByteBuffer tinyBlocks = ByteBuffer.allocate(15 + 1);
+		tinyBlocks.put((byte) '-').putInt(0).putInt(1024 * 1024).putShort((short) 1).putInt(5000).put((byte) 0);
+		assertFalse(assembler.add(QrFrames.PREFIX + Base43.encode(tinyBlocks.array())));
+
+		assertEquals(0, assembler.numBlocks());
+	}
+
+	@Test
+	public void singleBlock() throws Exception
+	{
+		final byte[] bytes = new byte[] { 1, 2, 3 };
+		final QrFrames frames = new QrFrames(bytes);
+		assertEquals(1, frames.numBlocks());
+
+		final QrFrames.Assembler assembler = new QrFrames.Assembler();
+		assembler.add(frames.frame(1)); // a repair frame, which for one block is the block itself
+		assertArrayEquals(bytes, Qr.decodeDecompressBinary(assembler.result()));
+	}
+
+	private static byte[] sweep(final Random random, final int numInputs)
+	{
+		// inputs of a sweep transaction: outpoint, signature and key, mostly incompressible
+		final byte[] bytes = new byte[10 + numInputs * 180 + 34];
+		random.nextBytes(bytes);
+		for (int i = 0; i < numInputs; i++)
+			bytes[10 + i * 180 + 36] = 0x6a;
+
+		return bytes;
+	}
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.paybullion.util.Base43;
+import com.paybullion.util.Qr;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class QrTest
+{
+	// 256dp at xhdpi, as the screens used to render
+	private static final int SIZE = 768;
+
+	@Test
+	public void compressBinary() throws Exception
+	{
+		final byte[] bytes = transaction(new Random(10));
+
+		assertArrayEquals(bytes, Qr.decodeDecompressBinary(Qr.encodeCompressBinary(bytes)));
+	}
+
+	@Test
+	public void compressionModes() throws Exception
+	{
+		final byte[] transaction = transaction(new Random(13), 1, 2);
+		final String deflated = Qr.encodeCompressBinary(transaction, true);
+		assertEquals('D', deflated.charAt(0));
+		assertArrayEquals(transaction, Qr.decodeDecompressBinary(deflated));
+
+		// readable by all versions
+		final byte[] text = "some text some text some text some text".getBytes("US-ASCII");
+		final String gzipped = Qr.encodeCompressBinary(text);
+		assertEquals('Z', gzipped.charAt(0));
+		assertArrayEquals(text, Qr.decodeDecompressBinary(gzipped));
+		assertArrayEquals(transaction, Qr.decodeDecompressBinary("Z" + Base43.encode(gzip(transaction))));
+
+		// incompressible content is stored as is
+		final byte[] random = new byte[100];
+		new Random(14).nextBytes(random);
+		for (final boolean useDictionary : new boolean[] { false, true })
+		{
+			final String stored = Qr.encodeCompressBinary(random, useDictionary);
+			assertEquals('-', stored.charAt(0));
+			assertArrayEquals(random, Qr.decodeDecompressBinary(stored));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedDeflate() throws Exception
+	{
+		final String deflated = Qr.encodeCompressBinary(transaction(new Random(15), 2, 2), true);
+
+		Qr.decodeDecompressBinary(deflated.substring(0, deflated.length() / 2));
+	}
+
+	@Test
+	public void decompressionIsCapped() throws Exception
+	{
+		final byte[] transaction = transaction(new Random(17), 3, 2);
+		final String deflated = Qr.encodeCompressBinary(transaction, true);
+
+		final ByteBuffer buf = Qr.decodeDecompressBinary(deflated, transaction.length);
+		assertEquals(transaction.length, buf.remaining());
+		final byte[] bytes = new byte[buf.remaining()];
+		buf.get(bytes);
+		assertArrayEquals(transaction, bytes);
+
+		assertDecompressionFails(deflated, transaction.length - 1);
+		assertDecompressionFails("Z" + Base43.encode(gzip(transaction)), transaction.length - 1);
+		assertDecompressionFails(Qr.encodeCompressBinary(new byte[] { 1, 2, 3 }), 2);
+	}
+
+	@Test
+	public void decompressionBomb() throws Exception
+	{
+		// 100 MB of zeros compress to about 100 KB, still scannable as a stream of frames; the stream doesn't need to
+		// refer to the dictionary to be valid
+		final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+		final byte[] zeros = new byte[1024 * 1024];
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final byte[] buf = new byte[4096];
+		for (int i = 0; i < 100; i++)
+		{
+			deflater.setInput(zeros);
+			while (!deflater.needsInput())
+				bos.write(buf, 0, deflater.deflate(buf));
+		}
+		deflater.finish();
+		while (!deflater.finished())
+			bos.write(buf, 0, deflater.deflate(buf));
+		deflater.end();
+
+		assertDecompressionFails("D" + Base43.encode(bos.toByteArray()), Qr.MAX_DECOMPRESSED_LENGTH);
+	}
+
+	@Test
+	public void compressionCorpus() throws Exception
+	{
+		final Random random = new Random(16);
+		long sizeGzip = 0, sizeDeflate = 0, sizeDeflateDictionary = 0;
+
+		for (int i = 0; i < 1000; i++)
+		{
+			// mostly one or two inputs, like typical payments
+			final int numInputs = random.nextInt(10) < 7 ? 1 + random.nextInt(2) : 3 + random.nextInt(8);
+			final byte[] transaction = transaction(random, numInputs, 1 + random.nextInt(2));
+
+			final String encoded = Qr.encodeCompressBinary(transaction, true);
+
+			sizeGzip += Math.min(gzip(transaction).length, transaction.length);
+			sizeDeflate += Math.min(deflateWithoutDictionary(transaction).length, transaction.length);
+			sizeDeflateDictionary += Base43.decode(encoded.substring(1)).length;
+
+			assertArrayEquals(transaction, Qr.decodeDecompressBinary(encoded));
+		}
+
+		assertTrue(sizeDeflateDictionary < sizeDeflate);
+		assertTrue(sizeDeflate < sizeGzip);
+	}
+
+	@Test
+	public void moduleMatrixMatchesFullSize() throws Exception
+	{
+		final String content = Qr.encodeCompressBinary(transaction(new Random(11)));
+
+		final ByteMatrix modules = Qr.encode(content, ErrorCorrectionLevel.H);
+		final BitMatrix fullSize = encodeFullSize(content);
+
+		// nearest neighbour scaling of the modules gives back the full size rendering
+		final int width = modules.getWidth();
+		final int multiple = SIZE / width;
+		final int padding = (SIZE - width * multiple) / 2;
+		for (int y = 0; y < width; y++)
+			for (int x = 0; x < width; x++)
+				assertEquals(modules.get(x, y) == 1, fullSize.get(padding + x * multiple, padding + y * multiple));
+	}
+
+	private static BitMatrix encodeFullSize(final String content) throws Exception
+	{
+		final Hashtable<EncodeHintType, Object> hints = new Hashtable<EncodeHintType, Object>();
+		hints.put(EncodeHintType.MARGIN, 0);
+		hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
+
+		return new QRCodeWriter().encode(content, BarcodeFormat.QR_CODE, SIZE, SIZE, hints);
+	}
+
+	private static byte[] transaction(final Random random)
+	{
+		return transaction(random, 1, 2);
+	}
+
+	/**
+	 * Builds a transaction as the wallet would: pay to pubkey hash inputs with compressed keys (some uncompressed, as
+	 * from old wallets), pay to pubkey hash or script hash outputs. Hashes, keys and signatures are random, which is what
+	 * they look like to a compressor.
+	 */
+	private static byte[] transaction(final Random random, final int numInputs, final int numOutputs)
+	{
+		final ByteArrayOutputStream tx = new ByteArrayOutputStream();
+		write(tx, 0x01, 0x00, 0x00, 0x00); // version
+		write(tx, numInputs);
+		for (int i = 0; i < numInputs; i++)
+		{
+			writeRandom(tx, random, 32); // previous transaction
+			write(tx, random.nextInt(3), 0x00, 0x00, 0x00);
+
+			final boolean rPadded = random.nextBoolean(), sPadded = random.nextBoolean();
+			final int sigLength = 6 + (rPadded ? 33 : 32) + (sPadded ? 33 : 32) + 1;
+			final boolean compressedKey = random.nextInt(10) != 0;
+			write(tx, 1 + sigLength + 1 + (compressedKey ? 33 : 65)); // script length
+			write(tx, sigLength, 0x30, sigLength - 3, 0x02, rPadded ? 33 : 32);
+			if (rPadded)
+				write(tx, 0x00, 0x80 | random.nextInt(0x80));
+			writeRandom(tx, random, rPadded ? 31 : 32);
+			write(tx, 0x02, sPadded ? 33 : 32);
+			if (sPadded)
+				write(tx, 0x00, 0x80 | random.nextInt(0x80));
+			writeRandom(tx, random, sPadded ? 31 : 32);
+			write(tx, 0x01); // sighash all
+			if (compressedKey)
+			{
+				write(tx, 33, 0x02 + random.nextInt(2));
+				writeRandom(tx, random, 32);
+			}
+			else
+			{
+				write(tx, 65, 0x04);
+				writeRandom(tx, random, 64);
+			}
+			write(tx, 0xff, 0xff, 0xff, 0xff); // sequence
+		}
+		write(tx, numOutputs);
+		for (int i = 0; i < numOutputs; i++)
+		{
+			long value = (1 + random.nextInt(100000)) * (random.nextBoolean() ? 10000l : 1l);
+			for (int j = 0; j < 8; j++, value >>>= 8)
+				write(tx, (int) value & 0xff);
+			if (random.nextInt(5) != 0)
+			{
+				write(tx, 0x19, 0x76, 0xa9, 0x14);
+				writeRandom(tx, random, 20);
+				write(tx, 0x88, 0xac);
+			}
+			else
+			{
+				write(tx, 0x17, 0xa9, 0x14);
+				writeRandom(tx, random, 20);
+				write(tx, 0x87);
+			}
+		}
+		write(tx, 0x00, 0x00, 0x00, 0x00); // lock time
+
+		return tx.toByteArray();
+	}
+
+	private static void write(final ByteArrayOutputStream os, final int... bytes)
+	{
+		for (final int b : bytes)
+			os.write(b);
+	}
+
+	private static void writeRandom(final ByteArrayOutputStream os, final Random random, final int numBytes)
+	{
+		final byte[] bytes = new byte[numBytes];
+		random.nextBytes(bytes);
+		os.write(bytes, 0, numBytes);
+	}
+
+	private static void assertDecompressionFails(final String content, final int maxLength)
+	{
+		try
+		{
+			Qr.decodeDecompressBinary(content, maxLength);
+			fail();
+		}
+		catch (final IOException x)
+		{
+			// expected
+		}
+	}
+
+	private static byte[] gzip(final byte[] bytes) throws Exception
+	{
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final GZIPOutputStream gos = new GZIPOutputStream(bos);
+		gos.write(bytes);
+		gos.close();
+
+		return bos.toByteArray();
+	}
+
+	private static byte[] deflateWithoutDictionary(final byte[] bytes)
+	{
+		final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+		deflater.setInput(bytes);
+		deflater.finish();
+
+		final byte[] buf = new byte[bytes.length * 2 + 64];
+		final int length = deflater.deflate(buf);
+		deflater.end();
+
+		final byte[] deflated = new byte[length];
+		System.arraycopy(buf, 0, deflated, 0, length);
+		return deflated;
+	}
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.paybullion.util.ConditionalGet;
+import com.paybullion.util.HedgedRequest;
+import com.paybullion.util.RateFetcher;
+import com.paybullion.util.RateSources;
+import com.paybullion.util.RateSources.Ticker;
+
+/**
+ * Runs the rate pipeline against {@link StandInRateServer}, so no network is needed.
+ *
+ * @author Andreas Schildbach
+ */
+public class RateFetcherTest
+{
+	@Test
+	public void recordedTickers() throws Exception
+	{
+		final StandInRateServer server = new StandInRateServer().ticker("/a", StandInRateServer.BITCOINAVERAGE)
+				.ticker("/c", StandInRateServer.BITCOINCHARTS).ticker("/b", StandInRateServer.BLOCKCHAININFO);
+		final File cacheDir = tempDir();
+
+		try
+		{
+			final RateFetcher fetcher = fetcher(cacheDir);
+
+			final Map<String, Long> bitcoinaverage = fetcher.fetchTicker(new Ticker(server.url("/a"), "24h_avg", "last"));
+			assertEquals(3, bitcoinaverage.size());
+			assertEquals(Long.valueOf(84647000000l), bitcoinaverage.get("USD"));
+
+			final Map<String, Long> bitcoincharts = fetcher.fetchTicker(new Ticker(server.url("/c"), "24h", "7d", "30d"));
+			assertEquals(Long.valueOf(298512000000l), bitcoincharts.get("ILS"));
+
+			final Map<String, Long> blockchaininfo = fetcher.fetchTicker(new Ticker(server.url("/b"), "15m"));
+			assertEquals(Long.valueOf(511481000000l), blockchaininfo.get("CNY"));
+		}
+		finally
+		{
+			server.stop();
+			delete(cacheDir);
+		}
+	}
+
+	@Test
+	public void notModifiedReusesParsedRates() throws Exception
+	{
+		final StandInRateServer server = new StandInRateServer().ticker("/a", StandInRateServer.BITCOINAVERAGE).eTag("/a", "\"v1\"");
+		final File cacheDir = tempDir();
+
+		try
+		{
+			final RateFetcher fetcher = fetcher(cacheDir);
+			final Ticker ticker = new Ticker(server.url("/a"), "24h_avg", "last");
+
+			final Map<String, Long> first = fetcher.fetchTicker(ticker);
+			final Map<String, Long> second = fetcher.fetchTicker(ticker);
+			assertSame(first, second);
+			assertEquals(1, server.numNotModified("/a"));
+
+			// a new instance has the body on disk, but needs to parse it again
+			final Map<String, Long> third = fetcher(cacheDir).fetchTicker(ticker);
+			assertEquals(first, third);
+			assertEquals(2, server.numNotModified("/a"));
+		}
+		finally
+		{
+			server.stop();
+			delete(cacheDir);
+		}
+	}
+
+	@Test
+	public void failures() throws Exception
+	{
+		final StandInRateServer server = new StandInRateServer().ticker("/malformed", StandInRateServer.BITCOINAVERAGE)
+				.truncated("/malformed", true).ticker("/error", StandInRateServer.BITCOINAVERAGE).status("/error", 500)
+				.ticker("/slow", StandInRateServer.BITCOINAVERAGE).latency("/slow", 2000);
+		final File cacheDir = tempDir();
+
+		try
+		{
+			final RateFetcher fetcher = new RateFetcher(new ConditionalGet(cacheDir), "test", 500);
+
+			assertNull(fetcher.fetchTicker(new Ticker(server.url("/malformed"), "24h_avg")));
+			assertNull(fetcher.fetchTicker(new Ticker(server.url("/error"), "24h_avg")));
+			assertNull(fetcher.fetchTicker(new Ticker(server.url("/missing"), "24h_avg")));
+			assertNull(fetcher.fetchTicker(new Ticker(server.url("/slow"), "24h_avg"))); // read timeout
+		}
+		finally
+		{
+			server.stop();
+			delete(cacheDir);
+		}
+	}
+
+	@Test
+	public void hedgesSlowTicker() throws Exception
+	{
+		final StandInRateServer server = new StandInRateServer().ticker("/slow", StandInRateServer.BITCOINAVERAGE).latency("/slow", 2000)
+				.ticker("/fast", StandInRateServer.BITCOINCHARTS);
+		final File cacheDir = tempDir();
+		final ExecutorService executor = Executors.newCachedThreadPool();
+
+		try
+		{
+			final RateFetcher fetcher = fetcher(cacheDir);
+			final List<Callable<Map<String, Long>>> requests = new ArrayList<Callable<Map<String, Long>>>();
+			for (final Ticker ticker : server.sources(new Ticker(server.url("/slow"), "24h_avg"), new Ticker(server.url("/fast"), "24h", "7d")).tickers)
+			{
+				requests.add(new Callable<Map<String, Long>>()
+				{
+					@Override
+					public Map<String, Long> call()
+					{
+						return fetcher.fetchTicker(ticker);
+					}
+				});
+			}
+
+			final long start = System.currentTimeMillis();
+			final Map<String, Long> rates = HedgedRequest.first(executor, requests, 100, start + 5000);
+
+			assertTrue(rates.containsKey("ILS")); // answered by the second ticker
+			assertTrue(System.currentTimeMillis() - start < 1500);
+		}
+		finally
+		{
+			executor.shutdownNow();
+			server.stop();
+			delete(cacheDir);
+		}
+	}
+
+	@Test
+	public void goldPrice() throws Exception
+	{
+		final StandInRateServer server = new StandInRateServer().goldPrice("1,243.70");
+		final File cacheDir = tempDir();
+
+		try
+		{
+			final RateFetcher fetcher = fetcher(cacheDir);
+			final RateSources.GoldService service = server.sources().goldServices.get(0);
+
+			assertEquals(Long.valueOf(124370000000l), fetcher.fetchGoldRate(service));
+
+			server.goldPrice("n/a");
+			assertNull(fetcher.fetchGoldRate(service));
+
+			server.goldPrice("1243.70").truncated(StandInRateServer.GOLD_PATH, true);
+			assertNull(fetcher.fetchGoldRate(service));
+
+			server.truncated(StandInRateServer.GOLD_PATH, false).status(StandInRateServer.GOLD_PATH, 500);
+			assertNull(fetcher.fetchGoldRate(service));
+		}
+		finally
+		{
+			server.stop();
+			delete(cacheDir);
+		}
+	}
+
+	@Test
+	public void adjustToGold() throws Exception
+	{
+		final Map<String, Long> btcRates = new TreeMap<String, Long>();
+		btcRates.put("USD", 84647000000l);
+		btcRates.put("EUR", 62048000000l);
+		final long goldRate = 124370000000l;
+
+		final Map<String, Long> adjustedRates = RateFetcher.adjustToGold(btcRates, goldRate);
+
+		assertEquals(Long.valueOf(goldRate), adjustedRates.get("USD"));
+		final long expectedEur = new BigDecimal(62048000000l).multiply(new BigDecimal(goldRate)).divide(new BigDecimal(84647000000l), 0,
+				RoundingMode.DOWN).longValue();
+		assertEquals(Long.valueOf(expectedEur), adjustedRates.get("EUR"));
+
+		btcRates.remove("USD");
+		assertNull(RateFetcher.adjustToGold(btcRates, goldRate));
+	}
+
+	@Test
+	public void sourcesFromProperties() throws Exception
+	{
+		final Properties properties = new Properties();
+		assertEquals(RateSources.DEFAULT.tickers, RateSources.fromProperties(properties, RateSources.DEFAULT).tickers);
+		assertEquals(RateSources.DEFAULT.goldServices, RateSources.fromProperties(properties, RateSources.DEFAULT).goldServices);
+
+		properties.setProperty("ticker.1.url", "http://127.0.0.1:8080/ticker");
+		properties.setProperty("ticker.1.fields", "24h_avg, last");
+		properties.setProperty("gold.1.url", "http://127.0.0.1:8080/gold");
+		properties.setProperty("gold.2.url", "http://127.0.0.1:8081/gold");
+		properties.setProperty("gold.2.user", "user");
+		properties.setProperty("gold.2.password", "password");
+		final RateSources sources = RateSources.fromProperties(properties, RateSources.DEFAULT);
+
+		assertEquals(1, sources.tickers.size());
+		assertEquals("http://127.0.0.1:8080/ticker", sources.tickers.get(0).url.toString());
+		assertEquals(2, sources.tickers.get(0).fields.length);
+		assertEquals("last", sources.tickers.get(0).fields[1]);
+		assertEquals(2, sources.goldServices.size());
+		assertEquals("http://127.0.0.1:8080/gold", sources.goldServices.get(0).url.toString());
+		assertEquals(RateSources.DEFAULT.goldServices.get(0).user, sources.goldServices.get(0).user);
+		assertEquals("http://127.0.0.1:8081/gold", sources.goldServices.get(1).url.toString());
+		assertEquals("user", sources.goldServices.get(1).user);
+		assertEquals("password", sources.goldServices.get(1).password);
+	}
+
+	@Test
+	public void fullSizedTicker() throws Exception
+	{
+		// a full sized ticker, as many currencies as the real services list
+		final StringBuilder json = new StringBuilder("{");
+		for (int i = 0; i < 170; i++)
+			json.append(i == 0 ? "\"USD\"" : ",\"C" + (char) ('A' + i / 26 % 26) + (char) ('A' + i % 26) + "\"").append(
+					": {\"24h_avg\": " + (800 + i) + "." + (i % 100) + ", \"last\": 812.35, \"timestamp\": \"Wed, 15 Jan 2014 10:13:04 -0000\"}");
+		json.append('}');
+
+		final StandInRateServer server = new StandInRateServer().ticker("/full", json.toString()).ticker("/cached", json.toString())
+				.eTag("/cached", "\"v1\"").goldPrice("1243.70");
+		final File cacheDir = tempDir();
+
+		try
+		{
+			final RateFetcher fetcher = fetcher(cacheDir);
+			final Ticker full = new Ticker(server.url("/full"), "24h_avg", "last");
+			final Ticker cached = new Ticker(server.url("/cached"), "24h_avg", "last");
+			final long goldRate = fetcher.fetchGoldRate(server.sources().goldServices.get(0));
+
+			assertEquals(170, RateFetcher.adjustToGold(fetcher.fetchTicker(full), goldRate).size());
+			for (int i = 0; i < 3; i++)
+				assertEquals(170, RateFetcher.adjustToGold(fetcher.fetchTicker(cached), goldRate).size());
+
+			// all but the very first request were conditional
+			assertEquals(2, server.numNotModified("/cached"));
+		}
+		finally
+		{
+			server.stop();
+			delete(cacheDir);
+		}
+	}
+
+	private static RateFetcher fetcher(final File cacheDir)
+	{
+		return new RateFetcher(new ConditionalGet(cacheDir), "test", 5000);
+	}
+
+	private static File tempDir() throws IOException
+	{
+		final File dir = File.createTempFile("rate-fetcher", "");
+		dir.delete();
+		dir.mkdir();
+
+		return dir;
+	}
+
+	private static void delete(final File dir)
+	{
+		for (final File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+	}
+}
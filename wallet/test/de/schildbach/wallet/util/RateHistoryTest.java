@@ -0,0 +1,172 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.paybullion.util.RateHistory;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class RateHistoryTest
+{
+	private static final long HOUR = 60 * 60 * 1000;
+	private static final long DAY = 24 * HOUR;
+
+	@Test
+	public void nearestSample() throws Exception
+	{
+		final File dir = tempDir();
+
+		try
+		{
+			final RateHistory history = new RateHistory(dir, HOUR);
+			assertEquals(0, history.rateAt("USD", 10 * HOUR, DAY));
+
+			assertTrue(history.append("USD", 10 * HOUR, 100));
+			assertTrue(history.append("USD", 20 * HOUR, 200));
+			assertTrue(history.append("USD", 30 * HOUR, 300));
+			assertTrue(history.append("EUR", 20 * HOUR, 150));
+
+			assertEquals(100, history.rateAt("USD", 0, DAY));
+			assertEquals(100, history.rateAt("USD", 10 * HOUR, DAY));
+			assertEquals(100, history.rateAt("USD", 14 * HOUR, DAY));
+			assertEquals(200, history.rateAt("USD", 16 * HOUR, DAY));
+			assertEquals(200, history.rateAt("USD", 20 * HOUR, DAY));
+			assertEquals(300, history.rateAt("USD", 40 * HOUR, DAY));
+			assertEquals(150, history.rateAt("EUR", 40 * HOUR, DAY));
+
+			// too far away from any sample
+			assertEquals(0, history.rateAt("USD", 30 * HOUR + DAY + 1, DAY));
+			assertEquals(0, history.rateAt("CHF", 20 * HOUR, DAY));
+		}
+		finally
+		{
+			delete(dir);
+		}
+	}
+
+	@Test
+	public void minInterval() throws Exception
+	{
+		final File dir = tempDir();
+
+		try
+		{
+			final RateHistory history = new RateHistory(dir, HOUR);
+
+			assertTrue(history.append("USD", 10 * HOUR, 100));
+			assertFalse(history.append("USD", 10 * HOUR + 1, 101));
+			assertFalse(history.append("USD", 5 * HOUR, 50)); // out of order
+			assertTrue(history.append("USD", 11 * HOUR, 110));
+			assertFalse(history.append("../x", 11 * HOUR, 110));
+
+			assertEquals(2, history.size("USD"));
+			assertEquals(100, history.rateAt("USD", 10 * HOUR + 1, DAY));
+		}
+		finally
+		{
+			delete(dir);
+		}
+	}
+
+	@Test
+	public void persistence() throws Exception
+	{
+		final File dir = tempDir();
+
+		try
+		{
+			final RateHistory history = new RateHistory(dir, HOUR);
+			history.append("USD", 10 * HOUR, 100);
+			history.append("USD", 20 * HOUR, 200);
+
+			// simulate a crash in the middle of writing a record
+			final FileOutputStream os = new FileOutputStream(new File(dir, "USD"), true);
+			os.write(new byte[] { 1, 2, 3 });
+			os.close();
+
+			final RateHistory reopened = new RateHistory(dir, HOUR);
+			assertEquals(0, reopened.rateAt("USD", 20 * HOUR, DAY)); // not opened yet
+			reopened.open("USD");
+			assertEquals(2, reopened.size("USD"));
+			assertEquals(200, reopened.rateAt("USD", 20 * HOUR, DAY));
+			assertFalse(reopened.append("USD", 20 * HOUR + 1, 201));
+			assertTrue(reopened.append("USD", 30 * HOUR, 300));
+
+			assertEquals(3 * 16, new File(dir, "USD").length());
+			final RateHistory again = new RateHistory(dir, HOUR);
+			again.open("USD");
+			assertEquals(300, again.rateAt("USD", 30 * HOUR, DAY));
+		}
+		finally
+		{
+			delete(dir);
+		}
+	}
+
+	@Test
+	public void longHistory() throws Exception
+	{
+		final File dir = tempDir();
+
+		try
+		{
+			// about three years of hourly samples
+			final int numSamples = 3 * 365 * 24;
+			final RateHistory history = new RateHistory(dir, HOUR);
+			for (int i = 0; i < numSamples; i++)
+				history.append("USD", i * HOUR, i + 1);
+
+			for (int i = 0; i < numSamples; i++)
+			{
+				final long time = i * HOUR + HOUR / 3;
+				assertEquals(i + 1, history.rateAt("USD", time, DAY));
+			}
+		}
+		finally
+		{
+			delete(dir);
+		}
+	}
+
+	private static File tempDir() throws IOException
+	{
+		final File dir = File.createTempFile("rate-history", "");
+		dir.delete();
+		dir.mkdir();
+
+		return dir;
+	}
+
+	private static void delete(final File dir)
+	{
+		for (final File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+	}
+}
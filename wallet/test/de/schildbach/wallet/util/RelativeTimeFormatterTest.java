@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.paybullion.util.RelativeTimeFormatter;
+import com.paybullion.util.RelativeTimeFormatter.Style;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class RelativeTimeFormatterTest
+{
+	private static final long MINUTE = 60 * 1000;
+	// 2014-01-15T00:00:00 in UTC+1
+	private static final long MIDNIGHT = 1389740400000l;
+
+	private TimeZone defaultTimeZone;
+
+	@Before
+	public void setUp()
+	{
+		defaultTimeZone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("GMT+01:00"));
+	}
+
+	@After
+	public void tearDown()
+	{
+		TimeZone.setDefault(defaultTimeZone);
+	}
+
+	@Test
+	public void timeSpanBeforeLocalMidnight() throws Exception
+	{
+		final RelativeTimeFormatter formatter = new RelativeTimeFormatter(null, Style.TIME_SPAN);
+		final long timeMs = MIDNIGHT - MINUTE;
+
+		// shown as a time of day until midnight, as a date right after
+		final long today = formatter.bucket(timeMs, MIDNIGHT - 1);
+		assertEquals(today, formatter.bucket(timeMs, timeMs));
+		assertTrue(today != formatter.bucket(timeMs, MIDNIGHT));
+		assertEquals(formatter.bucket(timeMs, MIDNIGHT), formatter.bucket(timeMs, MIDNIGHT + 23 * 60 * MINUTE));
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.paybullion.util.RateSources;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the ticker and gold price services. Replays recorded payloads, and can be told to answer slowly,
+ * with an error status, with a truncated body or with 304 Not Modified for a matching ETag.
+ *
+ * @author Andreas Schildbach
+ */
+public final class StandInRateServer
+{
+	// recorded payloads, trimmed to a few currencies
+	public static final String BITCOINAVERAGE = "{\n" //
+			+ "  \"AUD\": {\n    \"24h_avg\": 958.67,\n    \"ask\": 967.05,\n    \"bid\": 956.31,\n    \"last\": 962.96,\n"
+			+ "    \"timestamp\": \"Wed, 15 Jan 2014 10:13:04 -0000\",\n    \"volume_btc\": 312.87,\n    \"volume_percent\": 0.62\n  },\n"
+			+ "  \"EUR\": {\n    \"24h_avg\": 620.48,\n    \"ask\": 622.46,\n    \"bid\": 621.04,\n    \"last\": 621.32,\n"
+			+ "    \"timestamp\": \"Wed, 15 Jan 2014 10:13:04 -0000\",\n    \"volume_btc\": 9027.49,\n    \"volume_percent\": 18.05\n  },\n"
+			+ "  \"USD\": {\n    \"24h_avg\": 846.47,\n    \"ask\": 849.51,\n    \"bid\": 846.8,\n    \"last\": 848.6,\n"
+			+ "    \"timestamp\": \"Wed, 15 Jan 2014 10:13:04 -0000\",\n    \"volume_btc\": 28310.42,\n    \"volume_percent\": 56.59\n  },\n"
+			+ "  \"timestamp\": \"Wed, 15 Jan 2014 10:13:04 -0000\"\n}";
+
+	public static final String BITCOINCHARTS = "{\"USD\": {\"7d\": \"862.67\", \"30d\": \"825.11\", \"24h\": \"843.92\"}, "
+			+ "\"ILS\": {\"7d\": \"2985.12\", \"30d\": \"2831.84\"}, \"timestamp\": 1389780361}";
+
+	public static final String BLOCKCHAININFO = "{\n" //
+			+ "  \"USD\" : {\"15m\" : 847.01, \"last\" : 847.01, \"buy\" : 848.5, \"sell\" : 846.31,  \"symbol\" : \"$\"},\n"
+			+ "  \"CNY\" : {\"15m\" : 5114.81, \"last\" : 5114.81, \"buy\" : 5123.8, \"sell\" : 5110.58,  \"symbol\" : \"\\u00a5\"}\n" //
+			+ "}";
+
+	public static final String GOLD_PATH = "/GetGoldPrice.asmx";
+
+	private static final class Behavior
+	{
+		public volatile byte[] body;
+		public volatile String contentType;
+		public volatile String eTag;
+		public volatile int status = 200;
+		public volatile long latencyMs = 0;
+		public volatile boolean truncated = false;
+		public final AtomicInteger numRequests = new AtomicInteger();
+		public final AtomicInteger numNotModified = new AtomicInteger();
+	}
+
+	private final HttpServer server;
+	private final Map<String, Behavior> behaviors = new ConcurrentHashMap<String, Behavior>();
+
+	static
+	{
+		// otherwise Nagle's algorithm delays each response body by the client's delayed ACK
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	public StandInRateServer() throws IOException
+	{
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/", new HttpHandler()
+		{
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException
+			{
+				StandInRateServer.this.handle(exchange);
+			}
+		});
+		server.start();
+	}
+
+	public void stop()
+	{
+		server.stop(0);
+	}
+
+	public StandInRateServer ticker(final String path, final String json)
+	{
+		final Behavior behavior = behavior(path);
+		behavior.body = bytes(json);
+		behavior.contentType = "application/json";
+		return this;
+	}
+
+	/**
+	 * Answers the SOAP call for the current gold price with the given value, as the real service does.
+	 */
+	public StandInRateServer goldPrice(final String price)
+	{
+		final Behavior behavior = behavior(GOLD_PATH);
+		behavior.body = bytes("<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+				+ "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" "
+				+ "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\">" //
+				+ "<soap:Body><GetCurrentGoldPriceResponse xmlns=\"http://freewebservicesx.com/\"><GetCurrentGoldPriceResult>" //
+				+ "<string>" + price + "</string><string>-5.30</string><string>-0.42</string><string>1/15/2014 10:13:04 AM</string>" //
+				+ "</GetCurrentGoldPriceResult></GetCurrentGoldPriceResponse></soap:Body></soap:Envelope>");
+		behavior.contentType = "text/xml; charset=utf-8";
+		return this;
+	}
+
+	public StandInRateServer eTag(final String path, final String eTag)
+	{
+		behavior(path).eTag = eTag;
+		return this;
+	}
+
+	public StandInRateServer status(final String path, final int status)
+	{
+		behavior(path).status = status;
+		return this;
+	}
+
+	public StandInRateServer latency(final String path, final long latencyMs)
+	{
+		behavior(path).latencyMs = latencyMs;
+		return this;
+	}
+
+	/**
+	 * Cuts the body in half, which makes it malformed for any parser.
+	 */
+	public StandInRateServer truncated(final String path, final boolean truncated)
+	{
+		behavior(path).truncated = truncated;
+		return this;
+	}
+
+	public int numRequests(final String path)
+	{
+		return behavior(path).numRequests.get();
+	}
+
+	public int numNotModified(final String path)
+	{
+		return behavior(path).numNotModified.get();
+	}
+
+	public URL url(final String path) throws MalformedURLException
+	{
+		return new URL("http", "127.0.0.1", server.getAddress().getPort(), path);
+	}
+
+	/**
+	 * @return sources pointing at this server, with the given ticker paths in order of preference
+	 */
+	public RateSources sources(final RateSources.Ticker... tickers) throws MalformedURLException
+	{
+		return new RateSources(Arrays.asList(tickers), Arrays.asList(new RateSources.GoldService(url(GOLD_PATH), "user", "password")));
+	}
+
+	private Behavior behavior(final String path)
+	{
+		Behavior behavior = behaviors.get(path);
+		if (behavior == null)
+		{
+			behavior = new Behavior();
+			behaviors.put(path, behavior);
+		}
+		return behavior;
+	}
+
+	private void handle(final HttpExchange exchange) throws IOException
+	{
+		try
+		{
+			// drain the request, the SOAP call has a body
+			final InputStream is = exchange.getRequestBody();
+			while (is.read() >= 0)
+				;
+
+			final Behavior behavior = behaviors.get(exchange.getRequestURI().getPath());
+			if (behavior == null)
+			{
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+
+			behavior.numRequests.incrementAndGet();
+
+			if (behavior.latencyMs > 0)
+				Thread.sleep(behavior.latencyMs);
+
+			if (behavior.status != 200 || behavior.body == null)
+			{
+				exchange.sendResponseHeaders(behavior.status != 200 ? behavior.status : 404, -1);
+				return;
+			}
+
+			final String eTag = behavior.eTag;
+			if (eTag != null && eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+			{
+				behavior.numNotModified.incrementAndGet();
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+
+			final byte[] body = behavior.truncated ? Arrays.copyOf(behavior.body, behavior.body.length / 2) : behavior.body;
+			if (eTag != null)
+				exchange.getResponseHeaders().set("ETag", eTag);
+			exchange.getResponseHeaders().set("Content-Type", behavior.contentType);
+			exchange.sendResponseHeaders(200, body.length);
+			final OutputStream os = exchange.getResponseBody();
+			os.write(body);
+			os.close();
+		}
+		catch (final InterruptedException x)
+		{
+			exchange.sendResponseHeaders(503, -1);
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+
+	private static byte[] bytes(final String s)
+	{
+		try
+		{
+			return s.getBytes("UTF-8");
+		}
+		catch (final IOException x)
+		{
+			throw new RuntimeException(x);
+		}
+	}
+}
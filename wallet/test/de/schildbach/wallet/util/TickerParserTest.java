@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.paybullion.util.TickerParser;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class TickerParserTest
+{
+	// recorded payloads, trimmed to a few currencies
+	private static final String BITCOINAVERAGE = "{\n" //
+			+ "  \"AUD\": {\n    \"24h_avg\": 958.67,\n    \"ask\": 967.05,\n    \"bid\": 956.31,\n    \"last\": 962.96,\n"
+			+ "    \"timestamp\": \"Wed, 15 Jan 2014 10:13:04 -0000\",\n    \"volume_btc\": 312.87,\n    \"volume_percent\": 0.62\n  },\n"
+			+ "  \"EUR\": {\n    \"24h_avg\": 620.48,\n    \"ask\": 622.46,\n    \"bid\": 621.04,\n    \"last\": 621.32,\n"
+			+ "    \"timestamp\": \"Wed, 15 Jan 2014 10:13:04 -0000\",\n    \"volume_btc\": 9027.49,\n    \"volume_percent\": 18.05\n  },\n"
+			+ "  \"USD\": {\n    \"24h_avg\": 846.47,\n    \"ask\": 849.51,\n    \"bid\": 846.8,\n    \"last\": 848.6,\n"
+			+ "    \"timestamp\": \"Wed, 15 Jan 2014 10:13:04 -0000\",\n    \"volume_btc\": 28310.42,\n    \"volume_percent\": 56.59\n  },\n"
+			+ "  \"timestamp\": \"Wed, 15 Jan 2014 10:13:04 -0000\"\n}";
+
+	private static final String BITCOINCHARTS = "{\"USD\": {\"7d\": \"862.67\", \"30d\": \"825.11\", \"24h\": \"843.92\"}, "
+			+ "\"ILS\": {\"7d\": \"2985.12\", \"30d\": \"2831.84\"}, \"timestamp\": 1389780361}";
+
+	private static final String BLOCKCHAININFO = "{\n" //
+			+ "  \"USD\" : {\"15m\" : 847.01, \"last\" : 847.01, \"buy\" : 848.5, \"sell\" : 846.31,  \"symbol\" : \"$\"},\n"
+			+ "  \"CNY\" : {\"15m\" : 5114.81, \"last\" : 5114.81, \"buy\" : 5123.8, \"sell\" : 5110.58,  \"symbol\" : \"\\u00a5\"}\n" //
+			+ "}";
+
+	@Test
+	public void bitcoinaverage() throws Exception
+	{
+		final Map<String, Long> rates = parse(BITCOINAVERAGE, new String[] { "24h_avg", "last" }, null);
+
+		assertEquals(3, rates.size());
+		assertEquals(Long.valueOf(95867000000l), rates.get("AUD"));
+		assertEquals(Long.valueOf(62048000000l), rates.get("EUR"));
+		assertEquals(Long.valueOf(84647000000l), rates.get("USD"));
+	}
+
+	@Test
+	public void bitcoincharts() throws Exception
+	{
+		final Map<String, Long> rates = parse(BITCOINCHARTS, new String[] { "24h", "7d", "30d" }, null);
+
+		assertEquals(2, rates.size());
+		assertEquals(Long.valueOf(84392000000l), rates.get("USD"));
+		// falls back to the next field
+		assertEquals(Long.valueOf(298512000000l), rates.get("ILS"));
+	}
+
+	@Test
+	public void blockchaininfo() throws Exception
+	{
+		final Map<String, Long> rates = parse(BLOCKCHAININFO, new String[] { "15m" }, null);
+
+		assertEquals(2, rates.size());
+		assertEquals(Long.valueOf(84701000000l), rates.get("USD"));
+		assertEquals(Long.valueOf(511481000000l), rates.get("CNY"));
+	}
+
+	@Test
+	public void currencyFilter() throws Exception
+	{
+		final Map<String, Long> rates = parse(BITCOINAVERAGE, new String[] { "24h_avg", "last" }, new String[] { "USD", "CHF" });
+
+		assertEquals(1, rates.size());
+		assertEquals(Long.valueOf(84647000000l), rates.get("USD"));
+	}
+
+	@Test
+	public void invalidValues() throws Exception
+	{
+		final String json = "{\"A\":{\"x\":null,\"y\":\"1.5\"},\"B\":{\"x\":\"n/a\",\"y\":-3},\"C\":{\"x\":0,\"y\":\"0.000000001\"},"
+				+ "\"D\":{\"x\":1.23456789123,\"y\":2},\"E\":{\"x\":1.5e2},\"F\":{\"x\":[1,{\"y\":2}],\"y\":true},\"G\":7,\"H\":{}}";
+		final Map<String, Long> rates = parse(json, new String[] { "x", "y" }, null);
+
+		assertEquals(Long.valueOf(150000000l), rates.get("A"));
+		assertEquals(null, rates.get("B"));
+		assertEquals(null, rates.get("C"));
+		assertEquals(Long.valueOf(200000000l), rates.get("D"));
+		assertEquals(Long.valueOf(15000000000l), rates.get("E"));
+		assertEquals(null, rates.get("F"));
+		assertEquals(3, rates.size());
+	}
+
+	@Test(expected = IOException.class)
+	public void truncated() throws Exception
+	{
+		parse("{\"USD\":{\"24h\":\"843.9", new String[] { "24h" }, null);
+	}
+
+	@Test
+	public void matchesBigDecimal() throws Exception
+	{
+		final Random random = new Random(0);
+
+		for (int i = 0; i < 100000; i++)
+		{
+			final BigDecimal expected = BigDecimal.valueOf(random.nextInt(Integer.MAX_VALUE), random.nextInt(9));
+			final String str = random.nextBoolean() ? "\"" + expected.toPlainString() + "\"" : expected.toPlainString();
+
+			final Map<String, Long> rates = parse("{\"X\":{\"f\":" + str + "}}", new String[] { "f" }, null);
+
+			if (expected.signum() > 0)
+				assertEquals(str, Long.valueOf(expected.movePointRight(8).longValueExact()), rates.get("X"));
+			else
+				assertTrue(rates.isEmpty());
+		}
+	}
+
+	@Test
+	public void fullPayload() throws Exception
+	{
+		// about 160 currencies in the bitcoinaverage format, like the real payload
+		final StringBuilder payload = new StringBuilder("{");
+		for (int i = 0; i < 160; i++)
+			payload.append("\"C").append(i).append("\": {\"24h_avg\": ").append(100 + i).append(".47, \"ask\": 849.51, \"bid\": 846.8, "
+					+ "\"last\": 848.6, \"timestamp\": \"Wed, 15 Jan 2014 10:13:04 -0000\", \"volume_btc\": 28310.42, "
+					+ "\"volume_percent\": 56.59},\n");
+		payload.append("\"timestamp\": \"Wed, 15 Jan 2014 10:13:04 -0000\"}");
+		final String json = payload.toString();
+
+		final Map<String, Long> rates = parse(json, new String[] { "24h_avg", "last" }, null);
+		assertEquals(160, rates.size());
+		assertEquals(Long.valueOf(10047000000l), rates.get("C0"));
+		assertEquals(Long.valueOf(25947000000l), rates.get("C159"));
+
+		// a parser can be reused
+		final TickerParser parser = new TickerParser(new String[] { "24h_avg", "last" }, null);
+		final int[] count = new int[1];
+		final TickerParser.Listener listener = new TickerParser.Listener()
+		{
+			@Override
+			public void onRate(final String currencyCode, final long rate)
+			{
+				count[0]++;
+			}
+		};
+		parser.parse(new StringReader(json), listener);
+		parser.parse(new StringReader(json), listener);
+		assertEquals(2 * 160, count[0]);
+	}
+
+	private static Map<String, Long> parse(final String json, final String[] fields, final String[] currencyCodes) throws IOException
+	{
+		final Map<String, Long> rates = new TreeMap<String, Long>();
+
+		new TickerParser(fields, currencyCodes).parse(new StringReader(json), new TickerParser.Listener()
+		{
+			@Override
+			public void onRate(final String currencyCode, final long rate)
+			{
+				rates.put(currencyCode, rate);
+			}
+		});
+
+		return rates;
+	}
+}
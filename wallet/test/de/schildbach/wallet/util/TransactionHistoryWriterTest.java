@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+import com.paybullion.util.TransactionHistoryWriter;
+import com.paybullion.util.TransactionHistoryWriter.Format;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class TransactionHistoryWriterTest
+{
+	@Test
+	public void csv() throws Exception
+	{
+		final StringWriter out = new StringWriter();
+		final TransactionHistoryWriter writer = Format.CSV.newWriter(out);
+		writer.writeHeader();
+		writer.writeRow("2014-01-02T03:04:05Z", "ab01", "-1.50", "1Addr", "Shop, \"Main\"", 3, "USD", "-750.00");
+		writer.writeRow("2014-01-02T03:04:06Z", "ab02", "0.01", null, null, 0, null, null);
+		writer.writeFooter();
+
+		assertEquals(2, writer.getNumRows());
+		assertEquals("time,hash,value,counterparty,label,confirmations,fiat_currency,fiat_value\r\n"
+				+ "2014-01-02T03:04:05Z,ab01,-1.50,1Addr,\"Shop, \"\"Main\"\"\",3,USD,-750.00\r\n" //
+				+ "2014-01-02T03:04:06Z,ab02,0.01,,,0,,\r\n", out.toString());
+	}
+
+	@Test
+	public void json() throws Exception
+	{
+		final StringWriter out = new StringWriter();
+		final TransactionHistoryWriter writer = Format.JSON.newWriter(out);
+		writer.writeHeader();
+		writer.writeRow("2014-01-02T03:04:05Z", "ab01", "-1.50", "1Addr", "Shop \"Main\"\n\\", 3, "USD", "-750.00");
+		writer.writeRow("2014-01-02T03:04:06Z", "ab02", "0.01", null, null, 0, null, null);
+		writer.writeFooter();
+
+		assertEquals("[\n" //
+				+ "{\"time\":\"2014-01-02T03:04:05Z\",\"hash\":\"ab01\",\"value\":-1.50,\"counterparty\":\"1Addr\","
+				+ "\"label\":\"Shop \\\"Main\\\"\\u000a\\\\\",\"confirmations\":3,\"fiat_currency\":\"USD\",\"fiat_value\":-750.00},\n"
+				+ "{\"time\":\"2014-01-02T03:04:06Z\",\"hash\":\"ab02\",\"value\":0.01,\"counterparty\":null,"
+				+ "\"label\":null,\"confirmations\":0,\"fiat_currency\":null,\"fiat_value\":null}\n]\n", out.toString());
+	}
+
+	@Test
+	public void emptyJson() throws Exception
+	{
+		final StringWriter out = new StringWriter();
+		final TransactionHistoryWriter writer = Format.JSON.newWriter(out);
+		writer.writeHeader();
+		writer.writeFooter();
+
+		assertEquals("[\n]\n", out.toString());
+	}
+
+	@Test
+	public void streamsRows() throws Exception
+	{
+		for (final Format format : Format.values())
+		{
+			final CountingWriter out = new CountingWriter();
+			final TransactionHistoryWriter writer = format.newWriter(out);
+
+			writer.writeHeader();
+			for (int i = 0; i < 100000; i++)
+			{
+				// each row goes out right away, nothing piles up in memory
+				final long countBefore = out.count;
+				writer.writeRow("2014-01-02T03:04:05Z", "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef", "-1.50",
+						"1BitcoinEaterAddressDontSendf59kuE", "label " + i, i % 7, "USD", "-750.00");
+				assertTrue(format + ": row " + i + " held back", out.count > countBefore);
+			}
+			writer.writeFooter();
+
+			assertEquals(100000, writer.getNumRows());
+			assertTrue(out.count > 10 * 1024 * 1024);
+		}
+	}
+
+	private static final class CountingWriter extends Writer
+	{
+		public long count = 0;
+
+		@Override
+		public void write(final char[] cbuf, final int off, final int len) throws IOException
+		{
+			count += len;
+		}
+
+		@Override
+		public void write(final int c) throws IOException
+		{
+			count++;
+		}
+
+		@Override
+		public void write(final String str, final int off, final int len) throws IOException
+		{
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+		}
+	}
+}
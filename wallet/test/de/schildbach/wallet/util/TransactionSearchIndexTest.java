@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.paybullion.util.TransactionSearchIndex;
+import com.paybullion.util.TransactionSearchIndex.Query;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class TransactionSearchIndexTest
+{
+	@Test
+	public void labelsAddressesAndMemos() throws Exception
+	{
+		final TransactionSearchIndex<String> index = new TransactionSearchIndex<String>();
+		index.put("tx1", 1000, -150, "1Shop", null);
+		index.put("tx2", 2000, 200, "1Alice", "Rent for March");
+		index.put("tx3", 3000, 50, "1Shopper", null);
+
+		final Map<String, String> labels = new HashMap<String, String>();
+		labels.put("1Shop", "Coffee Shop");
+		labels.put("1Alice", "Alice");
+		index.setLabels(labels);
+
+		assertEquals(Arrays.asList("tx1"), index.search(new Query("coff")));
+		assertEquals(Arrays.asList("tx1"), index.search(new Query("SHOP")));
+		assertEquals(Arrays.asList("tx3", "tx1"), index.search(new Query("1Shop")));
+		assertEquals(Arrays.asList("tx2"), index.search(new Query("march")));
+		assertEquals(Arrays.asList("tx2"), index.search(new Query("alice rent")));
+		assertEquals(Arrays.<String> asList(), index.search(new Query("alice coffee")));
+		assertEquals(Arrays.asList("tx3", "tx2", "tx1"), index.search(new Query(null)));
+
+		labels.put("1Shopper", "Grocer");
+		index.setLabels(labels);
+		assertEquals(Arrays.asList("tx3"), index.search(new Query("groc")));
+	}
+
+	@Test
+	public void ranges() throws Exception
+	{
+		final TransactionSearchIndex<String> index = new TransactionSearchIndex<String>();
+		index.put("tx1", 1000, -150, "1A", null);
+		index.put("tx2", 2000, 200, "1B", null);
+		index.put("tx3", 3000, 50, "1C", null);
+
+		assertEquals(Arrays.asList("tx2", "tx1"), index.search(new Query(null, 100, 200, Long.MIN_VALUE, Long.MAX_VALUE)));
+		assertEquals(Arrays.asList("tx3", "tx2"), index.search(new Query(null, Long.MIN_VALUE, Long.MAX_VALUE, 1500, 3000)));
+		assertEquals(Arrays.asList("tx2"), index.search(new Query(null, 100, 200, 1500, 3000)));
+		assertEquals(Arrays.asList("tx2"), index.search(new Query("1B", 100, 200, 1500, 3000)));
+	}
+
+	@Test
+	public void update() throws Exception
+	{
+		final TransactionSearchIndex<String> index = new TransactionSearchIndex<String>();
+		index.put("tx1", 1000, 100, "1A", "first");
+		index.put("tx2", 2000, 200, "1B", null);
+		assertEquals(Arrays.asList("tx2", "tx1"), index.search(new Query(null)));
+
+		index.put("tx1", 3000, 300, "1C", "second");
+		assertEquals(2, index.size());
+		assertEquals(Arrays.asList("tx1", "tx2"), index.search(new Query(null)));
+		assertEquals(Arrays.<String> asList(), index.search(new Query("1A")));
+		assertEquals(Arrays.<String> asList(), index.search(new Query("first")));
+		assertEquals(Arrays.asList("tx1"), index.search(new Query("second")));
+		assertEquals(Arrays.<String> asList(), index.search(new Query(null, 0, 150, Long.MIN_VALUE, Long.MAX_VALUE)));
+		assertEquals(Arrays.asList("tx1"), index.search(new Query(null, 250, 350, Long.MIN_VALUE, Long.MAX_VALUE)));
+
+		// memo only, time and value stay
+		index.put("tx1", 3000, 300, "1C", "third");
+		assertEquals(Arrays.asList("tx1", "tx2"), index.search(new Query(null)));
+		assertEquals(Arrays.asList("tx1"), index.search(new Query("third")));
+		assertEquals(Arrays.asList("tx1"), index.search(new Query(null, 250, 350, 2500, 3500)));
+
+		// changed and changed back, with no query in between
+		index.put("tx1", 1000, 100, "1C", "third");
+		index.put("tx1", 3000, 300, "1C", "third");
+		assertEquals(Arrays.asList("tx1", "tx2"), index.search(new Query(null)));
+		assertEquals(Arrays.asList("tx1"), index.search(new Query(null, 250, 350, 2500, 3500)));
+	}
+
+	@Test
+	public void search50k() throws Exception
+	{
+		final TransactionSearchIndex<Integer> index = new TransactionSearchIndex<Integer>();
+		final Map<String, String> labels = new HashMap<String, String>();
+
+		for (int i = 0; i < 50000; i++)
+		{
+			final String address = "1Addr" + (i % 1000);
+			index.put(i, i * 60000L, (i % 2 == 0 ? 1 : -1) * i * 1000L, address, null);
+			labels.put(address, "label" + (i % 1000) + " common");
+		}
+		index.setLabels(labels);
+
+		final List<Integer> result = index.search(new Query("label12 common", 1000000, 40000000, 0, 30000 * 60000L));
+
+		// label12 and label120..label129 match, 11 addresses of 50 transactions each, narrowed by ranges
+		for (final int i : result)
+		{
+			assertTrue(i >= 1000 && i <= 30000);
+			assertTrue(i % 1000 == 12 || (i % 1000) / 10 == 12);
+		}
+		assertEquals(Integer.valueOf(29129), result.get(0));
+	}
+}